@@ -0,0 +1,283 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.batch.solr;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.client.solrj.request.CoreAdminRequest;
+import org.apache.solr.common.params.CoreAdminParams.CoreAdminAction;
+import org.hoteia.qalingo.core.domain.MarketArea;
+import org.hoteia.qalingo.core.domain.Retailer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * Full reindex of one Solr core. The entities are walked by keyset chunks of
+ * ids : each chunk is loaded, with its associations, in a few queries and in
+ * its own transaction, then its documents are built on the worker pool while
+ * the next chunk is loaded. The persistence context of a chunk is closed with
+ * its transaction : the memory doesn't grow with the catalog. The documents
+ * are sent by batches without commit, and the core is committed once at the end.
+ *
+ * With a rebuild core suffix, the documents are sent to the rebuild core,
+ * emptied first, which is swapped with the live core after the commit : the
+ * live core keeps serving the searches during the reindex.
+ *
+ * Without it, the documents are sent to the live core, and the documents of
+ * the ids not sent by the run (deleted or deactivated entities) are deleted
+ * before the commit.
+ */
+public abstract class AbstractSolrCoreReindexer implements InitializingBean {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    // THE UNIQUE KEY OF THE CORES
+    private static final String ID_FIELD = "id";
+
+    private String coreName;
+
+    private SolrServer solrServer;
+
+    private String solrServerUrl;
+
+    private String rebuildCoreSuffix;
+
+    private int chunkSize = 500;
+
+    private int batchSize = 1000;
+
+    private int deleteRangesPerQuery = 100;
+
+    private PlatformTransactionManager transactionManager;
+
+    public void afterPropertiesSet() throws Exception {
+        Assert.notNull(coreName, "You must provide a coreName.");
+        Assert.notNull(solrServer, "You must provide a solrServer.");
+        Assert.notNull(transactionManager, "You must provide a transactionManager.");
+        if (isCoreSwap()) {
+            Assert.notNull(solrServerUrl, "You must provide a solrServerUrl to swap the cores.");
+        }
+    }
+
+    /**
+     * @return the ids after this id, by id.
+     */
+    protected abstract List<Long> findIds(Long lastId, int maxResults);
+
+    /**
+     * Loads the entities of this chunk, in the caller thread, and returns the
+     * tasks which build their Solr documents on the worker pool : the tasks
+     * must not use the persistence context.
+     */
+    protected abstract List<Callable<Object>> prepareChunk(List<Long> ids, MarketArea marketArea, Retailer retailer);
+
+    /**
+     * @return the number of indexed documents.
+     */
+    public long reindex(final ExecutorService executor, final MarketArea marketArea, final Retailer retailer) throws Exception {
+        long start = System.currentTimeMillis();
+        final SolrServer targetServer;
+        if (isCoreSwap()) {
+            targetServer = new HttpSolrServer(solrServerUrl + "/" + getRebuildCoreName());
+            targetServer.deleteByQuery("*:*");
+        } else {
+            targetServer = solrServer;
+        }
+
+        TransactionTemplate chunkTransaction = new TransactionTemplate(transactionManager);
+        chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        chunkTransaction.setReadOnly(true);
+
+        long count = 0;
+        try {
+            List<Object> batch = new ArrayList<Object>(batchSize);
+            List<Future<Object>> builtChunk = new ArrayList<Future<Object>>();
+            List<String> staleRanges = new ArrayList<String>();
+            Long lastSentId = null;
+            Long lastId = null;
+            while (true) {
+                final Long chunkLastId = lastId;
+                final List<Future<Object>> nextChunk = new ArrayList<Future<Object>>();
+                // THE ENTITIES OF THE CHUNK ARE DETACHED BY THE COMMIT : THE TASKS ONLY READ THEIR LOADED STATE
+                List<Long> ids = chunkTransaction.execute(new TransactionCallback<List<Long>>() {
+                    public List<Long> doInTransaction(TransactionStatus status) {
+                        List<Long> ids = findIds(chunkLastId, chunkSize);
+                        if (!ids.isEmpty()) {
+                            for (Callable<Object> task : prepareChunk(ids, marketArea, retailer)) {
+                                nextChunk.add(executor.submit(task));
+                            }
+                        }
+                        return ids;
+                    }
+                });
+                if (!ids.isEmpty()) {
+                    lastId = ids.get(ids.size() - 1);
+                }
+
+                // THE NEXT CHUNK IS BUILT WHILE THE PREVIOUS ONE IS SENT
+                List<Long> sentIds = send(targetServer, builtChunk, batch);
+                count += sentIds.size();
+                lastSentId = addStaleRanges(staleRanges, lastSentId, sentIds);
+                builtChunk = nextChunk;
+                if (ids.isEmpty()) {
+                    break;
+                }
+            }
+            if (!batch.isEmpty()) {
+                targetServer.addBeans(batch);
+            }
+            if (!isCoreSwap()) {
+                // THE LAST RANGE : AFTER THE LAST SENT ID
+                staleRanges.add(lastSentId != null ? "{" + lastSentId + " TO *]" : "[* TO *]");
+                deleteStaleDocuments(targetServer, staleRanges);
+            }
+            targetServer.commit();
+
+            if (isCoreSwap()) {
+                CoreAdminRequest coreAdminRequest = new CoreAdminRequest();
+                coreAdminRequest.setAction(CoreAdminAction.SWAP);
+                coreAdminRequest.setCoreName(coreName);
+                coreAdminRequest.setOtherCoreName(getRebuildCoreName());
+                HttpSolrServer adminServer = new HttpSolrServer(solrServerUrl);
+                try {
+                    coreAdminRequest.process(adminServer);
+                } finally {
+                    adminServer.shutdown();
+                }
+            }
+        } finally {
+            if (targetServer != solrServer) {
+                ((HttpSolrServer) targetServer).shutdown();
+            }
+        }
+
+        logger.info("Solr core " + coreName + " reindexed: " + count + " documents in " + (System.currentTimeMillis() - start) + " ms"
+                + (isCoreSwap() ? ", swapped with " + getRebuildCoreName() : ""));
+        return count;
+    }
+
+    /**
+     * @return the ids of the documents of the chunk.
+     */
+    private List<Long> send(final SolrServer targetServer, final List<Future<Object>> builtChunk, final List<Object> batch) throws Exception {
+        List<Long> sentIds = new ArrayList<Long>(builtChunk.size());
+        for (Future<Object> future : builtChunk) {
+            Object document = future.get();
+            if (document != null) {
+                batch.add(document);
+                Object id = targetServer.getBinder().toSolrInputDocument(document).getFieldValue(ID_FIELD);
+                if (id != null) {
+                    sentIds.add(Long.valueOf(id.toString()));
+                }
+            }
+            if (batch.size() >= batchSize) {
+                targetServer.addBeans(batch);
+                batch.clear();
+            }
+        }
+        return sentIds;
+    }
+
+    /**
+     * The chunks are walked by id : the ids between two sent ids are the
+     * ones of the documents which are not in the index anymore.
+     *
+     * @return the last sent id.
+     */
+    private Long addStaleRanges(final List<String> staleRanges, Long lastSentId, final List<Long> sentIds) {
+        if (isCoreSwap()) {
+            return lastSentId;
+        }
+        Collections.sort(sentIds);
+        for (Long sentId : sentIds) {
+            if (lastSentId == null) {
+                staleRanges.add("[* TO " + sentId + "}");
+            } else if (sentId > lastSentId + 1) {
+                staleRanges.add("{" + lastSentId + " TO " + sentId + "}");
+            }
+            lastSentId = sentId;
+        }
+        return lastSentId;
+    }
+
+    private void deleteStaleDocuments(final SolrServer targetServer, final List<String> staleRanges) throws Exception {
+        for (int i = 0; i < staleRanges.size(); i += deleteRangesPerQuery) {
+            StringBuilder query = new StringBuilder();
+            for (String staleRange : staleRanges.subList(i, Math.min(i + deleteRangesPerQuery, staleRanges.size()))) {
+                if (query.length() > 0) {
+                    query.append(" OR ");
+                }
+                query.append(ID_FIELD).append(":").append(staleRange);
+            }
+            targetServer.deleteByQuery(query.toString());
+        }
+        logger.info("Solr core " + coreName + ": documents of " + staleRanges.size() + " id ranges deleted");
+    }
+
+    public boolean isCoreSwap() {
+        return StringUtils.isNotEmpty(rebuildCoreSuffix);
+    }
+
+    public String getRebuildCoreName() {
+        return coreName + rebuildCoreSuffix;
+    }
+
+    public String getCoreName() {
+        return coreName;
+    }
+
+    public void setCoreName(String coreName) {
+        this.coreName = coreName;
+    }
+
+    public void setSolrServer(SolrServer solrServer) {
+        this.solrServer = solrServer;
+    }
+
+    public void setSolrServerUrl(String solrServerUrl) {
+        this.solrServerUrl = solrServerUrl;
+    }
+
+    public void setRebuildCoreSuffix(String rebuildCoreSuffix) {
+        this.rebuildCoreSuffix = rebuildCoreSuffix;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setDeleteRangesPerQuery(int deleteRangesPerQuery) {
+        this.deleteRangesPerQuery = deleteRangesPerQuery;
+    }
+
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+}
@@ -0,0 +1,105 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.batch.solr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.hoteia.qalingo.core.domain.CatalogCategoryVirtual;
+import org.hoteia.qalingo.core.domain.MarketArea;
+import org.hoteia.qalingo.core.domain.ProductMarketing;
+import org.hoteia.qalingo.core.domain.ProductMarketing_;
+import org.hoteia.qalingo.core.domain.ProductSku;
+import org.hoteia.qalingo.core.domain.ProductSku_;
+import org.hoteia.qalingo.core.domain.Retailer;
+import org.hoteia.qalingo.core.fetchplan.FetchPlan;
+import org.hoteia.qalingo.core.fetchplan.SpecificFetchMode;
+import org.hoteia.qalingo.core.service.CatalogCategoryService;
+import org.hoteia.qalingo.core.service.ProductService;
+import org.hoteia.qalingo.core.solr.service.ProductMarketingSolrService;
+import org.springframework.util.Assert;
+
+/**
+ * Full reindex of the product marketings : one query for the products of a
+ * chunk with their skus, and their prices when a market area is indexed, and
+ * one for the categories of their default skus.
+ */
+public class ProductMarketingSolrReindexer extends AbstractSolrCoreReindexer {
+
+    private ProductService productService;
+
+    private CatalogCategoryService catalogCategoryService;
+
+    private ProductMarketingSolrService productMarketingSolrService;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        super.afterPropertiesSet();
+        Assert.notNull(productService, "You must provide a productService.");
+        Assert.notNull(catalogCategoryService, "You must provide a catalogCategoryService.");
+        Assert.notNull(productMarketingSolrService, "You must provide a productMarketingSolrService.");
+    }
+
+    @Override
+    protected List<Long> findIds(final Long lastId, final int maxResults) {
+        return productService.findProductMarketingIds(lastId, maxResults);
+    }
+
+    @Override
+    protected List<Callable<Object>> prepareChunk(final List<Long> ids, final MarketArea marketArea, final Retailer retailer) {
+        List<SpecificFetchMode> fetchModes = new ArrayList<SpecificFetchMode>();
+        fetchModes.add(new SpecificFetchMode(ProductMarketing_.productSkus.getName()));
+        if (marketArea != null && retailer != null) {
+            fetchModes.add(new SpecificFetchMode(ProductMarketing_.productSkus.getName() + "." + ProductSku_.prices.getName()));
+        }
+        final List<ProductMarketing> productMarketings = productService.findProductMarketingsByIds(ids, new FetchPlan(fetchModes));
+
+        List<Long> defaultProductSkuIds = new ArrayList<Long>(productMarketings.size());
+        for (ProductMarketing productMarketing : productMarketings) {
+            ProductSku productSku = productMarketing.getDefaultProductSku();
+            if (productSku != null) {
+                defaultProductSkuIds.add(productSku.getId());
+            }
+        }
+        final Map<Long, List<CatalogCategoryVirtual>> categoriesByProductSkuId = catalogCategoryService.findVirtualCategoriesByProductSkuIds(defaultProductSkuIds);
+
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(productMarketings.size());
+        for (final ProductMarketing productMarketing : productMarketings) {
+            final ProductSku productSku = productMarketing.getDefaultProductSku();
+            if (productSku == null) {
+                // SAME RULE AS THE INCREMENTAL INDEXING : NO SKU, NO DOCUMENT
+                continue;
+            }
+            tasks.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    List<CatalogCategoryVirtual> catalogCategories = categoriesByProductSkuId.get(productSku.getId());
+                    CatalogCategoryVirtual defaultVirtualCatalogCategory = catalogCategories != null ? catalogCategories.get(0) : null;
+                    return productMarketingSolrService.buildProductMarketingSolr(productMarketing, catalogCategories, defaultVirtualCatalogCategory, marketArea, retailer);
+                }
+            });
+        }
+        return tasks;
+    }
+
+    public void setProductService(ProductService productService) {
+        this.productService = productService;
+    }
+
+    public void setCatalogCategoryService(CatalogCategoryService catalogCategoryService) {
+        this.catalogCategoryService = catalogCategoryService;
+    }
+
+    public void setProductMarketingSolrService(ProductMarketingSolrService productMarketingSolrService) {
+        this.productMarketingSolrService = productMarketingSolrService;
+    }
+
+}
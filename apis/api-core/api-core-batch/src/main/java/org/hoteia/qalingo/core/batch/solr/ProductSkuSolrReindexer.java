@@ -0,0 +1,88 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.batch.solr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.hoteia.qalingo.core.domain.CatalogCategoryVirtual;
+import org.hoteia.qalingo.core.domain.MarketArea;
+import org.hoteia.qalingo.core.domain.ProductSku;
+import org.hoteia.qalingo.core.domain.ProductSku_;
+import org.hoteia.qalingo.core.domain.Retailer;
+import org.hoteia.qalingo.core.fetchplan.FetchPlan;
+import org.hoteia.qalingo.core.fetchplan.SpecificFetchMode;
+import org.hoteia.qalingo.core.service.CatalogCategoryService;
+import org.hoteia.qalingo.core.service.ProductService;
+import org.hoteia.qalingo.core.solr.service.ProductSkuSolrService;
+import org.springframework.util.Assert;
+
+/**
+ * Full reindex of the product skus : one query for the skus of a chunk, with
+ * their prices when a market area is indexed, and one for their categories.
+ */
+public class ProductSkuSolrReindexer extends AbstractSolrCoreReindexer {
+
+    private ProductService productService;
+
+    private CatalogCategoryService catalogCategoryService;
+
+    private ProductSkuSolrService productSkuSolrService;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        super.afterPropertiesSet();
+        Assert.notNull(productService, "You must provide a productService.");
+        Assert.notNull(catalogCategoryService, "You must provide a catalogCategoryService.");
+        Assert.notNull(productSkuSolrService, "You must provide a productSkuSolrService.");
+    }
+
+    @Override
+    protected List<Long> findIds(final Long lastId, final int maxResults) {
+        return productService.findProductSkuIds(lastId, maxResults);
+    }
+
+    @Override
+    protected List<Callable<Object>> prepareChunk(final List<Long> ids, final MarketArea marketArea, final Retailer retailer) {
+        List<SpecificFetchMode> fetchModes = new ArrayList<SpecificFetchMode>();
+        if (marketArea != null && retailer != null) {
+            fetchModes.add(new SpecificFetchMode(ProductSku_.prices.getName()));
+        }
+        final List<ProductSku> productSkus = productService.findProductSkusByIds(ids, new FetchPlan(fetchModes));
+        final Map<Long, List<CatalogCategoryVirtual>> categoriesByProductSkuId = catalogCategoryService.findVirtualCategoriesByProductSkuIds(ids);
+
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(productSkus.size());
+        for (final ProductSku productSku : productSkus) {
+            tasks.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    List<CatalogCategoryVirtual> catalogCategories = categoriesByProductSkuId.get(productSku.getId());
+                    CatalogCategoryVirtual defaultVirtualCatalogCategory = catalogCategories != null ? catalogCategories.get(0) : null;
+                    return productSkuSolrService.buildProductSkuSolr(productSku, catalogCategories, defaultVirtualCatalogCategory, marketArea, retailer);
+                }
+            });
+        }
+        return tasks;
+    }
+
+    public void setProductService(ProductService productService) {
+        this.productService = productService;
+    }
+
+    public void setCatalogCategoryService(CatalogCategoryService catalogCategoryService) {
+        this.catalogCategoryService = catalogCategoryService;
+    }
+
+    public void setProductSkuSolrService(ProductSkuSolrService productSkuSolrService) {
+        this.productSkuSolrService = productSkuSolrService;
+    }
+
+}
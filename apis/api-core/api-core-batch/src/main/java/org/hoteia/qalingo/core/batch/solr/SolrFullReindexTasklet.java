@@ -0,0 +1,97 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.batch.solr;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.lang.StringUtils;
+import org.hoteia.qalingo.core.domain.MarketArea;
+import org.hoteia.qalingo.core.domain.Retailer;
+import org.hoteia.qalingo.core.service.MarketService;
+import org.hoteia.qalingo.core.service.RetailerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Full reindex of the Solr cores, one core after the other, on a shared
+ * worker pool. The optional job parameters marketAreaCode and retailerCode
+ * select the prices of the documents.
+ */
+public class SolrFullReindexTasklet implements Tasklet, InitializingBean {
+
+    public static final String JOB_PARAMETER_MARKET_AREA_CODE = "marketAreaCode";
+    public static final String JOB_PARAMETER_RETAILER_CODE = "retailerCode";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private List<AbstractSolrCoreReindexer> reindexers;
+
+    private MarketService marketService;
+
+    private RetailerService retailerService;
+
+    private int workerCount = Runtime.getRuntime().availableProcessors();
+
+    public final void afterPropertiesSet() throws Exception {
+        Assert.notEmpty(reindexers, "You must provide the reindexers.");
+        Assert.notNull(marketService, "You must provide a marketService.");
+        Assert.notNull(retailerService, "You must provide a retailerService.");
+    }
+
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        Map<String, Object> jobParameters = chunkContext.getStepContext().getJobParameters();
+        MarketArea marketArea = null;
+        Retailer retailer = null;
+        String marketAreaCode = (String) jobParameters.get(JOB_PARAMETER_MARKET_AREA_CODE);
+        String retailerCode = (String) jobParameters.get(JOB_PARAMETER_RETAILER_CODE);
+        if (StringUtils.isNotEmpty(marketAreaCode) && StringUtils.isNotEmpty(retailerCode)) {
+            marketArea = marketService.getMarketAreaByCode(marketAreaCode);
+            retailer = retailerService.getRetailerByCode(retailerCode);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            for (AbstractSolrCoreReindexer reindexer : reindexers) {
+                long count = reindexer.reindex(executor, marketArea, retailer);
+                contribution.incrementWriteCount((int) count);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        logger.info("Solr full reindex done: " + contribution.getWriteCount() + " documents");
+        return RepeatStatus.FINISHED;
+    }
+
+    public void setReindexers(List<AbstractSolrCoreReindexer> reindexers) {
+        this.reindexers = reindexers;
+    }
+
+    public void setMarketService(MarketService marketService) {
+        this.marketService = marketService;
+    }
+
+    public void setRetailerService(RetailerService retailerService) {
+        this.retailerService = retailerService;
+    }
+
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+    }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.batch.solr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.hoteia.qalingo.core.domain.MarketArea;
+import org.hoteia.qalingo.core.domain.Retailer;
+import org.hoteia.qalingo.core.domain.Store;
+import org.hoteia.qalingo.core.fetchplan.FetchPlan;
+import org.hoteia.qalingo.core.fetchplan.SpecificFetchMode;
+import org.hoteia.qalingo.core.service.RetailerService;
+import org.hoteia.qalingo.core.solr.service.StoreSolrService;
+import org.springframework.util.Assert;
+
+/**
+ * Full reindex of the stores : the documents only need the store columns, one
+ * query by chunk without association.
+ */
+public class StoreSolrReindexer extends AbstractSolrCoreReindexer {
+
+    private RetailerService retailerService;
+
+    private StoreSolrService storeSolrService;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        super.afterPropertiesSet();
+        Assert.notNull(retailerService, "You must provide a retailerService.");
+        Assert.notNull(storeSolrService, "You must provide a storeSolrService.");
+    }
+
+    @Override
+    protected List<Long> findIds(final Long lastId, final int maxResults) {
+        return retailerService.findStoreIds(lastId, maxResults);
+    }
+
+    @Override
+    protected List<Callable<Object>> prepareChunk(final List<Long> ids, final MarketArea marketArea, final Retailer retailer) {
+        final List<Store> stores = retailerService.findStoresByIds(ids, new FetchPlan(new ArrayList<SpecificFetchMode>()));
+
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(stores.size());
+        for (final Store store : stores) {
+            tasks.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return storeSolrService.buildStoreSolr(store);
+                }
+            });
+        }
+        return tasks;
+    }
+
+    public void setRetailerService(RetailerService retailerService) {
+        this.retailerService = retailerService;
+    }
+
+    public void setStoreSolrService(StoreSolrService storeSolrService) {
+        this.storeSolrService = storeSolrService;
+    }
+
+}
@@ -0,0 +1,82 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.aop.cache;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Composite cache key used by the {@link CacheManagementAspect}. The key keeps
+ * the raw arguments (ids, codes...) instead of a concatenated String, and the
+ * hash is computed once at construction.
+ */
+public class CacheKey implements Serializable {
+
+    /**
+     * Generated UID
+     */
+    private static final long serialVersionUID = -2946027811294745863L;
+
+    private final String prefix;
+    private final Object[] parts;
+    private final int hash;
+
+    public CacheKey(final String prefix, final Object[] parts) {
+        this.prefix = prefix;
+        this.parts = parts;
+        this.hash = 31 * prefix.hashCode() + Arrays.hashCode(parts);
+    }
+
+    /**
+     * @return the key of an entity stored in a "by id" cache.
+     */
+    public static CacheKey entityKey(final Class<?> entityClass, final Long id) {
+        return new CacheKey(entityClass.getName(), new Object[] { id });
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public Object[] getParts() {
+        return parts;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        CacheKey other = (CacheKey) obj;
+        if (hash != other.hash)
+            return false;
+        if (!prefix.equals(other.prefix))
+            return false;
+        return Arrays.equals(parts, other.parts);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(prefix);
+        for (int i = 0; i < parts.length; i++) {
+            builder.append('_').append(parts[i]);
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.aop.cache;
+
+/**
+ * Everything the {@link CacheManagementAspect} needs to know about a join point
+ * which does not depend on the argument values: the caches to use, the cache
+ * type and how each argument contributes to the key. It is resolved once per
+ * method by the {@link CacheKeyEngine}.
+ */
+public class CacheKeyDefinition {
+
+    public enum ArgumentKeyStrategy {
+        // VARARGS ARRAY WHICH CARRIES THE FETCH PLAN : NOT PART OF THE KEY
+        FETCH_PLAN(0),
+        // MARKET PLACE, MARKET, MARKET AREA, LOCALIZATION, RETAILER, CURRENCY CODES
+        REQUEST_DATA(6),
+        // ID OF THE ENTITY
+        ENTITY_ID(1),
+        // RAW ID GIVEN AS A STRING ON A GET BY ID METHOD
+        RAW_ID(1),
+        // IMMUTABLE VALUE (STRING, NUMBER, ENUM...) USED AS IS
+        VALUE(1),
+        // ANY OTHER OBJECT
+        TO_STRING(1),
+        // DECLARED AS OBJECT : RESOLVED WITH THE RUNTIME TYPE
+        DYNAMIC(1);
+
+        private final int keyParts;
+
+        private ArgumentKeyStrategy(int keyParts) {
+            this.keyParts = keyParts;
+        }
+
+        public int getKeyParts() {
+            return keyParts;
+        }
+    }
+
+    private final Class<?> returnType;
+    private final String cacheType;
+    private final String cacheName;
+    private final String entityCacheName;
+    private final String linkCodeIdCacheName;
+    private final String keyPrefix;
+    private final ArgumentKeyStrategy[] argumentStrategies;
+    private final int keyPartsLength;
+
+    public CacheKeyDefinition(Class<?> returnType, String cacheType, String cacheName, String entityCacheName, String linkCodeIdCacheName, String keyPrefix,
+            ArgumentKeyStrategy[] argumentStrategies) {
+        this.returnType = returnType;
+        this.cacheType = cacheType;
+        this.cacheName = cacheName;
+        this.entityCacheName = entityCacheName;
+        this.linkCodeIdCacheName = linkCodeIdCacheName;
+        this.keyPrefix = keyPrefix;
+        this.argumentStrategies = argumentStrategies;
+        int length = 0;
+        for (int i = 0; i < argumentStrategies.length; i++) {
+            length += argumentStrategies[i].getKeyParts();
+        }
+        this.keyPartsLength = length;
+    }
+
+    public Class<?> getReturnType() {
+        return returnType;
+    }
+
+    public String getCacheType() {
+        return cacheType;
+    }
+
+    /**
+     * @return the cache where the result of the method is stored.
+     */
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    /**
+     * @return the cache where the entities are stored by id.
+     */
+    public String getEntityCacheName() {
+        return entityCacheName;
+    }
+
+    /**
+     * @return the cache which links the entity codes and ids.
+     */
+    public String getLinkCodeIdCacheName() {
+        return linkCodeIdCacheName;
+    }
+
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    public ArgumentKeyStrategy[] getArgumentStrategies() {
+        return argumentStrategies;
+    }
+
+    public int getKeyPartsLength() {
+        return keyPartsLength;
+    }
+
+    public boolean isCacheById() {
+        return CacheManagementAspect.CACHE_BY_ID.equals(cacheType);
+    }
+
+    public boolean isCacheByCode() {
+        return CacheManagementAspect.CACHE_BY_CODE.equals(cacheType);
+    }
+
+}
@@ -0,0 +1,316 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.aop.cache;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hoteia.qalingo.core.aop.cache.CacheKeyDefinition.ArgumentKeyStrategy;
+import org.hoteia.qalingo.core.domain.AbstractEntity;
+import org.hoteia.qalingo.core.domain.AbstractExtendEntity;
+import org.hoteia.qalingo.core.fetchplan.FetchPlan;
+import org.hoteia.qalingo.core.fetchplan.SpecificFetchMode;
+import org.hoteia.qalingo.core.pojo.RequestData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Builds the keys of the {@link CacheManagementAspect}. All the reflective work
+ * (cache name, cache type, argument types, entity accessors) is done once per
+ * method or entity class and kept in memory; building a key on the hot path is
+ * then a single array fill.
+ */
+@Component(value = "cacheKeyEngine")
+public class CacheKeyEngine {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final String REQUEST_DATA_PREFIX = RequestData.class.getName();
+
+    private final ConcurrentMap<Method, CacheKeyDefinition> definitions = new ConcurrentHashMap<Method, CacheKeyDefinition>();
+
+    private final ConcurrentMap<Class<?>, EntityAccessor> entityAccessors = new ConcurrentHashMap<Class<?>, EntityAccessor>();
+
+    public CacheKeyDefinition getDefinition(final Method method) {
+        CacheKeyDefinition definition = definitions.get(method);
+        if (definition == null) {
+            definition = resolveDefinition(method);
+            CacheKeyDefinition existing = definitions.putIfAbsent(method, definition);
+            if (existing != null) {
+                definition = existing;
+            }
+        }
+        return definition;
+    }
+
+    public CacheKey buildKey(final CacheKeyDefinition definition, final Object[] args) throws Exception {
+        final ArgumentKeyStrategy[] strategies = definition.getArgumentStrategies();
+        final Object[] parts = new Object[definition.getKeyPartsLength()];
+        int index = 0;
+        for (int i = 0; i < strategies.length && i < args.length; i++) {
+            final Object arg = args[i];
+            switch (strategies[i]) {
+            case FETCH_PLAN:
+                break;
+            case REQUEST_DATA:
+                fillRequestData((RequestData) arg, parts, index);
+                index += 6;
+                break;
+            case ENTITY_ID:
+                parts[index++] = arg == null ? null : getEntityId(arg);
+                break;
+            case RAW_ID:
+                parts[index++] = toRawId(arg);
+                break;
+            case VALUE:
+                parts[index++] = arg;
+                break;
+            case TO_STRING:
+                parts[index++] = arg == null ? null : arg.toString();
+                break;
+            default:
+                parts[index++] = toDynamicPart(arg);
+                break;
+            }
+        }
+        return new CacheKey(definition.getKeyPrefix(), parts);
+    }
+
+    /**
+     * @return the fetch modes asked by the caller, or null if there is no specific fetch plan.
+     */
+    public List<SpecificFetchMode> getAskedFetchModes(final CacheKeyDefinition definition, final Object[] args) {
+        final ArgumentKeyStrategy[] strategies = definition.getArgumentStrategies();
+        for (int i = 0; i < strategies.length && i < args.length; i++) {
+            if (strategies[i] == ArgumentKeyStrategy.FETCH_PLAN && args[i] instanceof Object[]) {
+                Object[] objects = (Object[]) args[i];
+                for (int j = 0; j < objects.length; j++) {
+                    Object object = objects[j];
+                    if (object instanceof FetchPlan) {
+                        FetchPlan fetchPlan = (FetchPlan) object;
+                        if (fetchPlan.getFetchModes() != null && !fetchPlan.getFetchModes().isEmpty()) {
+                            return fetchPlan.getFetchModes();
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a copy of the arguments where the fetch plans are replaced by the given one, or null if the method
+     *         can't receive a fetch plan.
+     */
+    public Object[] replaceFetchPlan(final CacheKeyDefinition definition, final Object[] args, final FetchPlan fetchPlan) {
+        final ArgumentKeyStrategy[] strategies = definition.getArgumentStrategies();
+        for (int i = 0; i < strategies.length && i < args.length; i++) {
+            if (strategies[i] == ArgumentKeyStrategy.FETCH_PLAN) {
+                List<Object> params = new ArrayList<Object>();
+                if (args[i] instanceof Object[]) {
+                    Object[] objects = (Object[]) args[i];
+                    for (int j = 0; j < objects.length; j++) {
+                        if (!(objects[j] instanceof FetchPlan)) {
+                            params.add(objects[j]);
+                        }
+                    }
+                }
+                params.add(fetchPlan);
+                Object[] newArgs = args.clone();
+                newArgs[i] = params.toArray();
+                return newArgs;
+            }
+        }
+        return null;
+    }
+
+    public Long getEntityId(final Object entity) throws Exception {
+        Method method = getEntityAccessor(entity.getClass()).getIdMethod();
+        if (method == null) {
+            return null;
+        }
+        return (Long) method.invoke(entity);
+    }
+
+    public String getEntityCode(final Object entity) throws Exception {
+        Method method = getEntityAccessor(entity.getClass()).getCodeMethod();
+        if (method == null) {
+            return null;
+        }
+        return (String) method.invoke(entity);
+    }
+
+    protected CacheKeyDefinition resolveDefinition(final Method method) {
+        final Class<?> returnType = method.getReturnType();
+        final String methodName = method.getName();
+
+        String cacheType = CacheManagementAspect.CACHE_TYPE_MISC;
+        if (methodName.contains("ById")) {
+            // FIRST ARG IS A LONG FOR THE GET METHOD : SO THIS A GET BY ID
+            cacheType = CacheManagementAspect.CACHE_BY_ID;
+        } else if (methodName.contains("ByCode")) {
+            // FIRST ARG IS A STRING FOR THE GET METHOD : SO THIS A GET BY CODE
+            cacheType = CacheManagementAspect.CACHE_BY_CODE;
+        }
+
+        String baseCacheName = resolveCacheName(returnType);
+        String cacheName = baseCacheName;
+        String keyPrefix = returnType.getName();
+        if (CacheManagementAspect.CACHE_TYPE_MISC.equals(cacheType)) {
+            keyPrefix = method.getDeclaringClass().getSimpleName() + "." + methodName + "(..)";
+            if (!cacheName.contains("_misc")) {
+                cacheName = cacheName + "_misc";
+            }
+        } else if (CacheManagementAspect.CACHE_BY_CODE.equals(cacheType)) {
+            cacheName = baseCacheName + CacheManagementAspect.CACHE_LINK_CODE_ID_SUFFIX;
+        }
+
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        final ArgumentKeyStrategy[] strategies = new ArgumentKeyStrategy[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            strategies[i] = resolveArgumentStrategy(parameterTypes[i], i == 0 && CacheManagementAspect.CACHE_BY_ID.equals(cacheType));
+        }
+
+        return new CacheKeyDefinition(returnType, cacheType, cacheName, baseCacheName, baseCacheName + CacheManagementAspect.CACHE_LINK_CODE_ID_SUFFIX,
+                keyPrefix, strategies);
+    }
+
+    protected String resolveCacheName(final Class<?> returnType) {
+        try {
+            Field cacheField = returnType.getField(CacheManagementAspect.CACHE_NAME);
+            if (Modifier.isStatic(cacheField.getModifiers())) {
+                return (String) cacheField.get(null);
+            }
+        } catch (NoSuchFieldException e) {
+            // NO SPECIFIC CACHE FOR THIS TYPE
+        } catch (IllegalAccessException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("IllegalAccessException code.", e);
+            }
+        }
+        return CacheManagementAspect.DEFAULT_CACHE_NAME;
+    }
+
+    protected ArgumentKeyStrategy resolveArgumentStrategy(final Class<?> parameterType, final boolean idArgument) {
+        if (parameterType.isArray()) {
+            return ArgumentKeyStrategy.FETCH_PLAN;
+        }
+        if (RequestData.class.isAssignableFrom(parameterType)) {
+            return ArgumentKeyStrategy.REQUEST_DATA;
+        }
+        if (AbstractEntity.class.isAssignableFrom(parameterType) || AbstractExtendEntity.class.isAssignableFrom(parameterType)) {
+            return ArgumentKeyStrategy.ENTITY_ID;
+        }
+        if (idArgument && String.class.equals(parameterType)) {
+            return ArgumentKeyStrategy.RAW_ID;
+        }
+        if (parameterType.isPrimitive() || parameterType.isEnum() || String.class.equals(parameterType) || Number.class.isAssignableFrom(parameterType)
+                || Boolean.class.equals(parameterType) || Character.class.equals(parameterType)) {
+            return ArgumentKeyStrategy.VALUE;
+        }
+        if (Object.class.equals(parameterType)) {
+            return ArgumentKeyStrategy.DYNAMIC;
+        }
+        return ArgumentKeyStrategy.TO_STRING;
+    }
+
+    protected void fillRequestData(final RequestData requestData, final Object[] parts, final int index) {
+        if (requestData == null) {
+            return;
+        }
+        parts[index] = requestData.getMarketPlace() == null ? null : requestData.getMarketPlace().getCode();
+        parts[index + 1] = requestData.getMarket() == null ? null : requestData.getMarket().getCode();
+        parts[index + 2] = requestData.getMarketArea() == null ? null : requestData.getMarketArea().getCode();
+        parts[index + 3] = requestData.getMarketAreaLocalization() == null ? null : requestData.getMarketAreaLocalization().getCode();
+        parts[index + 4] = requestData.getMarketAreaRetailer() == null ? null : requestData.getMarketAreaRetailer().getCode();
+        parts[index + 5] = requestData.getMarketAreaCurrency() == null ? null : requestData.getMarketAreaCurrency().getCode();
+    }
+
+    protected Object toRawId(final Object arg) {
+        if (arg == null) {
+            return null;
+        }
+        // THE SAME ENTITY MUST HAVE THE SAME KEY WHEN IT IS ASKED BY A LONG OR A STRING ID
+        try {
+            return Long.valueOf(arg.toString());
+        } catch (NumberFormatException e) {
+            return arg.toString();
+        }
+    }
+
+    protected Object toDynamicPart(final Object arg) throws Exception {
+        if (arg == null) {
+            return null;
+        }
+        if (arg instanceof RequestData) {
+            Object[] requestDataParts = new Object[6];
+            fillRequestData((RequestData) arg, requestDataParts, 0);
+            return new CacheKey(REQUEST_DATA_PREFIX, requestDataParts);
+        }
+        if (EntityCacheEntry.isEntity(arg)) {
+            return getEntityId(arg);
+        }
+        if (arg instanceof String || arg instanceof Number || arg instanceof Boolean || arg instanceof Enum) {
+            return arg;
+        }
+        return arg.toString();
+    }
+
+    protected EntityAccessor getEntityAccessor(final Class<?> entityClass) {
+        EntityAccessor accessor = entityAccessors.get(entityClass);
+        if (accessor == null) {
+            accessor = new EntityAccessor(findGetter(entityClass, "getId", Long.class), findGetter(entityClass, "getCode", String.class));
+            EntityAccessor existing = entityAccessors.putIfAbsent(entityClass, accessor);
+            if (existing != null) {
+                accessor = existing;
+            }
+        }
+        return accessor;
+    }
+
+    protected Method findGetter(final Class<?> entityClass, final String name, final Class<?> returnType) {
+        try {
+            Method method = entityClass.getMethod(name);
+            if (returnType.isAssignableFrom(method.getReturnType())) {
+                method.setAccessible(true);
+                return method;
+            }
+        } catch (NoSuchMethodException e) {
+            // THIS ENTITY HAS NO SUCH PROPERTY
+        }
+        return null;
+    }
+
+    protected static class EntityAccessor {
+
+        private final Method idMethod;
+        private final Method codeMethod;
+
+        public EntityAccessor(Method idMethod, Method codeMethod) {
+            this.idMethod = idMethod;
+            this.codeMethod = codeMethod;
+        }
+
+        public Method getIdMethod() {
+            return idMethod;
+        }
+
+        public Method getCodeMethod() {
+            return codeMethod;
+        }
+    }
+
+}
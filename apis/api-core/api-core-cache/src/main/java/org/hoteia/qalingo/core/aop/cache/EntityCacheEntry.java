@@ -0,0 +1,100 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.aop.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.hoteia.qalingo.core.domain.AbstractEntity;
+import org.hoteia.qalingo.core.domain.AbstractExtendEntity;
+import org.hoteia.qalingo.core.fetchplan.FetchPlan;
+import org.hoteia.qalingo.core.fetchplan.SpecificFetchMode;
+
+/**
+ * Cached entity with the associations which are already initialized on its
+ * graph. A caller asking for a subset of these associations is served from the
+ * cache; a caller asking for more only needs to load the missing ones.
+ */
+public class EntityCacheEntry implements Serializable {
+
+    /**
+     * Generated UID
+     */
+    private static final long serialVersionUID = 5013420387126657261L;
+
+    private final Object entity;
+    private final Set<SpecificFetchMode> loadedFetchModes;
+
+    public EntityCacheEntry(Object entity) {
+        this.entity = entity;
+        FetchPlan fetchPlan = getFetchPlan(entity);
+        if (fetchPlan != null && fetchPlan.getFetchModes() != null) {
+            this.loadedFetchModes = Collections.unmodifiableSet(new HashSet<SpecificFetchMode>(fetchPlan.getFetchModes()));
+        } else {
+            this.loadedFetchModes = Collections.emptySet();
+        }
+    }
+
+    public Object getEntity() {
+        return entity;
+    }
+
+    public Set<SpecificFetchMode> getLoadedFetchModes() {
+        return loadedFetchModes;
+    }
+
+    /**
+     * @return true if all the asked associations are already initialized.
+     */
+    public boolean isLoaded(List<SpecificFetchMode> askedFetchModes) {
+        return askedFetchModes == null || loadedFetchModes.containsAll(askedFetchModes);
+    }
+
+    /**
+     * @return the asked associations which are not initialized yet.
+     */
+    public List<SpecificFetchMode> getMissingFetchModes(List<SpecificFetchMode> askedFetchModes) {
+        List<SpecificFetchMode> missingFetchModes = new ArrayList<SpecificFetchMode>();
+        if (askedFetchModes != null) {
+            for (SpecificFetchMode specificFetchMode : askedFetchModes) {
+                if (!loadedFetchModes.contains(specificFetchMode) && !missingFetchModes.contains(specificFetchMode)) {
+                    missingFetchModes.add(specificFetchMode);
+                }
+            }
+        }
+        return missingFetchModes;
+    }
+
+    public static boolean isEntity(Object object) {
+        return object instanceof AbstractEntity || object instanceof AbstractExtendEntity;
+    }
+
+    public static FetchPlan getFetchPlan(Object entity) {
+        if (entity instanceof AbstractEntity) {
+            return ((AbstractEntity) entity).getFetchPlan();
+        } else if (entity instanceof AbstractExtendEntity) {
+            return ((AbstractExtendEntity<?>) entity).getFetchPlan();
+        }
+        return null;
+    }
+
+    public static void setFetchPlan(Object entity, FetchPlan fetchPlan) {
+        if (entity instanceof AbstractEntity) {
+            ((AbstractEntity) entity).setFetchPlan(fetchPlan);
+        } else if (entity instanceof AbstractExtendEntity) {
+            ((AbstractExtendEntity<?>) entity).setFetchPlan(fetchPlan);
+        }
+    }
+
+}
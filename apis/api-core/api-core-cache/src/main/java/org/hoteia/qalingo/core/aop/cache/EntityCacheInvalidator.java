@@ -0,0 +1,356 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.aop.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.Element;
+
+import org.apache.commons.lang.StringUtils;
+import org.hoteia.qalingo.core.RequestConstants;
+import org.hoteia.qalingo.core.cache.CacheInvalidation;
+import org.hoteia.qalingo.core.cache.CacheInvalidationHandler;
+import org.hoteia.qalingo.core.service.UrlSegmentService;
+import org.hoteia.qalingo.core.web.cache.page.HtmlPageCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Evicts the entries of the {@link CacheManagementAspect} caches which hold
+ * the invalidated entities, instead of flushing the caches :
+ * <ul>
+ * <li>the "by id" cache of the type : the keys of the entity id,</li>
+ * <li>the "_link_code_id" cache : the links of the entity id, and the codes which point to it,</li>
+ * <li>the "_misc" caches of the type and the common one : the results which contain the entity, or whose key has its code,</li>
+ * <li>the HTML pages tagged with the code of the entity,</li>
+ * <li>the url segments of the entity.</li>
+ * </ul>
+ * Each cache is read once per batch of invalidations.
+ */
+@Component(value = "entityCacheInvalidator")
+@ManagedResource
+public class EntityCacheInvalidator implements CacheInvalidationHandler {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final String MISC_SUFFIX = "_misc";
+
+    // URL TEMPLATE VARIABLE OF THE PAGES OF AN ENTITY TYPE : THE TAGS OF THE HTML PAGE CACHE
+    private static final Map<String, String> PAGE_TAG_NAMES = new HashMap<String, String>();
+
+    static {
+        PAGE_TAG_NAMES.put("ProductMarketing", RequestConstants.URL_PATTERN_PRODUCT_MARKETING_CODE);
+        PAGE_TAG_NAMES.put("ProductSku", RequestConstants.URL_PATTERN_PRODUCT_SKU_CODE);
+        PAGE_TAG_NAMES.put("ProductBrand", RequestConstants.URL_PATTERN_BRAND_CODE);
+        PAGE_TAG_NAMES.put("CatalogCategoryMaster", RequestConstants.URL_PATTERN_CATEGORY_CODE);
+        PAGE_TAG_NAMES.put("CatalogCategoryVirtual", RequestConstants.URL_PATTERN_CATEGORY_CODE);
+        PAGE_TAG_NAMES.put("Retailer", RequestConstants.URL_PATTERN_RETAILER_CODE);
+        PAGE_TAG_NAMES.put("Store", RequestConstants.URL_PATTERN_STORE_CODE);
+    }
+
+    @Autowired
+    private CacheManagementAspect cacheManagementAspect;
+
+    @Autowired
+    private CacheKeyEngine cacheKeyEngine;
+
+    @Autowired(required = false)
+    private HtmlPageCache htmlPageCache;
+
+    @Autowired(required = false)
+    private UrlSegmentService urlSegmentService;
+
+    private final ConcurrentMap<String, Class<?>> entityClasses = new ConcurrentHashMap<String, Class<?>>();
+
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private final AtomicLong evictedEntityCount = new AtomicLong();
+    private final AtomicLong evictedLinkCount = new AtomicLong();
+    private final AtomicLong evictedMiscCount = new AtomicLong();
+    private final AtomicLong invalidatedPageTagCount = new AtomicLong();
+
+    public int invalidate(final Collection<CacheInvalidation> invalidations) {
+        // THE INVALIDATIONS BY CACHE : ONE PASS ON EACH CACHE
+        Map<String, List<ResolvedInvalidation>> byCacheName = new LinkedHashMap<String, List<ResolvedInvalidation>>();
+        for (CacheInvalidation invalidation : invalidations) {
+            Class<?> entityClass = getEntityClass(invalidation.getEntityType());
+            if (entityClass == null) {
+                continue;
+            }
+            String cacheName = cacheKeyEngine.resolveCacheName(entityClass);
+            List<ResolvedInvalidation> resolvedInvalidations = byCacheName.get(cacheName);
+            if (resolvedInvalidations == null) {
+                resolvedInvalidations = new ArrayList<ResolvedInvalidation>();
+                byCacheName.put(cacheName, resolvedInvalidations);
+            }
+            resolvedInvalidations.add(new ResolvedInvalidation(entityClass, invalidation));
+        }
+        invalidationCount.addAndGet(invalidations.size());
+
+        int count = 0;
+        List<ResolvedInvalidation> all = new ArrayList<ResolvedInvalidation>();
+        for (Map.Entry<String, List<ResolvedInvalidation>> entry : byCacheName.entrySet()) {
+            String cacheName = entry.getKey();
+            List<ResolvedInvalidation> resolvedInvalidations = entry.getValue();
+            all.addAll(resolvedInvalidations);
+
+            int evicted = evictEntities(getCache(cacheName), resolvedInvalidations);
+            evictedEntityCount.addAndGet(evicted);
+            count += evicted;
+
+            evicted = evictLinks(getCache(cacheName + CacheManagementAspect.CACHE_LINK_CODE_ID_SUFFIX), resolvedInvalidations);
+            evictedLinkCount.addAndGet(evicted);
+            count += evicted;
+
+            if (!CacheManagementAspect.DEFAULT_CACHE_NAME.equals(cacheName)) {
+                evicted = evictMisc(getCache(cacheName + MISC_SUFFIX), resolvedInvalidations);
+                evictedMiscCount.addAndGet(evicted);
+                count += evicted;
+            }
+        }
+        if (!all.isEmpty()) {
+            // THE LISTS OF ENTITIES ARE CACHED WITH THE COMMON CACHE NAME
+            int evicted = evictMisc(getCache(CacheManagementAspect.DEFAULT_CACHE_NAME + MISC_SUFFIX), all);
+            evictedMiscCount.addAndGet(evicted);
+            count += evicted;
+        }
+
+        if (htmlPageCache != null) {
+            for (ResolvedInvalidation resolvedInvalidation : all) {
+                String tagName = PAGE_TAG_NAMES.get(resolvedInvalidation.invalidation.getEntityType());
+                if (tagName != null && StringUtils.isNotEmpty(resolvedInvalidation.invalidation.getCode())) {
+                    // THE PAGES ARE REMOVED ON THEIR NEXT READ
+                    htmlPageCache.invalidateTag(HtmlPageCache.buildTag(tagName, resolvedInvalidation.invalidation.getCode()));
+                    invalidatedPageTagCount.incrementAndGet();
+                }
+            }
+        }
+        if (urlSegmentService != null) {
+            for (ResolvedInvalidation resolvedInvalidation : all) {
+                urlSegmentService.evict(resolvedInvalidation.invalidation.getEntityType(), resolvedInvalidation.invalidation.getId());
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Cache entries evicted for " + invalidations + ": " + count);
+        }
+        return count;
+    }
+
+    /**
+     * The keys of the entity, with the id as first part.
+     */
+    protected int evictEntities(final Cache cache, final List<ResolvedInvalidation> invalidations) {
+        if (cache == null) {
+            return 0;
+        }
+        int count = 0;
+        for (Object key : cache.getKeys()) {
+            if (key instanceof CacheKey) {
+                CacheKey cacheKey = (CacheKey) key;
+                for (ResolvedInvalidation invalidation : invalidations) {
+                    if (invalidation.isKeyOfId(cacheKey)) {
+                        if (cache.remove(key)) {
+                            count++;
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The links id to code of the entity, and the keys by code which point to
+     * the entity : by its current code or by a previous one.
+     */
+    protected int evictLinks(final Cache cache, final List<ResolvedInvalidation> invalidations) {
+        if (cache == null) {
+            return 0;
+        }
+        int count = 0;
+        for (Object key : cache.getKeys()) {
+            if (key instanceof CacheKey) {
+                CacheKey cacheKey = (CacheKey) key;
+                for (ResolvedInvalidation invalidation : invalidations) {
+                    if (invalidation.isKeyOfId(cacheKey) || invalidation.isKeyOfCode(cacheKey) || invalidation.isLinkToId(cacheKey, cache.getQuiet(key))) {
+                        if (cache.remove(key)) {
+                            count++;
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The results which contain the entity, and the keys which have its code.
+     */
+    protected int evictMisc(final Cache cache, final List<ResolvedInvalidation> invalidations) {
+        if (cache == null) {
+            return 0;
+        }
+        int count = 0;
+        for (Object key : cache.getKeys()) {
+            Element element = null;
+            boolean evict = false;
+            for (ResolvedInvalidation invalidation : invalidations) {
+                if (key instanceof CacheKey && invalidation.hasCode((CacheKey) key)) {
+                    evict = true;
+                    break;
+                }
+                if (element == null) {
+                    element = cache.getQuiet(key);
+                    if (element == null) {
+                        break;
+                    }
+                }
+                if (invalidation.isHeldBy(element.getObjectValue())) {
+                    evict = true;
+                    break;
+                }
+            }
+            if (evict && cache.remove(key)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    protected Class<?> getEntityClass(final String entityType) {
+        if (StringUtils.isEmpty(entityType)) {
+            return null;
+        }
+        Class<?> entityClass = entityClasses.get(entityType);
+        if (entityClass == null) {
+            try {
+                entityClass = Class.forName(CacheInvalidation.DOMAIN_PACKAGE + entityType);
+                entityClasses.putIfAbsent(entityType, entityClass);
+            } catch (ClassNotFoundException e) {
+                logger.warn("Unknown entity type for a cache invalidation: " + entityType);
+                return null;
+            }
+        }
+        return entityClass;
+    }
+
+    protected Cache getCache(final String cacheName) {
+        return cacheManagementAspect.getCache(cacheName);
+    }
+
+    @ManagedAttribute
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    @ManagedAttribute
+    public long getEvictedEntityCount() {
+        return evictedEntityCount.get();
+    }
+
+    @ManagedAttribute
+    public long getEvictedLinkCount() {
+        return evictedLinkCount.get();
+    }
+
+    @ManagedAttribute
+    public long getEvictedMiscCount() {
+        return evictedMiscCount.get();
+    }
+
+    @ManagedAttribute
+    public long getInvalidatedPageTagCount() {
+        return invalidatedPageTagCount.get();
+    }
+
+    /**
+     * An invalidation with the domain class of its entity.
+     */
+    protected class ResolvedInvalidation {
+
+        private final Class<?> entityClass;
+        private final String keyPrefix;
+        private final CacheInvalidation invalidation;
+
+        protected ResolvedInvalidation(Class<?> entityClass, CacheInvalidation invalidation) {
+            this.entityClass = entityClass;
+            this.keyPrefix = entityClass.getName();
+            this.invalidation = invalidation;
+        }
+
+        protected boolean isKeyOfId(final CacheKey key) {
+            return invalidation.getId() != null && keyPrefix.equals(key.getPrefix()) && key.getParts().length > 0
+                    && invalidation.getId().equals(key.getParts()[0]);
+        }
+
+        protected boolean isKeyOfCode(final CacheKey key) {
+            return invalidation.getCode() != null && keyPrefix.equals(key.getPrefix()) && key.getParts().length > 0
+                    && invalidation.getCode().equals(key.getParts()[0]);
+        }
+
+        protected boolean isLinkToId(final CacheKey key, final Element element) {
+            return invalidation.getId() != null && element != null && keyPrefix.equals(key.getPrefix())
+                    && invalidation.getId().equals(element.getObjectValue());
+        }
+
+        protected boolean hasCode(final CacheKey key) {
+            if (invalidation.getCode() == null) {
+                return false;
+            }
+            for (Object part : key.getParts()) {
+                if (invalidation.getCode().equals(part)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        protected boolean isHeldBy(final Object value) {
+            if (value instanceof EntityCacheEntry) {
+                return isEntity(((EntityCacheEntry) value).getEntity());
+            } else if (value instanceof Collection) {
+                for (Object item : (Collection<?>) value) {
+                    if (isEntity(item)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return isEntity(value);
+        }
+
+        protected boolean isEntity(final Object value) {
+            if (invalidation.getId() == null || !entityClass.isInstance(value)) {
+                return false;
+            }
+            try {
+                return invalidation.getId().equals(cacheKeyEngine.getEntityId(value));
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.aop.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hoteia.qalingo.core.fetchplan.FetchPlan;
+import org.hoteia.qalingo.core.fetchplan.SpecificFetchMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.BeansException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Merges the associations already loaded on a cached entity graph with an
+ * entity freshly loaded with the missing associations only.
+ *
+ * The cached instance is shared by all the threads, so it is never modified:
+ * the loaded associations are copied on the fresh instance which replaces the
+ * cached one. The fresh instance is detached first, as a cached one, and it
+ * gets copies of the cached collections : a Hibernate collection can't be
+ * bound to the session of the fresh instance while it belongs to the session
+ * which loaded it.
+ */
+@Component(value = "entityGraphMerger")
+public class EntityGraphMerger {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @PersistenceContext
+    protected EntityManager em;
+
+    public EntityCacheEntry merge(final EntityCacheEntry cachedEntry, final Object freshEntity, final List<SpecificFetchMode> missingFetchModes) {
+        final Set<String> freshProperties = new HashSet<String>();
+        for (SpecificFetchMode specificFetchMode : missingFetchModes) {
+            freshProperties.add(getRootProperty(specificFetchMode.getAssocationPath()));
+        }
+
+        // THE MERGED ENTITY IS SHARED BY THE CACHE : IT IS NOT FLUSHED WITH THE PERSISTENCE CONTEXT OF THIS CALLER
+        if (em != null && em.contains(freshEntity)) {
+            em.detach(freshEntity);
+        }
+
+        final List<SpecificFetchMode> mergedFetchModes = new ArrayList<SpecificFetchMode>(missingFetchModes);
+        final BeanWrapper cachedWrapper = new BeanWrapperImpl(cachedEntry.getEntity());
+        final BeanWrapper freshWrapper = new BeanWrapperImpl(freshEntity);
+        for (SpecificFetchMode specificFetchMode : cachedEntry.getLoadedFetchModes()) {
+            String property = getRootProperty(specificFetchMode.getAssocationPath());
+            if (!freshProperties.contains(property)) {
+                try {
+                    freshWrapper.setPropertyValue(property, copyAssociation(cachedWrapper.getPropertyValue(property)));
+                } catch (BeansException e) {
+                    // THIS ASSOCIATION CAN'T BE COPIED : IT IS NOT LOADED ON THE MERGED GRAPH
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Can't merge the association '" + property + "' of " + freshEntity.getClass().getName(), e);
+                    }
+                    continue;
+                }
+            }
+            if (!mergedFetchModes.contains(specificFetchMode)) {
+                mergedFetchModes.add(specificFetchMode);
+            }
+        }
+        EntityCacheEntry.setFetchPlan(freshEntity, new FetchPlan(mergedFetchModes));
+        return new EntityCacheEntry(freshEntity);
+    }
+
+    /**
+     * @return a new collection with the elements of a cached collection, or the cached entity.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected Object copyAssociation(final Object value) {
+        if (value instanceof SortedSet) {
+            Set copy = new TreeSet(((SortedSet) value).comparator());
+            copy.addAll((SortedSet) value);
+            return copy;
+        } else if (value instanceof Set) {
+            return new LinkedHashSet((Set) value);
+        } else if (value instanceof Collection) {
+            return new ArrayList((Collection) value);
+        } else if (value instanceof SortedMap) {
+            Map copy = new TreeMap(((SortedMap) value).comparator());
+            copy.putAll((SortedMap) value);
+            return copy;
+        } else if (value instanceof Map) {
+            return new LinkedHashMap((Map) value);
+        }
+        return value;
+    }
+
+    protected String getRootProperty(final String assocationPath) {
+        int index = assocationPath.indexOf('.');
+        if (index > 0) {
+            return assocationPath.substring(0, index);
+        }
+        return assocationPath;
+    }
+
+}
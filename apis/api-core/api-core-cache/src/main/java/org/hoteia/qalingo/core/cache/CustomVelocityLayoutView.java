@@ -14,19 +14,15 @@ import java.io.StringWriter;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.CacheManager;
-import net.sf.ehcache.Element;
-
 import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.velocity.Template;
 import org.apache.velocity.context.Context;
 import org.apache.velocity.exception.MethodInvocationException;
 import org.apache.velocity.tools.view.context.ChainedContext;
+import org.hoteia.qalingo.core.web.cache.page.HtmlPageCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.cache.ehcache.EhCacheCacheManager;
 import org.springframework.web.servlet.view.velocity.VelocityLayoutView;
 import org.springframework.web.util.NestedServletException;
 
@@ -41,10 +37,7 @@ public class CustomVelocityLayoutView extends VelocityLayoutView {
     @Override
     protected void mergeTemplate(Template template, Context context, HttpServletResponse response) throws Exception {
         try {
-            EhCacheCacheManager ehCacheCacheManager = (EhCacheCacheManager) getAttributesMap().get("ehCacheCacheManager");
-            CacheManager cacheManager = ehCacheCacheManager.getCacheManager();
-            String cacheName = (String) getAttributesMap().get("cacheName");
-            Cache cache = cacheManager != null && StringUtils.isNotEmpty(cacheName) ? cacheManager.getCache(cacheName) : null;
+            HtmlPageCache htmlPageCache = (HtmlPageCache) getAttributesMap().get("htmlPageCache");
 
             HttpServletRequest request = ((ChainedContext) context).getRequest();
             boolean isGet = StringUtils.equals("GET", request.getMethod());
@@ -58,15 +51,30 @@ public class CustomVelocityLayoutView extends VelocityLayoutView {
             }
             boolean cacheable = useCache != null ? useCache : !isAjax(request) && isGet;
 
-            if (!cacheable || cache == null) {
+            if (!cacheable || htmlPageCache == null) {
                 template.merge(context, response.getWriter());
             } else {
+                String key = (String) request.getAttribute(HtmlPageCache.PAGE_KEY_ATTRIBUTE);
+                if (key == null) {
+                    // NO CACHE INTERCEPTOR : THE RENDER STARTS AFTER THE CONTROLLER
+                    htmlPageCache.startRender(request);
+                    key = htmlPageCache.buildKey(request);
+                    htmlPageCache.tryLockRender(request, key);
+                }
                 StringWriter outputWriter = new StringWriter();
                 template.merge(context, outputWriter);
                 outputWriter.close();
                 String output = outputWriter.toString();
 
-                cache.put(new Element(getRequestKey(request), output));
+                // ONLY THE REQUEST WHICH HOLDS THE RENDER LOCK STORES THE PAGE
+                if (request.getAttribute(HtmlPageCache.RENDER_LOCK_ATTRIBUTE) != null) {
+                    String characterEncoding = response.getCharacterEncoding();
+                    try {
+                        htmlPageCache.put(request, key, output.getBytes(characterEncoding), response.getContentType(), characterEncoding);
+                    } finally {
+                        htmlPageCache.unlockRender(request);
+                    }
+                }
 
                 response.getWriter().write(output);
             }
@@ -79,10 +87,6 @@ public class CustomVelocityLayoutView extends VelocityLayoutView {
         }
     }
     
-    public static final int getRequestKey(HttpServletRequest request) {
-        return (request.getRequestURL().toString() + request.getQueryString()).hashCode();
-    }
-
     private static boolean isAjax(HttpServletRequest request) {
         return StringUtils.equals("XMLHttpRequest", request.getHeader("X-Requested-With"));
     }
@@ -0,0 +1,469 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.web.cache.page;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+import org.apache.commons.lang.StringUtils;
+import org.hoteia.qalingo.core.Constants;
+import org.hoteia.qalingo.core.domain.AbstractEngineSession;
+import org.hoteia.qalingo.core.domain.EngineBoSession;
+import org.hoteia.qalingo.core.domain.EngineEcoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.ehcache.EhCacheCacheManager;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * HTML page cache, on top of the web html ehcache (off-heap with the BigMemory
+ * configuration).
+ *
+ * The key is the full url with the market context of the session, not a hash.
+ * An entry is fresh for the fresh seconds, then stale until the ehcache
+ * expiry : a stale page is served while one request only renders it again.
+ * The pages are tagged with the codes of their url, and the controllers can
+ * add tags, to invalidate the pages of a product or a CMS content : the time
+ * of the last invalidation of a tag is kept, and a page created before it is
+ * a miss. There is no index of the keys by tag, which the ehcache expiry and
+ * eviction would leave behind.
+ *
+ * The created time of a page is the start of its request, recorded by the
+ * cache interceptor before the controller reads the data : a page rendered
+ * while one of its tags is invalidated may hold the previous data, and is a
+ * miss too.
+ */
+@Component("htmlPageCache")
+@ManagedResource
+public class HtmlPageCache {
+
+    public static final String PAGE_TAGS_ATTRIBUTE = HtmlPageCache.class.getName() + ".TAGS";
+    public static final String PAGE_KEY_ATTRIBUTE = HtmlPageCache.class.getName() + ".KEY";
+    public static final String RENDER_LOCK_ATTRIBUTE = HtmlPageCache.class.getName() + ".RENDER_LOCK";
+    public static final String RENDER_START_ATTRIBUTE = HtmlPageCache.class.getName() + ".RENDER_START";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private EhCacheCacheManager ehCacheCacheManager;
+
+    @Value("${cache.web.html.name}")
+    private String cacheName;
+
+    @Value("${cache.web.html.fresh.seconds:600}")
+    private int freshSeconds = 600;
+
+    @Value("${cache.web.html.render.timeout.seconds:30}")
+    private int renderTimeoutSeconds = 30;
+
+    @Value("${cache.web.html.gzip:true}")
+    private boolean gzip = true;
+
+    // A NEW GENERATION MAKES ALL THE PREVIOUS KEYS UNREACHABLE
+    private final AtomicLong generation = new AtomicLong();
+
+    private final ConcurrentMap<String, Long> renderLocks = new ConcurrentHashMap<String, Long>();
+
+    // THE LAST INVALIDATION TIME BY TAG, KEPT UNTIL THE PAGES CREATED BEFORE IT ARE EXPIRED
+    private final ConcurrentMap<String, Long> tagInvalidations = new ConcurrentHashMap<String, Long>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong renders = new AtomicLong();
+
+    public String buildKey(final HttpServletRequest request) {
+        StringBuilder key = new StringBuilder(128);
+        key.append(generation.get()).append('|');
+        key.append(request.getScheme()).append("://").append(request.getServerName()).append(':').append(request.getServerPort());
+        key.append(request.getRequestURI());
+        if (StringUtils.isNotEmpty(request.getQueryString())) {
+            key.append('?').append(request.getQueryString());
+        }
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            Object engineSession = session.getAttribute(Constants.ENGINE_ECO_SESSION_OBJECT);
+            if (engineSession == null) {
+                engineSession = session.getAttribute(Constants.ENGINE_BO_SESSION_OBJECT);
+            }
+            if (engineSession instanceof AbstractEngineSession) {
+                AbstractEngineSession abstractEngineSession = (AbstractEngineSession) engineSession;
+                key.append('|');
+                if (abstractEngineSession.getCurrentMarketArea() != null) {
+                    key.append(abstractEngineSession.getCurrentMarketArea().getCode());
+                }
+                key.append('|');
+                if (abstractEngineSession.getCurrentMarketAreaLocalization() != null) {
+                    key.append(abstractEngineSession.getCurrentMarketAreaLocalization().getCode());
+                }
+                key.append('|');
+                if (abstractEngineSession.getCurrentMarketAreaRetailer() != null) {
+                    key.append(abstractEngineSession.getCurrentMarketAreaRetailer().getCode());
+                }
+                key.append('|');
+                if (abstractEngineSession.getCurrentMarketAreaCurrency() != null) {
+                    key.append(abstractEngineSession.getCurrentMarketAreaCurrency().getCode());
+                }
+            }
+            if (engineSession instanceof EngineEcoSession) {
+                EngineEcoSession engineEcoSession = (EngineEcoSession) engineSession;
+                key.append('|').append(engineEcoSession.getTheme()).append('|').append(engineEcoSession.getDevice());
+            } else if (engineSession instanceof EngineBoSession) {
+                EngineBoSession engineBoSession = (EngineBoSession) engineSession;
+                key.append('|').append(engineBoSession.getTheme()).append('|').append(engineBoSession.getDevice());
+            }
+        }
+        return key.toString();
+    }
+
+    public HtmlPageCacheEntry get(final String key) {
+        Ehcache cache = getCache();
+        if (cache == null) {
+            return null;
+        }
+        Element element = cache.get(key);
+        if (element == null || element.isExpired() || !(element.getObjectValue() instanceof HtmlPageCacheEntry)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        HtmlPageCacheEntry entry = (HtmlPageCacheEntry) element.getObjectValue();
+        if (isInvalidated(entry)) {
+            cache.remove(key);
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.isFresh(System.currentTimeMillis())) {
+            hits.incrementAndGet();
+        } else {
+            staleHits.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Only one request renders a page at a time : the others serve the stale
+     * page. A lock older than the render timeout is taken over, in case its
+     * request never released it.
+     */
+    public boolean tryLockRender(final HttpServletRequest request, final String key) {
+        long now = System.currentTimeMillis();
+        Long lockTime = renderLocks.putIfAbsent(key, now);
+        if (lockTime != null) {
+            if (now - lockTime < renderTimeoutSeconds * 1000L || !renderLocks.replace(key, lockTime, now)) {
+                return false;
+            }
+        }
+        request.setAttribute(RENDER_LOCK_ATTRIBUTE, key);
+        return true;
+    }
+
+    /**
+     * Records the start of the render of the page, once by request : the
+     * page is created at this time, before the controller reads the data.
+     */
+    public void startRender(final HttpServletRequest request) {
+        if (request.getAttribute(RENDER_START_ATTRIBUTE) == null) {
+            request.setAttribute(RENDER_START_ATTRIBUTE, Long.valueOf(System.currentTimeMillis()));
+        }
+    }
+
+    protected long getRenderStart(final HttpServletRequest request, final long now) {
+        Object renderStart = request.getAttribute(RENDER_START_ATTRIBUTE);
+        return renderStart instanceof Long ? (Long) renderStart : now;
+    }
+
+    public void unlockRender(final HttpServletRequest request) {
+        Object key = request.getAttribute(RENDER_LOCK_ATTRIBUTE);
+        if (key != null) {
+            renderLocks.remove(key);
+            request.removeAttribute(RENDER_LOCK_ATTRIBUTE);
+        }
+    }
+
+    public void put(final HttpServletRequest request, final String key, final byte[] content, final String contentType, final String characterEncoding) {
+        Ehcache cache = getCache();
+        if (cache == null) {
+            return;
+        }
+        Set<String> tags = buildTags(request);
+        byte[] storedContent = content;
+        boolean gzipped = false;
+        if (gzip) {
+            try {
+                storedContent = compress(content);
+                gzipped = true;
+            } catch (IOException e) {
+                logger.warn("Fail to gzip the page: " + key, e);
+            }
+        }
+        long now = System.currentTimeMillis();
+        HtmlPageCacheEntry entry = new HtmlPageCacheEntry(storedContent, gzipped, contentType, characterEncoding, tags.toArray(new String[tags.size()]),
+                getRenderStart(request, now), now + freshSeconds * 1000L);
+        renders.incrementAndGet();
+        if (isInvalidated(entry)) {
+            // A TAG WAS INVALIDATED DURING THE RENDER : THE PAGE MAY HOLD THE PREVIOUS DATA
+            if (logger.isDebugEnabled()) {
+                logger.debug("Html page invalidated during its render, not cached: " + key);
+            }
+            return;
+        }
+        cache.put(new Element(key, entry));
+    }
+
+    public void write(final HtmlPageCacheEntry entry, final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        if (entry.getContentType() != null) {
+            response.setContentType(entry.getContentType());
+        }
+        if (entry.getCharacterEncoding() != null) {
+            response.setCharacterEncoding(entry.getCharacterEncoding());
+        }
+        byte[] content = entry.getContent();
+        if (entry.isGzipped()) {
+            response.addHeader("Vary", "Accept-Encoding");
+            String acceptEncoding = request.getHeader("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                response.setHeader("Content-Encoding", "gzip");
+            } else {
+                content = decompress(content);
+            }
+        }
+        response.setContentLength(content.length);
+        OutputStream outputStream = response.getOutputStream();
+        outputStream.write(content);
+        outputStream.flush();
+    }
+
+    /**
+     * The codes of the url template, as "productMarketingCode:XYZ", and the
+     * tags added by the controller in the PAGE_TAGS_ATTRIBUTE request
+     * attribute.
+     */
+    @SuppressWarnings("unchecked")
+    protected Set<String> buildTags(final HttpServletRequest request) {
+        Set<String> tags = new HashSet<String>();
+        Object uriTemplateVariables = request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (uriTemplateVariables instanceof Map) {
+            for (Map.Entry<String, String> uriTemplateVariable : ((Map<String, String>) uriTemplateVariables).entrySet()) {
+                if (StringUtils.isNotEmpty(uriTemplateVariable.getValue())) {
+                    tags.add(buildTag(uriTemplateVariable.getKey(), uriTemplateVariable.getValue()));
+                }
+            }
+        }
+        Object pageTags = request.getAttribute(PAGE_TAGS_ATTRIBUTE);
+        if (pageTags instanceof Set) {
+            tags.addAll((Set<String>) pageTags);
+        }
+        return tags;
+    }
+
+    public static String buildTag(final String name, final String code) {
+        return name + ":" + code;
+    }
+
+    /**
+     * Tags the current page, on top of the codes of its url.
+     */
+    @SuppressWarnings("unchecked")
+    public static void addTag(final HttpServletRequest request, final String tag) {
+        Set<String> pageTags = (Set<String>) request.getAttribute(PAGE_TAGS_ATTRIBUTE);
+        if (pageTags == null) {
+            pageTags = new HashSet<String>();
+            request.setAttribute(PAGE_TAGS_ATTRIBUTE, pageTags);
+        }
+        pageTags.add(tag);
+    }
+
+    /**
+     * A page whose render started before the invalidation of one of its tags,
+     * or in the same millisecond, is invalidated : it may have read the data
+     * before their update.
+     */
+    protected boolean isInvalidated(final HtmlPageCacheEntry entry) {
+        String[] tags = entry.getTags();
+        if (tags == null || tagInvalidations.isEmpty()) {
+            return false;
+        }
+        for (String tag : tags) {
+            Long invalidationTime = tagInvalidations.get(tag);
+            if (invalidationTime != null && entry.getCreatedTime() <= invalidationTime) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Invalidates the pages with this tag, e.g. "productMarketingCode:XYZ" :
+     * they are removed on their next read.
+     */
+    @ManagedOperation
+    public void invalidateTag(final String tag) {
+        long now = System.currentTimeMillis();
+        tagInvalidations.put(tag, now);
+        pruneTagInvalidations(now);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Html pages invalidated for the tag " + tag);
+        }
+    }
+
+    /**
+     * Forgets the invalidations older than the time to live of the cache : the
+     * pages created before them are expired. Kept when the pages never expire.
+     */
+    protected void pruneTagInvalidations(final long now) {
+        Ehcache cache = getCache();
+        long timeToLiveSeconds = cache != null ? cache.getCacheConfiguration().getTimeToLiveSeconds() : 0;
+        if (timeToLiveSeconds <= 0) {
+            return;
+        }
+        long expiredBefore = now - timeToLiveSeconds * 1000L;
+        for (Iterator<Long> it = tagInvalidations.values().iterator(); it.hasNext();) {
+            if (it.next() < expiredBefore) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Makes all the pages unreachable at once, the ehcache expiry evicts them.
+     */
+    @ManagedOperation
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        tagInvalidations.clear();
+        Ehcache cache = getCache();
+        if (cache != null) {
+            cache.removeAll();
+        }
+    }
+
+    protected Ehcache getCache() {
+        CacheManager cacheManager = ehCacheCacheManager != null ? ehCacheCacheManager.getCacheManager() : null;
+        return cacheManager != null && StringUtils.isNotEmpty(cacheName) ? cacheManager.getEhcache(cacheName) : null;
+    }
+
+    protected static byte[] compress(final byte[] content) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(content.length / 4 + 64);
+        GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
+        try {
+            gzipOutputStream.write(content);
+        } finally {
+            gzipOutputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+
+    protected static byte[] decompress(final byte[] content) throws IOException {
+        InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(content));
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(content.length * 4);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @ManagedAttribute
+    public int getFreshSeconds() {
+        return freshSeconds;
+    }
+
+    @ManagedAttribute
+    public void setFreshSeconds(int freshSeconds) {
+        this.freshSeconds = freshSeconds;
+    }
+
+    @ManagedAttribute
+    public int getRenderTimeoutSeconds() {
+        return renderTimeoutSeconds;
+    }
+
+    @ManagedAttribute
+    public void setRenderTimeoutSeconds(int renderTimeoutSeconds) {
+        this.renderTimeoutSeconds = renderTimeoutSeconds;
+    }
+
+    @ManagedAttribute
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    @ManagedAttribute
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    @ManagedAttribute
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    @ManagedAttribute
+    public int getTagInvalidationCount() {
+        return tagInvalidations.size();
+    }
+
+    @ManagedAttribute
+    public int getRenderingCount() {
+        return renderLocks.size();
+    }
+
+    @ManagedAttribute
+    public long getHits() {
+        return hits.get();
+    }
+
+    @ManagedAttribute
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    @ManagedAttribute
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @ManagedAttribute
+    public long getRenders() {
+        return renders.get();
+    }
+
+}
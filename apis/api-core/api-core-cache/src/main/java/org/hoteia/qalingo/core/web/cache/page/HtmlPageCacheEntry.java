@@ -0,0 +1,78 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.web.cache.page;
+
+import java.io.Serializable;
+
+/**
+ * Rendered page, encoded and optionally gzipped : a byte[] which the off-heap
+ * store keeps as is, instead of an UTF-16 String on the heap.
+ */
+public class HtmlPageCacheEntry implements Serializable {
+
+    /**
+     * Generated UID
+     */
+    private static final long serialVersionUID = 2871262094533140155L;
+
+    private final byte[] content;
+    private final boolean gzipped;
+    private final String contentType;
+    private final String characterEncoding;
+    private final String[] tags;
+    private final long createdTime;
+    private final long freshUntil;
+
+    public HtmlPageCacheEntry(byte[] content, boolean gzipped, String contentType, String characterEncoding, String[] tags, long createdTime, long freshUntil) {
+        this.content = content;
+        this.gzipped = gzipped;
+        this.contentType = contentType;
+        this.characterEncoding = characterEncoding;
+        this.tags = tags;
+        this.createdTime = createdTime;
+        this.freshUntil = freshUntil;
+    }
+
+    /**
+     * @return false when the page should be rendered again : it is still served until then.
+     */
+    public boolean isFresh(long now) {
+        return now < freshUntil;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public boolean isGzipped() {
+        return gzipped;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getCharacterEncoding() {
+        return characterEncoding;
+    }
+
+    public String[] getTags() {
+        return tags;
+    }
+
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+    public long getFreshUntil() {
+        return freshUntil;
+    }
+
+}
@@ -14,43 +14,38 @@ import java.io.IOException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.CacheManager;
-import net.sf.ehcache.Element;
-
-import org.apache.commons.lang.StringUtils;
-import org.hoteia.qalingo.core.cache.CustomVelocityLayoutView;
+import org.hoteia.qalingo.core.web.cache.page.HtmlPageCache;
+import org.hoteia.qalingo.core.web.cache.page.HtmlPageCacheEntry;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.ehcache.EhCacheCacheManager;
 import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.ModelAndView;
 
 /**
- * 
- * 
+ * Serves the cached pages : a fresh page is served, a stale page is served
+ * unless this request is the one which renders it again. The render start is
+ * recorded before the controller, for the tag invalidations during the render.
  */
 public class CacheInterceptor implements HandlerInterceptor {
     
     @Autowired
-    private EhCacheCacheManager ehCacheCacheManager;
-
-    @Value("${cache.web.html.name}")
-    private String cacheName;
+    private HtmlPageCache htmlPageCache;
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
-        Cache cache = getCacheManager() != null && StringUtils.isNotEmpty(cacheName) ? getCacheManager().getCache(cacheName) : null;
         boolean isGet = "GET".equals(request.getMethod());
         boolean isHttp = "http".equals(request.getScheme().toLowerCase());
-        if (cache != null && isHttp && isGet) {
-            int key = CustomVelocityLayoutView.getRequestKey(request);
-            if (cache.isKeyInCache(key)) {
-                Element element = cache.get(key);
-                if (element != null && !element.isExpired()) {
-                    response.getWriter().write((String) element.getObjectValue());
-                    return false;
-                }
+        if (isHttp && isGet) {
+            htmlPageCache.startRender(request);
+            String key = htmlPageCache.buildKey(request);
+            request.setAttribute(HtmlPageCache.PAGE_KEY_ATTRIBUTE, key);
+            HtmlPageCacheEntry entry = htmlPageCache.get(key);
+            if (entry != null && (entry.isFresh(System.currentTimeMillis()) || !htmlPageCache.tryLockRender(request, key))) {
+                htmlPageCache.write(entry, request, response);
+                return false;
+            }
+            if (entry == null) {
+                // THE FIRST REQUEST CACHES THE PAGE, THE OTHERS ONLY RENDER IT
+                htmlPageCache.tryLockRender(request, key);
             }
         }
         return true;
@@ -59,6 +54,7 @@ public class CacheInterceptor implements HandlerInterceptor {
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, 
                                 Object handler, Exception exception) throws Exception {
+        htmlPageCache.unlockRender(request);
     }
 
     @Override
@@ -66,8 +62,4 @@ public class CacheInterceptor implements HandlerInterceptor {
                            Object handler, ModelAndView modelAndView) throws Exception {
     }
     
-    public CacheManager getCacheManager() {
-        return ehCacheCacheManager.getCacheManager();
-    }
-    
 }
\ No newline at end of file
@@ -0,0 +1,166 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.aop.cache;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.hoteia.qalingo.core.domain.CurrencyReferential;
+import org.hoteia.qalingo.core.domain.Localization;
+import org.hoteia.qalingo.core.domain.Market;
+import org.hoteia.qalingo.core.domain.MarketArea;
+import org.hoteia.qalingo.core.domain.MarketPlace;
+import org.hoteia.qalingo.core.domain.ProductMarketing;
+import org.hoteia.qalingo.core.domain.Retailer;
+import org.hoteia.qalingo.core.pojo.RequestData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the keys built by the {@link CacheKeyEngine} with the String
+ * concatenation keys previously built by the {@link CacheManagementAspect}.
+ *
+ * Run it with the main method (test classpath) : it is not a unit test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CacheKeyBenchmark {
+
+    private CacheKeyEngine cacheKeyEngine;
+
+    private Method getByIdMethod;
+    private Method findMethod;
+
+    private Object[] getByIdArgs;
+    private Object[] findArgs;
+
+    @Setup
+    public void setup() throws Exception {
+        cacheKeyEngine = new CacheKeyEngine();
+        getByIdMethod = FakeService.class.getMethod("getProductMarketingById", Long.class, Object[].class);
+        findMethod = FakeService.class.getMethod("getProductMarketingsByBrand", RequestData.class, ProductMarketing.class, Object[].class);
+
+        MarketPlace marketPlace = new MarketPlace();
+        marketPlace.setCode("MARKET_PLACE");
+        Market market = new Market();
+        market.setCode("MARKET");
+        MarketArea marketArea = new MarketArea();
+        marketArea.setCode("MARKET_AREA");
+        Localization localization = new Localization();
+        localization.setCode("en");
+        Retailer retailer = new Retailer();
+        retailer.setCode("RETAILER");
+        CurrencyReferential currency = new CurrencyReferential();
+        currency.setCode("EUR");
+        RequestData requestData = new RequestData(marketPlace, market, marketArea, localization, retailer);
+        requestData.setMarketAreaCurrency(currency);
+
+        ProductMarketing productMarketing = new ProductMarketing();
+        productMarketing.setId(42L);
+
+        getByIdArgs = new Object[] { Long.valueOf(42L), new Object[0] };
+        findArgs = new Object[] { requestData, productMarketing, new Object[0] };
+    }
+
+    @Benchmark
+    public Object engineGetById() throws Exception {
+        return cacheKeyEngine.buildKey(cacheKeyEngine.getDefinition(getByIdMethod), getByIdArgs);
+    }
+
+    @Benchmark
+    public Object engineFindWithRequestData() throws Exception {
+        return cacheKeyEngine.buildKey(cacheKeyEngine.getDefinition(findMethod), findArgs);
+    }
+
+    @Benchmark
+    public Object legacyGetById() throws Exception {
+        return legacyKey(getByIdMethod, getByIdArgs);
+    }
+
+    @Benchmark
+    public Object legacyFindWithRequestData() throws Exception {
+        return legacyKey(findMethod, findArgs);
+    }
+
+    /**
+     * Key building as it was done in the aspect before the key engine.
+     */
+    protected String legacyKey(Method method, Object[] args) throws Exception {
+        Class<?> classTarget = method.getReturnType();
+        String shortString = method.getDeclaringClass().getSimpleName() + "." + method.getName() + "(..)";
+        String suffix = "";
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg instanceof RequestData) {
+                RequestData requestData = (RequestData) arg;
+                if (!suffix.endsWith("_")) {
+                    suffix = suffix + "_";
+                }
+                suffix = suffix + requestData.getMarketPlace().getCode() + "_" + requestData.getMarket().getCode() + "_" + requestData.getMarketArea().getCode() + "_"
+                        + requestData.getMarketAreaLocalization().getCode() + "_" + requestData.getMarketAreaRetailer().getCode() + "_"
+                        + requestData.getMarketAreaCurrency().getCode();
+            } else if (arg instanceof ProductMarketing) {
+                if (!suffix.endsWith("_")) {
+                    suffix = suffix + "_";
+                }
+                Method[] methods = arg.getClass().getMethods();
+                for (int j = 0; j < methods.length; j++) {
+                    if (methods[j].getName().equals("getId")) {
+                        suffix = suffix + methods[j].invoke(arg);
+                    }
+                }
+            } else if (arg != null && !(arg instanceof Object[])) {
+                if (!suffix.endsWith("_")) {
+                    suffix = suffix + "_";
+                }
+                suffix = suffix + arg.toString();
+            }
+        }
+        String cacheName = CacheManagementAspect.DEFAULT_CACHE_NAME;
+        Field[] fields = classTarget.getFields();
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].getName().equals(CacheManagementAspect.CACHE_NAME)) {
+                cacheName = (String) fields[i].get(CacheManagementAspect.CACHE_NAME);
+            }
+        }
+        if (shortString.contains("ById")) {
+            return cacheName + classTarget.getName() + suffix;
+        }
+        return cacheName + shortString + suffix;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(CacheKeyBenchmark.class.getSimpleName()).forks(1).warmupIterations(5).measurementIterations(5).build();
+        new Runner(options).run();
+    }
+
+    public static class FakeService {
+
+        public ProductMarketing getProductMarketingById(Long productMarketingId, Object... params) {
+            return null;
+        }
+
+        public ProductMarketing getProductMarketingsByBrand(RequestData requestData, ProductMarketing productMarketing, Object... params) {
+            return null;
+        }
+    }
+
+}
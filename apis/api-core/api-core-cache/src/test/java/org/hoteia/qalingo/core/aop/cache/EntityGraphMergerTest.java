@@ -0,0 +1,229 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.aop.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.Table;
+
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.ejb.Ejb3Configuration;
+import org.hoteia.qalingo.core.domain.AbstractEntity;
+import org.hoteia.qalingo.core.fetchplan.FetchPlan;
+import org.hoteia.qalingo.core.fetchplan.SpecificFetchMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A graph merged with a cached graph is saved by a request while the request
+ * which loaded the cached graph is still open.
+ */
+public class EntityGraphMergerTest {
+
+    private EntityManagerFactory entityManagerFactory;
+
+    private Long productId;
+
+    @Before
+    public void setup() {
+        Ejb3Configuration configuration = new Ejb3Configuration();
+        configuration.addAnnotatedClass(TestProduct.class);
+        configuration.addAnnotatedClass(TestSku.class);
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        configuration.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        configuration.setProperty("hibernate.connection.url", "jdbc:h2:mem:entityGraphMerger;DB_CLOSE_DELAY=-1");
+        configuration.setProperty("hibernate.connection.username", "sa");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        entityManagerFactory = configuration.buildEntityManagerFactory();
+
+        EntityManager em = entityManagerFactory.createEntityManager();
+        em.getTransaction().begin();
+        TestProduct product = new TestProduct();
+        product.setCode("PRODUCT");
+        product.getTags().add("NEW");
+        em.persist(product);
+        for (String code : Arrays.asList("SKU1", "SKU2")) {
+            TestSku sku = new TestSku();
+            sku.setCode(code);
+            sku.setProduct(product);
+            em.persist(sku);
+        }
+        em.getTransaction().commit();
+        em.close();
+        productId = product.getId();
+    }
+
+    @After
+    public void tearDown() {
+        entityManagerFactory.close();
+    }
+
+    @Test
+    public void testSaveAfterMergedRead() {
+        // THE CACHED GRAPH IS LOADED BY A REQUEST WHICH IS STILL OPEN
+        EntityManager cachedEm = entityManagerFactory.createEntityManager();
+        try {
+            TestProduct cachedProduct = cachedEm.find(TestProduct.class, productId);
+            assertEquals(2, cachedProduct.getSkus().size());
+            cachedProduct.setFetchPlan(new FetchPlan(Arrays.asList(new SpecificFetchMode("skus"))));
+
+            EntityManager em = entityManagerFactory.createEntityManager();
+            try {
+                em.getTransaction().begin();
+                TestProduct freshProduct = em.find(TestProduct.class, productId);
+                assertEquals(1, freshProduct.getTags().size());
+
+                EntityGraphMerger entityGraphMerger = new EntityGraphMerger();
+                entityGraphMerger.em = em;
+                EntityCacheEntry mergedEntry = entityGraphMerger.merge(new EntityCacheEntry(cachedProduct), freshProduct,
+                        Arrays.asList(new SpecificFetchMode("tags")));
+
+                TestProduct mergedProduct = (TestProduct) mergedEntry.getEntity();
+                assertSame(freshProduct, mergedProduct);
+                assertFalse(em.contains(mergedProduct));
+                assertFalse(mergedProduct.getSkus() instanceof PersistentCollection);
+                assertEquals(2, mergedProduct.getSkus().size());
+                assertEquals(2, mergedEntry.getLoadedFetchModes().size());
+
+                // SAVED AS THE DAOS DO
+                mergedProduct.setCode("PRODUCT_UPDATED");
+                mergedProduct.getTags().add("SALE");
+                em.merge(mergedProduct);
+                em.flush();
+                em.getTransaction().commit();
+            } finally {
+                em.close();
+            }
+        } finally {
+            cachedEm.close();
+        }
+
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            TestProduct savedProduct = em.find(TestProduct.class, productId);
+            assertEquals("PRODUCT_UPDATED", savedProduct.getCode());
+            assertEquals(2, savedProduct.getSkus().size());
+            assertEquals(2, savedProduct.getTags().size());
+        } finally {
+            em.close();
+        }
+    }
+
+    @Entity
+    @Table(name = "TEST_PRODUCT")
+    public static class TestProduct extends AbstractEntity {
+
+        private static final long serialVersionUID = 1L;
+
+        @Id
+        @GeneratedValue
+        private Long id;
+
+        private String code;
+
+        @OneToMany(mappedBy = "product")
+        private Set<TestSku> skus = new HashSet<TestSku>();
+
+        @ElementCollection
+        private Set<String> tags = new HashSet<String>();
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public void setCode(String code) {
+            this.code = code;
+        }
+
+        public Set<TestSku> getSkus() {
+            return skus;
+        }
+
+        public void setSkus(Set<TestSku> skus) {
+            this.skus = skus;
+        }
+
+        public Set<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(Set<String> tags) {
+            this.tags = tags;
+        }
+
+    }
+
+    @Entity
+    @Table(name = "TEST_SKU")
+    public static class TestSku extends AbstractEntity {
+
+        private static final long serialVersionUID = 1L;
+
+        @Id
+        @GeneratedValue
+        private Long id;
+
+        private String code;
+
+        @ManyToOne
+        @JoinColumn(name = "PRODUCT_ID")
+        private TestProduct product;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public void setCode(String code) {
+            this.code = code;
+        }
+
+        public TestProduct getProduct() {
+            return product;
+        }
+
+        public void setProduct(TestProduct product) {
+            this.product = product;
+        }
+
+    }
+
+}
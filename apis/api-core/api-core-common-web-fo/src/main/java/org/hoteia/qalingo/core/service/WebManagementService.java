@@ -136,20 +136,29 @@ public class WebManagementService {
             throw new Exception("");
         }
 
-        final Cart cart = requestData.getCart();
-//        int finalQuantity = quantity;
-//        if(cart != null){
-//            Set<CartItem> cartItems = cart.getCartItems();
-//            for (Iterator<CartItem> iterator = cartItems.iterator(); iterator.hasNext();) {
-//                CartItem cartItem = (CartItem) iterator.next();
-//                if (cartItem.getProductSkuCode().equalsIgnoreCase(productSkuCode)
-//                        && cartItem.getRetailerId().equals(retailer)) {
-//                    finalQuantity = finalQuantity + cartItem.getQuantity();
+        final HttpServletRequest request = requestData.getRequest();
+        // THE WRITE BEHIND SAVES THE CART UNDER THIS LOCK
+        synchronized (requestUtil.getCurrentCartLock(request)) {
+            Cart cart = requestData.getCart();
+            if(cart == null){
+                EngineEcoSession engineEcoSession = requestUtil.getCurrentEcoSession(request);
+                cart = engineEcoSession.addNewCart();
+            }
+//            int finalQuantity = quantity;
+//            if(cart != null){
+//                Set<CartItem> cartItems = cart.getCartItems();
+//                for (Iterator<CartItem> iterator = cartItems.iterator(); iterator.hasNext();) {
+//                    CartItem cartItem = (CartItem) iterator.next();
+//                    if (cartItem.getProductSkuCode().equalsIgnoreCase(productSkuCode)
+//                            && cartItem.getRetailerId().equals(retailer)) {
+//                        finalQuantity = finalQuantity + cartItem.getQuantity();
+//                    }
 //                }
 //            }
-//        }
-        
-        cartService.addProductSkuToCart(cart, retailer, catalogCategoryCode, productSkuCode, quantity);
+            
+            cartService.addProductSkuToCartWithoutSave(cart, retailer, catalogCategoryCode, productSkuCode, quantity);
+            requestUtil.updateCurrentCart(request, cart);
+        }
     }
     
     /**
@@ -176,15 +185,17 @@ public class WebManagementService {
             throw new Exception("");
         }
 
-        Cart cart = requestData.getCart();
-        if(cart == null){
-            EngineEcoSession engineEcoSession = requestUtil.getCurrentEcoSession(request);
-            cart = engineEcoSession.addNewCart();
+        synchronized (requestUtil.getCurrentCartLock(request)) {
+            Cart cart = requestData.getCart();
+            if(cart == null){
+                EngineEcoSession engineEcoSession = requestUtil.getCurrentEcoSession(request);
+                cart = engineEcoSession.addNewCart();
+            }
+            
+            cartService.updateCartItemWithoutSave(cart, retailer, catalogCategoryCode, productSkuCode, quantity);
+            
+            requestUtil.updateCurrentCart(request, cart);
         }
-        
-        cartService.updateCartItem(cart, retailer, catalogCategoryCode, productSkuCode, quantity);
-        
-        requestUtil.updateCurrentCart(request, cart);
     }
     
     /**
@@ -199,13 +210,15 @@ public class WebManagementService {
      */
     public void updateCart(final RequestData requestData, final Customer customer) throws Exception {
         final HttpServletRequest request = requestData.getRequest();
-        Cart cart = requestData.getCart();
-        if(cart != null){
-            cart.setCustomerId(customer.getId());
-            cart.setBillingAddressId(customer.getDefaultBillingAddressId());
-            cart.setShippingAddressId(customer.getDefaultShippingAddressId());
+        synchronized (requestUtil.getCurrentCartLock(request)) {
+            Cart cart = requestData.getCart();
+            if(cart != null){
+                cart.setCustomerId(customer.getId());
+                cart.setBillingAddressId(customer.getDefaultBillingAddressId());
+                cart.setShippingAddressId(customer.getDefaultShippingAddressId());
+            }
+            requestUtil.updateCurrentCart(request, cart);
         }
-        requestUtil.updateCurrentCart(request, cart);
     }
     
     /**
@@ -213,12 +226,14 @@ public class WebManagementService {
      */
     public void updateCart(final RequestData requestData, final Long billingAddressId, final Long shippingAddressId) throws Exception {
         final HttpServletRequest request = requestData.getRequest();
-        Cart cart = requestData.getCart();
-        if(cart != null){
-            cart.setBillingAddressId(billingAddressId);
-            cart.setShippingAddressId(shippingAddressId);
+        synchronized (requestUtil.getCurrentCartLock(request)) {
+            Cart cart = requestData.getCart();
+            if(cart != null){
+                cart.setBillingAddressId(billingAddressId);
+                cart.setShippingAddressId(shippingAddressId);
+            }
+            requestUtil.updateCurrentCart(request, cart);
         }
-        requestUtil.updateCurrentCart(request, cart);
     }
 
     /**
@@ -234,9 +249,11 @@ public class WebManagementService {
      */
     public void deleteCartItem(final RequestData requestData, final Retailer retailer, final String productSkuCode) throws Exception {
         final HttpServletRequest request = requestData.getRequest();
-        Cart cart = requestData.getCart();
-        Cart savedCart = cartService.deleteCartItem(cart, retailer, productSkuCode);
-        requestUtil.updateCurrentCart(request, savedCart);
+        synchronized (requestUtil.getCurrentCartLock(request)) {
+            Cart cart = requestData.getCart();
+            cartService.deleteCartItemWithoutSave(cart, retailer, productSkuCode);
+            requestUtil.updateCurrentCart(request, cart);
+        }
     }
     
     /**
@@ -245,10 +262,12 @@ public class WebManagementService {
     public void setShippingAddress(final RequestData requestData, final String customerShippingAddressId) throws Exception {
         final HttpServletRequest request = requestData.getRequest();
         Customer customer = requestData.getCustomer();
-        Cart cart = requestData.getCart();
         Long customerAddressId = Long.parseLong(customerShippingAddressId);
-        cartService.setShippingAddress(cart, customer, customerAddressId);
-        requestUtil.updateCurrentCart(request, cart);
+        synchronized (requestUtil.getCurrentCartLock(request)) {
+            Cart cart = requestData.getCart();
+            cartService.setShippingAddressWithoutSave(cart, customer, customerAddressId);
+            requestUtil.updateCurrentCart(request, cart);
+        }
     }
     
     /**
@@ -257,10 +276,12 @@ public class WebManagementService {
     public void setBillingAddress(final RequestData requestData, final String customerBillingAddressId) throws Exception {
         final HttpServletRequest request = requestData.getRequest();
         Customer customer = requestData.getCustomer();
-        Cart cart = requestData.getCart();
         Long customerAddressId = Long.parseLong(customerBillingAddressId);
-        cartService.setBillingAddress(cart, customer, customerAddressId);
-        requestUtil.updateCurrentCart(request, cart);
+        synchronized (requestUtil.getCurrentCartLock(request)) {
+            Cart cart = requestData.getCart();
+            cartService.setBillingAddressWithoutSave(cart, customer, customerAddressId);
+            requestUtil.updateCurrentCart(request, cart);
+        }
     }
     
     /**
@@ -268,9 +289,11 @@ public class WebManagementService {
      */
     public void setDeliveryMethod(final RequestData requestData, final String deliveryMethodCode) throws Exception {
         final HttpServletRequest request = requestData.getRequest();
-        Cart cart = requestData.getCart();
-        cartService.setDeliveryMethod(cart, deliveryMethodCode);
-        requestUtil.updateCurrentCart(request, cart);
+        synchronized (requestUtil.getCurrentCartLock(request)) {
+            Cart cart = requestData.getCart();
+            cartService.setDeliveryMethodWithoutSave(cart, deliveryMethodCode);
+            requestUtil.updateCurrentCart(request, cart);
+        }
     }
     
     /**
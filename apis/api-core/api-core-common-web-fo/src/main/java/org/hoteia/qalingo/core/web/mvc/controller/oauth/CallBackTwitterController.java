@@ -141,7 +141,7 @@ public class CallBackTwitterController extends AbstractOAuthFrontofficeControlle
 	protected void handleAuthenticationData(HttpServletRequest request, HttpServletResponse response, RequestData requestData, OAuthType type, String jsonData) throws Exception {
 		UserPojo userPojo = null;
 		try {
-			userPojo = jsonMapper.getJsonMapper().readValue(jsonData, UserPojo.class);
+			userPojo = jsonMapper.getReader(UserPojo.class).readValue(jsonData);
 		} catch (JsonGenerationException e) {
 			logger.error(e.getMessage());
 		} catch (JsonMappingException e) {
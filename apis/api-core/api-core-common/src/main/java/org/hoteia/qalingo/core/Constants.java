@@ -116,6 +116,10 @@ public class Constants {
     public static final String ENGINE_BO_SESSION_OBJECT     = "ENGINE_BO_SESSION_OBJECT";
     public static final String ENGINE_CLICKSTREAM           = "ENGINE_CLICKSTREAM";
 
+    // REQUEST
+    public static final String ENGINE_REQUEST_DATA          = "ENGINE_REQUEST_DATA";
+    public static final String ENGINE_REQUEST_DATA_BUILDS   = "ENGINE_REQUEST_DATA_BUILDS";
+
 	// SEARCH PAGINATION
 	public static final String SEARCH_TEXT = "searchText";
 
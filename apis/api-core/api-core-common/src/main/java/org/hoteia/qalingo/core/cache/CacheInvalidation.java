@@ -0,0 +1,135 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.cache;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.hibernate.Hibernate;
+
+/**
+ * An entity to evict from the caches of all the nodes : its type, the simple
+ * name of its domain class, its id and its code.
+ */
+public class CacheInvalidation implements Serializable {
+
+    /**
+     * Generated UID
+     */
+    private static final long serialVersionUID = 5390458120375612874L;
+
+    public static final String DOMAIN_PACKAGE = "org.hoteia.qalingo.core.domain.";
+
+    private static final ConcurrentMap<Class<?>, Method[]> ACCESSORS = new ConcurrentHashMap<Class<?>, Method[]>();
+
+    private final String entityType;
+    private final Long id;
+    private final String code;
+
+    public CacheInvalidation(String entityType, Long id, String code) {
+        this.entityType = entityType;
+        this.id = id;
+        this.code = code;
+    }
+
+    /**
+     * @return the invalidation of a domain entity, or null if the object has neither an id nor a code.
+     */
+    public static CacheInvalidation of(final Object entity) {
+        if (entity == null) {
+            return null;
+        }
+        Class<?> entityClass = Hibernate.getClass(entity);
+        if (!entityClass.getName().startsWith(DOMAIN_PACKAGE)) {
+            return null;
+        }
+        Method[] accessors = getAccessors(entityClass);
+        Long id = (Long) invoke(accessors[0], entity);
+        String code = (String) invoke(accessors[1], entity);
+        if (id == null && StringUtils.isEmpty(code)) {
+            return null;
+        }
+        return new CacheInvalidation(entityClass.getSimpleName(), id, code);
+    }
+
+    private static Method[] getAccessors(final Class<?> entityClass) {
+        Method[] accessors = ACCESSORS.get(entityClass);
+        if (accessors == null) {
+            accessors = new Method[] { findGetter(entityClass, "getId", Long.class), findGetter(entityClass, "getCode", String.class) };
+            ACCESSORS.putIfAbsent(entityClass, accessors);
+        }
+        return accessors;
+    }
+
+    private static Method findGetter(final Class<?> entityClass, final String name, final Class<?> returnType) {
+        try {
+            Method method = entityClass.getMethod(name);
+            if (returnType.isAssignableFrom(method.getReturnType())) {
+                return method;
+            }
+        } catch (NoSuchMethodException e) {
+            // THIS ENTITY HAS NO SUCH PROPERTY
+        }
+        return null;
+    }
+
+    private static Object invoke(final Method method, final Object entity) {
+        if (method == null) {
+            return null;
+        }
+        try {
+            return method.invoke(entity);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = entityType == null ? 0 : entityType.hashCode();
+        result = 31 * result + (id == null ? 0 : id.hashCode());
+        result = 31 * result + (code == null ? 0 : code.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        CacheInvalidation other = (CacheInvalidation) obj;
+        return StringUtils.equals(entityType, other.entityType) && (id == null ? other.id == null : id.equals(other.id))
+                && StringUtils.equals(code, other.code);
+    }
+
+    @Override
+    public String toString() {
+        return entityType + "[id=" + id + ", code=" + code + "]";
+    }
+
+}
@@ -0,0 +1,26 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.cache;
+
+import java.util.Collection;
+
+/**
+ * Evicts the entries of the local caches which hold the given entities :
+ * implemented next to the caches, called by the invalidation bus for the
+ * invalidations of this node and of the other nodes.
+ */
+public interface CacheInvalidationHandler {
+
+    /**
+     * @return the number of evicted entries.
+     */
+    int invalidate(Collection<CacheInvalidation> invalidations);
+
+}
@@ -0,0 +1,117 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.clickstream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * One request of a visitor, as written in the clickstream segments : one
+ * line of tab separated fields. The session is kept as a hash, never as the
+ * session id itself.
+ */
+public class ClickstreamEvent {
+
+    private static final int FIELD_COUNT = 6;
+
+    private final long timestamp;
+    private final String sessionKey;
+    private final String serverName;
+    private final String requestURI;
+    private final String queryString;
+    private final String referrer;
+
+    public ClickstreamEvent(long timestamp, String sessionKey, String serverName, String requestURI, String queryString, String referrer) {
+        this.timestamp = timestamp;
+        this.sessionKey = sessionKey;
+        this.serverName = serverName;
+        this.requestURI = requestURI;
+        this.queryString = queryString;
+        this.referrer = referrer;
+    }
+
+    public ClickstreamEvent(final HttpServletRequest request, final long timestamp) {
+        this(timestamp, getSessionKey(request), request.getServerName(), request.getRequestURI(), request.getQueryString(), request.getHeader("REFERER"));
+    }
+
+    protected static String getSessionKey(final HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return null;
+        }
+        return Integer.toHexString(session.getId().hashCode());
+    }
+
+    public String toLine() {
+        StringBuilder line = new StringBuilder(128);
+        line.append(timestamp);
+        line.append('\t').append(clean(sessionKey));
+        line.append('\t').append(clean(serverName));
+        line.append('\t').append(clean(requestURI));
+        line.append('\t').append(clean(queryString));
+        line.append('\t').append(clean(referrer));
+        return line.toString();
+    }
+
+    /**
+     * @return the event, or null if the line is not complete.
+     */
+    public static ClickstreamEvent fromLine(final String line) {
+        String[] fields = StringUtils.splitPreserveAllTokens(line, '\t');
+        if (fields == null || fields.length != FIELD_COUNT) {
+            return null;
+        }
+        try {
+            return new ClickstreamEvent(Long.parseLong(fields[0]), toValue(fields[1]), toValue(fields[2]), toValue(fields[3]), toValue(fields[4]),
+                    toValue(fields[5]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String clean(final String value) {
+        if (value == null) {
+            return "";
+        }
+        // THE URLS ARE ENCODED : A TAB OR A NEW LINE COMES FROM A FORGED HEADER
+        return StringUtils.replaceChars(value, "\t\r\n", "   ");
+    }
+
+    private static String toValue(final String field) {
+        return field.length() > 0 ? field : null;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getSessionKey() {
+        return sessionKey;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    public String getRequestURI() {
+        return requestURI;
+    }
+
+    public String getQueryString() {
+        return queryString;
+    }
+
+    public String getReferrer() {
+        return referrer;
+    }
+
+}
@@ -0,0 +1,384 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.clickstream;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Clickstream of the visitors, off the request thread : the request threads
+ * offer the events to a lock-free bounded queue, and drop them when it is
+ * full. A background writer appends them by batch to the compressed
+ * {@link ClickstreamSegments}, and keeps the rollups of the events written
+ * since the start of the node. The writer is started with the pipeline, so
+ * the request threads never start it.
+ *
+ * The rollups of a period are read back from the segments of all the nodes
+ * which share the segment directory. The writer deletes the segments older
+ * than the retention, at most once by retention check delay.
+ */
+@Component(value = "clickstreamPipeline")
+@ManagedResource
+public class ClickstreamPipeline {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Value("${clickstream.pipeline.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${clickstream.session.requests:20}")
+    private int sessionRequests = 20;
+
+    @Value("${clickstream.queue.capacity:10000}")
+    private int queueCapacity = 10000;
+
+    @Value("${clickstream.batch.size:500}")
+    private int batchSize = 500;
+
+    @Value("${clickstream.flush.delay:1000}")
+    private long flushDelay = 1000;
+
+    @Value("${clickstream.segment.path:}")
+    private String segmentPath;
+
+    @Value("${clickstream.segment.max.bytes:16777216}")
+    private long maxSegmentBytes = 16777216;
+
+    @Value("${clickstream.segment.retention.hours:168}")
+    private int retentionHours = 168;
+
+    @Value("${clickstream.segment.retention.check.delay:600000}")
+    private long retentionCheckDelay = 600000;
+
+    @Value("${clickstream.rollup.max.keys:10000}")
+    private int rollupMaxKeys = 10000;
+
+    @Value("${app.name:qalingo}")
+    private String applicationName = "qalingo";
+
+    private ClickstreamSegments segments;
+
+    private ScheduledExecutorService writerExecutor;
+
+    // THE SIZE OF A CONCURRENT LINKED QUEUE IS NOT A CONSTANT TIME OPERATION : IT IS COUNTED APART
+    private final Queue<ClickstreamEvent> queue = new ConcurrentLinkedQueue<ClickstreamEvent>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+
+    private volatile ClickstreamRollup liveRollup;
+    private volatile long liveRollupStart;
+
+    private final AtomicLong offeredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong deletedSegmentCount = new AtomicLong();
+
+    private long lastRetentionCheck;
+
+    @PostConstruct
+    public void init() {
+        String path = segmentPath;
+        if (StringUtils.isEmpty(path)) {
+            path = new File(System.getProperty("java.io.tmpdir"), "qalingo-clickstream").getPath();
+        }
+        String hostName;
+        try {
+            hostName = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            hostName = "localhost";
+        }
+        segments = new ClickstreamSegments(new File(path), applicationName + "." + hostName, maxSegmentBytes);
+        resetLiveRollup();
+        if (enabled) {
+            start();
+        }
+    }
+
+    /**
+     * @return false if the event is dropped : the pipeline is disabled or its queue is full.
+     */
+    public boolean offer(final ClickstreamEvent event) {
+        if (!enabled) {
+            return false;
+        }
+        if (queueSize.incrementAndGet() > queueCapacity) {
+            queueSize.decrementAndGet();
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        queue.offer(event);
+        offeredCount.incrementAndGet();
+        return true;
+    }
+
+    protected synchronized void start() {
+        if (writerExecutor != null) {
+            return;
+        }
+        writerExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "clickstream-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        writerExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    writeQueuedEvents();
+                    if (System.currentTimeMillis() - lastRetentionCheck >= retentionCheckDelay) {
+                        deleteExpiredSegments();
+                    }
+                } catch (Exception e) {
+                    logger.error("Clickstream writer failed", e);
+                }
+            }
+        }, flushDelay, flushDelay, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        synchronized (this) {
+            if (writerExecutor != null) {
+                writerExecutor.shutdown();
+                try {
+                    writerExecutor.awaitTermination(flushDelay, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                writerExecutor = null;
+            }
+        }
+        writeQueuedEvents();
+    }
+
+    /**
+     * Drains the queue by batch into the current segment. A batch which can't
+     * be written is dropped : the clickstream must not hold the memory of the node.
+     */
+    protected synchronized void writeQueuedEvents() {
+        List<ClickstreamEvent> batch = new ArrayList<ClickstreamEvent>(batchSize);
+        while (true) {
+            ClickstreamEvent event;
+            while (batch.size() < batchSize && (event = queue.poll()) != null) {
+                queueSize.decrementAndGet();
+                batch.add(event);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                writtenBytes.addAndGet(segments.write(batch));
+                writtenCount.addAndGet(batch.size());
+                // THE LIVE ROLLUP COUNTS THE EVENTS OF THE SEGMENTS ONLY
+                ClickstreamRollup rollup = liveRollup;
+                for (ClickstreamEvent batchEvent : batch) {
+                    rollup.add(batchEvent);
+                }
+            } catch (IOException e) {
+                errorCount.incrementAndGet();
+                logger.error("Clickstream batch of " + batch.size() + " events can't be written in " + segments.getDirectory(), e);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Deletes the segments of all the nodes older than the retention hours :
+     * none if the retention is 0.
+     */
+    @ManagedOperation
+    public synchronized void deleteExpiredSegments() {
+        lastRetentionCheck = System.currentTimeMillis();
+        if (retentionHours <= 0) {
+            return;
+        }
+        int count = segments.deleteSegmentsBefore(new Date(lastRetentionCheck - retentionHours * 3600000L));
+        if (count > 0) {
+            deletedSegmentCount.addAndGet(count);
+            logger.info("Clickstream segments deleted after " + retentionHours + " hours: " + count);
+        }
+    }
+
+    /**
+     * @return the rollup of the events of the period, read from the segments of all the nodes.
+     */
+    public ClickstreamRollup getRollup(final Date from, final Date to) {
+        ClickstreamRollup rollup = new ClickstreamRollup(rollupMaxKeys);
+        for (File segment : segments.getSegments(from, to)) {
+            try {
+                ClickstreamSegments.read(segment, rollup, from.getTime(), to.getTime());
+            } catch (IOException e) {
+                logger.warn("Clickstream segment can't be read: " + segment, e);
+            }
+        }
+        return rollup;
+    }
+
+    /**
+     * @return the rollup of the last hours, read from the segments of all the nodes.
+     */
+    public ClickstreamRollup getRollup(final int hours) {
+        long now = System.currentTimeMillis();
+        return getRollup(new Date(now - hours * 3600000L), new Date(now));
+    }
+
+    /**
+     * @return the rollup of the events written by this node since its start or the last reset.
+     */
+    public ClickstreamRollup getLiveRollup() {
+        return liveRollup;
+    }
+
+    @ManagedOperation
+    public void resetLiveRollup() {
+        liveRollup = new ClickstreamRollup(rollupMaxKeys);
+        liveRollupStart = System.currentTimeMillis();
+    }
+
+    @ManagedOperation
+    public void flush() {
+        writeQueuedEvents();
+    }
+
+    /**
+     * @return the number of requests a session keeps for its navigation.
+     */
+    public int getSessionRequests() {
+        return sessionRequests;
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled && segments != null) {
+            start();
+        }
+    }
+
+    @ManagedAttribute
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+    @ManagedAttribute
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @ManagedAttribute
+    public long getOfferedCount() {
+        return offeredCount.get();
+    }
+
+    @ManagedAttribute
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @ManagedAttribute
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    @ManagedAttribute
+    public long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    @ManagedAttribute
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * @return the hours of events kept in the segments : 0 to keep them all.
+     */
+    @ManagedAttribute
+    public int getRetentionHours() {
+        return retentionHours;
+    }
+
+    @ManagedAttribute
+    public void setRetentionHours(int retentionHours) {
+        this.retentionHours = retentionHours;
+    }
+
+    @ManagedAttribute
+    public long getDeletedSegmentCount() {
+        return deletedSegmentCount.get();
+    }
+
+    @ManagedAttribute
+    public String getSegmentDirectory() {
+        return segments.getDirectory().getPath();
+    }
+
+    @ManagedAttribute
+    public String getCurrentSegment() {
+        File segment = segments.getCurrentSegment();
+        return segment != null ? segment.getName() : null;
+    }
+
+    @ManagedAttribute
+    public Date getLiveRollupStart() {
+        return new Date(liveRollupStart);
+    }
+
+    @ManagedAttribute
+    public String[] getLiveTopPaths() {
+        return toLines(liveRollup.getTopPaths(20));
+    }
+
+    @ManagedAttribute
+    public String[] getLiveTopReferrers() {
+        return toLines(liveRollup.getTopReferrers(20));
+    }
+
+    private String[] toLines(final List<ClickstreamCount> counts) {
+        String[] lines = new String[counts.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = counts.get(i).toString();
+        }
+        return lines;
+    }
+
+}
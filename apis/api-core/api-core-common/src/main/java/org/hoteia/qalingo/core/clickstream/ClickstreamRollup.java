@@ -0,0 +1,144 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.clickstream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Counts of the clickstream events : the requests by path, the requests by
+ * external referrer, the sessions.
+ *
+ * The number of distinct paths, referrers and sessions is bounded : once a
+ * bound is reached, the new values are only counted as "other".
+ */
+public class ClickstreamRollup {
+
+    private static final Comparator<ClickstreamCount> BY_COUNT_DESC = new Comparator<ClickstreamCount>() {
+        public int compare(ClickstreamCount o1, ClickstreamCount o2) {
+            if (o1.getCount() != o2.getCount()) {
+                return o1.getCount() > o2.getCount() ? -1 : 1;
+            }
+            return o1.getValue().compareTo(o2.getValue());
+        }
+    };
+
+    private final int maxKeys;
+
+    private final Map<String, long[]> paths = new HashMap<String, long[]>();
+    private final Map<String, long[]> referrers = new HashMap<String, long[]>();
+    private final Set<String> sessions = new HashSet<String>();
+
+    private long eventCount;
+    private long otherPathCount;
+    private long otherReferrerCount;
+    private boolean sessionCountApproximate;
+
+    public ClickstreamRollup(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    public synchronized void add(final ClickstreamEvent event) {
+        eventCount++;
+        if (event.getRequestURI() != null && !increment(paths, event.getRequestURI())) {
+            otherPathCount++;
+        }
+        String referrer = getExternalReferrer(event);
+        if (referrer != null && !increment(referrers, referrer)) {
+            otherReferrerCount++;
+        }
+        if (event.getSessionKey() != null) {
+            if (sessions.size() < maxKeys * 10) {
+                sessions.add(event.getSessionKey());
+            } else if (!sessions.contains(event.getSessionKey())) {
+                sessionCountApproximate = true;
+            }
+        }
+    }
+
+    /**
+     * @return the referrer without its query, or null if the visitor comes from the site itself.
+     */
+    protected static String getExternalReferrer(final ClickstreamEvent event) {
+        String referrer = event.getReferrer();
+        if (StringUtils.isEmpty(referrer)) {
+            return null;
+        }
+        int queryIndex = referrer.indexOf('?');
+        if (queryIndex >= 0) {
+            referrer = referrer.substring(0, queryIndex);
+        }
+        String host = StringUtils.substringAfter(referrer, "://");
+        host = StringUtils.substringBefore(StringUtils.substringBefore(host, "/"), ":");
+        if (event.getServerName() != null && event.getServerName().equalsIgnoreCase(host)) {
+            return null;
+        }
+        return referrer;
+    }
+
+    private boolean increment(final Map<String, long[]> counts, final String key) {
+        long[] count = counts.get(key);
+        if (count == null) {
+            if (counts.size() >= maxKeys) {
+                return false;
+            }
+            count = new long[1];
+            counts.put(key, count);
+        }
+        count[0]++;
+        return true;
+    }
+
+    public synchronized List<ClickstreamCount> getTopPaths(final int size) {
+        return top(paths, size);
+    }
+
+    public synchronized List<ClickstreamCount> getTopReferrers(final int size) {
+        return top(referrers, size);
+    }
+
+    private List<ClickstreamCount> top(final Map<String, long[]> counts, final int size) {
+        List<ClickstreamCount> lines = new ArrayList<ClickstreamCount>(counts.size());
+        for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+            lines.add(new ClickstreamCount(entry.getKey(), entry.getValue()[0]));
+        }
+        Collections.sort(lines, BY_COUNT_DESC);
+        return lines.size() > size ? new ArrayList<ClickstreamCount>(lines.subList(0, size)) : lines;
+    }
+
+    public synchronized long getEventCount() {
+        return eventCount;
+    }
+
+    public synchronized int getSessionCount() {
+        return sessions.size();
+    }
+
+    public synchronized boolean isSessionCountApproximate() {
+        return sessionCountApproximate;
+    }
+
+    public synchronized long getOtherPathCount() {
+        return otherPathCount;
+    }
+
+    public synchronized long getOtherReferrerCount() {
+        return otherReferrerCount;
+    }
+
+}
@@ -0,0 +1,222 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.clickstream;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Append-only segment files of the clickstream events, in one directory
+ * which can be shared by the nodes : "clickstream-[node]-[yyyyMMddHH]-[index].gz".
+ *
+ * Each batch is appended as a gzip member, so a segment is a valid gzip file
+ * after each batch. A segment is rolled every hour and once it reaches its
+ * maximum size ; a segment of a previous run is never appended, in case its
+ * last batch is truncated. The segments of the hours before the retention are
+ * deleted by the writers.
+ */
+public class ClickstreamSegments {
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final String PREFIX = "clickstream-";
+
+    private static final String SUFFIX = ".gz";
+
+    private static final String HOUR_PATTERN = "yyyyMMddHH";
+
+    private final File directory;
+
+    private final String nodeName;
+
+    private final long maxSegmentBytes;
+
+    private final SimpleDateFormat hourFormat = new SimpleDateFormat(HOUR_PATTERN);
+
+    private String segmentHour;
+
+    private int segmentIndex;
+
+    private File segment;
+
+    public ClickstreamSegments(final File directory, final String nodeName, final long maxSegmentBytes) {
+        this.directory = directory;
+        this.nodeName = nodeName.replaceAll("[^A-Za-z0-9.]", "_");
+        this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    /**
+     * Appends the events to the current segment, as one gzip member.
+     *
+     * @return the number of compressed bytes written.
+     */
+    public synchronized long write(final List<ClickstreamEvent> events) throws IOException {
+        if (events.isEmpty()) {
+            return 0;
+        }
+        File file = getSegment(events.get(0).getTimestamp());
+        long length = file.length();
+        Writer writer = new OutputStreamWriter(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 8192)), ENCODING);
+        try {
+            for (ClickstreamEvent event : events) {
+                writer.write(event.toLine());
+                writer.write('\n');
+            }
+        } finally {
+            // FINISHES THE GZIP MEMBER
+            writer.close();
+        }
+        return file.length() - length;
+    }
+
+    protected File getSegment(final long timestamp) {
+        String hour = hourFormat.format(new Date(timestamp));
+        if (segment == null || !hour.equals(segmentHour)) {
+            segmentHour = hour;
+            segmentIndex = 0;
+            segment = nextSegment();
+        } else if (segment.length() >= maxSegmentBytes) {
+            segmentIndex++;
+            segment = nextSegment();
+        }
+        return segment;
+    }
+
+    private File nextSegment() {
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        File file = new File(directory, PREFIX + nodeName + "-" + segmentHour + "-" + segmentIndex + SUFFIX);
+        while (file.exists()) {
+            segmentIndex++;
+            file = new File(directory, PREFIX + nodeName + "-" + segmentHour + "-" + segmentIndex + SUFFIX);
+        }
+        return file;
+    }
+
+    /**
+     * @return the segments of all the nodes for the hours of the period, in hour order.
+     */
+    public List<File> getSegments(final Date from, final Date to) {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }
+        });
+        List<File> segments = new ArrayList<File>();
+        if (files == null) {
+            return segments;
+        }
+        SimpleDateFormat format = new SimpleDateFormat(HOUR_PATTERN);
+        String fromHour = from != null ? format.format(from) : null;
+        String toHour = to != null ? format.format(to) : null;
+        Arrays.sort(files);
+        for (File file : files) {
+            String hour = getHour(file.getName());
+            if (hour == null
+                    || (fromHour != null && hour.compareTo(fromHour) < 0)
+                    || (toHour != null && hour.compareTo(toHour) > 0)) {
+                continue;
+            }
+            segments.add(file);
+        }
+        return segments;
+    }
+
+    /**
+     * Deletes the segments of all the nodes for the hours before this date :
+     * the current segment is never one of them.
+     *
+     * @return the number of deleted segments.
+     */
+    public synchronized int deleteSegmentsBefore(final Date before) {
+        String beforeHour = new SimpleDateFormat(HOUR_PATTERN).format(before);
+        int count = 0;
+        for (File file : getSegments(null, before)) {
+            // ANOTHER NODE CAN DELETE IT AT THE SAME TIME
+            if (getHour(file.getName()).compareTo(beforeHour) < 0
+                    && !file.equals(segment)
+                    && file.delete()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    protected static String getHour(final String name) {
+        String[] parts = StringUtils.split(StringUtils.removeEnd(name, SUFFIX), '-');
+        if (parts.length < 4) {
+            return null;
+        }
+        String hour = parts[parts.length - 2];
+        try {
+            new SimpleDateFormat(HOUR_PATTERN).parse(hour);
+        } catch (ParseException e) {
+            return null;
+        }
+        return hour;
+    }
+
+    /**
+     * Adds the events of the period to the rollup. A truncated last batch, the
+     * one being written or the one of a crash, ends the read of the segment.
+     *
+     * @return the number of events read.
+     */
+    public static long read(final File segment, final ClickstreamRollup rollup, final long from, final long to) throws IOException {
+        long count = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(segment), 8192), ENCODING));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ClickstreamEvent event = ClickstreamEvent.fromLine(line);
+                if (event != null
+                        && event.getTimestamp() >= from
+                        && event.getTimestamp() < to) {
+                    rollup.add(event);
+                    count++;
+                }
+            }
+        } catch (EOFException e) {
+            // TRUNCATED GZIP MEMBER
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized File getCurrentSegment() {
+        return segment;
+    }
+
+}
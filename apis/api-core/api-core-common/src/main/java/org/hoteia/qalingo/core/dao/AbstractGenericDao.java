@@ -9,24 +9,50 @@
  */
 package org.hoteia.qalingo.core.dao;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
+import org.hibernate.Hibernate;
+import org.hibernate.HibernateException;
 import org.hibernate.Session;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.ProjectionList;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.internal.CriteriaImpl;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.type.Type;
+import org.hoteia.qalingo.core.domain.AbstractEntity;
 import org.hoteia.qalingo.core.fetchplan.FetchPlan;
 import org.hoteia.qalingo.core.fetchplan.SpecificFetchMode;
 import org.hoteia.qalingo.core.util.CoreUtil;
+import org.springframework.beans.factory.annotation.Value;
 
 public abstract class AbstractGenericDao {  
 
 	@PersistenceContext
 	protected EntityManager em;
 
+    @Value("${fetchplan.collection.batch.enabled:true}")
+    protected boolean collectionBatchFetch = true;
+
+    @Value("${fetchplan.collection.batch.size:500}")
+    protected int collectionBatchSize = 500;
+
     public Session getSession() {
         return (Session) em.getDelegate();
     }
@@ -71,6 +97,66 @@ public abstract class AbstractGenericDao {
     }
     
     protected FetchPlan handleSpecificFetchMode(Criteria criteria, Object... params){
+        FetchPlan globalFetchPlan = mergeFetchPlans(params);
+        if(globalFetchPlan != null){
+            for (Iterator<SpecificFetchMode> iterator = globalFetchPlan.getFetchModes().iterator(); iterator.hasNext();) {
+                SpecificFetchMode specificFetchMode = (SpecificFetchMode) iterator.next();
+                applyFetchMode(criteria, specificFetchMode);
+            }
+        }
+        return globalFetchPlan;
+    }
+
+    /**
+     * Fetch plan in two phases : the criteria joins the single associations of
+     * the plan only, and the collections of the root entity are loaded after the
+     * query by {@link #loadCollections(List, FetchPlan)}, one query by collection
+     * for all the entities. The rows read are the sum of the collection sizes,
+     * not their product.
+     */
+    protected FetchPlan handleTwoPhaseFetchMode(Criteria criteria, Object... params){
+        FetchPlan globalFetchPlan = mergeFetchPlans(params);
+        if(globalFetchPlan != null){
+            String entityName = null;
+            if(collectionBatchFetch && criteria instanceof CriteriaImpl){
+                entityName = ((CriteriaImpl) criteria).getEntityOrClassName();
+            }
+            for (Iterator<SpecificFetchMode> iterator = globalFetchPlan.getFetchModes().iterator(); iterator.hasNext();) {
+                SpecificFetchMode specificFetchMode = (SpecificFetchMode) iterator.next();
+                if(entityName == null || !isCollectionFetchMode(entityName, specificFetchMode)){
+                    applyFetchMode(criteria, specificFetchMode);
+                }
+            }
+        }
+        return globalFetchPlan;
+    }
+
+    /**
+     * Second phase of {@link #handleTwoPhaseFetchMode(Criteria, Object...)} :
+     * loads the collections of the fetch plan not initialized yet, by batches
+     * of entities.
+     */
+    protected <T> List<T> loadCollections(final List<T> entities, final FetchPlan fetchPlan) {
+        if(!collectionBatchFetch || fetchPlan == null || fetchPlan.getFetchModes() == null || entities == null || entities.isEmpty()){
+            return entities;
+        }
+        for (Iterator<SpecificFetchMode> iterator = fetchPlan.getFetchModes().iterator(); iterator.hasNext();) {
+            SpecificFetchMode specificFetchMode = (SpecificFetchMode) iterator.next();
+            if(specificFetchMode.getRequiredAlias() == null){
+                loadPath(new ArrayList<Object>(entities), specificFetchMode.getAssocationPath().split("\\."), 0);
+            }
+        }
+        return entities;
+    }
+
+    protected <T> T loadEntityCollections(final T entity, final FetchPlan fetchPlan) {
+        if(entity != null){
+            loadCollections(Collections.singletonList(entity), fetchPlan);
+        }
+        return entity;
+    }
+
+    private FetchPlan mergeFetchPlans(Object... params){
         if (params != null) {
             FetchPlan globalFetchPlan = new FetchPlan(new ArrayList<SpecificFetchMode>());
             for (Object param : params) {
@@ -84,21 +170,259 @@ public abstract class AbstractGenericDao {
                     }
                 }
             }
-            
-            if(globalFetchPlan != null && globalFetchPlan.getFetchModes() != null){
-                for (Iterator<SpecificFetchMode> iterator = globalFetchPlan.getFetchModes().iterator(); iterator.hasNext();) {
-                    SpecificFetchMode specificFetchMode = (SpecificFetchMode) iterator.next();
-                    if(specificFetchMode.getRequiredAlias() != null){
-                        // TODO : Denis : check duplicate entry are manage or not
-                        criteria.createAlias(specificFetchMode.getRequiredAlias().getAssocationPath(), specificFetchMode.getRequiredAlias().getAlias(), specificFetchMode.getRequiredAlias().getJoinType());
-                    }
-                    criteria.setFetchMode(specificFetchMode.getAssocationPath(), specificFetchMode.getFetchMode());
+            return globalFetchPlan;
+        }
+        return null;
+    }
+
+    private void applyFetchMode(Criteria criteria, SpecificFetchMode specificFetchMode){
+        if(specificFetchMode.getRequiredAlias() != null){
+            // TODO : Denis : check duplicate entry are manage or not
+            criteria.createAlias(specificFetchMode.getRequiredAlias().getAssocationPath(), specificFetchMode.getRequiredAlias().getAlias(), specificFetchMode.getRequiredAlias().getJoinType());
+        }
+        criteria.setFetchMode(specificFetchMode.getAssocationPath(), specificFetchMode.getFetchMode());
+    }
+
+    /**
+     * @return true if the fetch mode starts with a collection of this entity, without alias.
+     */
+    private boolean isCollectionFetchMode(String entityName, SpecificFetchMode specificFetchMode){
+        if(specificFetchMode.getRequiredAlias() != null
+                || specificFetchMode.getFetchMode() != FetchMode.JOIN){
+            return false;
+        }
+        Type type = getPropertyType(entityName, specificFetchMode.getAssocationPath().split("\\.")[0]);
+        return type != null && type.isCollectionType();
+    }
+
+    /**
+     * Loads the association of the path at this index for all the owners, then
+     * the rest of the path on the associated entities.
+     */
+    private void loadPath(final List<Object> owners, final String[] path, final int index){
+        String property = path[index];
+        Map<String, List<Serializable>> uninitializedOwnerIds = new LinkedHashMap<String, List<Serializable>>();
+        List<Object> initializedOwners = new ArrayList<Object>(owners.size());
+        for (Object owner : owners) {
+            Object entity = owner;
+            if(entity instanceof HibernateProxy){
+                entity = ((HibernateProxy) entity).getHibernateLazyInitializer().getImplementation();
+            }
+            String entityName = getSession().getEntityName(entity);
+            Type type = getPropertyType(entityName, property);
+            if(type == null){
+                continue;
+            }
+            initializedOwners.add(entity);
+            if(type.isCollectionType()
+                    && !Hibernate.isInitialized(getSession().getSessionFactory().getClassMetadata(entityName).getPropertyValue(entity, property))){
+                List<Serializable> ownerIds = uninitializedOwnerIds.get(entityName);
+                if(ownerIds == null){
+                    ownerIds = new ArrayList<Serializable>();
+                    uninitializedOwnerIds.put(entityName, ownerIds);
                 }
-                return globalFetchPlan;
+                ownerIds.add(getSession().getIdentifier(entity));
             }
-            
         }
-        return null;
+
+        for (Map.Entry<String, List<Serializable>> entry : uninitializedOwnerIds.entrySet()) {
+            String entityName = entry.getKey();
+            String idProperty = getSession().getSessionFactory().getClassMetadata(entityName).getIdentifierPropertyName();
+            org.hibernate.Query query = getSession().createQuery("select distinct owner from " + entityName + " owner left join fetch owner." + property
+                    + " where owner." + idProperty + " in (:ownerIds)");
+            List<Serializable> ownerIds = entry.getValue();
+            for (int i = 0; i < ownerIds.size(); i += collectionBatchSize) {
+                // THE COLLECTIONS ARE SET ON THE ENTITIES ALREADY IN THE SESSION
+                query.setParameterList("ownerIds", ownerIds.subList(i, Math.min(i + collectionBatchSize, ownerIds.size())));
+                query.list();
+            }
+        }
+
+        if(index + 1 < path.length){
+            List<Object> associatedEntities = new ArrayList<Object>();
+            for (Object owner : initializedOwners) {
+                Object value = getSession().getSessionFactory().getClassMetadata(getSession().getEntityName(owner)).getPropertyValue(owner, property);
+                if(value instanceof Map){
+                    associatedEntities.addAll(((Map<?, ?>) value).values());
+                } else if(value instanceof Collection){
+                    associatedEntities.addAll((Collection<?>) value);
+                } else if(value != null){
+                    associatedEntities.add(value);
+                }
+            }
+            if(!associatedEntities.isEmpty()){
+                loadPath(associatedEntities, path, index + 1);
+            }
+        }
+    }
+
+    public boolean isCollectionBatchFetch() {
+        return collectionBatchFetch;
+    }
+
+    public void setCollectionBatchFetch(boolean collectionBatchFetch) {
+        this.collectionBatchFetch = collectionBatchFetch;
+    }
+
+    /**
+     * @return the type of this property of the entity, null if the entity has no such property.
+     */
+    private Type getPropertyType(String entityName, String property){
+        ClassMetadata classMetadata = getSession().getSessionFactory().getClassMetadata(entityName);
+        if(classMetadata == null){
+            return null;
+        }
+        try {
+            return classMetadata.getPropertyType(property);
+        } catch (HibernateException e) {
+            return null;
+        }
     }
 	
+    /**
+     * Finds a page of entities in two queries : the ids of the page, sorted and
+     * limited by the database, then the entities of these ids with the fetch
+     * plan. The collection fetches never multiply the rows of the page, and the
+     * distinct is done on the page only.
+     */
+    protected <T> PagedResult<T> findPage(final PagedQuery<T> pagedQuery, final PageRequest pageRequest, Object... params) {
+        final String sortProperty = pageRequest.getSortProperty();
+        final boolean sortAscending = pageRequest.isSortAscending();
+
+        Criteria idCriteria = getSession().createCriteria(pagedQuery.getEntityClass());
+        pagedQuery.addRestrictions(idCriteria);
+        if (pageRequest.isKeyset()) {
+            Long afterId = pageRequest.getAfterId();
+            if (pageRequest.isSortById()) {
+                idCriteria.add(sortAscending ? Restrictions.gt("id", afterId) : Restrictions.lt("id", afterId));
+            } else {
+                Object afterSortValue = pageRequest.getAfterSortValue();
+                idCriteria.add(Restrictions.or(sortAscending ? Restrictions.gt(sortProperty, afterSortValue) : Restrictions.lt(sortProperty, afterSortValue),
+                        Restrictions.and(Restrictions.eq(sortProperty, afterSortValue), sortAscending ? Restrictions.gt("id", afterId) : Restrictions.lt("id", afterId))));
+            }
+        } else if (pageRequest.getOffset() > 0) {
+            idCriteria.setFirstResult(pageRequest.getOffset());
+        }
+        ProjectionList projections = Projections.projectionList();
+        if (!pageRequest.isSortById()) {
+            projections.add(Projections.property(sortProperty));
+        }
+        projections.add(Projections.property("id"));
+        idCriteria.setProjection(Projections.distinct(projections));
+        if (!pageRequest.isSortById()) {
+            idCriteria.addOrder(sortAscending ? Order.asc(sortProperty) : Order.desc(sortProperty));
+        }
+        idCriteria.addOrder(sortAscending ? Order.asc("id") : Order.desc("id"));
+        // ONE MORE ROW TELLS IF THERE IS A NEXT PAGE
+        idCriteria.setMaxResults(pageRequest.getPageSize() + 1);
+
+        List<?> rows = idCriteria.list();
+        int size = Math.min(rows.size(), pageRequest.getPageSize());
+        List<Long> ids = new ArrayList<Long>(size);
+        Object lastSortValue = null;
+        for (int i = 0; i < size; i++) {
+            Object row = rows.get(i);
+            if (row instanceof Object[]) {
+                lastSortValue = ((Object[]) row)[0];
+                ids.add((Long) ((Object[]) row)[1]);
+            } else {
+                lastSortValue = row;
+                ids.add((Long) row);
+            }
+        }
+
+        Long totalCount = null;
+        if (pageRequest.isCount()) {
+            Criteria countCriteria = getSession().createCriteria(pagedQuery.getEntityClass());
+            pagedQuery.addRestrictions(countCriteria);
+            countCriteria.setProjection(Projections.countDistinct("id"));
+            totalCount = ((Number) countCriteria.uniqueResult()).longValue();
+        }
+
+        PageRequest nextPageRequest = null;
+        if (rows.size() > pageRequest.getPageSize()) {
+            nextPageRequest = pageRequest.after(lastSortValue, ids.get(ids.size() - 1));
+        }
+        return new PagedResult<T>(findByIds(pagedQuery, ids, params), nextPageRequest, totalCount);
+    }
+
+    /**
+     * Hands every entity of the finder to the handler, page by page : the
+     * entities are evicted from the session after their page.
+     * 
+     * @return the number of entities handled.
+     */
+    protected <T> int streamPages(final PagedQuery<T> pagedQuery, final PageRequest firstPageRequest, final EntityHandler<T> entityHandler, Object... params) throws Exception {
+        int count = 0;
+        PageRequest pageRequest = firstPageRequest;
+        while (pageRequest != null) {
+            PagedResult<T> pagedResult = findPage(pagedQuery, pageRequest, params);
+            for (T entity : pagedResult.getItems()) {
+                entityHandler.handle(entity);
+                getSession().evict(entity);
+                count++;
+            }
+            pageRequest = pagedResult.getNextPageRequest();
+        }
+        return count;
+    }
+
+    /**
+     * @return the entities of these ids, in the order of the ids.
+     */
+    protected <T> List<T> findByIds(final PagedQuery<T> pagedQuery, final List<Long> ids, Object... params) {
+        List<T> entities = new ArrayList<T>(ids.size());
+        if (ids.isEmpty()) {
+            return entities;
+        }
+        Criteria criteria = createDefaultCriteria(pagedQuery.getEntityClass());
+        FetchPlan fetchPlan = pagedQuery.handleFetchMode(criteria, params);
+        criteria.add(Restrictions.in("id", ids));
+
+        @SuppressWarnings("unchecked")
+        List<T> unorderedEntities = criteria.list();
+        Map<Serializable, T> entitiesById = new HashMap<Serializable, T>();
+        for (T entity : unorderedEntities) {
+            entitiesById.put(getSession().getIdentifier(entity), entity);
+        }
+        for (Long id : ids) {
+            T entity = entitiesById.get(id);
+            if (entity != null) {
+                if (entity instanceof AbstractEntity) {
+                    ((AbstractEntity) entity).setFetchPlan(fetchPlan);
+                }
+                entities.add(entity);
+            }
+        }
+        return loadCollections(entities, fetchPlan);
+    }
+
+    /**
+     * Restrictions and fetch plan of a paged finder : the restrictions select
+     * the ids of a page, the fetch plan loads the entities of these ids.
+     */
+    protected abstract class PagedQuery<T> {
+
+        private final Class<T> entityClass;
+
+        protected PagedQuery(Class<T> entityClass) {
+            this.entityClass = entityClass;
+        }
+
+        public Class<T> getEntityClass() {
+            return entityClass;
+        }
+
+        /**
+         * The restrictions of the finder, on the root entity or on its aliases.
+         */
+        protected void addRestrictions(Criteria criteria) {
+        }
+
+        protected FetchPlan handleFetchMode(Criteria criteria, Object... params) {
+            return handleSpecificFetchMode(criteria, params);
+        }
+
+    }
+
 }
\ No newline at end of file
@@ -12,6 +12,8 @@ package org.hoteia.qalingo.core.dao;
 import java.util.Date;
 import java.util.List;
 
+import javax.persistence.Query;
+
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
@@ -221,6 +223,21 @@ public class CatalogCategoryDao extends AbstractGenericDao {
         List<CatalogCategoryVirtual> categories = criteria.list();
         return categories;
     }
+
+    public PagedResult<CatalogCategoryVirtual> findAllVirtualCatalogCategoriesByCatalogCode(final String catalogVirtualCode, final PageRequest pageRequest, Object... params) {
+        return findPage(new PagedQuery<CatalogCategoryVirtual>(CatalogCategoryVirtual.class) {
+            @Override
+            protected void addRestrictions(Criteria criteria) {
+                criteria.createAlias("catalog", "catalog", JoinType.LEFT_OUTER_JOIN);
+                criteria.add(Restrictions.eq("catalog.code", handleCodeValue(catalogVirtualCode)));
+            }
+
+            @Override
+            protected FetchPlan handleFetchMode(Criteria criteria, Object... params) {
+                return handleSpecificFetchVirtualCategoryMode(criteria, params);
+            }
+        }, pageRequest, params);
+    }
 	
 //	public List<CatalogCategoryVirtual> findVirtualCategories(Object... params) {
 //        Criteria criteria = createDefaultCriteria(CatalogCategoryVirtual.class);
@@ -248,6 +265,20 @@ public class CatalogCategoryDao extends AbstractGenericDao {
         List<CatalogCategoryVirtual> categories = criteria.list();
 		return categories;
 	}
+
+    /**
+     * Virtual categories of several product skus in one query, with their
+     * catalog : rows of [productSkuId, isDefaultCategory, category].
+     */
+    public List<Object[]> findVirtualCategoriesByProductSkuIds(final List<Long> productSkuIds) {
+        Query query = createSqlQuery("SELECT rel.pk.productSku.id, rel.isDefaultCategory, category FROM CatalogCategoryVirtual category "
+                + "JOIN FETCH category.catalog JOIN category.catalogCategoryProductSkuRels rel WHERE rel.pk.productSku.id IN (:productSkuIds) ORDER BY category.id");
+        query.setParameter("productSkuIds", productSkuIds);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+        return rows;
+    }
 	
 //    public List<CatalogCategoryVirtual> findVirtualCategoriesByProductMarketingId(final Long productMarketingId, Object... params) {
 //        Criteria criteria = createDefaultCriteria(CatalogCategoryVirtual.class);
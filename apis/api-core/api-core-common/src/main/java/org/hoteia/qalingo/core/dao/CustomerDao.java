@@ -96,6 +96,14 @@ public class CustomerDao extends AbstractGenericDao {
         List<Customer> customers = criteria.list();
 		return customers;
 	}
+
+    public PagedResult<Customer> findCustomers(final PageRequest pageRequest, Object... params) {
+        return findPage(new PagedQuery<Customer>(Customer.class) {}, pageRequest, params);
+    }
+
+    public int streamCustomers(final int pageSize, final EntityHandler<Customer> entityHandler, Object... params) throws Exception {
+        return streamPages(new PagedQuery<Customer>(Customer.class) {}, PageRequest.first(pageSize), entityHandler, params);
+    }
 	
 	public Customer saveOrUpdateCustomer(final Customer customer) throws Exception {
 		if(customer.getDateCreate() == null){
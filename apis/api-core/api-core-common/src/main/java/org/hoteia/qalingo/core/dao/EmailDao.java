@@ -13,7 +13,10 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.sql.Blob;
+import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
@@ -28,9 +31,12 @@ import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.hoteia.qalingo.core.domain.Customer;
 import org.hoteia.qalingo.core.domain.Email;
+import org.hoteia.qalingo.core.email.outbox.EmailContentCodec;
+import org.hoteia.qalingo.core.email.outbox.EmailOutboxEntry;
 import org.hoteia.qalingo.core.util.impl.MimeMessagePreparatorImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 @Repository("emailDao")
@@ -38,6 +44,9 @@ public class EmailDao extends AbstractGenericDao {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    @Autowired
+    protected EmailContentCodec emailContentCodec;
+
     public Email getEmailById(final Long emailId, Object... params) {
         Criteria criteria = createDefaultCriteria(Email.class);
         criteria.add(Restrictions.eq("id", emailId));
@@ -60,6 +69,8 @@ public class EmailDao extends AbstractGenericDao {
         Criteria criteria = createDefaultCriteria(Email.class);
         criteria.add(Restrictions.or(Restrictions.eq("status", Email.EMAIl_STATUS_PENDING), Restrictions.eq("status", Email.EMAIl_STATUS_ERROR)));
         criteria.add(Restrictions.le("processedCount", 5));
+        // NOT RENDERED YET
+        criteria.add(Restrictions.isNotNull("emailContent"));
         
         criteria.setProjection(Projections.property("id"));//Property.forName()
 
@@ -78,6 +89,8 @@ public class EmailDao extends AbstractGenericDao {
         criteria.add(Restrictions.eq("type", type));
         criteria.add(Restrictions.or(Restrictions.eq("status", Email.EMAIl_STATUS_PENDING), Restrictions.eq("status", Email.EMAIl_STATUS_ERROR)));
         criteria.add(Restrictions.le("processedCount", 5));
+        // NOT RENDERED YET
+        criteria.add(Restrictions.isNotNull("emailContent"));
         
         criteria.setProjection(Projections.property("id"));//Property.forName()
         
@@ -91,6 +104,73 @@ public class EmailDao extends AbstractGenericDao {
         return emailIds;
     }
 
+    public List<Email> findEmailsByIds(final Collection<Long> emailIds, Object... params) {
+        Criteria criteria = createDefaultCriteria(Email.class);
+        criteria.add(Restrictions.in("id", emailIds));
+        
+        @SuppressWarnings("unchecked")
+        List<Email> emails = criteria.list();
+        return emails;
+    }
+
+    /**
+     * @return the state of the emails to send, or to send again, without their
+     *         content. A pending email without content is in the render queue
+     *         of a node : it is only returned after the render lease, so that
+     *         an email whose render was lost ends in error.
+     */
+    public List<EmailOutboxEntry> findEmailOutboxEntries(final int maxProcessedCount, final long renderLease, final int maxResults) {
+        Criteria criteria = createDefaultCriteria(Email.class);
+        criteria.add(Restrictions.in("status", new String[] { Email.EMAIl_STATUS_PENDING, Email.EMAIl_STATUS_ERROR, Email.EMAIl_STATUS_SENDING }));
+        criteria.add(Restrictions.le("processedCount", maxProcessedCount));
+        criteria.add(Restrictions.or(Restrictions.isNotNull("emailContent"),
+                Restrictions.and(Restrictions.eq("status", Email.EMAIl_STATUS_PENDING),
+                        Restrictions.lt("dateUpdate", new Timestamp(new Date().getTime() - renderLease)))));
+        criteria.setProjection(Projections.projectionList()
+                .add(Projections.property("id"))
+                .add(Projections.property("version"))
+                .add(Projections.property("status"))
+                .add(Projections.property("processedCount"))
+                .add(Projections.property("dateUpdate")));
+        criteria.addOrder(Order.asc("id"));
+        criteria.setMaxResults(maxResults);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = criteria.list();
+        List<EmailOutboxEntry> entries = new ArrayList<EmailOutboxEntry>(rows.size());
+        for (Object[] row : rows) {
+            entries.add(new EmailOutboxEntry((Long) row[0], (Integer) row[1], (String) row[2], (Integer) row[3], (Date) row[4]));
+        }
+        return entries;
+    }
+
+    /**
+     * Claims an email for a sender : the update only succeeds if nobody
+     * changed the email since its entry was read.
+     * 
+     * @return true if the email is claimed.
+     */
+    public boolean claimEmail(final EmailOutboxEntry entry) {
+        Query query = getSession().createQuery("UPDATE Email SET status = :status, version = version + 1, dateUpdate = :dateUpdate WHERE id = :id AND version = :version");
+        query.setString("status", Email.EMAIl_STATUS_SENDING);
+        query.setTimestamp("dateUpdate", new Timestamp(new Date().getTime()));
+        query.setLong("id", entry.getId());
+        query.setInteger("version", entry.getVersion());
+        return query.executeUpdate() == 1;
+    }
+
+    public int updateEmailsStatus(final Collection<Long> emailIds, final String status, final boolean processed) {
+        if (emailIds.isEmpty()) {
+            return 0;
+        }
+        String processedCount = processed ? ", processedCount = processedCount + 1" : "";
+        Query query = getSession().createQuery("UPDATE Email SET status = :status, version = version + 1, dateUpdate = :dateUpdate" + processedCount + " WHERE id IN (:ids)");
+        query.setString("status", status);
+        query.setTimestamp("dateUpdate", new Timestamp(new Date().getTime()));
+        query.setParameterList("ids", emailIds);
+        return query.executeUpdate();
+    }
+
     public Email saveOrUpdateEmail(final Email email) {
         if (email.getDateCreate() == null) {
             email.setDateCreate(new Timestamp(new Date().getTime()));
@@ -121,15 +201,7 @@ public class EmailDao extends AbstractGenericDao {
     public void saveEmail(final Email email, final MimeMessagePreparatorImpl mimeMessagePreparator) throws IOException {
         Session session = (Session) em.getDelegate();
 
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(bos);
-
-        oos.writeObject(mimeMessagePreparator);
-        oos.flush();
-        oos.close();
-        bos.close();
-
-        byte[] data = bos.toByteArray();
+        byte[] data = emailContentCodec.encode(mimeMessagePreparator);
 
         Blob blob = Hibernate.getLobCreator(session).createBlob(data);
 
@@ -138,6 +210,49 @@ public class EmailDao extends AbstractGenericDao {
         saveOrUpdateEmail(email);
     }
 
+    /**
+     * Saves the rendered content of a pending email.
+     *
+     * @return false if the email is not pending without content anymore : it was claimed after its render lease.
+     */
+    public boolean saveRenderedEmail(final Long emailId, final MimeMessagePreparatorImpl mimeMessagePreparator) throws IOException {
+        Email email = getEmailById(emailId);
+        if (email == null
+                || email.getEmailContent() != null
+                || !Email.EMAIl_STATUS_PENDING.equals(email.getStatus())) {
+            return false;
+        }
+        saveEmail(email, mimeMessagePreparator);
+        return true;
+    }
+
+    /**
+     * Saves a pending email which can't be rendered in error, without content : it is not sent.
+     */
+    public void markRenderError(final Long emailId, final Exception exception) throws IOException {
+        Email email = getEmailById(emailId);
+        if (email != null) {
+            email.setStatus(Email.EMAIl_STATUS_ERROR);
+            email.setProcessedCount(email.getProcessedCount() + 1);
+            saveEmail(email, exception);
+        }
+    }
+
+    /**
+     * @return the headers and the rendered parts of the email, whatever the format they were saved in.
+     */
+    public MimeMessagePreparatorImpl getEmailContent(final Email email) throws IOException {
+        Blob blob = email.getEmailContent();
+        if (blob == null) {
+            return null;
+        }
+        try {
+            return emailContentCodec.decode(blob.getBytes(1, (int) blob.length()));
+        } catch (SQLException e) {
+            throw new IOException("Email content can't be read, email id: " + email.getId(), e);
+        }
+    }
+
     /**
      * @throws IOException
      * @see org.hoteia.qalingo.core.dao.EmailDao#saveEmail(Email email,
@@ -0,0 +1,20 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.dao;
+
+/**
+ * Callback of the streaming finders : the entities are handled page by page,
+ * and evicted from the session after their page.
+ */
+public interface EntityHandler<T> {
+
+    void handle(T entity) throws Exception;
+
+}
@@ -9,18 +9,16 @@
  */
 package org.hoteia.qalingo.core.dao;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
-import javax.persistence.RollbackException;
-
 import org.hibernate.Criteria;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.hoteia.qalingo.core.domain.OrderCustomer;
-import org.hoteia.qalingo.core.domain.OrderNumber;
 import org.hoteia.qalingo.core.fetchplan.FetchPlan;
 import org.hoteia.qalingo.core.fetchplan.common.FetchPlanGraphCommon;
 import org.hoteia.qalingo.core.util.CoreUtil;
@@ -72,6 +70,14 @@ public class OrderCustomerDao extends AbstractGenericDao {
         return orderCustomers;
     }
 
+    public PagedResult<OrderCustomer> findOrders(final PageRequest pageRequest, Object... params) {
+        return findPage(new PagedQuery<OrderCustomer>(OrderCustomer.class) {}, pageRequest, params);
+    }
+
+    public int streamOrders(final int pageSize, final EntityHandler<OrderCustomer> entityHandler, Object... params) throws Exception {
+        return streamPages(new PagedQuery<OrderCustomer>(OrderCustomer.class) {}, PageRequest.first(pageSize, "dateCreate", true), entityHandler, params);
+    }
+
     public List<OrderCustomer> findOrdersByCustomerId(final Long customerId, Object... params) {
         Criteria criteria = createDefaultCriteria(OrderCustomer.class);
 
@@ -87,60 +93,42 @@ public class OrderCustomerDao extends AbstractGenericDao {
         return orderCustomers;
     }
 
+    /**
+     * The order number must be set : see OrderNumberService.
+     */
     public OrderCustomer createNewOrder(OrderCustomer orderCustomer) {
         if (orderCustomer.getDateCreate() == null) {
             orderCustomer.setDateCreate(new Date());
         }
         orderCustomer.setDateUpdate(new Date());
         if (orderCustomer.getId() == null) {
-            orderCustomer = createNewOrderWithRightOrderNumber(orderCustomer);
+            orderCustomer.setPrefixHashFolder(CoreUtil.generateEntityCode());
+            em.persist(orderCustomer);
+            return orderCustomer;
         }
-        return orderCustomer;
+        OrderCustomer mergedOrderCustomer = em.merge(orderCustomer);
+        em.flush();
+        return mergedOrderCustomer;
     }
 
-    private OrderCustomer createNewOrderWithRightOrderNumber(final OrderCustomer orderCustomer) {
-        OrderCustomer mergedOrSavedOrderCustomer = null;
-        try {
-            Session session = (Session) em.getDelegate();
-            String hql = "FROM OrderNumber";
-            Query query = session.createQuery(hql);
-            OrderNumber orderNumber = (OrderNumber) query.uniqueResult();
-            Integer previousLastOrderNumber = orderNumber.getLastOrderNumber();
-            Integer newLastOrderNumber = new Integer(previousLastOrderNumber.intValue() + 1);
-
-            orderCustomer.setPrefixHashFolder(CoreUtil.generateEntityCode());
-            orderCustomer.setOrderNum("" + newLastOrderNumber);
-
-//            if (orderCustomer.getId() != null) {
-//                if (em.contains(orderCustomer)) {
-//                    em.refresh(orderCustomer);
-//                }
-//                mergedOrSavedOrderCustomer = em.merge(orderCustomer);
-//                em.flush();
-//                return orderCustomer;
-//            } else {
-//                em.persist(orderCustomer);
-//                mergedOrSavedOrderCustomer = orderCustomer;
-//            }
-            mergedOrSavedOrderCustomer = em.merge(orderCustomer);
-
-            hql = "UPDATE OrderNumber SET lastOrderNumber = :newLastOrderNumber WHERE lastOrderNumber = :previousLastOrderNumber";
-            query = session.createQuery(hql);
-            query.setInteger("newLastOrderNumber", newLastOrderNumber);
-            query.setInteger("previousLastOrderNumber", previousLastOrderNumber);
-            int rowCount = query.executeUpdate();
-
-            if (rowCount == 0) {
-                em.getTransaction().rollback();
-                mergedOrSavedOrderCustomer = createNewOrderWithRightOrderNumber(orderCustomer);
-            }
-
-        } catch (RollbackException e) {
-            logger.debug("Failed to create a new Order with a specific OrderNumber increment", e);
-        } catch (Exception e) {
-            logger.error("Failed to create a new Order with a specific OrderNumber increment", e);
+    /**
+     * Reserves the next block of order numbers in one atomic increment of the
+     * order number row : the row lock is held until the end of the current
+     * transaction, which must be short.
+     * 
+     * @return the last order number of the reserved block.
+     */
+    public int reserveOrderNumberBlock(final int blockSize) {
+        Session session = (Session) em.getDelegate();
+        Query query = session.createQuery("UPDATE OrderNumber SET lastOrderNumber = lastOrderNumber + :blockSize");
+        query.setInteger("blockSize", blockSize);
+        int rowCount = query.executeUpdate();
+        if (rowCount != 1) {
+            throw new IllegalStateException("The order number table must contain one row, found: " + rowCount);
         }
-        return mergedOrSavedOrderCustomer;
+        query = session.createQuery("SELECT lastOrderNumber FROM OrderNumber");
+        Integer lastOrderNumber = (Integer) query.uniqueResult();
+        return lastOrderNumber.intValue();
     }
 
     public OrderCustomer saveOrUpdateOrder(OrderCustomer orderCustomer) {
@@ -172,6 +160,91 @@ public class OrderCustomerDao extends AbstractGenericDao {
         em.remove(orderCustomer);
     }
 
+    public Long getMaxOrderId() {
+        Session session = (Session) em.getDelegate();
+        return (Long) session.createQuery("SELECT MAX(o.id) FROM OrderCustomer o").uniqueResult();
+    }
+
+    /**
+     * @param afterId the last id read at the since date, or null to read all the orders of this date.
+     * @return the id and the update date of the orders updated since this date, by update date and id.
+     */
+    public List<Object[]> findOrderIdsUpdatedSince(final Date since, final Long afterId, final int maxResults) {
+        Session session = (Session) em.getDelegate();
+        Query query;
+        if (afterId == null) {
+            query = session.createQuery("SELECT o.id, o.dateUpdate FROM OrderCustomer o WHERE o.dateUpdate >= :since ORDER BY o.dateUpdate, o.id");
+        } else {
+            query = session.createQuery("SELECT o.id, o.dateUpdate FROM OrderCustomer o WHERE o.dateUpdate > :since OR (o.dateUpdate = :since AND o.id > :afterId)"
+                    + " ORDER BY o.dateUpdate, o.id");
+            query.setLong("afterId", afterId);
+        }
+        query.setTimestamp("since", since);
+        query.setMaxResults(maxResults);
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.list();
+        return rows;
+    }
+
+    /**
+     * Order items of the orders between these ids, as rows of values : order id,
+     * order date, market area id, order retailer id, item retailer id, currency
+     * code, item id, sku code, price, quantity.
+     */
+    public List<Object[]> findSalesItemRows(final Long fromOrderId, final Long toOrderId) {
+        return findSalesRows("SELECT o.id, o.dateCreate, o.marketAreaId, o.retailerId, i.retailerId, c.code, i.id, i.productSkuCode, i.price, i.quantity"
+                + " FROM OrderCustomer o JOIN o.orderShipments s JOIN s.orderItems i LEFT JOIN o.currency c", fromOrderId, toOrderId, null, "");
+    }
+
+    public List<Object[]> findSalesItemRows(final Collection<Long> orderIds) {
+        return findSalesRows("SELECT o.id, o.dateCreate, o.marketAreaId, o.retailerId, i.retailerId, c.code, i.id, i.productSkuCode, i.price, i.quantity"
+                + " FROM OrderCustomer o JOIN o.orderShipments s JOIN s.orderItems i LEFT JOIN o.currency c", null, null, orderIds, "");
+    }
+
+    /**
+     * Tax amount by order item of the orders between these ids : item id, tax amount.
+     */
+    public List<Object[]> findSalesTaxRows(final Long fromOrderId, final Long toOrderId) {
+        return findSalesRows("SELECT i.id, SUM(t.amount) FROM OrderCustomer o JOIN o.orderShipments s JOIN s.orderItems i JOIN i.orderTaxes t",
+                fromOrderId, toOrderId, null, " GROUP BY i.id");
+    }
+
+    public List<Object[]> findSalesTaxRows(final Collection<Long> orderIds) {
+        return findSalesRows("SELECT i.id, SUM(t.amount) FROM OrderCustomer o JOIN o.orderShipments s JOIN s.orderItems i JOIN i.orderTaxes t",
+                null, null, orderIds, " GROUP BY i.id");
+    }
+
+    /**
+     * Shipping amount of the orders between these ids : order id, order date,
+     * market area id, retailer id, currency code, shipping amount.
+     */
+    public List<Object[]> findSalesShippingRows(final Long fromOrderId, final Long toOrderId) {
+        return findSalesRows("SELECT o.id, o.dateCreate, o.marketAreaId, o.retailerId, c.code, SUM(s.price) FROM OrderCustomer o JOIN o.orderShipments s LEFT JOIN o.currency c",
+                fromOrderId, toOrderId, null, " GROUP BY o.id, o.dateCreate, o.marketAreaId, o.retailerId, c.code");
+    }
+
+    public List<Object[]> findSalesShippingRows(final Collection<Long> orderIds) {
+        return findSalesRows("SELECT o.id, o.dateCreate, o.marketAreaId, o.retailerId, c.code, SUM(s.price) FROM OrderCustomer o JOIN o.orderShipments s LEFT JOIN o.currency c",
+                null, null, orderIds, " GROUP BY o.id, o.dateCreate, o.marketAreaId, o.retailerId, c.code");
+    }
+
+    private List<Object[]> findSalesRows(final String select, final Long fromOrderId, final Long toOrderId, final Collection<Long> orderIds, final String groupBy) {
+        Session session = (Session) em.getDelegate();
+        Query query;
+        if (orderIds != null) {
+            query = session.createQuery(select + " WHERE o.id IN (:orderIds)" + groupBy);
+            query.setParameterList("orderIds", orderIds);
+        } else {
+            query = session.createQuery(select + " WHERE o.id BETWEEN :fromOrderId AND :toOrderId" + groupBy);
+            query.setLong("fromOrderId", fromOrderId);
+            query.setLong("toOrderId", toOrderId);
+        }
+        query.setReadOnly(true);
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.list();
+        return rows;
+    }
+
     @Override
     protected FetchPlan handleSpecificFetchMode(Criteria criteria, Object... params) {
         if (params != null && params.length > 0) {
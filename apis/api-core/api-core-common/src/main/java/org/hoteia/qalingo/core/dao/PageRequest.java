@@ -0,0 +1,139 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.dao;
+
+/**
+ * Page of a DAO finder : the entities are sorted by one property then by id,
+ * and a page is found after the last entity of the previous page (keyset
+ * paging), or at an offset for the first pages of a list screen.
+ *
+ * The sort property is a property of the root entity, never null.
+ */
+public class PageRequest {
+
+    public static final String SORT_PROPERTY_ID = "id";
+
+    private int pageSize;
+    private int offset;
+    private String sortProperty = SORT_PROPERTY_ID;
+    private boolean sortAscending = true;
+    private Object afterSortValue;
+    private Long afterId;
+    private boolean count;
+
+    public PageRequest(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be positive: " + pageSize);
+        }
+        this.pageSize = pageSize;
+    }
+
+    public static PageRequest first(int pageSize) {
+        return new PageRequest(pageSize);
+    }
+
+    public static PageRequest first(int pageSize, String sortProperty, boolean sortAscending) {
+        PageRequest pageRequest = new PageRequest(pageSize);
+        pageRequest.setSortProperty(sortProperty);
+        pageRequest.setSortAscending(sortAscending);
+        return pageRequest;
+    }
+
+    /**
+     * @param page first page is 0 : the offset paging reads the skipped rows, it is for the first pages.
+     */
+    public static PageRequest page(int page, int pageSize) {
+        PageRequest pageRequest = new PageRequest(pageSize);
+        pageRequest.setOffset(Math.max(page, 0) * pageSize);
+        return pageRequest;
+    }
+
+    /**
+     * @return the request of the page after this entity, with the same size and sort.
+     */
+    public PageRequest after(Object sortValue, Long id) {
+        PageRequest pageRequest = new PageRequest(pageSize);
+        pageRequest.setSortProperty(sortProperty);
+        pageRequest.setSortAscending(sortAscending);
+        pageRequest.setAfterSortValue(sortValue);
+        pageRequest.setAfterId(id);
+        return pageRequest;
+    }
+
+    public boolean isKeyset() {
+        return afterId != null;
+    }
+
+    public boolean isSortById() {
+        return SORT_PROPERTY_ID.equals(sortProperty);
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public String getSortProperty() {
+        return sortProperty;
+    }
+
+    public void setSortProperty(String sortProperty) {
+        this.sortProperty = sortProperty != null ? sortProperty : SORT_PROPERTY_ID;
+    }
+
+    public boolean isSortAscending() {
+        return sortAscending;
+    }
+
+    public void setSortAscending(boolean sortAscending) {
+        this.sortAscending = sortAscending;
+    }
+
+    public Object getAfterSortValue() {
+        return afterSortValue;
+    }
+
+    public void setAfterSortValue(Object afterSortValue) {
+        this.afterSortValue = afterSortValue;
+    }
+
+    public Long getAfterId() {
+        return afterId;
+    }
+
+    public void setAfterId(Long afterId) {
+        this.afterId = afterId;
+    }
+
+    /**
+     * @return true if the total count of the entities is read with the page.
+     */
+    public boolean isCount() {
+        return count;
+    }
+
+    public void setCount(boolean count) {
+        this.count = count;
+    }
+
+    @Override
+    public String toString() {
+        return "PageRequest [pageSize=" + pageSize + ", offset=" + offset + ", sortProperty=" + sortProperty + ", sortAscending=" + sortAscending
+                + ", afterSortValue=" + afterSortValue + ", afterId=" + afterId + ", count=" + count + "]";
+    }
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.dao;
+
+import java.util.List;
+
+/**
+ * Entities of a {@link PageRequest}, with the request of the next page.
+ */
+public class PagedResult<T> {
+
+    private final List<T> items;
+    private final PageRequest nextPageRequest;
+    private final Long totalCount;
+
+    public PagedResult(List<T> items, PageRequest nextPageRequest, Long totalCount) {
+        this.items = items;
+        this.nextPageRequest = nextPageRequest;
+        this.totalCount = totalCount;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public boolean hasNextPage() {
+        return nextPageRequest != null;
+    }
+
+    /**
+     * @return the keyset request of the next page, null on the last page.
+     */
+    public PageRequest getNextPageRequest() {
+        return nextPageRequest;
+    }
+
+    /**
+     * @return the number of entities of the finder, null if it was not counted.
+     */
+    public Long getTotalCount() {
+        return totalCount;
+    }
+
+}
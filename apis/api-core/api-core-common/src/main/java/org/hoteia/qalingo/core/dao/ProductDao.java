@@ -53,6 +53,7 @@ public class ProductDao extends AbstractGenericDao {
         ProductMarketing productMarketing = (ProductMarketing) criteria.uniqueResult();
         if(productMarketing != null){
             productMarketing.setFetchPlan(fetchPlan);
+            loadEntityCollections(productMarketing, fetchPlan);
         }
         return productMarketing;
 	}
@@ -64,34 +65,74 @@ public class ProductDao extends AbstractGenericDao {
         ProductMarketing productMarketing = (ProductMarketing) criteria.uniqueResult();
         if(productMarketing != null){
             productMarketing.setFetchPlan(fetchPlan);
+            loadEntityCollections(productMarketing, fetchPlan);
         }
 		return productMarketing;
 	}
 	
 	public List<ProductMarketing> findProductMarketings(Object... params) {
         Criteria criteria = createDefaultCriteria(ProductMarketing.class);
-        handleSpecificProductMarketingFetchMode(criteria, params);
+        FetchPlan fetchPlan = handleSpecificProductMarketingFetchMode(criteria, params);
         criteria.addOrder(Order.asc("id"));
 
         @SuppressWarnings("unchecked")
         List<ProductMarketing> productMarketings = criteria.list();
-		return productMarketings;
+		return loadCollections(productMarketings, fetchPlan);
 	}
 
+    public PagedResult<ProductMarketing> findProductMarketings(final PageRequest pageRequest, Object... params) {
+        return findPage(new ProductMarketingPagedQuery(), pageRequest, params);
+    }
+
+    public int streamProductMarketings(final int pageSize, final EntityHandler<ProductMarketing> entityHandler, Object... params) throws Exception {
+        return streamPages(new ProductMarketingPagedQuery(), PageRequest.first(pageSize), entityHandler, params);
+    }
+
+    /**
+     * Keyset chunk of ids : the next ids after this one, by id.
+     */
+    public List<Long> findProductMarketingIds(final Long lastProductMarketingId, int maxResults) {
+        Criteria criteria = getSession().createCriteria(ProductMarketing.class);
+        if(lastProductMarketingId != null){
+            criteria.add(Restrictions.gt("id", lastProductMarketingId));
+        }
+        criteria.setProjection(Projections.id());
+        criteria.addOrder(Order.asc("id"));
+        criteria.setMaxResults(maxResults);
+
+        @SuppressWarnings("unchecked")
+        List<Long> productMarketingIds = criteria.list();
+        return productMarketingIds;
+    }
+
+    public List<ProductMarketing> findProductMarketingsByIds(final List<Long> productMarketingIds, Object... params) {
+        Criteria criteria = createDefaultCriteria(ProductMarketing.class);
+        FetchPlan fetchPlan = handleSpecificProductMarketingFetchMode(criteria, params);
+        criteria.add(Restrictions.in("id", productMarketingIds));
+        criteria.addOrder(Order.asc("id"));
+
+        @SuppressWarnings("unchecked")
+        List<ProductMarketing> productMarketings = criteria.list();
+        for (ProductMarketing productMarketing : productMarketings) {
+            productMarketing.setFetchPlan(fetchPlan);
+        }
+        return loadCollections(productMarketings, fetchPlan);
+    }
+
     public List<ProductMarketing> findProductMarketingByRandom(int maxResults, Object... params) {
         Criteria criteria = createDefaultCriteria(ProductMarketing.class);
-        handleSpecificProductMarketingFetchMode(criteria, params);
+        FetchPlan fetchPlan = handleSpecificProductMarketingFetchMode(criteria, params);
         criteria.add(Restrictions.sqlRestriction("1=1 ORDER BY RAND(123)"));
         criteria.setMaxResults(maxResults);
 
         @SuppressWarnings("unchecked")
         List<ProductMarketing> productMarketings = criteria.list();
-        return productMarketings;
+        return loadCollections(productMarketings, fetchPlan);
     }
 	
 	public List<ProductMarketing> findProductMarketings(final String text, Object... params) {
         Criteria criteria = createDefaultCriteria(ProductMarketing.class);
-        handleSpecificProductMarketingFetchMode(criteria, params);
+        FetchPlan fetchPlan = handleSpecificProductMarketingFetchMode(criteria, params);
 
         criteria.add(Restrictions.or(Restrictions.like("code", text, MatchMode.ANYWHERE), Restrictions.like("name", text, MatchMode.ANYWHERE), Restrictions.like("description", text, MatchMode.ANYWHERE)));
         
@@ -99,12 +140,12 @@ public class ProductDao extends AbstractGenericDao {
 
         @SuppressWarnings("unchecked")
         List<ProductMarketing> productMarketings = criteria.list();
-		return productMarketings;
+		return loadCollections(productMarketings, fetchPlan);
 	}
 
     public List<ProductMarketing> findProductMarketingsByBrandId(final Long brandId, Object... params) {
         Criteria criteria = createDefaultCriteria(ProductMarketing.class);
-        handleSpecificProductMarketingFetchMode(criteria, params);
+        FetchPlan fetchPlan = handleSpecificProductMarketingFetchMode(criteria, params);
 
         criteria.setFetchMode("productBrand", FetchMode.JOIN);
         criteria.createAlias("productBrand", "productBrand", JoinType.LEFT_OUTER_JOIN);
@@ -114,12 +155,12 @@ public class ProductDao extends AbstractGenericDao {
 
         @SuppressWarnings("unchecked")
         List<ProductMarketing> productMarketings = criteria.list();
-        return productMarketings;
+        return loadCollections(productMarketings, fetchPlan);
     }
 
 	public List<ProductMarketing> findProductMarketingsByBrandCode(final String brandCode, Object... params) {
         Criteria criteria = createDefaultCriteria(ProductMarketing.class);
-        handleSpecificProductMarketingFetchMode(criteria, params);
+        FetchPlan fetchPlan = handleSpecificProductMarketingFetchMode(criteria, params);
 
         criteria.setFetchMode("productBrand", FetchMode.JOIN);
         criteria.createAlias("productBrand", "productBrand", JoinType.LEFT_OUTER_JOIN);
@@ -129,12 +170,12 @@ public class ProductDao extends AbstractGenericDao {
 
         @SuppressWarnings("unchecked")
         List<ProductMarketing> productMarketings = criteria.list();
-        return productMarketings;
+        return loadCollections(productMarketings, fetchPlan);
 	}
 
     public List<ProductMarketing> findProductMarketingsByMasterCatalogCategoryId(final Long categoryId, Object... params) {
         Criteria criteria = createDefaultCriteria(ProductMarketing.class);
-        handleSpecificProductMarketingFetchMode(criteria, params);
+        FetchPlan fetchPlan = handleSpecificProductMarketingFetchMode(criteria, params);
 
         criteria.createAlias("productSkus", "productSku", JoinType.LEFT_OUTER_JOIN);
         criteria.createAlias("productSku.catalogCategoryMasterProductSkuRels", "catalogCategoryProductSkuRel", JoinType.LEFT_OUTER_JOIN);
@@ -144,12 +185,12 @@ public class ProductDao extends AbstractGenericDao {
 
         @SuppressWarnings("unchecked")
         List<ProductMarketing> productMarketings = criteria.list();
-        return productMarketings;
+        return loadCollections(productMarketings, fetchPlan);
     }
 
     public List<ProductMarketing> findProductMarketingsNotInThisMasterCatalogCategoryId(final Long categoryId, Object... params) {
         Criteria criteria = createDefaultCriteria(ProductMarketing.class);
-        handleSpecificProductMarketingFetchMode(criteria, params);
+        FetchPlan fetchPlan = handleSpecificProductMarketingFetchMode(criteria, params);
 
         criteria.createAlias("productSkus", "productSku", JoinType.LEFT_OUTER_JOIN);
         criteria.createAlias("productSku.catalogCategoryMasterProductSkuRels", "catalogCategoryProductSkuRel", JoinType.LEFT_OUTER_JOIN);
@@ -159,12 +200,12 @@ public class ProductDao extends AbstractGenericDao {
 
         @SuppressWarnings("unchecked")
         List<ProductMarketing> productMarketings = criteria.list();
-        return productMarketings;
+        return loadCollections(productMarketings, fetchPlan);
     }
 	    
 	public List<ProductMarketing> findProductMarketingsByVirtualCatalogCategoryId(final Long categoryId, Object... params) {
         Criteria criteria = createDefaultCriteria(ProductMarketing.class);
-        handleSpecificProductMarketingFetchMode(criteria, params);
+        FetchPlan fetchPlan = handleSpecificProductMarketingFetchMode(criteria, params);
 
         criteria.createAlias("productSkus", "productSku", JoinType.LEFT_OUTER_JOIN);
         criteria.createAlias("productSku.catalogCategoryVirtualProductSkuRels", "catalogCategoryProductSkuRel", JoinType.LEFT_OUTER_JOIN);
@@ -174,12 +215,12 @@ public class ProductDao extends AbstractGenericDao {
 
         @SuppressWarnings("unchecked")
         List<ProductMarketing> productMarketings = criteria.list();
-        return productMarketings;
+        return loadCollections(productMarketings, fetchPlan);
 	}
 	
     public List<ProductMarketing> findProductMarketingsNotInThisVirtualCatalogCategoryId(final Long categoryId, Object... params) {
         Criteria criteria = createDefaultCriteria(ProductMarketing.class);
-        handleSpecificProductMarketingFetchMode(criteria, params);
+        FetchPlan fetchPlan = handleSpecificProductMarketingFetchMode(criteria, params);
 
         criteria.createAlias("productSkus", "productSku", JoinType.LEFT_OUTER_JOIN);
         criteria.createAlias("productSku.catalogCategoryVirtualProductSkuRels", "catalogCategoryProductSkuRel", JoinType.LEFT_OUTER_JOIN);
@@ -189,7 +230,7 @@ public class ProductDao extends AbstractGenericDao {
 
         @SuppressWarnings("unchecked")
         List<ProductMarketing> productMarketings = criteria.list();
-        return productMarketings;
+        return loadCollections(productMarketings, fetchPlan);
     }
     
 	public ProductMarketing saveOrUpdateProductMarketing(final ProductMarketing productMarketing) {
@@ -347,10 +388,23 @@ public class ProductDao extends AbstractGenericDao {
 	
     protected FetchPlan handleSpecificProductMarketingFetchMode(Criteria criteria, Object... params) {
         if (params != null && params.length > 0) {
-            return super.handleSpecificFetchMode(criteria, params);
+            return handleTwoPhaseFetchMode(criteria, params);
         } else {
-            return super.handleSpecificFetchMode(criteria, FetchPlanGraphProduct.productMarketingDefaultFetchPlan());
+            return handleTwoPhaseFetchMode(criteria, FetchPlanGraphProduct.productMarketingDefaultFetchPlan());
+        }
+    }
+
+    protected class ProductMarketingPagedQuery extends PagedQuery<ProductMarketing> {
+
+        protected ProductMarketingPagedQuery() {
+            super(ProductMarketing.class);
+        }
+
+        @Override
+        protected FetchPlan handleFetchMode(Criteria criteria, Object... params) {
+            return handleSpecificProductMarketingFetchMode(criteria, params);
         }
+
     }
     
     // PRODUCT SKU
@@ -362,6 +416,7 @@ public class ProductDao extends AbstractGenericDao {
         ProductSku productSku = (ProductSku) criteria.uniqueResult();
         if(productSku != null){
             productSku.setFetchPlan(fetchPlan);
+            loadEntityCollections(productSku, fetchPlan);
         }
         return productSku;
     }
@@ -373,25 +428,26 @@ public class ProductDao extends AbstractGenericDao {
         ProductSku productSku = (ProductSku) criteria.uniqueResult();
         if(productSku != null){
             productSku.setFetchPlan(fetchPlan);
+            loadEntityCollections(productSku, fetchPlan);
         }
         return productSku;
     }
         
     public List<ProductSku> findProductSkusByproductMarketingId(final Long productMarketing, Object... params) {
         Criteria criteria = createDefaultCriteria(ProductSku.class);
-        handleSpecificProductSkuFetchMode(criteria, params);
+        FetchPlan fetchPlan = handleSpecificProductSkuFetchMode(criteria, params);
 
         criteria.add(Restrictions.eq("productMarketing", productMarketing));
         criteria.addOrder(Order.asc("id"));
 
         @SuppressWarnings("unchecked")
         List<ProductSku> productSkus = criteria.list();
-        return productSkus;
+        return loadCollections(productSkus, fetchPlan);
     }
     
     public List<ProductSku> findProductSkus(final String text, Object... params) {
         Criteria criteria = createDefaultCriteria(ProductSku.class);
-        handleSpecificProductSkuFetchMode(criteria, params);
+        FetchPlan fetchPlan = handleSpecificProductSkuFetchMode(criteria, params);
         
         criteria.add(Restrictions.or(Restrictions.eq("code", "%" + text + "%")));
         criteria.add(Restrictions.or(Restrictions.eq("name", "%" + text + "%")));
@@ -401,12 +457,12 @@ public class ProductDao extends AbstractGenericDao {
 
         @SuppressWarnings("unchecked")
         List<ProductSku> productSkus = criteria.list();
-        return productSkus;
+        return loadCollections(productSkus, fetchPlan);
     }
 
     public List<ProductSku> findProductSkusByMasterCatalogCategoryId(final Long categoryId, Object... params) {
         Criteria criteria = createDefaultCriteria(ProductSku.class);
-        handleSpecificProductMarketingFetchMode(criteria, params);
+        FetchPlan fetchPlan = handleSpecificProductMarketingFetchMode(criteria, params);
 
         criteria.createAlias("catalogCategoryMasterProductSkuRels", "catalogCategoryProductSkuRel", JoinType.LEFT_OUTER_JOIN);
         criteria.add(Restrictions.eq("catalogCategoryProductSkuRel.pk.catalogCategoryMaster.id", categoryId));
@@ -415,7 +471,7 @@ public class ProductDao extends AbstractGenericDao {
 
         @SuppressWarnings("unchecked")
         List<ProductSku> productSkus = criteria.list();
-        return productSkus;
+        return loadCollections(productSkus, fetchPlan);
     }
 
     public List<ProductSku> findProductSkusNotInThisMasterCatalogCategoryId(final Long categoryId, Object... params) {
@@ -425,19 +481,19 @@ public class ProductDao extends AbstractGenericDao {
         subquery.setProjection(Projections.property("id"));
 
         Criteria criteria = createDefaultCriteria(ProductSku.class);
-        handleSpecificProductMarketingFetchMode(criteria, params);
+        FetchPlan fetchPlan = handleSpecificProductMarketingFetchMode(criteria, params);
         criteria.add(Subqueries.notIn("id", subquery));
 
         criteria.addOrder(Order.asc("id"));
 
         @SuppressWarnings("unchecked")
         List<ProductSku> productSkus = criteria.list();
-        return productSkus;
+        return loadCollections(productSkus, fetchPlan);
     }
     
     public List<ProductSku> findProductSkusByVirtualCatalogCategoryId(final Long categoryId, Object... params) {
         Criteria criteria = createDefaultCriteria(ProductSku.class);
-        handleSpecificProductMarketingFetchMode(criteria, params);
+        FetchPlan fetchPlan = handleSpecificProductMarketingFetchMode(criteria, params);
 
         criteria.createAlias("catalogCategoryVirtualProductSkuRels", "catalogCategoryProductSkuRel", JoinType.LEFT_OUTER_JOIN);
         criteria.add(Restrictions.eq("catalogCategoryProductSkuRel.pk.catalogCategoryVirtual.id", categoryId));
@@ -446,7 +502,22 @@ public class ProductDao extends AbstractGenericDao {
 
         @SuppressWarnings("unchecked")
         List<ProductSku> productSkus = criteria.list();
-        return productSkus;
+        return loadCollections(productSkus, fetchPlan);
+    }
+
+    public PagedResult<ProductSku> findProductSkusByVirtualCatalogCategoryId(final Long categoryId, final PageRequest pageRequest, Object... params) {
+        return findPage(new PagedQuery<ProductSku>(ProductSku.class) {
+            @Override
+            protected void addRestrictions(Criteria criteria) {
+                criteria.createAlias("catalogCategoryVirtualProductSkuRels", "catalogCategoryProductSkuRel", JoinType.LEFT_OUTER_JOIN);
+                criteria.add(Restrictions.eq("catalogCategoryProductSkuRel.pk.catalogCategoryVirtual.id", categoryId));
+            }
+
+            @Override
+            protected FetchPlan handleFetchMode(Criteria criteria, Object... params) {
+                return handleSpecificProductMarketingFetchMode(criteria, params);
+            }
+        }, pageRequest, params);
     }
     
     public List<ProductSku> findProductSkusNotInThisVirtualCatalogCategoryId(final Long categoryId, Object... params) {
@@ -465,19 +536,19 @@ public class ProductDao extends AbstractGenericDao {
         }
         
         Criteria criteria = createDefaultCriteria(ProductSku.class);
-        handleSpecificProductMarketingFetchMode(criteria, params);
+        FetchPlan fetchPlan = handleSpecificProductMarketingFetchMode(criteria, params);
         criteria.add(Restrictions.not(Restrictions.in("id", productSkuIds)));
         
         criteria.addOrder(Order.asc("id"));
 
         @SuppressWarnings("unchecked")
         List<ProductSku> productSkus = criteria.list();
-        return productSkus;
+        return loadCollections(productSkus, fetchPlan);
     }
     
     public List<ProductSku> findProductSkusByStoreId(final Long storeId, Object... params) {
         Criteria criteria = createDefaultCriteria(ProductSku.class);
-        handleSpecificProductMarketingFetchMode(criteria, params);
+        FetchPlan fetchPlan = handleSpecificProductMarketingFetchMode(criteria, params);
 
         criteria.createAlias("stores", "stores", JoinType.LEFT_OUTER_JOIN);
         criteria.add(Restrictions.eq("stores.id", storeId));
@@ -486,7 +557,38 @@ public class ProductDao extends AbstractGenericDao {
 
         @SuppressWarnings("unchecked")
         List<ProductSku> productSkus = criteria.list();
-        return productSkus;
+        return loadCollections(productSkus, fetchPlan);
+    }
+
+    /**
+     * Keyset chunk of ids : the next ids after this one, by id.
+     */
+    public List<Long> findProductSkuIds(final Long lastProductSkuId, int maxResults) {
+        Criteria criteria = getSession().createCriteria(ProductSku.class);
+        if(lastProductSkuId != null){
+            criteria.add(Restrictions.gt("id", lastProductSkuId));
+        }
+        criteria.setProjection(Projections.id());
+        criteria.addOrder(Order.asc("id"));
+        criteria.setMaxResults(maxResults);
+
+        @SuppressWarnings("unchecked")
+        List<Long> productSkuIds = criteria.list();
+        return productSkuIds;
+    }
+
+    public List<ProductSku> findProductSkusByIds(final List<Long> productSkuIds, Object... params) {
+        Criteria criteria = createDefaultCriteria(ProductSku.class);
+        FetchPlan fetchPlan = handleSpecificProductSkuFetchMode(criteria, params);
+        criteria.add(Restrictions.in("id", productSkuIds));
+        criteria.addOrder(Order.asc("id"));
+
+        @SuppressWarnings("unchecked")
+        List<ProductSku> productSkus = criteria.list();
+        for (ProductSku productSku : productSkus) {
+            productSku.setFetchPlan(fetchPlan);
+        }
+        return loadCollections(productSkus, fetchPlan);
     }
     
     public ProductSku saveOrUpdateProductSku(final ProductSku productSku) {
@@ -513,9 +615,9 @@ public class ProductDao extends AbstractGenericDao {
     
     protected FetchPlan handleSpecificProductSkuFetchMode(Criteria criteria, Object... params) {
         if (params != null && params.length > 0) {
-            return super.handleSpecificFetchMode(criteria, params);
+            return handleTwoPhaseFetchMode(criteria, params);
         } else {
-            return super.handleSpecificFetchMode(criteria, FetchPlanGraphProduct.productSkuDefaultFetchPlan());
+            return handleTwoPhaseFetchMode(criteria, FetchPlanGraphProduct.productSkuDefaultFetchPlan());
         }
     }
     
@@ -385,6 +385,14 @@ public class RetailerDao extends AbstractGenericDao {
         List<Store> stores = criteria.list();
 		return stores;
 	}
+
+    public PagedResult<Store> findStores(final PageRequest pageRequest, Object... params) {
+        return findPage(new StorePagedQuery(), pageRequest, params);
+    }
+
+    public int streamStores(final int pageSize, final EntityHandler<Store> entityHandler, Object... params) throws Exception {
+        return streamPages(new StorePagedQuery(), PageRequest.first(pageSize, "code", true), entityHandler, params);
+    }
 	
     public List<Store> findStoresByRetailerId(final Long retailerId, Object... params) {
         Criteria criteria = createDefaultCriteria(Store.class);
@@ -415,6 +423,48 @@ public class RetailerDao extends AbstractGenericDao {
         List<Store> stores = criteria.list();
         return stores;
     }
+
+    /**
+     * Keyset chunk of ids : the next ids after this one, by id.
+     */
+    public List<Long> findStoreIds(final Long lastStoreId, int maxResults) {
+        Criteria criteria = getSession().createCriteria(Store.class);
+        if(lastStoreId != null){
+            criteria.add(Restrictions.gt("id", lastStoreId));
+        }
+        criteria.setProjection(Projections.id());
+        criteria.addOrder(Order.asc("id"));
+        criteria.setMaxResults(maxResults);
+
+        @SuppressWarnings("unchecked")
+        List<Long> storeIds = criteria.list();
+        return storeIds;
+    }
+
+    public List<Store> findStoresByIds(final List<Long> storeIds, Object... params) {
+        Criteria criteria = createDefaultCriteria(Store.class);
+        FetchPlan fetchPlan = handleSpecificStoreFetchMode(criteria, params);
+        criteria.add(Restrictions.in("id", storeIds));
+        criteria.addOrder(Order.asc("id"));
+
+        @SuppressWarnings("unchecked")
+        List<Store> stores = criteria.list();
+        for (Store store : stores) {
+            store.setFetchPlan(fetchPlan);
+        }
+        return stores;
+    }
+    
+    /**
+     * @return id, code, latitude, longitude and country code of all the stores, without loading the entities.
+     */
+    public List<Object[]> findStoreLocations() {
+        Query query = createSqlQuery("SELECT store.id, store.code, store.latitude, store.longitude, store.countryCode FROM Store store");
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> storeLocations = query.getResultList();
+        return storeLocations;
+    }
     
     public List<GeolocatedStore> findStoresByGeoloc(final String latitude, final String longitude, final String distance, int maxResults, Object... params) {
         Float latitudeFloat = new Float(latitude);
@@ -597,4 +647,17 @@ public class RetailerDao extends AbstractGenericDao {
         }
     }
 
+    protected class StorePagedQuery extends PagedQuery<Store> {
+
+        protected StorePagedQuery() {
+            super(Store.class);
+        }
+
+        @Override
+        protected FetchPlan handleFetchMode(Criteria criteria, Object... params) {
+            return handleSpecificStoreFetchMode(criteria, params);
+        }
+
+    }
+
 }
\ No newline at end of file
@@ -11,9 +11,15 @@ package org.hoteia.qalingo.core.domain;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.persistence.Transient;
 
@@ -29,9 +35,14 @@ public abstract class AbstractExtendEntity<E> implements Serializable {
      */
     private static final long serialVersionUID = -171223653896353957L;
 
+    private static final Object NO_ATTRIBUTE = new Object();
+
     @Transient
     private FetchPlan fetchPlan;
 
+    @Transient
+    private transient volatile AttributeIndex attributeIndex;
+
     public FetchPlan getFetchPlan() {
         return fetchPlan;
     }
@@ -77,21 +88,55 @@ public abstract class AbstractExtendEntity<E> implements Serializable {
     }
     
     public AbstractAttribute getAttribute(String attributeCode, Long marketAreaId, String localizationCode) {
-        AbstractAttribute AbstractAttributeToReturn = null;
+        AttributeIndex index = getAttributeIndex();
+        if (index == null || attributeCode == null) {
+            return null;
+        }
+        String resolvedKey = attributeCode + "|" + marketAreaId + "|" + localizationCode;
+        Object resolved = index.resolvedAttributes.get(resolvedKey);
+        if (resolved == null) {
+            AbstractAttribute AbstractAttributeToReturn = null;
 
-        // 1: GET THE GLOBAL VALUE
-        AbstractAttribute globalAttribute = getAttribute(getGlobalAttributes(), attributeCode, marketAreaId, localizationCode);
+            // 1: GET THE GLOBAL VALUE
+            AbstractAttribute globalAttribute = getAttribute(index.getGlobalAttributes(attributeCode), attributeCode, marketAreaId, localizationCode);
 
-        // 2: GET THE MARKET AREA VALUE
-        AbstractAttribute marketAreaAttribute = getAttribute(getMarketAreaAttributes(marketAreaId), attributeCode, marketAreaId, localizationCode);
-        
-        if(marketAreaAttribute != null){
-            AbstractAttributeToReturn = marketAreaAttribute;
-        } else if (globalAttribute != null){
-            AbstractAttributeToReturn = globalAttribute;
+            // 2: GET THE MARKET AREA VALUE
+            AbstractAttribute marketAreaAttribute = getAttribute(index.getMarketAreaAttributes(attributeCode), attributeCode, marketAreaId, localizationCode);
+
+            if(marketAreaAttribute != null){
+                AbstractAttributeToReturn = marketAreaAttribute;
+            } else if (globalAttribute != null){
+                AbstractAttributeToReturn = globalAttribute;
+            }
+
+            resolved = AbstractAttributeToReturn != null ? AbstractAttributeToReturn : NO_ATTRIBUTE;
+            index.resolvedAttributes.putIfAbsent(resolvedKey, resolved);
         }
-        
-        return AbstractAttributeToReturn;
+        return resolved != NO_ATTRIBUTE ? (AbstractAttribute) resolved : null;
+    }
+
+    /**
+     * The index is rebuilt when the attributes set is replaced, or when its
+     * content changes : an attribute added or removed, or modified in place
+     * (definition, market area, localization). The values are read from the
+     * attributes, not indexed.
+     */
+    protected AttributeIndex getAttributeIndex() {
+        Set<E> attributes = getAttributes();
+        if (attributes == null
+                || !Hibernate.isInitialized(attributes)) {
+            return null;
+        }
+        AttributeIndex index = attributeIndex;
+        if (index == null || !index.isIndexOf(attributes)) {
+            index = new AttributeIndex(attributes);
+            attributeIndex = index;
+        }
+        return index;
+    }
+
+    public void resetAttributeIndex() {
+        attributeIndex = null;
     }
     
     public AbstractAttribute getAttribute(List<AbstractAttribute> attributes, String attributeCode, Long marketAreaId, String localizationCode) {
@@ -157,4 +202,83 @@ public abstract class AbstractExtendEntity<E> implements Serializable {
     public AbstractAttribute getAttribute(String attributeCode, Long marketAreaId) {
         return getAttribute(attributeCode, marketAreaId, null);
     }
+
+    /**
+     * Global and market area attributes by attribute code, and the attributes
+     * already resolved by code, market area and localization.
+     */
+    protected static class AttributeIndex {
+
+        private final Set<?> attributes;
+        private final int size;
+        private final long signature;
+        private final Map<String, List<AbstractAttribute>> globalAttributesByCode = new HashMap<String, List<AbstractAttribute>>();
+        private final Map<String, List<AbstractAttribute>> marketAreaAttributesByCode = new HashMap<String, List<AbstractAttribute>>();
+        private final ConcurrentMap<String, Object> resolvedAttributes = new ConcurrentHashMap<String, Object>();
+
+        public AttributeIndex(Set<?> attributes) {
+            this.attributes = attributes;
+            this.size = attributes.size();
+            this.signature = signature(attributes);
+            for (Iterator<?> iterator = attributes.iterator(); iterator.hasNext();) {
+                AbstractAttribute attribute = (AbstractAttribute) iterator.next();
+                AttributeDefinition attributeDefinition = attribute.getAttributeDefinition();
+                if (attributeDefinition == null
+                        || attributeDefinition.getCode() == null) {
+                    continue;
+                }
+                Map<String, List<AbstractAttribute>> attributesByCode = attributeDefinition.isGlobal() ? globalAttributesByCode : marketAreaAttributesByCode;
+                String code = normalizeCode(attributeDefinition.getCode());
+                List<AbstractAttribute> codeAttributes = attributesByCode.get(code);
+                if (codeAttributes == null) {
+                    codeAttributes = new ArrayList<AbstractAttribute>(2);
+                    attributesByCode.put(code, codeAttributes);
+                }
+                codeAttributes.add(attribute);
+            }
+        }
+
+        public boolean isIndexOf(Set<?> attributes) {
+            return this.attributes == attributes && this.size == attributes.size() && this.signature == signature(attributes);
+        }
+
+        /**
+         * @return a hash of the attributes and of what the index is built on : one
+         *         pass on the attributes, without allocation.
+         */
+        protected static long signature(Set<?> attributes) {
+            long signature = 0;
+            for (Iterator<?> iterator = attributes.iterator(); iterator.hasNext();) {
+                AbstractAttribute attribute = (AbstractAttribute) iterator.next();
+                long hash = System.identityHashCode(attribute);
+                AttributeDefinition attributeDefinition = attribute.getAttributeDefinition();
+                if (attributeDefinition != null) {
+                    hash = 31 * hash + (attributeDefinition.getCode() != null ? attributeDefinition.getCode().hashCode() : 0);
+                    hash = 31 * hash + (attributeDefinition.isGlobal() ? 1 : 2);
+                }
+                hash = 31 * hash + (attribute.getMarketAreaId() != null ? attribute.getMarketAreaId().hashCode() : 0);
+                hash = 31 * hash + (attribute.getLocalizationCode() != null ? attribute.getLocalizationCode().hashCode() : 0);
+                // THE ORDER OF THE SET IS NOT SIGNIFICANT
+                signature += hash * 0x9E3779B97F4A7C15L;
+            }
+            return signature;
+        }
+
+        public List<AbstractAttribute> getGlobalAttributes(String attributeCode) {
+            List<AbstractAttribute> codeAttributes = globalAttributesByCode.get(normalizeCode(attributeCode));
+            return codeAttributes != null ? codeAttributes : Collections.<AbstractAttribute> emptyList();
+        }
+
+        public List<AbstractAttribute> getMarketAreaAttributes(String attributeCode) {
+            List<AbstractAttribute> codeAttributes = marketAreaAttributesByCode.get(normalizeCode(attributeCode));
+            return codeAttributes != null ? codeAttributes : Collections.<AbstractAttribute> emptyList();
+        }
+
+        private static String normalizeCode(String attributeCode) {
+            // THE CODES ARE COMPARED IGNORING THE CASE
+            return attributeCode.toUpperCase(Locale.ENGLISH);
+        }
+
+    }
+
 }
@@ -86,6 +86,9 @@ public class Cart extends AbstractEntity {
     @Transient
     private Set<Tax> taxes = new HashSet<Tax>();
 
+    @Transient
+    private transient CartPricing pricing;
+
     @Temporal(TemporalType.TIMESTAMP)
     @Column(name = "DATE_CREATE")
     private Date dateCreate;
@@ -244,80 +247,53 @@ public class Cart extends AbstractEntity {
         this.dateUpdate = dateUpdate;
     }
 
-    public BigDecimal getDeliveryMethodTotal() {
-        final Set<DeliveryMethod> deliveryMethods = getDeliveryMethods();
-        BigDecimal cartDeliveryMethodTotal = new BigDecimal("0");
-        if (deliveryMethods != null
-                && Hibernate.isInitialized(deliveryMethods)) {
-            for (Iterator<DeliveryMethod> iterator = deliveryMethods.iterator(); iterator.hasNext();) {
-                final DeliveryMethod deliveryMethod = (DeliveryMethod) iterator.next();
-                if(deliveryMethod != null){
-                    BigDecimal price = deliveryMethod.getPrice(getCurrency().getId());
-                    if (price != null) {
-                        cartDeliveryMethodTotal = cartDeliveryMethodTotal.add(price);
-                    }
-                }
-            }
+    /**
+     * @return the priced snapshot of the cart : the cart service updates the
+     *         lines it changes, the totals getters check it against the cart.
+     */
+    public CartPricing getPricing() {
+        if (pricing == null) {
+            pricing = new CartPricing(this);
         }
-        return cartDeliveryMethodTotal;
+        return pricing;
+    }
+
+    protected CartPricing getRefreshedPricing() {
+        CartPricing cartPricing = getPricing();
+        cartPricing.refresh();
+        return cartPricing;
+    }
+
+    public BigDecimal getDeliveryMethodTotal() {
+        return getRefreshedPricing().getDeliveryMethodTotal();
     }
 
     public String getDeliveryMethodTotalWithStandardCurrencySign() {
-        return getCurrency().formatPriceWithStandardCurrencySign(getDeliveryMethodTotal());
+        return getRefreshedPricing().getDeliveryMethodTotalWithStandardCurrencySign();
     }
 
     public BigDecimal getCartItemTotal() {
-        BigDecimal cartItemsTotal = new BigDecimal("0");
-        if (cartItems != null
-                && Hibernate.isInitialized(cartItems)) {
-            for (Iterator<CartItem> iterator = cartItems.iterator(); iterator.hasNext();) {
-                final CartItem cartItem = (CartItem) iterator.next();
-                cartItemsTotal = cartItemsTotal.add(cartItem.getTotalAmountCartItem(getMarketAreaId(), getRetailerId()));
-            }
-        }
-        return cartItemsTotal;
+        return getRefreshedPricing().getCartItemTotal();
     }
 
     public String getCartItemTotalWithStandardCurrencySign() {
-        if(getCurrency() != null){
-            return getCurrency().formatPriceWithStandardCurrencySign(getCartItemTotal());
-        }
-        return null;
+        return getRefreshedPricing().getCartItemTotalWithStandardCurrencySign();
     }
 
     public BigDecimal getTaxTotal() {
-        BigDecimal cartFeesTotal = new BigDecimal("0");
-        final Set<Tax> taxes = getTaxes();
-        if (taxes != null
-                && Hibernate.isInitialized(taxes)) {
-            for (Iterator<Tax> iterator = taxes.iterator(); iterator.hasNext();) {
-                final Tax tax = (Tax) iterator.next();
-
-                // TODO TAX can be only on product or deliveyMethod or both
-
-                BigDecimal taxesCalc = getDeliveryMethodTotal();
-                taxesCalc = taxesCalc.multiply(tax.getPercent());
-                taxesCalc = taxesCalc.divide(new BigDecimal("100"));
-                cartFeesTotal = cartFeesTotal.add(taxesCalc);
-            }
-        }
-        return cartFeesTotal;
+        return getRefreshedPricing().getTaxTotal();
     }
 
     public String getTaxTotalWithStandardCurrencySign() {
-        return getCurrency().formatPriceWithStandardCurrencySign(getTaxTotal());
+        return getRefreshedPricing().getTaxTotalWithStandardCurrencySign();
     }
 
     public BigDecimal getCartTotal() {
-        BigDecimal carTotal = new BigDecimal("0");
-        carTotal = carTotal.add(getCartItemTotal());
-        carTotal = carTotal.add(getDeliveryMethodTotal());
-        carTotal = carTotal.add(getTaxTotal());
-        return carTotal;
+        return getRefreshedPricing().getCartTotal();
     }
 
     public String getCartTotalWithStandardCurrencySign() {
-        return getCurrency().formatPriceWithStandardCurrencySign(getCartTotal());
+        return getRefreshedPricing().getCartTotalWithStandardCurrencySign();
     }
 
     @Override
@@ -11,7 +11,6 @@ package org.hoteia.qalingo.core.domain;
 
 import java.math.BigDecimal;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Set;
 
 import javax.persistence.Column;
@@ -192,16 +191,8 @@ public class CartItem extends AbstractEntity {
 
     public ProductSkuPrice getPrice(final Long marketAreaId, final Long retailerId) {
         if (productSku != null 
-                && Hibernate.isInitialized(productSku)
-                && productSku.getPrices() != null 
-                && Hibernate.isInitialized(productSku.getPrices())) {
-            for (Iterator<ProductSkuPrice> iterator = productSku.getPrices().iterator(); iterator.hasNext();) {
-                final ProductSkuPrice productSkuPrice = (ProductSkuPrice) iterator.next();
-                if (productSkuPrice.getMarketAreaId() != null && productSkuPrice.getMarketAreaId().equals(marketAreaId) && productSkuPrice.getRetailerId() != null
-                        && productSkuPrice.getRetailerId().equals(retailerId)) {
-                    return productSkuPrice;
-                }
-            }
+                && Hibernate.isInitialized(productSku)) {
+            return productSku.getPrice(marketAreaId, retailerId);
         }
         return null;
     }
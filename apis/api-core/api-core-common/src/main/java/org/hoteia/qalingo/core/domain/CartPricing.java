@@ -0,0 +1,372 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.domain;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.Hibernate;
+
+/**
+ * Priced snapshot of a cart : the line totals, the delivery and tax totals,
+ * the cart total and their formatted values.
+ *
+ * The {@link org.hoteia.qalingo.core.service.CartService} updates the lines it
+ * changes. Before each read, the snapshot is checked against the cart (items,
+ * quantities, product skus and their prices, delivery methods and taxes) and
+ * only the lines which are not the ones of the cart anymore are priced again.
+ *
+ * There is a line by cart item : the same sku can be in the cart more than once
+ * for a retailer (added by another request, or by a cart merged at the login).
+ *
+ * The cart is shared by the requests of its session : the updates are
+ * synchronized, and the lines are priced in a new map which replaces the
+ * one the readers may be iterating.
+ */
+public class CartPricing {
+
+    private static final BigDecimal ZERO = new BigDecimal("0");
+    private static final BigDecimal HUNDRED = new BigDecimal("100");
+
+    private final Cart cart;
+
+    // THE LINES BY CART ITEM INSTANCE : REPLACED, NEVER CHANGED
+    private volatile Map<CartItem, CartPricingLine> lines = new IdentityHashMap<CartItem, CartPricingLine>();
+
+    private Long marketAreaId;
+    private Long retailerId;
+    private volatile CurrencyReferential currency;
+
+    private Object[] deliveryMethods = new Object[0];
+    private Object[] taxes = new Object[0];
+
+    private volatile BigDecimal cartItemTotal = ZERO;
+    private volatile BigDecimal deliveryMethodTotal = ZERO;
+    private volatile BigDecimal taxTotal = ZERO;
+    private volatile BigDecimal cartTotal = ZERO;
+
+    private volatile String cartItemTotalWithStandardCurrencySign;
+    private volatile String deliveryMethodTotalWithStandardCurrencySign;
+    private volatile String taxTotalWithStandardCurrencySign;
+    private volatile String cartTotalWithStandardCurrencySign;
+
+    public CartPricing(Cart cart) {
+        this.cart = cart;
+        this.marketAreaId = cart.getMarketAreaId();
+        this.retailerId = cart.getRetailerId();
+        this.currency = cart.getCurrency();
+    }
+
+    /**
+     * Prices again what changed in the cart since the last read.
+     */
+    public synchronized void refresh() {
+        Map<CartItem, CartPricingLine> newLines = lines;
+        boolean changed = false;
+        if (!equals(marketAreaId, cart.getMarketAreaId())
+                || !equals(retailerId, cart.getRetailerId())) {
+            // ALL THE PRICES CHANGE
+            marketAreaId = cart.getMarketAreaId();
+            retailerId = cart.getRetailerId();
+            newLines = new IdentityHashMap<CartItem, CartPricingLine>();
+            changed = true;
+        }
+        boolean currencyChanged = false;
+        if (currency != cart.getCurrency()) {
+            // THE DELIVERY METHOD PRICES ARE BY CURRENCY
+            currency = cart.getCurrency();
+            currencyChanged = true;
+        }
+
+        final Set<CartItem> cartItems = cart.getCartItems();
+        if (cartItems != null
+                && Hibernate.isInitialized(cartItems)) {
+            int itemCount = 0;
+            for (Iterator<CartItem> iterator = cartItems.iterator(); iterator.hasNext();) {
+                final CartItem cartItem = (CartItem) iterator.next();
+                if (cartItem == null || cartItem.getProductSkuCode() == null) {
+                    continue;
+                }
+                itemCount++;
+                CartPricingLine line = newLines.get(cartItem);
+                if (line == null || !line.isLineOf(cartItem, marketAreaId, retailerId)) {
+                    if (newLines == lines) {
+                        newLines = new IdentityHashMap<CartItem, CartPricingLine>(lines);
+                    }
+                    changed |= priceLine(newLines, cartItem, line);
+                }
+            }
+            if (itemCount != newLines.size()) {
+                if (newLines == lines) {
+                    newLines = new IdentityHashMap<CartItem, CartPricingLine>(lines);
+                }
+                changed |= removeDeletedLines(newLines, cartItems);
+            }
+        } else if (!newLines.isEmpty()) {
+            newLines = new IdentityHashMap<CartItem, CartPricingLine>();
+            changed = true;
+        }
+        lines = newLines;
+
+        if (currencyChanged
+                || !isSnapshotOf(deliveryMethods, cart.getDeliveryMethods())
+                || !isSnapshotOf(taxes, cart.getTaxes())) {
+            priceDeliveryMethods();
+            changed = true;
+        }
+
+        if (changed) {
+            computeTotals();
+        }
+    }
+
+    /**
+     * Prices again the line of this cart item, after a quantity update.
+     */
+    public synchronized void updateCartItem(final CartItem cartItem) {
+        Map<CartItem, CartPricingLine> newLines = new IdentityHashMap<CartItem, CartPricingLine>(lines);
+        boolean changed = priceLine(newLines, cartItem, lines.get(cartItem));
+        lines = newLines;
+        if (changed) {
+            computeTotals();
+        }
+    }
+
+    public synchronized void removeCartItem(final CartItem cartItem) {
+        if (lines.containsKey(cartItem)) {
+            Map<CartItem, CartPricingLine> newLines = new IdentityHashMap<CartItem, CartPricingLine>(lines);
+            newLines.remove(cartItem);
+            lines = newLines;
+            computeTotals();
+        }
+    }
+
+    /**
+     * Prices again the delivery methods and the taxes, which only apply to
+     * the delivery methods.
+     */
+    public synchronized void updateDeliveryMethods() {
+        priceDeliveryMethods();
+        computeTotals();
+    }
+
+    protected boolean priceLine(final Map<CartItem, CartPricingLine> newLines, final CartItem cartItem, final CartPricingLine previousLine) {
+        CartPricingLine line = new CartPricingLine(cartItem, marketAreaId, retailerId);
+        newLines.put(cartItem, line);
+        return previousLine == null || previousLine.total.compareTo(line.total) != 0;
+    }
+
+    protected boolean removeDeletedLines(final Map<CartItem, CartPricingLine> newLines, final Set<CartItem> cartItems) {
+        // THE CART ITEMS ARE COMPARED BY INSTANCE : THEIR EQUALS CHANGES WITH THEIR ID
+        Set<CartItem> cartItemInstances = Collections.newSetFromMap(new IdentityHashMap<CartItem, Boolean>());
+        for (CartItem cartItem : cartItems) {
+            if (cartItem != null && cartItem.getProductSkuCode() != null) {
+                cartItemInstances.add(cartItem);
+            }
+        }
+        return newLines.keySet().retainAll(cartItemInstances);
+    }
+
+    protected void priceDeliveryMethods() {
+        final Set<DeliveryMethod> cartDeliveryMethods = cart.getDeliveryMethods();
+        deliveryMethodTotal = ZERO;
+        if (cartDeliveryMethods != null
+                && Hibernate.isInitialized(cartDeliveryMethods)
+                && cart.getCurrency() != null) {
+            for (Iterator<DeliveryMethod> iterator = cartDeliveryMethods.iterator(); iterator.hasNext();) {
+                final DeliveryMethod deliveryMethod = (DeliveryMethod) iterator.next();
+                if (deliveryMethod != null) {
+                    BigDecimal price = deliveryMethod.getPrice(cart.getCurrency().getId());
+                    if (price != null) {
+                        deliveryMethodTotal = deliveryMethodTotal.add(price);
+                    }
+                }
+            }
+        }
+        deliveryMethods = snapshot(cartDeliveryMethods);
+
+        final Set<Tax> cartTaxes = cart.getTaxes();
+        taxTotal = ZERO;
+        if (cartTaxes != null
+                && Hibernate.isInitialized(cartTaxes)) {
+            for (Iterator<Tax> iterator = cartTaxes.iterator(); iterator.hasNext();) {
+                final Tax tax = (Tax) iterator.next();
+
+                // TODO TAX can be only on product or deliveyMethod or both
+
+                BigDecimal taxesCalc = deliveryMethodTotal;
+                taxesCalc = taxesCalc.multiply(tax.getPercent());
+                taxesCalc = taxesCalc.divide(HUNDRED);
+                taxTotal = taxTotal.add(taxesCalc);
+            }
+        }
+        taxes = snapshot(cartTaxes);
+    }
+
+    protected void computeTotals() {
+        BigDecimal total = ZERO;
+        for (CartPricingLine line : lines.values()) {
+            total = total.add(line.total);
+        }
+        cartItemTotal = total;
+        cartTotal = cartItemTotal.add(deliveryMethodTotal).add(taxTotal);
+        resetFormattedTotals();
+    }
+
+    protected void resetFormattedTotals() {
+        cartItemTotalWithStandardCurrencySign = null;
+        deliveryMethodTotalWithStandardCurrencySign = null;
+        taxTotalWithStandardCurrencySign = null;
+        cartTotalWithStandardCurrencySign = null;
+    }
+
+    /**
+     * @return the total of the lines of this sku for this retailer, null when
+     *         the sku is not in the cart for this retailer.
+     */
+    public BigDecimal getCartItemTotal(final String productSkuCode, final Long retailerId) {
+        BigDecimal total = null;
+        for (Map.Entry<CartItem, CartPricingLine> entry : lines.entrySet()) {
+            CartItem cartItem = entry.getKey();
+            if (productSkuCode.equals(cartItem.getProductSkuCode())
+                    && equals(retailerId, cartItem.getRetailerId())) {
+                total = total == null ? entry.getValue().total : total.add(entry.getValue().total);
+            }
+        }
+        return total;
+    }
+
+    public BigDecimal getCartItemTotal() {
+        return cartItemTotal;
+    }
+
+    public BigDecimal getDeliveryMethodTotal() {
+        return deliveryMethodTotal;
+    }
+
+    public BigDecimal getTaxTotal() {
+        return taxTotal;
+    }
+
+    public BigDecimal getCartTotal() {
+        return cartTotal;
+    }
+
+    public String getCartItemTotalWithStandardCurrencySign() {
+        if (cartItemTotalWithStandardCurrencySign == null && currency != null) {
+            cartItemTotalWithStandardCurrencySign = currency.formatPriceWithStandardCurrencySign(cartItemTotal);
+        }
+        return cartItemTotalWithStandardCurrencySign;
+    }
+
+    public String getDeliveryMethodTotalWithStandardCurrencySign() {
+        if (deliveryMethodTotalWithStandardCurrencySign == null && currency != null) {
+            deliveryMethodTotalWithStandardCurrencySign = currency.formatPriceWithStandardCurrencySign(deliveryMethodTotal);
+        }
+        return deliveryMethodTotalWithStandardCurrencySign;
+    }
+
+    public String getTaxTotalWithStandardCurrencySign() {
+        if (taxTotalWithStandardCurrencySign == null && currency != null) {
+            taxTotalWithStandardCurrencySign = currency.formatPriceWithStandardCurrencySign(taxTotal);
+        }
+        return taxTotalWithStandardCurrencySign;
+    }
+
+    public String getCartTotalWithStandardCurrencySign() {
+        if (cartTotalWithStandardCurrencySign == null && currency != null) {
+            cartTotalWithStandardCurrencySign = currency.formatPriceWithStandardCurrencySign(cartTotal);
+        }
+        return cartTotalWithStandardCurrencySign;
+    }
+
+    private static Object[] snapshot(final Set<?> elements) {
+        if (elements == null
+                || !Hibernate.isInitialized(elements)) {
+            return new Object[0];
+        }
+        return elements.toArray();
+    }
+
+    private static boolean isSnapshotOf(final Object[] snapshot, final Set<?> elements) {
+        if (elements == null
+                || !Hibernate.isInitialized(elements)) {
+            return snapshot.length == 0;
+        }
+        if (snapshot.length != elements.size()) {
+            return false;
+        }
+        int i = 0;
+        for (Object element : elements) {
+            if (snapshot[i++] != element) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equals(final Long first, final Long second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    /**
+     * Total of a cart item, with what it was computed from.
+     */
+    protected static class CartPricingLine {
+
+        private final ProductSku productSku;
+        private final boolean priced;
+        private final int quantity;
+        private final ProductSkuPrice price;
+        private final BigDecimal salePrice;
+        private final BigDecimal total;
+
+        public CartPricingLine(CartItem cartItem, Long marketAreaId, Long retailerId) {
+            this.productSku = cartItem.getProductSku();
+            this.priced = isPriceable(productSku);
+            this.quantity = cartItem.getQuantity();
+            this.price = cartItem.getPrice(marketAreaId, retailerId);
+            this.salePrice = price != null ? price.getSalePrice() : null;
+            this.total = cartItem.getTotalAmountCartItem(marketAreaId, retailerId);
+        }
+
+        public boolean isLineOf(CartItem cartItem, Long marketAreaId, Long retailerId) {
+            if (productSku != cartItem.getProductSku() || quantity != cartItem.getQuantity()) {
+                return false;
+            }
+            // A LINE PRICED WITHOUT ITS LAZY PRICES IS PRICED AGAIN ONCE THEY ARE LOADED
+            if (!priced) {
+                return !isPriceable(productSku);
+            }
+            // A PRICE REPLACED OR UPDATED IN PLACE
+            ProductSkuPrice currentPrice = cartItem.getPrice(marketAreaId, retailerId);
+            if (currentPrice != price) {
+                return false;
+            }
+            return price == null || equals(salePrice, price.getSalePrice());
+        }
+
+        private static boolean equals(BigDecimal first, BigDecimal second) {
+            return first == null ? second == null : second != null && first.compareTo(second) == 0;
+        }
+
+        private static boolean isPriceable(ProductSku productSku) {
+            return productSku != null
+                    && Hibernate.isInitialized(productSku)
+                    && Hibernate.isInitialized(productSku.getPrices());
+        }
+
+    }
+
+}
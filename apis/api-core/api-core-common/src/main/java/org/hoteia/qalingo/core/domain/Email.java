@@ -44,6 +44,7 @@ public class Email extends AbstractEntity {
 	public static final String EMAIl_TYPE_ABANDONED_SHOPPING_CART					= "ABANDONED_SHOPPING_CART";
 	
 	public static final String EMAIl_STATUS_PENDING = "PENDING";
+	public static final String EMAIl_STATUS_SENDING = "SENDING";
 	public static final String EMAIl_STATUS_SENDED = "SENDED";
 	public static final String EMAIl_STATUS_ERROR = "ERROR";
 
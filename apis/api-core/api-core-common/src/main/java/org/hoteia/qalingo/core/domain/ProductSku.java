@@ -11,9 +11,11 @@ package org.hoteia.qalingo.core.domain;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.CascadeType;
@@ -121,6 +123,9 @@ public class ProductSku extends AbstractExtendEntity {
     
     @Transient
     private Integer ranking;
+
+    @Transient
+    private transient volatile PriceIndex priceIndex;
     
     @Temporal(TemporalType.TIMESTAMP)
     @Column(name = "DATE_CREATE")
@@ -252,12 +257,12 @@ public class ProductSku extends AbstractExtendEntity {
 	public ProductSkuPrice getPrice(final Long marketAreaId, final Long retailerId){
 	    if(prices != null
 	            && Hibernate.isInitialized(prices)){
-	        for (ProductSkuPrice productSkuPrice : prices) {
-	            if(productSkuPrice.getMarketAreaId().equals(marketAreaId) 
-	                    && productSkuPrice.getRetailerId().equals(retailerId)) {
-	                return productSkuPrice;
-	            }
-	        }    
+	        PriceIndex index = priceIndex;
+	        if (index == null || !index.isIndexOf(prices)) {
+	            index = new PriceIndex(prices);
+	            priceIndex = index;
+	        }
+	        return index.getPrice(marketAreaId, retailerId);
 	    }
 	    return null;
 	}
@@ -466,4 +471,62 @@ public class ProductSku extends AbstractExtendEntity {
                 + dateCreate + ", dateUpdate=" + dateUpdate + "]";
     }
 	
+    /**
+     * Prices by market area and retailer, rebuilt when the prices set is
+     * replaced or when its prices, their market area or their retailer change.
+     */
+    protected static class PriceIndex {
+
+        private final Set<ProductSkuPrice> prices;
+        private final int size;
+        private final long signature;
+        private final Map<Long, Map<Long, ProductSkuPrice>> pricesByMarketArea = new HashMap<Long, Map<Long, ProductSkuPrice>>();
+
+        public PriceIndex(Set<ProductSkuPrice> prices) {
+            this.prices = prices;
+            this.size = prices.size();
+            this.signature = signature(prices);
+            for (ProductSkuPrice productSkuPrice : prices) {
+                if (productSkuPrice.getMarketAreaId() == null
+                        || productSkuPrice.getRetailerId() == null) {
+                    continue;
+                }
+                Map<Long, ProductSkuPrice> pricesByRetailer = pricesByMarketArea.get(productSkuPrice.getMarketAreaId());
+                if (pricesByRetailer == null) {
+                    pricesByRetailer = new HashMap<Long, ProductSkuPrice>(4);
+                    pricesByMarketArea.put(productSkuPrice.getMarketAreaId(), pricesByRetailer);
+                }
+                if (!pricesByRetailer.containsKey(productSkuPrice.getRetailerId())) {
+                    pricesByRetailer.put(productSkuPrice.getRetailerId(), productSkuPrice);
+                }
+            }
+        }
+
+        public boolean isIndexOf(Set<ProductSkuPrice> prices) {
+            return this.prices == prices && this.size == prices.size() && this.signature == signature(prices);
+        }
+
+        /**
+         * @return a hash of the prices and of what the index is built on : one
+         *         pass on the prices, without allocation.
+         */
+        protected static long signature(Set<ProductSkuPrice> prices) {
+            long signature = 0;
+            for (ProductSkuPrice productSkuPrice : prices) {
+                long hash = System.identityHashCode(productSkuPrice);
+                hash = 31 * hash + (productSkuPrice.getMarketAreaId() != null ? productSkuPrice.getMarketAreaId().hashCode() : 0);
+                hash = 31 * hash + (productSkuPrice.getRetailerId() != null ? productSkuPrice.getRetailerId().hashCode() : 0);
+                // THE ORDER OF THE SET IS NOT SIGNIFICANT
+                signature += hash * 0x9E3779B97F4A7C15L;
+            }
+            return signature;
+        }
+
+        public ProductSkuPrice getPrice(Long marketAreaId, Long retailerId) {
+            Map<Long, ProductSkuPrice> pricesByRetailer = pricesByMarketArea.get(marketAreaId);
+            return pricesByRetailer != null ? pricesByRetailer.get(retailerId) : null;
+        }
+
+    }
+
 }
\ No newline at end of file
@@ -25,6 +25,10 @@ public class GeolocData implements Serializable {
     private String latitude;
     private String longitude;
 
+    // LOOKUPS QUEUED FOR GOOGLE : APPLIED BY A NEXT REQUEST, FROM THE GEOCODER CACHE
+    private boolean addressPending;
+    private boolean locationPending;
+
     public GeolocData() {
     }
 
@@ -67,5 +71,27 @@ public class GeolocData implements Serializable {
     public void setLongitude(String longitude) {
         this.longitude = longitude;
     }
+
+    /**
+     * @return true while the city and the country of the latitude/longitude are geocoded.
+     */
+    public boolean isAddressPending() {
+        return addressPending;
+    }
+
+    public void setAddressPending(boolean addressPending) {
+        this.addressPending = addressPending;
+    }
+
+    /**
+     * @return true while the latitude/longitude of the city are geocoded.
+     */
+    public boolean isLocationPending() {
+        return locationPending;
+    }
+
+    public void setLocationPending(boolean locationPending) {
+        this.locationPending = locationPending;
+    }
     
 }
\ No newline at end of file
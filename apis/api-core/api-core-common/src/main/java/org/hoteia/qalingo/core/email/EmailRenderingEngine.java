@@ -0,0 +1,429 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.email;
+
+import java.beans.PropertyDescriptor;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang.SerializationUtils;
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.hibernate.Hibernate;
+import org.hoteia.qalingo.core.dao.EmailDao;
+import org.hoteia.qalingo.core.domain.AbstractEntity;
+import org.hoteia.qalingo.core.domain.Email;
+import org.hoteia.qalingo.core.i18n.message.CoreMessageSource;
+import org.hoteia.qalingo.core.pojo.RequestData;
+import org.hoteia.qalingo.core.util.impl.MimeMessagePreparatorImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Renders the emails off the request thread : the caller copies the model
+ * into detached values and saves a pending email without content, in its
+ * transaction. Once it commits, a render job renders the html and the text
+ * parts on a bounded pool and saves them in the email, which the outbox
+ * dispatcher sends from then on.
+ *
+ * The entities of the model are copied as the map of their simple
+ * properties : the templates read them as <code>$customer.firstname</code>,
+ * not their associations. The parsed templates are kept by market area,
+ * localization and template, and the email wording by locale.
+ *
+ * While the queue of the pool is full, the caller renders the email itself,
+ * in its transaction.
+ */
+@Component(value = "emailRenderingEngine")
+@ManagedResource
+public class EmailRenderingEngine {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final String HTML_CONTENT_SUFFIX = "-html-content.vm";
+    public static final String TEXT_CONTENT_SUFFIX = "-text-content.vm";
+
+    @Autowired
+    protected VelocityEngine velocityEngine;
+
+    @Autowired
+    protected EmailDao emailDao;
+
+    @Autowired
+    protected CoreMessageSource coreMessageSource;
+
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    @Value("${email.render.threads:4}")
+    private int threads = 4;
+
+    @Value("${email.render.queue.capacity:500}")
+    private int queueCapacity = 500;
+
+    @Value("${email.render.template.cache:true}")
+    private boolean templateCacheEnabled = true;
+
+    private final ConcurrentMap<String, Template> templates = new ConcurrentHashMap<String, Template>();
+    private final ConcurrentMap<Locale, Map<String, String>> wordings = new ConcurrentHashMap<Locale, Map<String, String>>();
+
+    private ThreadPoolExecutor renderExecutor;
+
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong callerRenderedCount = new AtomicLong();
+    private final AtomicLong renderedCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong templateLoadCount = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        renderExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "email-render-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new RejectedExecutionHandler() {
+            public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                // THE QUEUE WAS FILLED SINCE THE CALLER CHECKED IT : THE CALLER RENDERS, IN A TRANSACTION OF ITS OWN
+                callerRenderedCount.incrementAndGet();
+                runnable.run();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        renderExecutor.shutdown();
+        try {
+            if (!renderExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Email render jobs not done at shutdown, their emails stay without content: " + renderExecutor.getQueue().size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Saves a pending email of this type, without content, and queues the
+     * rendering of its parts <code>templatePrefix-html-content.vm</code> and
+     * <code>templatePrefix-text-content.vm</code> once the transaction of the
+     * caller commits. Nothing is rendered if it rolls back.
+     *
+     * @throws Exception if the model can't be copied or the email saved.
+     */
+    public Email renderAndSave(final RequestData requestData, final String emailType, final String velocityPath, final String templatePrefix,
+                               final MimeMessagePreparatorImpl mimeMessagePreparator, final Map<String, Object> model) throws Exception {
+        final String keyPrefix = requestData.getMarketArea().getCode() + ":" + requestData.getMarketAreaLocalization().getCode() + ":" + velocityPath;
+        try {
+            final Email email = new Email();
+            email.setType(emailType);
+            email.setStatus(Email.EMAIl_STATUS_PENDING);
+
+            if (renderExecutor.getQueue().remainingCapacity() == 0
+                    || !TransactionSynchronizationManager.isSynchronizationActive()) {
+                callerRenderedCount.incrementAndGet();
+                render(keyPrefix, velocityPath, templatePrefix, mimeMessagePreparator, model);
+                emailDao.saveEmail(email, mimeMessagePreparator);
+                renderedCount.incrementAndGet();
+                return email;
+            }
+
+            final Map<String, Object> detachedModel = detachModel(model);
+            emailDao.saveOrUpdateEmail(email);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                public void afterCommit() {
+                    queuedCount.incrementAndGet();
+                    renderExecutor.execute(new RenderJob(email.getId(), emailType, keyPrefix, velocityPath, templatePrefix, mimeMessagePreparator, detachedModel));
+                }
+            });
+            return email;
+        } catch (Exception e) {
+            errorCount.incrementAndGet();
+            logger.error("Error, can't build the email " + emailType + " to " + mimeMessagePreparator.getTo(), e);
+            throw e;
+        }
+    }
+
+    protected void render(final String keyPrefix, final String velocityPath, final String templatePrefix,
+                          final MimeMessagePreparatorImpl mimeMessagePreparator, final Map<String, Object> model) throws Exception {
+        // ONE CONTEXT BY PART : A #set IN A TEMPLATE WRITES IN THE MAP OF ITS CONTEXT
+        mimeMessagePreparator.setHtmlContent(merge(keyPrefix, velocityPath + templatePrefix + HTML_CONTENT_SUFFIX, new VelocityContext(new HashMap<String, Object>(model))));
+        mimeMessagePreparator.setPlainTextContent(merge(keyPrefix, velocityPath + templatePrefix + TEXT_CONTENT_SUFFIX, new VelocityContext(new HashMap<String, Object>(model))));
+    }
+
+    /**
+     * @return a copy of the model which does not hold the entities nor the beans of the caller.
+     */
+    protected Map<String, Object> detachModel(final Map<String, Object> model) {
+        Map<String, Object> detachedModel = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> entry : model.entrySet()) {
+            detachedModel.put(entry.getKey(), detach(entry.getValue()));
+        }
+        return detachedModel;
+    }
+
+    protected Object detach(final Object value) {
+        if (value == null || BeanUtils.isSimpleValueType(value.getClass())) {
+            return value;
+        }
+        if (value instanceof AbstractEntity) {
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            for (PropertyDescriptor propertyDescriptor : BeanUtils.getPropertyDescriptors(Hibernate.getClass(value))) {
+                if (propertyDescriptor.getReadMethod() != null
+                        && BeanUtils.isSimpleValueType(propertyDescriptor.getPropertyType())) {
+                    try {
+                        properties.put(propertyDescriptor.getName(), propertyDescriptor.getReadMethod().invoke(value));
+                    } catch (Exception e) {
+                        logger.debug("Email model property can't be read: " + propertyDescriptor.getName(), e);
+                    }
+                }
+            }
+            return properties;
+        }
+        if (value instanceof Map) {
+            Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(entry.getKey(), detach(entry.getValue()));
+            }
+            return map;
+        }
+        if (value instanceof Collection) {
+            List<Object> list = new ArrayList<Object>();
+            for (Object item : (Collection<?>) value) {
+                list.add(detach(item));
+            }
+            return list;
+        }
+        if (value instanceof Serializable) {
+            return SerializationUtils.clone((Serializable) value);
+        }
+        return value;
+    }
+
+    /**
+     * Renders the email and saves its content, in a transaction of its own :
+     * an email which can't be rendered is saved in error, without content.
+     */
+    protected void renderAndSaveContent(final RenderJob job) {
+        try {
+            render(job.keyPrefix, job.velocityPath, job.templatePrefix, job.mimeMessagePreparator, job.model);
+            Boolean saved = newTransactionTemplate().execute(new TransactionCallback<Boolean>() {
+                public Boolean doInTransaction(TransactionStatus status) {
+                    try {
+                        return emailDao.saveRenderedEmail(job.emailId, job.mimeMessagePreparator);
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Error, can't save the email: " + e.getMessage(), e);
+                    }
+                }
+            });
+            if (saved) {
+                renderedCount.incrementAndGet();
+            } else {
+                logger.warn("Email " + job.emailId + " was claimed before its render, it is not saved");
+            }
+        } catch (final Exception e) {
+            errorCount.incrementAndGet();
+            logger.error("Error, can't build the email " + job.emailType + " to " + job.mimeMessagePreparator.getTo(), e);
+            try {
+                newTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        try {
+                            emailDao.markRenderError(job.emailId, e);
+                        } catch (Exception saveException) {
+                            throw new IllegalStateException("Error, can't save the email error: " + saveException.getMessage(), saveException);
+                        }
+                    }
+                });
+            } catch (Exception saveException) {
+                logger.error("Email " + job.emailId + " render error can't be saved", saveException);
+            }
+        }
+    }
+
+    private TransactionTemplate newTransactionTemplate() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        // THE CALLER RENDERS AFTER ITS COMMIT WHILE THE QUEUE IS FULL
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transactionTemplate;
+    }
+
+    protected String merge(final String keyPrefix, final String templateLocation, final VelocityContext context) throws Exception {
+        StringWriter writer = new StringWriter();
+        getTemplate(keyPrefix, templateLocation).merge(context, writer);
+        return writer.toString();
+    }
+
+    protected Template getTemplate(final String keyPrefix, final String templateLocation) throws Exception {
+        if (!templateCacheEnabled) {
+            templateLoadCount.incrementAndGet();
+            return velocityEngine.getTemplate(templateLocation);
+        }
+        String key = keyPrefix + ":" + templateLocation;
+        Template template = templates.get(key);
+        if (template == null) {
+            templateLoadCount.incrementAndGet();
+            template = velocityEngine.getTemplate(templateLocation);
+            Template previous = templates.putIfAbsent(key, template);
+            if (previous != null) {
+                template = previous;
+            }
+        }
+        return template;
+    }
+
+    /**
+     * @return the email wording of this locale, read only : it is shared by the emails.
+     */
+    public Map<String, String> getWording(final Locale locale) {
+        if (!templateCacheEnabled) {
+            return coreMessageSource.loadWording(Email.WORDING_SCOPE_EMAIL, locale);
+        }
+        Map<String, String> wording = wordings.get(locale);
+        if (wording == null) {
+            wording = Collections.unmodifiableMap(coreMessageSource.loadWording(Email.WORDING_SCOPE_EMAIL, locale));
+            Map<String, String> previous = wordings.putIfAbsent(locale, wording);
+            if (previous != null) {
+                wording = previous;
+            }
+        }
+        return wording;
+    }
+
+    @ManagedOperation
+    public void clearTemplates() {
+        templates.clear();
+        wordings.clear();
+    }
+
+    @ManagedAttribute
+    public int getTemplateCount() {
+        return templates.size();
+    }
+
+    @ManagedAttribute
+    public long getTemplateLoadCount() {
+        return templateLoadCount.get();
+    }
+
+    @ManagedAttribute
+    public int getQueueSize() {
+        return renderExecutor.getQueue().size();
+    }
+
+    @ManagedAttribute
+    public int getActiveCount() {
+        return renderExecutor.getActiveCount();
+    }
+
+    @ManagedAttribute
+    public long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    /**
+     * @return the number of emails rendered by their caller, while the queue was full.
+     */
+    @ManagedAttribute
+    public long getCallerRenderedCount() {
+        return callerRenderedCount.get();
+    }
+
+    @ManagedAttribute
+    public long getRenderedCount() {
+        return renderedCount.get();
+    }
+
+    @ManagedAttribute
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    @ManagedAttribute
+    public boolean isTemplateCacheEnabled() {
+        return templateCacheEnabled;
+    }
+
+    @ManagedAttribute
+    public void setTemplateCacheEnabled(boolean templateCacheEnabled) {
+        this.templateCacheEnabled = templateCacheEnabled;
+        if (!templateCacheEnabled) {
+            clearTemplates();
+        }
+    }
+
+    /**
+     * The render of a saved email : the model and the headers are detached from the caller.
+     */
+    protected class RenderJob implements Runnable {
+
+        private final Long emailId;
+        private final String emailType;
+        private final String keyPrefix;
+        private final String velocityPath;
+        private final String templatePrefix;
+        private final MimeMessagePreparatorImpl mimeMessagePreparator;
+        private final Map<String, Object> model;
+
+        protected RenderJob(Long emailId, String emailType, String keyPrefix, String velocityPath, String templatePrefix,
+                            MimeMessagePreparatorImpl mimeMessagePreparator, Map<String, Object> model) {
+            this.emailId = emailId;
+            this.emailType = emailType;
+            this.keyPrefix = keyPrefix;
+            this.velocityPath = velocityPath;
+            this.templatePrefix = templatePrefix;
+            this.mimeMessagePreparator = mimeMessagePreparator;
+            this.model = model;
+        }
+
+        public void run() {
+            renderAndSaveContent(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.email.outbox;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Number of emails sent by recipient domain and by minute : the big mailbox
+ * providers throttle or reject the senders above their rate.
+ */
+public class DomainRateLimiter {
+
+    private static final long WINDOW = 60000;
+
+    private final Map<String, Window> windows = new HashMap<String, Window>();
+
+    private volatile int maxPerMinute;
+
+    public DomainRateLimiter(int maxPerMinute) {
+        this.maxPerMinute = maxPerMinute;
+    }
+
+    /**
+     * @return true if an email can be sent to this domain now, and counts it.
+     */
+    public synchronized boolean tryAcquire(final String domain, final long now) {
+        if (maxPerMinute <= 0) {
+            return true;
+        }
+        Window window = windows.get(domain);
+        if (window == null || now - window.start >= WINDOW) {
+            if (window == null) {
+                purge(now);
+            }
+            window = new Window(now);
+            windows.put(domain, window);
+        }
+        if (window.count >= maxPerMinute) {
+            return false;
+        }
+        window.count++;
+        return true;
+    }
+
+    public static String getDomain(final String addresses) {
+        if (addresses == null) {
+            return "";
+        }
+        String address = addresses;
+        int separator = address.indexOf(',');
+        if (separator != -1) {
+            address = address.substring(0, separator);
+        }
+        int at = address.lastIndexOf('@');
+        if (at == -1) {
+            return "";
+        }
+        String domain = address.substring(at + 1).trim();
+        if (domain.endsWith(">")) {
+            domain = domain.substring(0, domain.length() - 1);
+        }
+        return domain.toLowerCase();
+    }
+
+    public int getMaxPerMinute() {
+        return maxPerMinute;
+    }
+
+    public void setMaxPerMinute(int maxPerMinute) {
+        this.maxPerMinute = maxPerMinute;
+    }
+
+    private void purge(final long now) {
+        for (Iterator<Window> iterator = windows.values().iterator(); iterator.hasNext();) {
+            if (now - iterator.next().start >= WINDOW) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Window {
+
+        private final long start;
+        private int count;
+
+        private Window(long start) {
+            this.start = start;
+        }
+
+    }
+
+}
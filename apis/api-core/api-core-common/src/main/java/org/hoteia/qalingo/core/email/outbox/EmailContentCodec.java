@@ -0,0 +1,77 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.email.outbox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.hoteia.qalingo.core.mapper.JsonMapper;
+import org.hoteia.qalingo.core.util.impl.MimeMessagePreparatorImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+
+/**
+ * Content of the outbox emails : the headers and the rendered parts of the
+ * {@link MimeMessagePreparatorImpl}, as gzipped JSON after a format byte. The
+ * template id is the type of the email.
+ *
+ * The emails saved before are Java serialized : they are still read.
+ */
+@Component(value = "emailContentCodec")
+public class EmailContentCodec {
+
+    public static final int FORMAT_JSON_GZIP = 1;
+
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xAC;
+
+    @Autowired
+    protected JsonMapper jsonMapper;
+
+    public byte[] encode(final MimeMessagePreparatorImpl mimeMessagePreparator) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write(FORMAT_JSON_GZIP);
+        GZIPOutputStream gzip = new GZIPOutputStream(bos);
+        jsonMapper.getWriter(MimeMessagePreparatorImpl.class).writeValue(gzip, mimeMessagePreparator);
+        gzip.close();
+        return bos.toByteArray();
+    }
+
+    public MimeMessagePreparatorImpl decode(final byte[] data) throws IOException {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        int format = data[0] & 0xFF;
+        if (format == FORMAT_JSON_GZIP) {
+            GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data, 1, data.length - 1));
+            try {
+                return jsonMapper.getReader(MimeMessagePreparatorImpl.class).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES).readValue(gzip);
+            } finally {
+                gzip.close();
+            }
+        } else if (format == JAVA_SERIALIZATION_MAGIC) {
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
+            try {
+                return (MimeMessagePreparatorImpl) ois.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Email content can't be read: " + e.getMessage());
+            } finally {
+                ois.close();
+            }
+        }
+        throw new IOException("Email content format not supported: " + format);
+    }
+
+}
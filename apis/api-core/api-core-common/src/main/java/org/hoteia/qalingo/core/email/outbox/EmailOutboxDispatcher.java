@@ -0,0 +1,415 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.email.outbox;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.hoteia.qalingo.core.domain.Email;
+import org.hoteia.qalingo.core.email.outbox.SmtpTransportPool.PooledTransport;
+import org.hoteia.qalingo.core.service.EmailService;
+import org.hoteia.qalingo.core.util.impl.MimeMessagePreparatorImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drains the email outbox : the emails are claimed in the database, so that
+ * several nodes can dispatch the same outbox, and sent by batches over SMTP
+ * connections kept open by the sender threads.
+ *
+ * A failed email is retried after a delay doubled at each attempt. An email
+ * over the rate of its recipient domain is given back to the outbox for a
+ * next round. When enabled, the dispatcher starts with the context and polls
+ * the outbox, for the emails saved by any node and for the retries ;
+ * {@link #wakeUp()} asks for a round at once.
+ *
+ * The dispatcher is enabled per node, with the system property
+ * email.outbox.dispatcher.enabled : the nodes which do not send the emails
+ * keep no SMTP connections and no polling thread.
+ */
+@Component(value = "emailOutboxDispatcher")
+@ManagedResource
+public class EmailOutboxDispatcher {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    protected EmailService emailService;
+
+    @Resource(name = "mailSender")
+    protected JavaMailSenderImpl mailSender;
+
+    @Value("${email.outbox.dispatcher.enabled:false}")
+    private boolean enabled = false;
+
+    @Value("${email.outbox.poll.delay:30000}")
+    private long pollDelay = 30000;
+
+    @Value("${email.outbox.batch.size:50}")
+    private int batchSize = 50;
+
+    @Value("${email.outbox.sender.threads:2}")
+    private int senderThreads = 2;
+
+    @Value("${email.outbox.max.attempts:5}")
+    private int maxAttempts = 5;
+
+    @Value("${email.outbox.retry.delay:60000}")
+    private long retryDelay = 60000;
+
+    @Value("${email.outbox.retry.max.delay:3600000}")
+    private long maxRetryDelay = 3600000;
+
+    @Value("${email.outbox.sending.lease:600000}")
+    private long sendingLease = 600000;
+
+    @Value("${email.outbox.render.lease:600000}")
+    private long renderLease = 600000;
+
+    @Value("${email.outbox.domain.max.per.minute:300}")
+    private int domainMaxPerMinute = 300;
+
+    @Value("${email.outbox.smtp.max.idle:60000}")
+    private long smtpMaxIdle = 60000;
+
+    private ScheduledExecutorService dispatchExecutor;
+    private ExecutorService senderExecutor;
+    private SmtpTransportPool transportPool;
+    private DomainRateLimiter rateLimiter;
+
+    private final AtomicBoolean roundPending = new AtomicBoolean();
+
+    private final AtomicLong sendedCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong deferredCount = new AtomicLong();
+    private final AtomicInteger lastRoundSize = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            start();
+        }
+    }
+
+    /**
+     * Starts the dispatcher if needed, and asks for a round now.
+     *
+     * @return false if the dispatcher is disabled : the caller sends the emails by itself.
+     */
+    public boolean wakeUp() {
+        if (!enabled) {
+            return false;
+        }
+        start();
+        if (roundPending.compareAndSet(false, true)) {
+            dispatchExecutor.execute(new Runnable() {
+                public void run() {
+                    roundPending.set(false);
+                    dispatch();
+                }
+            });
+        }
+        return true;
+    }
+
+    @ManagedOperation
+    public synchronized void start() {
+        if (dispatchExecutor != null) {
+            return;
+        }
+        transportPool = new SmtpTransportPool(mailSender, senderThreads, smtpMaxIdle);
+        rateLimiter = new DomainRateLimiter(domainMaxPerMinute);
+        senderExecutor = Executors.newFixedThreadPool(senderThreads, new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "email-outbox-sender-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        dispatchExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "email-outbox-dispatcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        dispatchExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                dispatch();
+            }
+        }, pollDelay, pollDelay, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    @ManagedOperation
+    public synchronized void stop() {
+        if (dispatchExecutor == null) {
+            return;
+        }
+        dispatchExecutor.shutdown();
+        senderExecutor.shutdown();
+        try {
+            dispatchExecutor.awaitTermination(pollDelay, TimeUnit.MILLISECONDS);
+            senderExecutor.awaitTermination(pollDelay, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        transportPool.closeAll();
+        dispatchExecutor = null;
+        senderExecutor = null;
+    }
+
+    /**
+     * One round : claims the due emails, and sends them by batches on the
+     * sender threads. Another round follows at once while the outbox has more
+     * due emails than a round sends.
+     */
+    protected void dispatch() {
+        try {
+            long now = System.currentTimeMillis();
+            int roundSize = batchSize * senderThreads;
+            List<EmailOutboxEntry> entries = emailService.findEmailOutboxEntries(maxAttempts, renderLease, roundSize * 4);
+            List<Long> claimedIds = new ArrayList<Long>();
+            boolean moreDue = false;
+            for (EmailOutboxEntry entry : entries) {
+                if (entry.isDue(now, retryDelay, maxRetryDelay, sendingLease)) {
+                    if (claimedIds.size() >= roundSize) {
+                        moreDue = true;
+                        break;
+                    }
+                    if (emailService.claimEmail(entry)) {
+                        claimedIds.add(entry.getId());
+                    }
+                }
+            }
+            lastRoundSize.set(claimedIds.size());
+            if (claimedIds.isEmpty()) {
+                return;
+            }
+
+            List<OutboxEmail> outboxEmails = new ArrayList<OutboxEmail>();
+            List<Long> deferredIds = new ArrayList<Long>();
+            for (Email email : emailService.findEmailsByIds(claimedIds)) {
+                try {
+                    MimeMessagePreparatorImpl mimeMessagePreparator = emailService.getEmailContent(email);
+                    if (mimeMessagePreparator == null) {
+                        throw new IllegalStateException("Email without content, its render was lost");
+                    }
+                    if (rateLimiter.tryAcquire(DomainRateLimiter.getDomain(mimeMessagePreparator.getTo()), now)) {
+                        outboxEmails.add(new OutboxEmail(email.getId(), mimeMessagePreparator));
+                    } else {
+                        deferredIds.add(email.getId());
+                    }
+                } catch (Exception e) {
+                    markError(email.getId(), e);
+                }
+            }
+            if (!deferredIds.isEmpty()) {
+                emailService.releaseEmails(deferredIds);
+                deferredCount.addAndGet(deferredIds.size());
+            }
+
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < outboxEmails.size(); i += batchSize) {
+                final List<OutboxEmail> batch = outboxEmails.subList(i, Math.min(i + batchSize, outboxEmails.size()));
+                futures.add(senderExecutor.submit(new Runnable() {
+                    public void run() {
+                        send(batch);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            if (moreDue && deferredIds.size() < claimedIds.size()) {
+                wakeUp();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.error("Email outbox batch failed", e.getCause());
+        } catch (Exception e) {
+            logger.error("Email outbox round failed", e);
+        }
+    }
+
+    /**
+     * Sends a batch over one pooled connection, opened again if the server closes it.
+     */
+    protected void send(final List<OutboxEmail> batch) {
+        PooledTransport transport = null;
+        try {
+            for (OutboxEmail outboxEmail : batch) {
+                try {
+                    if (transport == null) {
+                        transport = transportPool.borrow();
+                    }
+                    MimeMessage message = new MimeMessage(transportPool.getSession());
+                    outboxEmail.mimeMessagePreparator.prepare(message);
+                    message.saveChanges();
+                    transport.getTransport().sendMessage(message, message.getAllRecipients());
+                    // MARKED AT ONCE : AN EMAIL SENT AND STILL SENDING IS SENT AGAIN AFTER THE LEASE
+                    markSended(outboxEmail.id);
+                    mirror(outboxEmail.mimeMessagePreparator);
+
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    markError(outboxEmail.id, e);
+                } catch (Exception e) {
+                    markError(outboxEmail.id, e);
+                    if (transport != null
+                            && !transport.getTransport().isConnected()) {
+                        transportPool.release(transport, true);
+                        transport = null;
+                    }
+                }
+            }
+        } finally {
+            if (transport != null) {
+                transportPool.release(transport);
+            }
+        }
+    }
+
+    protected void markSended(final Long emailId) {
+        sendedCount.incrementAndGet();
+        try {
+            emailService.markEmailsSended(Collections.singletonList(emailId));
+        } catch (Exception e) {
+            logger.error("Email " + emailId + " sent, but not marked as sent: it is sent again after the lease", e);
+        }
+    }
+
+    protected void mirror(final MimeMessagePreparatorImpl mimeMessagePreparator) {
+        if (mimeMessagePreparator.isMirroringActivated()
+                && StringUtils.isNotEmpty(mimeMessagePreparator.getMirroringFilePath())
+                && mimeMessagePreparator.getHtmlContent() != null) {
+            try {
+                FileUtils.writeStringToFile(new File(mimeMessagePreparator.getMirroringFilePath()), mimeMessagePreparator.getHtmlContent(), "UTF-8");
+            } catch (Exception e) {
+                logger.warn("Email mirroring file can't be written: " + mimeMessagePreparator.getMirroringFilePath(), e);
+            }
+        }
+    }
+
+    protected void markError(final Long emailId, final Exception exception) {
+        errorCount.incrementAndGet();
+        logger.warn("Email " + emailId + " not sent: " + exception.getMessage());
+        try {
+            emailService.markEmailError(emailId, exception);
+        } catch (Exception e) {
+            logger.error("Email " + emailId + " error can't be saved, it is sent again after the lease", e);
+        }
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @ManagedAttribute
+    public boolean isStarted() {
+        return dispatchExecutor != null;
+    }
+
+    @ManagedAttribute
+    public long getSendedCount() {
+        return sendedCount.get();
+    }
+
+    @ManagedAttribute
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    @ManagedAttribute
+    public long getDeferredCount() {
+        return deferredCount.get();
+    }
+
+    @ManagedAttribute
+    public int getLastRoundSize() {
+        return lastRoundSize.get();
+    }
+
+    @ManagedAttribute
+    public int getIdleConnections() {
+        return transportPool != null ? transportPool.getIdleSize() : 0;
+    }
+
+    @ManagedAttribute
+    public int getDomainMaxPerMinute() {
+        return domainMaxPerMinute;
+    }
+
+    @ManagedAttribute
+    public void setDomainMaxPerMinute(int domainMaxPerMinute) {
+        this.domainMaxPerMinute = domainMaxPerMinute;
+        if (rateLimiter != null) {
+            rateLimiter.setMaxPerMinute(domainMaxPerMinute);
+        }
+    }
+
+    @ManagedAttribute
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @ManagedAttribute
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    protected static class OutboxEmail {
+
+        private final Long id;
+        private final MimeMessagePreparatorImpl mimeMessagePreparator;
+
+        protected OutboxEmail(Long id, MimeMessagePreparatorImpl mimeMessagePreparator) {
+            this.id = id;
+            this.mimeMessagePreparator = mimeMessagePreparator;
+        }
+
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.email.outbox;
+
+import java.util.Date;
+
+import org.hoteia.qalingo.core.domain.Email;
+
+/**
+ * State of an outbox email, without its content : what the dispatcher needs
+ * to decide if the email is due, and to claim it.
+ */
+public class EmailOutboxEntry {
+
+    private final Long id;
+    private final int version;
+    private final String status;
+    private final int processedCount;
+    private final Date dateUpdate;
+
+    public EmailOutboxEntry(Long id, int version, String status, int processedCount, Date dateUpdate) {
+        this.id = id;
+        this.version = version;
+        this.status = status;
+        this.processedCount = processedCount;
+        this.dateUpdate = dateUpdate;
+    }
+
+    /**
+     * @return true if the email can be claimed now : pending, in error after
+     *         its retry delay, or sending for longer than the lease of its
+     *         sender.
+     */
+    public boolean isDue(long now, long retryDelay, long maxRetryDelay, long sendingLease) {
+        long updated = dateUpdate != null ? dateUpdate.getTime() : 0;
+        if (Email.EMAIl_STATUS_PENDING.equals(status)) {
+            return true;
+        } else if (Email.EMAIl_STATUS_ERROR.equals(status)) {
+            return now >= updated + getRetryDelay(retryDelay, maxRetryDelay);
+        } else if (Email.EMAIl_STATUS_SENDING.equals(status)) {
+            return now >= updated + sendingLease;
+        }
+        return false;
+    }
+
+    /**
+     * @return the retry delay, doubled at each failed attempt.
+     */
+    protected long getRetryDelay(long retryDelay, long maxRetryDelay) {
+        int attempts = Math.max(processedCount - 1, 0);
+        if (attempts >= 30) {
+            return maxRetryDelay;
+        }
+        return Math.min(retryDelay << attempts, maxRetryDelay);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public int getProcessedCount() {
+        return processedCount;
+    }
+
+    public Date getDateUpdate() {
+        return dateUpdate;
+    }
+
+    @Override
+    public String toString() {
+        return "EmailOutboxEntry [id=" + id + ", version=" + version + ", status=" + status + ", processedCount=" + processedCount + "]";
+    }
+
+}
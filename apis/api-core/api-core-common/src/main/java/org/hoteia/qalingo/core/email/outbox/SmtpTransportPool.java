@@ -0,0 +1,134 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.email.outbox;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+/**
+ * SMTP connections kept open between the batches, with the settings of the
+ * {@link JavaMailSenderImpl} : the JavaMailSenderImpl opens and closes a
+ * connection for each send.
+ */
+public class SmtpTransportPool {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final JavaMailSenderImpl mailSender;
+    private final long maxIdleTime;
+
+    private final Semaphore permits;
+    private final BlockingQueue<PooledTransport> idleTransports = new LinkedBlockingQueue<PooledTransport>();
+
+    public SmtpTransportPool(JavaMailSenderImpl mailSender, int maxSize, long maxIdleTime) {
+        this.mailSender = mailSender;
+        this.maxIdleTime = maxIdleTime;
+        this.permits = new Semaphore(maxSize);
+    }
+
+    public Session getSession() {
+        return mailSender.getSession();
+    }
+
+    /**
+     * @return a connected transport : it must be given back with {@link #release(PooledTransport)}.
+     */
+    public PooledTransport borrow() throws MessagingException, InterruptedException {
+        permits.acquire();
+        try {
+            PooledTransport transport;
+            while ((transport = idleTransports.poll()) != null) {
+                if (System.currentTimeMillis() - transport.lastUsed < maxIdleTime
+                        && transport.transport.isConnected()) {
+                    return transport;
+                }
+                close(transport);
+            }
+            return connect();
+        } catch (MessagingException e) {
+            permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Keeps the transport for the next batch, or closes it if it failed.
+     */
+    public void release(final PooledTransport transport, final boolean failed) {
+        try {
+            if (failed) {
+                close(transport);
+            } else {
+                transport.lastUsed = System.currentTimeMillis();
+                idleTransports.offer(transport);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    public void release(final PooledTransport transport) {
+        release(transport, false);
+    }
+
+    public void closeAll() {
+        PooledTransport transport;
+        while ((transport = idleTransports.poll()) != null) {
+            close(transport);
+        }
+    }
+
+    public int getIdleSize() {
+        return idleTransports.size();
+    }
+
+    protected PooledTransport connect() throws MessagingException {
+        Transport transport = mailSender.getSession().getTransport(mailSender.getProtocol());
+        transport.connect(mailSender.getHost(), mailSender.getPort(), mailSender.getUsername(), mailSender.getPassword());
+        return new PooledTransport(transport);
+    }
+
+    protected void close(final PooledTransport transport) {
+        try {
+            transport.transport.close();
+        } catch (MessagingException e) {
+            logger.debug("SMTP transport close failed: " + e.getMessage());
+        }
+    }
+
+    public static class PooledTransport {
+
+        private final Transport transport;
+        private volatile long lastUsed;
+
+        protected PooledTransport(Transport transport) {
+            this.transport = transport;
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        public Transport getTransport() {
+            return transport;
+        }
+
+    }
+
+}
@@ -0,0 +1,405 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.geoloc;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.hoteia.qalingo.core.domain.GeolocAddress;
+import org.hoteia.qalingo.core.domain.GeolocCity;
+import org.hoteia.qalingo.core.service.EngineSettingService;
+import org.hoteia.qalingo.core.service.GeolocService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Geocoding off the request thread : a lookup is answered from an in memory
+ * cache, then from the geoloc tables. A miss is queued for the worker threads,
+ * which call Google and save the location in the tables and in the cache ; the
+ * caller gets null at once, and its {@link GeocodingCallback} once the location
+ * is found. The callback runs on a worker thread : the state of a session is
+ * rather updated by one of its next requests, from the cache only.
+ *
+ * The lookups of the same location are coalesced : one call to Google, all
+ * the callbacks. While Google is over quota, the misses are not queued.
+ */
+@Component(value = "asyncGeocoder")
+@ManagedResource
+public class AsyncGeocoder {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    protected GeolocService geolocService;
+
+    @Autowired
+    protected EngineSettingService engineSettingService;
+
+    @Value("${geoloc.async.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${geoloc.async.threads:2}")
+    private int threads = 2;
+
+    @Value("${geoloc.async.queue.size:500}")
+    private int queueSize = 500;
+
+    @Value("${geoloc.cache.size:10000}")
+    private int cacheSize = 10000;
+
+    @Value("${geoloc.over.quota.check.delay:600000}")
+    private long overQuotaCheckDelay = 600000;
+
+    private ThreadPoolExecutor executor;
+
+    private final Map<String, Object> cache = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    private final ConcurrentMap<String, GeocodingTask<?>> pendingTasks = new ConcurrentHashMap<String, GeocodingTask<?>>();
+
+    private volatile long overQuotaUntil;
+
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private final AtomicLong storeHitCount = new AtomicLong();
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong geocodedCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+
+    /**
+     * @return the location of the city, null if it is queued : the callback gets it later.
+     */
+    public GeolocCity getGeolocCity(final String city, final String country, final GeocodingCallback<GeolocCity> callback) {
+        String key = cityKey(city, country);
+        GeolocCity geolocCity = getCached(key, GeolocCity.class);
+        if (geolocCity != null) {
+            return geolocCity;
+        }
+        geolocCity = geolocService.getGeolocCityByCityAndCountry(city, country);
+        if (geolocCity != null) {
+            storeHitCount.incrementAndGet();
+            putCached(key, geolocCity);
+            return geolocCity;
+        }
+        return queue(key, GeolocCity.class, callback, new Callable<GeolocCity>() {
+            public GeolocCity call() throws Exception {
+                return geolocService.geolocByCityAndCountry(city, country);
+            }
+        });
+    }
+
+    /**
+     * @return the address of the location, null if it is queued : the callback gets it later.
+     */
+    public GeolocAddress getGeolocAddress(final String latitude, final String longitude, final GeocodingCallback<GeolocAddress> callback) {
+        String key = addressKey(latitude, longitude);
+        GeolocAddress geolocAddress = getCached(key, GeolocAddress.class);
+        if (geolocAddress != null) {
+            return geolocAddress;
+        }
+        geolocAddress = geolocService.getGeolocAddressByLatitudeAndLongitude(latitude, longitude);
+        if (geolocAddress != null) {
+            storeHitCount.incrementAndGet();
+            putCached(key, geolocAddress);
+            return geolocAddress;
+        }
+        return queue(key, GeolocAddress.class, callback, new Callable<GeolocAddress>() {
+            public GeolocAddress call() throws Exception {
+                return geolocService.geolocByLatitudeLongitude(latitude, longitude);
+            }
+        });
+    }
+
+    /**
+     * @return the location of the city if it is in the cache, without any other lookup.
+     */
+    public GeolocCity getCachedGeolocCity(final String city, final String country) {
+        return getCached(cityKey(city, country), GeolocCity.class);
+    }
+
+    /**
+     * @return the address of the location if it is in the cache, without any other lookup.
+     */
+    public GeolocAddress getCachedGeolocAddress(final String latitude, final String longitude) {
+        return getCached(addressKey(latitude, longitude), GeolocAddress.class);
+    }
+
+    protected static String cityKey(final String city, final String country) {
+        return "CITY|" + city + "|" + country;
+    }
+
+    protected static String addressKey(final String latitude, final String longitude) {
+        return "LATLNG|" + latitude + "|" + longitude;
+    }
+
+    /**
+     * @return null if the lookup is queued, the result of the lookup done on the caller thread if the worker is disabled.
+     */
+    protected <T> T queue(final String key, final Class<T> type, final GeocodingCallback<T> callback, final Callable<T> lookup) {
+        if (!enabled) {
+            try {
+                T result = lookup.call();
+                if (result != null) {
+                    putCached(key, result);
+                }
+                return result;
+            } catch (Exception e) {
+                errorCount.incrementAndGet();
+                logger.error("Geocoding failed for " + key, e);
+                return null;
+            }
+        }
+        if (System.currentTimeMillis() < overQuotaUntil) {
+            return null;
+        }
+        GeocodingTask<T> task = new GeocodingTask<T>(key, lookup);
+        task.addCallback(callback);
+        GeocodingTask<?> pendingTask = pendingTasks.putIfAbsent(key, task);
+        if (pendingTask != null) {
+            coalescedCount.incrementAndGet();
+            @SuppressWarnings("unchecked")
+            GeocodingTask<T> sameTask = (GeocodingTask<T>) pendingTask;
+            if (!sameTask.addCallback(callback)) {
+                // THE TASK ENDED MEANWHILE
+                return getCached(key, type);
+            }
+            return null;
+        }
+        try {
+            getExecutor().execute(task);
+            queuedCount.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            pendingTasks.remove(key, task);
+            rejectedCount.incrementAndGet();
+            logger.warn("Geocoding queue is full, the lookup is dropped: " + key);
+        }
+        return null;
+    }
+
+    /**
+     * Checks the over quota timestamp of the engine settings, at most once by
+     * check delay while Google is over quota.
+     */
+    protected boolean isOverQuota() {
+        long now = System.currentTimeMillis();
+        if (now < overQuotaUntil) {
+            return true;
+        }
+        try {
+            if (engineSettingService.isGoogleGeolocationApiStillOverQuotas(new Date(now))) {
+                overQuotaUntil = now + overQuotaCheckDelay;
+                return true;
+            }
+        } catch (ParseException e) {
+            logger.error("Google geolocation over quota timestamp can't be read", e);
+        }
+        return false;
+    }
+
+    protected synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger();
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "geocoding-worker-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private <T> T getCached(final String key, final Class<T> type) {
+        Object value;
+        synchronized (cache) {
+            value = cache.get(key);
+        }
+        if (value != null) {
+            cacheHitCount.incrementAndGet();
+            return type.cast(value);
+        }
+        return null;
+    }
+
+    private void putCached(final String key, final Object value) {
+        synchronized (cache) {
+            cache.put(key, value);
+        }
+    }
+
+    @ManagedOperation
+    public void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @ManagedAttribute
+    public int getCacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    @ManagedAttribute
+    public int getPendingCount() {
+        return pendingTasks.size();
+    }
+
+    @ManagedAttribute
+    public boolean isOverQuotaPaused() {
+        return System.currentTimeMillis() < overQuotaUntil;
+    }
+
+    @ManagedAttribute
+    public long getCacheHitCount() {
+        return cacheHitCount.get();
+    }
+
+    @ManagedAttribute
+    public long getStoreHitCount() {
+        return storeHitCount.get();
+    }
+
+    @ManagedAttribute
+    public long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    @ManagedAttribute
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    @ManagedAttribute
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @ManagedAttribute
+    public long getGeocodedCount() {
+        return geocodedCount.get();
+    }
+
+    @ManagedAttribute
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * One lookup of a location, with the callbacks of all the callers which asked for it meanwhile.
+     */
+    protected class GeocodingTask<T> implements Runnable {
+
+        private final String key;
+        private final Callable<T> lookup;
+        private final List<GeocodingCallback<T>> callbacks = new ArrayList<GeocodingCallback<T>>();
+        private boolean done;
+
+        protected GeocodingTask(String key, Callable<T> lookup) {
+            this.key = key;
+            this.lookup = lookup;
+        }
+
+        /**
+         * @return false if the task is done : the callback is not called.
+         */
+        protected synchronized boolean addCallback(final GeocodingCallback<T> callback) {
+            if (done) {
+                return false;
+            }
+            if (callback != null) {
+                callbacks.add(callback);
+            }
+            return true;
+        }
+
+        public void run() {
+            T result = null;
+            try {
+                if (!isOverQuota()) {
+                    result = lookup.call();
+                    if (result != null) {
+                        putCached(key, result);
+                        geocodedCount.incrementAndGet();
+                    }
+                }
+            } catch (Exception e) {
+                errorCount.incrementAndGet();
+                logger.error("Geocoding failed for " + key, e);
+            }
+            // DONE BEFORE THE REMOVE : A CALLER OF THIS TASK READS THE CACHE INSTEAD OF QUEUEING AGAIN
+            List<GeocodingCallback<T>> doneCallbacks;
+            synchronized (this) {
+                done = true;
+                doneCallbacks = new ArrayList<GeocodingCallback<T>>(callbacks);
+            }
+            pendingTasks.remove(key, this);
+            if (result == null) {
+                return;
+            }
+            for (GeocodingCallback<T> callback : doneCallbacks) {
+                try {
+                    callback.onGeocoded(result);
+                } catch (Exception e) {
+                    logger.error("Geocoding callback failed for " + key, e);
+                }
+            }
+        }
+
+    }
+
+}
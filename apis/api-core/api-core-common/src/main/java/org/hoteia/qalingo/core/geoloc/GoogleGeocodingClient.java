@@ -0,0 +1,117 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.geoloc;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.hoteia.qalingo.core.mapper.JsonMapper;
+import org.hoteia.qalingo.core.web.bean.geoloc.json.GoogleGeoCode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Calls the Google Geocoding API over pooled connections : the connections
+ * stay open between the lookups, and the response is parsed from the stream
+ * of the connection.
+ *
+ * The url of the API is a setting, so that the tests call a local server.
+ */
+@Component(value = "googleGeocodingClient")
+public class GoogleGeocodingClient {
+
+    @Value("${geoloc.google.api.url:https://maps.googleapis.com/maps/api/geocode/json}")
+    private String apiUrl = "https://maps.googleapis.com/maps/api/geocode/json";
+
+    @Value("${geoloc.google.api.max.connections:10}")
+    private int maxConnections = 10;
+
+    @Value("${geoloc.google.api.connect.timeout:2000}")
+    private int connectTimeout = 2000;
+
+    @Value("${geoloc.google.api.read.timeout:5000}")
+    private int readTimeout = 5000;
+
+    @Autowired
+    protected JsonMapper jsonMapper;
+
+    private ThreadSafeClientConnManager connectionManager;
+
+    private HttpClient httpClient;
+
+    public GoogleGeocodingClient() {
+    }
+
+    public GoogleGeocodingClient(final String apiUrl) {
+        this.apiUrl = apiUrl;
+    }
+
+    public GoogleGeoCode geocodeAddress(final String formatedAddress, final String key) throws IOException {
+        return geocode("address=" + formatedAddress, key);
+    }
+
+    public GoogleGeoCode geocodeLatitudeLongitude(final String latitude, final String longitude, final String key) throws IOException {
+        return geocode("latlng=" + latitude.trim() + "," + longitude.trim(), key);
+    }
+
+    protected GoogleGeoCode geocode(final String query, final String key) throws IOException {
+        HttpGet httpGet = new HttpGet(apiUrl + "?" + query + "&key=" + key);
+        HttpResponse httpResponse = getHttpClient().execute(httpGet);
+        HttpEntity httpEntity = httpResponse.getEntity();
+        if (httpEntity == null) {
+            return null;
+        }
+        // CLOSING THE CONTENT GIVES THE CONNECTION BACK TO THE POOL
+        InputStream content = httpEntity.getContent();
+        try {
+            int statusCode = httpResponse.getStatusLine().getStatusCode();
+            if (statusCode != HttpStatus.SC_OK) {
+                throw new IOException("Google geocoding returns HTTP status " + statusCode);
+            }
+            return jsonMapper.getReader(GoogleGeoCode.class).readValue(content);
+        } finally {
+            content.close();
+        }
+    }
+
+    protected synchronized HttpClient getHttpClient() {
+        if (httpClient == null) {
+            connectionManager = new ThreadSafeClientConnManager();
+            connectionManager.setMaxTotal(maxConnections);
+            connectionManager.setDefaultMaxPerRoute(maxConnections);
+            DefaultHttpClient defaultHttpClient = new DefaultHttpClient(connectionManager);
+            HttpConnectionParams.setConnectionTimeout(defaultHttpClient.getParams(), connectTimeout);
+            HttpConnectionParams.setSoTimeout(defaultHttpClient.getParams(), readTimeout);
+            httpClient = defaultHttpClient;
+        }
+        return httpClient;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+            connectionManager = null;
+            httpClient = null;
+        }
+    }
+
+}
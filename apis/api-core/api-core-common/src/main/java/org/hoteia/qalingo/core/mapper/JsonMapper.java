@@ -9,14 +9,48 @@
  */
 package org.hoteia.qalingo.core.mapper;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * One configured JSON mapper, and its readers and writers by type.
+ */
 @Component(value = "jsonMapper")
 public class JsonMapper {
 
+    private final com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
+
+    private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<Class<?>, ObjectReader>();
+    private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+
+    /**
+     * @return the shared mapper : it must not be configured again.
+     */
     public com.fasterxml.jackson.databind.ObjectMapper getJsonMapper(){
-        com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-        
         return mapper;
     }
+
+    public ObjectReader getReader(final Class<?> type) {
+        ObjectReader reader = readers.get(type);
+        if (reader == null) {
+            reader = mapper.reader(type);
+            readers.putIfAbsent(type, reader);
+        }
+        return reader;
+    }
+
+    public ObjectWriter getWriter(final Class<?> type) {
+        ObjectWriter writer = writers.get(type);
+        if (writer == null) {
+            writer = mapper.writerWithType(type);
+            writers.putIfAbsent(type, writer);
+        }
+        return writer;
+    }
+
 }
@@ -9,22 +9,74 @@
  */
 package org.hoteia.qalingo.core.mapper;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.dataformat.xml.JacksonXmlModule;
 
+/**
+ * One configured XML mapper, and its readers and writers by type : a mapper
+ * is thread-safe once configured, and caches its (de)serializers.
+ */
 @Component(value = "xmlMapper")
 public class XmlMapper {
 
-    public com.fasterxml.jackson.dataformat.xml.XmlMapper getXmlMapper(){
+    private final com.fasterxml.jackson.dataformat.xml.XmlMapper mapper;
+
+    private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<Class<?>, ObjectReader>();
+    private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+    private final ConcurrentMap<Class<?>, ObjectWriter> compactWriters = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+
+    public XmlMapper() {
         JacksonXmlModule module = new JacksonXmlModule();
         module.setDefaultUseWrapper(true);
         
-        com.fasterxml.jackson.dataformat.xml.XmlMapper mapper = new com.fasterxml.jackson.dataformat.xml.XmlMapper(module);
+        mapper = new com.fasterxml.jackson.dataformat.xml.XmlMapper(module);
         mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
         mapper.configure(SerializationFeature.INDENT_OUTPUT, true);
-        
+    }
+
+    /**
+     * @return the shared mapper : it must not be configured again.
+     */
+    public com.fasterxml.jackson.dataformat.xml.XmlMapper getXmlMapper(){
         return mapper;
     }
+
+    public ObjectReader getReader(final Class<?> type) {
+        ObjectReader reader = readers.get(type);
+        if (reader == null) {
+            reader = mapper.reader(type);
+            readers.putIfAbsent(type, reader);
+        }
+        return reader;
+    }
+
+    public ObjectWriter getWriter(final Class<?> type) {
+        ObjectWriter writer = writers.get(type);
+        if (writer == null) {
+            writer = mapper.writerWithType(type);
+            writers.putIfAbsent(type, writer);
+        }
+        return writer;
+    }
+
+    /**
+     * Writer without indentation, for the messages : the readers do not
+     * depend on it.
+     */
+    public ObjectWriter getCompactWriter(final Class<?> type) {
+        ObjectWriter writer = compactWriters.get(type);
+        if (writer == null) {
+            writer = mapper.writerWithType(type).without(SerializationFeature.INDENT_OUTPUT);
+            compactWriters.putIfAbsent(type, writer);
+        }
+        return writer;
+    }
+
 }
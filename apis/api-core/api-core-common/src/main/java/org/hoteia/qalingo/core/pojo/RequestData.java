@@ -28,12 +28,17 @@ import org.hoteia.qalingo.core.domain.Retailer;
 import org.hoteia.qalingo.core.domain.User;
 import org.hoteia.qalingo.core.domain.bean.GeolocData;
 
+/**
+ * Context of a request. Built once per request by the RequestUtil : the
+ * geoloc, customer, cart and backoffice localization are resolved on their
+ * first read.
+ */
 public class RequestData implements Serializable {
 
 	/**
 	 * Generated UID
 	 */
-    private static final long serialVersionUID = 6012861562514088614L;
+    private static final long serialVersionUID = 6012861562514088615L;
 
 	private String contextNameValue;
 	private String contextPath;
@@ -56,9 +61,37 @@ public class RequestData implements Serializable {
     private Company company;
     
     private GeolocData geolocData;
+    
+    private transient RequestDataResolver resolver;
+    private boolean geolocDataResolved;
+    private boolean customerResolved;
+    private boolean cartResolved;
+    private boolean backofficeLocalizationResolved;
 	
 	public RequestData() {
     }
+    
+    /**
+     * Copy of the request data, to change it without changing the one shared by the request.
+     */
+    public RequestData(RequestData requestData) {
+        this.contextNameValue = requestData.contextNameValue;
+        this.contextPath = requestData.contextPath;
+        this.VelocityEmailPrefix = requestData.VelocityEmailPrefix;
+        this.request = requestData.request;
+        this.marketPlace = requestData.marketPlace;
+        this.market = requestData.market;
+        this.marketArea = requestData.marketArea;
+        this.marketAreaLocalization = requestData.marketAreaLocalization;
+        this.marketAreaRetailer = requestData.marketAreaRetailer;
+        this.marketAreaCurrency = requestData.marketAreaCurrency;
+        this.user = requestData.user;
+        this.company = requestData.company;
+        this.cart = requestData.getCart();
+        this.backofficeLocalization = requestData.getBackofficeLocalization();
+        this.customer = requestData.getCustomer();
+        this.geolocData = requestData.getGeolocData();
+    }
 	
     public RequestData(String contextPath) {
         this.contextPath = contextPath;
@@ -184,27 +217,37 @@ public class RequestData implements Serializable {
     }
 
     public Cart getCart() {
+        if (resolver != null && !cartResolved) {
+            cart = resolver.resolveCart(this);
+            cartResolved = true;
+        }
         return cart;
     }
 
     public void setCart(Cart cart) {
         this.cart = cart;
+        this.cartResolved = true;
     }
 
     public Localization getBackofficeLocalization() {
+        if (resolver != null && !backofficeLocalizationResolved) {
+            backofficeLocalization = resolver.resolveBackofficeLocalization(this);
+            backofficeLocalizationResolved = true;
+        }
         return backofficeLocalization;
     }
 
     public void setBackofficeLocalization(Localization backofficeLocalization) {
         this.backofficeLocalization = backofficeLocalization;
+        this.backofficeLocalizationResolved = true;
     }
 
     public Locale getLocale(){
         Locale locale = new Locale ("en");
         try {
             if(isBackoffice()){
-                if(backofficeLocalization != null){
-                    locale = backofficeLocalization.getLocale();
+                if(getBackofficeLocalization() != null){
+                    locale = getBackofficeLocalization().getLocale();
                 } 
             } else {
                 locale = marketAreaLocalization.getLocale();
@@ -224,11 +267,16 @@ public class RequestData implements Serializable {
     }
     
     public Customer getCustomer() {
+        if (resolver != null && !customerResolved) {
+            customer = resolver.resolveCustomer(this);
+            customerResolved = true;
+        }
         return customer;
     }
 
     public void setCustomer(Customer customer) {
         this.customer = customer;
+        this.customerResolved = true;
     }
 
     public User getUser() {
@@ -248,14 +296,28 @@ public class RequestData implements Serializable {
     }
     
     public GeolocData getGeolocData() {
+        if (resolver != null && !geolocDataResolved) {
+            geolocData = resolver.resolveGeolocData(this);
+            geolocDataResolved = true;
+        }
         return geolocData;
     }
     
     public void setGeolocData(GeolocData geolocData) {
         this.geolocData = geolocData;
+        this.geolocDataResolved = true;
+    }
+    
+    public RequestDataResolver getResolver() {
+        return resolver;
+    }
+    
+    public void setResolver(RequestDataResolver resolver) {
+        this.resolver = resolver;
     }
     
     public boolean isGeolocatedByIp() throws Exception {
+        GeolocData geolocData = getGeolocData();
         if (geolocData != null
                 && StringUtils.isNotEmpty(geolocData.getCity().getName())) {
             return true;
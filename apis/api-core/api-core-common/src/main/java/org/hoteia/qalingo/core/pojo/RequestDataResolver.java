@@ -0,0 +1,31 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.pojo;
+
+import org.hoteia.qalingo.core.domain.Cart;
+import org.hoteia.qalingo.core.domain.Customer;
+import org.hoteia.qalingo.core.domain.Localization;
+import org.hoteia.qalingo.core.domain.bean.GeolocData;
+
+/**
+ * Resolves the parts of a {@link RequestData} which are rarely used by a
+ * request, on their first read.
+ */
+public interface RequestDataResolver {
+
+    GeolocData resolveGeolocData(RequestData requestData);
+
+    Customer resolveCustomer(RequestData requestData);
+
+    Cart resolveCart(RequestData requestData);
+
+    Localization resolveBackofficeLocalization(RequestData requestData);
+
+}
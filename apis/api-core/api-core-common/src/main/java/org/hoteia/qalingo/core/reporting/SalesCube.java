@@ -0,0 +1,373 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.reporting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Sales aggregates by day, market area, retailer, currency and sku, stored by
+ * column : one array of dictionary ids by dimension, one array of amounts by
+ * measure. A query scans the arrays without any entity.
+ *
+ * The contribution of each order is kept, so that an updated order replaces
+ * its previous figures.
+ */
+public class SalesCube {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final TimeZone timeZone;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Dictionary<Long> marketAreaIds = new Dictionary<Long>();
+    private final Dictionary<Long> retailerIds = new Dictionary<Long>();
+    private final Dictionary<String> currencyCodes = new Dictionary<String>();
+    private final Dictionary<String> skuCodes = new Dictionary<String>();
+
+    private final Map<Cell, Integer> cellIndexes = new HashMap<Cell, Integer>();
+    private final Map<Long, OrderContribution> orderContributions = new HashMap<Long, OrderContribution>();
+
+    private int size;
+    private int[] days = new int[INITIAL_CAPACITY];
+    private int[] marketAreas = new int[INITIAL_CAPACITY];
+    private int[] retailers = new int[INITIAL_CAPACITY];
+    private int[] currencies = new int[INITIAL_CAPACITY];
+    private int[] skus = new int[INITIAL_CAPACITY];
+    private long[] revenues = new long[INITIAL_CAPACITY];
+    private long[] units = new long[INITIAL_CAPACITY];
+    private long[] taxes = new long[INITIAL_CAPACITY];
+    private long[] shippings = new long[INITIAL_CAPACITY];
+
+    public SalesCube() {
+        this(TimeZone.getDefault());
+    }
+
+    public SalesCube(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * Replaces the figures of these orders : an order without lines is removed.
+     */
+    public void putOrders(final Map<Long, List<SalesLine>> orderLines) {
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<Long, List<SalesLine>> entry : orderLines.entrySet()) {
+                putOrder(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void putOrder(final Long orderId, final List<SalesLine> lines) {
+        OrderContribution previous = orderContributions.remove(orderId);
+        if (previous != null) {
+            for (int i = 0; i < previous.cells.length; i++) {
+                add(previous.cells[i], -previous.values[4 * i], -previous.values[4 * i + 1], -previous.values[4 * i + 2], -previous.values[4 * i + 3]);
+            }
+        }
+        if (lines == null || lines.isEmpty()) {
+            return;
+        }
+        Map<Integer, long[]> cellValues = new LinkedHashMap<Integer, long[]>();
+        for (SalesLine line : lines) {
+            int cell = getCell(toDay(line.getDate()), marketAreaIds.getId(line.getMarketAreaId()), retailerIds.getId(line.getRetailerId()),
+                               currencyCodes.getId(line.getCurrencyCode()), skuCodes.getId(line.getSkuCode()));
+            add(cell, line.getRevenue(), line.getUnits(), line.getTax(), line.getShipping());
+            long[] values = cellValues.get(cell);
+            if (values == null) {
+                values = new long[4];
+                cellValues.put(cell, values);
+            }
+            values[0] += line.getRevenue();
+            values[1] += line.getUnits();
+            values[2] += line.getTax();
+            values[3] += line.getShipping();
+        }
+        OrderContribution contribution = new OrderContribution(cellValues.size());
+        int i = 0;
+        for (Map.Entry<Integer, long[]> entry : cellValues.entrySet()) {
+            contribution.cells[i] = entry.getKey();
+            System.arraycopy(entry.getValue(), 0, contribution.values, 4 * i, 4);
+            i++;
+        }
+        orderContributions.put(orderId, contribution);
+    }
+
+    public List<SalesFigures> query(final SalesQuery query) {
+        lock.readLock().lock();
+        try {
+            // A FILTER VALUE WITHOUT ID MATCHES NOTHING : NO SALES FOR IT
+            int marketArea = filter(marketAreaIds, query.getMarketAreaId());
+            int retailer = filter(retailerIds, query.getRetailerId());
+            int currency = filter(currencyCodes, query.getCurrencyCode());
+            int sku = filter(skuCodes, query.getSkuCode());
+            if (marketArea == -2 || retailer == -2 || currency == -2 || sku == -2) {
+                return new ArrayList<SalesFigures>();
+            }
+            int fromDay = query.getFromDate() != null ? toDay(query.getFromDate()) : Integer.MIN_VALUE;
+            int toDay = query.getToDate() != null ? toDay(query.getToDate()) : Integer.MAX_VALUE;
+
+            final SalesDimension groupBy = query.getGroupBy() != null ? query.getGroupBy() : SalesDimension.DAY;
+            int[] groups = getColumn(groupBy);
+            Map<Integer, long[]> groupValues = new HashMap<Integer, long[]>();
+            for (int i = 0; i < size; i++) {
+                if (days[i] < fromDay || days[i] > toDay
+                        || (marketArea != -1 && marketAreas[i] != marketArea)
+                        || (retailer != -1 && retailers[i] != retailer)
+                        || (currency != -1 && currencies[i] != currency)
+                        || (sku != -1 && skus[i] != sku)) {
+                    continue;
+                }
+                long[] values = groupValues.get(groups[i]);
+                if (values == null) {
+                    values = new long[4];
+                    groupValues.put(groups[i], values);
+                }
+                values[0] += revenues[i];
+                values[1] += units[i];
+                values[2] += taxes[i];
+                values[3] += shippings[i];
+            }
+
+            List<SalesFigures> figures = new ArrayList<SalesFigures>(groupValues.size());
+            for (Map.Entry<Integer, long[]> entry : groupValues.entrySet()) {
+                long[] values = entry.getValue();
+                if (values[0] == 0 && values[1] == 0 && values[2] == 0 && values[3] == 0) {
+                    // ONLY REPLACED ORDERS IN THIS GROUP
+                    continue;
+                }
+                figures.add(new SalesFigures(getKey(groupBy, entry.getKey()), values[0], values[1], values[2], values[3]));
+            }
+            Collections.sort(figures, new Comparator<SalesFigures>() {
+                public int compare(SalesFigures figures1, SalesFigures figures2) {
+                    if (groupBy == SalesDimension.DAY) {
+                        return ((Date) figures1.getKey()).compareTo((Date) figures2.getKey());
+                    }
+                    long revenue1 = figures1.getRevenueAmount();
+                    long revenue2 = figures2.getRevenueAmount();
+                    return revenue1 > revenue2 ? -1 : (revenue1 == revenue2 ? 0 : 1);
+                }
+            });
+            if (query.getMaxResults() > 0 && figures.size() > query.getMaxResults()) {
+                return new ArrayList<SalesFigures>(figures.subList(0, query.getMaxResults()));
+            }
+            return figures;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getCellCount() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getOrderCount() {
+        lock.readLock().lock();
+        try {
+            return orderContributions.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    protected int toDay(final Date date) {
+        if (date == null) {
+            return 0;
+        }
+        long time = date.getTime();
+        long localTime = time + timeZone.getOffset(time);
+        return (int) (localTime >= 0 ? localTime / DAY : (localTime - DAY + 1) / DAY);
+    }
+
+    protected Date fromDay(final int day) {
+        long localTime = day * DAY;
+        return new Date(localTime - timeZone.getOffset(localTime - timeZone.getRawOffset()));
+    }
+
+    private int getCell(int day, int marketArea, int retailer, int currency, int sku) {
+        Cell key = new Cell(day, marketArea, retailer, currency, sku);
+        Integer cell = cellIndexes.get(key);
+        if (cell != null) {
+            return cell;
+        }
+        if (size == days.length) {
+            int capacity = size * 2;
+            days = Arrays.copyOf(days, capacity);
+            marketAreas = Arrays.copyOf(marketAreas, capacity);
+            retailers = Arrays.copyOf(retailers, capacity);
+            currencies = Arrays.copyOf(currencies, capacity);
+            skus = Arrays.copyOf(skus, capacity);
+            revenues = Arrays.copyOf(revenues, capacity);
+            units = Arrays.copyOf(units, capacity);
+            taxes = Arrays.copyOf(taxes, capacity);
+            shippings = Arrays.copyOf(shippings, capacity);
+        }
+        days[size] = day;
+        marketAreas[size] = marketArea;
+        retailers[size] = retailer;
+        currencies[size] = currency;
+        skus[size] = sku;
+        cellIndexes.put(key, size);
+        return size++;
+    }
+
+    private void add(int cell, long revenue, long unit, long tax, long shipping) {
+        revenues[cell] += revenue;
+        units[cell] += unit;
+        taxes[cell] += tax;
+        shippings[cell] += shipping;
+    }
+
+    /**
+     * @return -1 without filter, -2 for a value unknown.
+     */
+    private <T> int filter(final Dictionary<T> dictionary, final T value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer id = dictionary.ids.get(value);
+        return id != null ? id : -2;
+    }
+
+    private int[] getColumn(final SalesDimension dimension) {
+        switch (dimension) {
+        case MARKET_AREA:
+            return marketAreas;
+        case RETAILER:
+            return retailers;
+        case CURRENCY:
+            return currencies;
+        case SKU:
+            return skus;
+        default:
+            return days;
+        }
+    }
+
+    private Object getKey(final SalesDimension dimension, final int id) {
+        switch (dimension) {
+        case MARKET_AREA:
+            return marketAreaIds.values.get(id);
+        case RETAILER:
+            return retailerIds.values.get(id);
+        case CURRENCY:
+            return currencyCodes.values.get(id);
+        case SKU:
+            return skuCodes.values.get(id);
+        default:
+            return fromDay(id);
+        }
+    }
+
+    /**
+     * Ids of the values of a dimension : the id 0 is the null value.
+     */
+    private static class Dictionary<T> {
+
+        private final Map<T, Integer> ids = new HashMap<T, Integer>();
+        private final List<T> values = new ArrayList<T>();
+
+        private Dictionary() {
+            values.add(null);
+        }
+
+        private int getId(final T value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                values.add(value);
+                ids.put(value, id);
+            }
+            return id;
+        }
+
+    }
+
+    private static class Cell {
+
+        private final int day;
+        private final int marketArea;
+        private final int retailer;
+        private final int currency;
+        private final int sku;
+
+        private Cell(int day, int marketArea, int retailer, int currency, int sku) {
+            this.day = day;
+            this.marketArea = marketArea;
+            this.retailer = retailer;
+            this.currency = currency;
+            this.sku = sku;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = day;
+            result = 31 * result + marketArea;
+            result = 31 * result + retailer;
+            result = 31 * result + currency;
+            result = 31 * result + sku;
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Cell)) {
+                return false;
+            }
+            Cell other = (Cell) obj;
+            return day == other.day && marketArea == other.marketArea && retailer == other.retailer
+                    && currency == other.currency && sku == other.sku;
+        }
+
+    }
+
+    /**
+     * Cells of an order, and its revenue, units, tax and shipping in each cell.
+     */
+    private static class OrderContribution {
+
+        private final int[] cells;
+        private final long[] values;
+
+        private OrderContribution(int cellCount) {
+            this.cells = new int[cellCount];
+            this.values = new long[4 * cellCount];
+        }
+
+    }
+
+}
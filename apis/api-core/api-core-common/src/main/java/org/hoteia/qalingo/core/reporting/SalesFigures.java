@@ -0,0 +1,68 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.reporting;
+
+import java.math.BigDecimal;
+
+/**
+ * Sales figures of one group of a {@link SalesQuery} : the key is a date for
+ * the days, an id for the market areas and the retailers, a code otherwise.
+ * The shipping has no sku : its key is null when the figures are by sku.
+ */
+public class SalesFigures {
+
+    private final Object key;
+    private final long revenue;
+    private final long units;
+    private final long tax;
+    private final long shipping;
+
+    public SalesFigures(Object key, long revenue, long units, long tax, long shipping) {
+        this.key = key;
+        this.revenue = revenue;
+        this.units = units;
+        this.tax = tax;
+        this.shipping = shipping;
+    }
+
+    public Object getKey() {
+        return key;
+    }
+
+    public BigDecimal getRevenue() {
+        return SalesLine.fromMoney(revenue);
+    }
+
+    public long getUnits() {
+        return units;
+    }
+
+    public BigDecimal getTax() {
+        return SalesLine.fromMoney(tax);
+    }
+
+    public BigDecimal getShipping() {
+        return SalesLine.fromMoney(shipping);
+    }
+
+    public BigDecimal getTotal() {
+        return SalesLine.fromMoney(revenue + tax + shipping);
+    }
+
+    protected long getRevenueAmount() {
+        return revenue;
+    }
+
+    @Override
+    public String toString() {
+        return "SalesFigures [key=" + key + ", revenue=" + getRevenue() + ", units=" + units + ", tax=" + getTax() + ", shipping=" + getShipping() + "]";
+    }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.reporting;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Date;
+
+/**
+ * Contribution of an order to one aggregate of the sales : an order item, or
+ * the shipping of the order without sku. The amounts are in units of
+ * 10^-{@link #MONEY_SCALE} of the currency.
+ */
+public class SalesLine {
+
+    public static final int MONEY_SCALE = 4;
+
+    private final Date date;
+    private final Long marketAreaId;
+    private final Long retailerId;
+    private final String currencyCode;
+    private final String skuCode;
+    private final long revenue;
+    private final long units;
+    private final long tax;
+    private final long shipping;
+
+    public SalesLine(Date date, Long marketAreaId, Long retailerId, String currencyCode, String skuCode,
+                     long revenue, long units, long tax, long shipping) {
+        this.date = date;
+        this.marketAreaId = marketAreaId;
+        this.retailerId = retailerId;
+        this.currencyCode = currencyCode;
+        this.skuCode = skuCode;
+        this.revenue = revenue;
+        this.units = units;
+        this.tax = tax;
+        this.shipping = shipping;
+    }
+
+    public static long toMoney(final BigDecimal amount) {
+        if (amount == null) {
+            return 0;
+        }
+        return amount.movePointRight(MONEY_SCALE).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    public static BigDecimal fromMoney(final long amount) {
+        return BigDecimal.valueOf(amount, MONEY_SCALE);
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public Long getMarketAreaId() {
+        return marketAreaId;
+    }
+
+    public Long getRetailerId() {
+        return retailerId;
+    }
+
+    public String getCurrencyCode() {
+        return currencyCode;
+    }
+
+    public String getSkuCode() {
+        return skuCode;
+    }
+
+    public long getRevenue() {
+        return revenue;
+    }
+
+    public long getUnits() {
+        return units;
+    }
+
+    public long getTax() {
+        return tax;
+    }
+
+    public long getShipping() {
+        return shipping;
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.reporting;
+
+import java.util.Date;
+
+/**
+ * Drill-down over the sales aggregates : the filters left null match every
+ * value, the days are inclusive.
+ */
+public class SalesQuery {
+
+    private SalesDimension groupBy = SalesDimension.DAY;
+    private Date fromDate;
+    private Date toDate;
+    private Long marketAreaId;
+    private Long retailerId;
+    private String currencyCode;
+    private String skuCode;
+    private int maxResults;
+
+    public SalesDimension getGroupBy() {
+        return groupBy;
+    }
+
+    public void setGroupBy(SalesDimension groupBy) {
+        this.groupBy = groupBy;
+    }
+
+    public Date getFromDate() {
+        return fromDate;
+    }
+
+    public void setFromDate(Date fromDate) {
+        this.fromDate = fromDate;
+    }
+
+    public Date getToDate() {
+        return toDate;
+    }
+
+    public void setToDate(Date toDate) {
+        this.toDate = toDate;
+    }
+
+    public Long getMarketAreaId() {
+        return marketAreaId;
+    }
+
+    public void setMarketAreaId(Long marketAreaId) {
+        this.marketAreaId = marketAreaId;
+    }
+
+    public Long getRetailerId() {
+        return retailerId;
+    }
+
+    public void setRetailerId(Long retailerId) {
+        this.retailerId = retailerId;
+    }
+
+    public String getCurrencyCode() {
+        return currencyCode;
+    }
+
+    public void setCurrencyCode(String currencyCode) {
+        this.currencyCode = currencyCode;
+    }
+
+    public String getSkuCode() {
+        return skuCode;
+    }
+
+    public void setSkuCode(String skuCode) {
+        this.skuCode = skuCode;
+    }
+
+    /**
+     * @return the number of groups returned, 0 for all : the days are sorted
+     *         by date, the other groups by revenue.
+     */
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    public void setMaxResults(int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+}
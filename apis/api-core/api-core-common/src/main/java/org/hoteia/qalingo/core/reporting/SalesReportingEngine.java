@@ -0,0 +1,392 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.reporting;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.hoteia.qalingo.core.dao.OrderCustomerDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keeps the {@link SalesCube} of all the orders. It is built in the
+ * background, at startup or on the first query, by ranges of order ids read
+ * in parallel, then fed with the orders updated since : the orders are
+ * created by the other applications, so they are found by their update date,
+ * paged by update date and id. The queries find no figures until the cube is
+ * built.
+ *
+ * An order can be committed after an order with a later update date : each
+ * refresh reads again the orders updated during the refresh lag before the
+ * last update read, and skips the ones read with the same update date.
+ *
+ * The rows are read by projection queries, without loading the orders.
+ */
+@Component(value = "salesReportingEngine")
+@ManagedResource
+public class SalesReportingEngine {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    protected OrderCustomerDao orderCustomerDao;
+
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    @Value("${reporting.sales.rebuild.threads:4}")
+    private int rebuildThreads = 4;
+
+    @Value("${reporting.sales.rebuild.chunk.size:2000}")
+    private int rebuildChunkSize = 2000;
+
+    @Value("${reporting.sales.refresh.delay:60000}")
+    private long refreshDelay = 60000;
+
+    @Value("${reporting.sales.refresh.batch.size:500}")
+    private int refreshBatchSize = 500;
+
+    @Value("${reporting.sales.refresh.lag:300000}")
+    private long refreshLag = 300000;
+
+    @Value("${reporting.sales.rebuild.on.startup:false}")
+    private boolean rebuildOnStartup = false;
+
+    private volatile SalesCube cube;
+
+    // THE LAST UPDATE DATE READ
+    private volatile Date refreshedSince;
+
+    // THE UPDATE DATE READ BY ORDER, FOR THE ORDERS UPDATED DURING THE REFRESH LAG : GUARDED BY THIS
+    private final Map<Long, Date> lagOrderUpdates = new HashMap<Long, Date>();
+
+    private final Object executorLock = new Object();
+
+    private ScheduledExecutorService refreshExecutor;
+
+    private final AtomicLong rebuildCount = new AtomicLong();
+    private final AtomicLong refreshedOrderCount = new AtomicLong();
+    private volatile long lastRebuildTime;
+
+    /**
+     * @return the figures, none while the cube is not built.
+     */
+    public List<SalesFigures> query(final SalesQuery query) {
+        SalesCube currentCube = getCube();
+        if (currentCube == null) {
+            return Collections.emptyList();
+        }
+        return currentCube.query(query);
+    }
+
+    /**
+     * @return the cube, or null while it is built in the background.
+     */
+    protected SalesCube getCube() {
+        SalesCube currentCube = cube;
+        if (currentCube == null) {
+            start();
+        }
+        return currentCube;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (rebuildOnStartup) {
+            start();
+        }
+    }
+
+    /**
+     * Starts the background thread : it builds the cube, then refreshes it.
+     */
+    protected void start() {
+        synchronized (executorLock) {
+            if (refreshExecutor != null) {
+                return;
+            }
+            refreshExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "sales-reporting-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            refreshExecutor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        if (cube == null) {
+                            rebuild();
+                        } else {
+                            refresh();
+                        }
+                    } catch (Exception e) {
+                        logger.error("Sales reporting rebuild or refresh failed", e);
+                    }
+                }
+            }, 0, refreshDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        synchronized (executorLock) {
+            if (refreshExecutor != null) {
+                refreshExecutor.shutdownNow();
+                refreshExecutor = null;
+            }
+        }
+    }
+
+    /**
+     * Builds a new cube from the order tables, by ranges of order ids read in
+     * parallel, and replaces the current one.
+     */
+    @ManagedOperation
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        // THE ORDERS UPDATED DURING THE REBUILD ARE READ AGAIN BY THE NEXT REFRESH
+        Date since = new Date(start - refreshDelay);
+        Long maxOrderId = readOnly(new TransactionCallback<Long>() {
+            public Long doInTransaction(TransactionStatus status) {
+                return orderCustomerDao.getMaxOrderId();
+            }
+        });
+
+        final SalesCube newCube = new SalesCube();
+        if (maxOrderId != null) {
+            ExecutorService rebuildExecutor = Executors.newFixedThreadPool(rebuildThreads, new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger();
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "sales-reporting-rebuild-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            try {
+                List<Future<?>> futures = new ArrayList<Future<?>>();
+                for (long fromOrderId = 0; fromOrderId <= maxOrderId; fromOrderId += rebuildChunkSize) {
+                    final long from = fromOrderId;
+                    final long to = fromOrderId + rebuildChunkSize - 1;
+                    futures.add(rebuildExecutor.submit(new Runnable() {
+                        public void run() {
+                            newCube.putOrders(readOnly(new TransactionCallback<Map<Long, List<SalesLine>>>() {
+                                public Map<Long, List<SalesLine>> doInTransaction(TransactionStatus status) {
+                                    return toSalesLines(null, orderCustomerDao.findSalesItemRows(from, to),
+                                                        orderCustomerDao.findSalesTaxRows(from, to), orderCustomerDao.findSalesShippingRows(from, to));
+                                }
+                            }));
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Sales reporting rebuild interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Sales reporting rebuild failed", e.getCause());
+            } finally {
+                rebuildExecutor.shutdownNow();
+            }
+        }
+        cube = newCube;
+        refreshedSince = since;
+        lagOrderUpdates.clear();
+        rebuildCount.incrementAndGet();
+        lastRebuildTime = System.currentTimeMillis() - start;
+        logger.info("Sales reporting rebuilt: " + newCube.getOrderCount() + " orders, " + newCube.getCellCount() + " cells in " + lastRebuildTime + " ms");
+    }
+
+    /**
+     * Replaces the figures of the orders updated since the last refresh, and
+     * of the orders committed late during the refresh lag.
+     */
+    @ManagedOperation
+    public synchronized void refresh() {
+        final SalesCube currentCube = cube;
+        if (currentCube == null) {
+            return;
+        }
+        long lastUpdateTime = refreshedSince.getTime();
+        Date since = new Date(lastUpdateTime - refreshLag);
+        Long afterId = null;
+        while (true) {
+            final Date batchSince = since;
+            final Long batchAfterId = afterId;
+            List<Object[]> updatedOrders = readOnly(new TransactionCallback<List<Object[]>>() {
+                public List<Object[]> doInTransaction(TransactionStatus status) {
+                    return orderCustomerDao.findOrderIdsUpdatedSince(batchSince, batchAfterId, refreshBatchSize);
+                }
+            });
+            final List<Long> orderIds = new ArrayList<Long>(updatedOrders.size());
+            for (Object[] row : updatedOrders) {
+                Long orderId = (Long) row[0];
+                Date dateUpdate = (Date) row[1];
+                // AN ORDER READ AGAIN WITH THE SAME UPDATE DATE IS UNCHANGED
+                Date previousDateUpdate = lagOrderUpdates.put(orderId, dateUpdate);
+                if (previousDateUpdate == null || previousDateUpdate.getTime() != dateUpdate.getTime()) {
+                    orderIds.add(orderId);
+                }
+                lastUpdateTime = Math.max(lastUpdateTime, dateUpdate.getTime());
+            }
+            if (!orderIds.isEmpty()) {
+                currentCube.putOrders(readOnly(new TransactionCallback<Map<Long, List<SalesLine>>>() {
+                    public Map<Long, List<SalesLine>> doInTransaction(TransactionStatus status) {
+                        return toSalesLines(orderIds, orderCustomerDao.findSalesItemRows(orderIds),
+                                            orderCustomerDao.findSalesTaxRows(orderIds), orderCustomerDao.findSalesShippingRows(orderIds));
+                    }
+                }));
+                refreshedOrderCount.addAndGet(orderIds.size());
+            }
+            if (updatedOrders.size() < refreshBatchSize) {
+                break;
+            }
+            // THE NEXT BATCH STARTS AFTER THE LAST ORDER OF THIS ONE, AT THE SAME DATE OR LATER
+            Object[] lastRow = updatedOrders.get(updatedOrders.size() - 1);
+            since = (Date) lastRow[1];
+            afterId = (Long) lastRow[0];
+        }
+        refreshedSince = new Date(lastUpdateTime);
+
+        // THE NEXT REFRESH READS AGAIN FROM THE LAG BEFORE THE LAST UPDATE
+        long lagStartTime = lastUpdateTime - refreshLag;
+        for (Iterator<Date> iterator = lagOrderUpdates.values().iterator(); iterator.hasNext();) {
+            if (iterator.next().getTime() < lagStartTime) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @param orderIds the orders read, even without rows : null for all the orders of the rows.
+     */
+    protected Map<Long, List<SalesLine>> toSalesLines(final Collection<Long> orderIds, final List<Object[]> itemRows,
+                                                      final List<Object[]> taxRows, final List<Object[]> shippingRows) {
+        Map<Long, List<SalesLine>> orderLines = new LinkedHashMap<Long, List<SalesLine>>();
+        if (orderIds != null) {
+            for (Long orderId : orderIds) {
+                orderLines.put(orderId, new ArrayList<SalesLine>());
+            }
+        }
+        Map<Long, BigDecimal> itemTaxes = new HashMap<Long, BigDecimal>();
+        for (Object[] row : taxRows) {
+            itemTaxes.put((Long) row[0], (BigDecimal) row[1]);
+        }
+        for (Object[] row : itemRows) {
+            Long retailerId = row[4] != null ? (Long) row[4] : (Long) row[3];
+            BigDecimal price = (BigDecimal) row[8];
+            int quantity = ((Number) row[9]).intValue();
+            long revenue = price != null ? SalesLine.toMoney(price.multiply(new BigDecimal(quantity))) : 0;
+            getLines(orderLines, (Long) row[0]).add(new SalesLine((Date) row[1], (Long) row[2], retailerId, (String) row[5], (String) row[7],
+                                                                  revenue, quantity, SalesLine.toMoney(itemTaxes.get(row[6])), 0));
+        }
+        for (Object[] row : shippingRows) {
+            getLines(orderLines, (Long) row[0]).add(new SalesLine((Date) row[1], (Long) row[2], (Long) row[3], (String) row[4], null,
+                                                                  0, 0, 0, SalesLine.toMoney((BigDecimal) row[5])));
+        }
+        return orderLines;
+    }
+
+    private List<SalesLine> getLines(final Map<Long, List<SalesLine>> orderLines, final Long orderId) {
+        List<SalesLine> lines = orderLines.get(orderId);
+        if (lines == null) {
+            lines = new ArrayList<SalesLine>();
+            orderLines.put(orderId, lines);
+        }
+        return lines;
+    }
+
+    private <T> T readOnly(final TransactionCallback<T> callback) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate.execute(callback);
+    }
+
+    @ManagedAttribute
+    public boolean isBuilt() {
+        return cube != null;
+    }
+
+    @ManagedAttribute
+    public int getOrderCount() {
+        SalesCube currentCube = cube;
+        return currentCube != null ? currentCube.getOrderCount() : 0;
+    }
+
+    @ManagedAttribute
+    public int getCellCount() {
+        SalesCube currentCube = cube;
+        return currentCube != null ? currentCube.getCellCount() : 0;
+    }
+
+    @ManagedAttribute
+    public long getRebuildCount() {
+        return rebuildCount.get();
+    }
+
+    @ManagedAttribute
+    public long getLastRebuildTime() {
+        return lastRebuildTime;
+    }
+
+    @ManagedAttribute
+    public long getRefreshedOrderCount() {
+        return refreshedOrderCount.get();
+    }
+
+    @ManagedAttribute
+    public Date getRefreshedSince() {
+        return refreshedSince;
+    }
+
+    @ManagedAttribute
+    public long getRefreshLag() {
+        return refreshLag;
+    }
+
+    @ManagedAttribute
+    public void setRefreshLag(long refreshLag) {
+        this.refreshLag = refreshLag;
+    }
+
+}
@@ -13,6 +13,9 @@ import java.net.URLEncoder;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -32,6 +35,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 public abstract class AbstractUrlService {
 
+    private static final ConcurrentMap<String, Pattern> URL_PARAMETER_PATTERNS = new ConcurrentHashMap<String, Pattern>();
+
     @Autowired
     public CoreMessageSource coreMessageSource;
 
@@ -42,12 +47,8 @@ public abstract class AbstractUrlService {
         if (StringUtils.isNotEmpty(url)) {
             if (urlParams != null) {
                 for (Entry<String, String> entry : urlParams.entrySet()) {
-                    String key = String.format("\\{%s(:[^\\}]+)?\\}", entry.getKey());
-                    if (StringUtils.equals(entry.getKey(), "slug")) {
-                        key = "\\*\\*";
-                    }
                     if (entry.getValue() != null) {
-                        url = url.replaceAll(key, entry.getValue());
+                        url = getUrlParameterPattern(entry.getKey()).matcher(url).replaceAll(entry.getValue());
                     }
                 }
             }
@@ -63,6 +64,22 @@ public abstract class AbstractUrlService {
         return url;
     }
 
+    /**
+     * The url parameter patterns are compiled once by parameter name.
+     */
+    protected Pattern getUrlParameterPattern(String urlParameterName) {
+        Pattern pattern = URL_PARAMETER_PATTERNS.get(urlParameterName);
+        if (pattern == null) {
+            String regex = String.format("\\{%s(:[^\\}]+)?\\}", urlParameterName);
+            if (StringUtils.equals(urlParameterName, "slug")) {
+                regex = "\\*\\*";
+            }
+            pattern = Pattern.compile(regex);
+            URL_PARAMETER_PATTERNS.putIfAbsent(urlParameterName, pattern);
+        }
+        return pattern;
+    }
+
     public String buildAbsoluteUrl(final RequestData requestData, final String relativeUrl) throws Exception {
         final HttpServletRequest request = requestData.getRequest();
         String cleanedRelativeUrl = relativeUrl.replace(buildDefaultPrefix(requestData), "");
@@ -49,6 +49,17 @@ public class CartService {
     }
     
     public void addProductSkuToCart(Cart cart, Retailer retailer, final String catalogCategoryCode, final String productSkuCode, final int quantity) throws Exception {
+        updateCartItem(cart, retailer, catalogCategoryCode, productSkuCode, getAddedQuantity(cart, retailer, productSkuCode, quantity));
+    }
+
+    /**
+     * Same as {@link #addProductSkuToCart(Cart, Retailer, String, String, int)}, the cart is saved later by the caller.
+     */
+    public Cart addProductSkuToCartWithoutSave(Cart cart, Retailer retailer, final String catalogCategoryCode, final String productSkuCode, final int quantity) throws Exception {
+        return updateCartItemWithoutSave(cart, retailer, catalogCategoryCode, productSkuCode, getAddedQuantity(cart, retailer, productSkuCode, quantity));
+    }
+
+    private int getAddedQuantity(Cart cart, Retailer retailer, final String productSkuCode, final int quantity) {
         int finalQuantity = quantity;
         if (cart != null) {
             Set<CartItem> cartItems = cart.getCartItems();
@@ -60,7 +71,7 @@ public class CartService {
                 }
             }
         }
-        updateCartItem(cart, retailer, catalogCategoryCode, productSkuCode, finalQuantity);
+        return finalQuantity;
     }
     
     public Cart updateCartItem(Cart cart, final String productSkuCode, final int quantity) throws Exception {
@@ -68,12 +79,21 @@ public class CartService {
     }
     
     public Cart updateCartItem(Cart cart, Retailer retailer, final String catalogCategoryCode, final String productSkuCode, final int quantity) throws Exception {
+        updateCartItemWithoutSave(cart, retailer, catalogCategoryCode, productSkuCode, quantity);
+        return saveOrUpdateCart(cart);
+    }
+
+    /**
+     * Same as {@link #updateCartItem(Cart, Retailer, String, String, int)}, the cart is saved later by the caller.
+     */
+    public Cart updateCartItemWithoutSave(Cart cart, Retailer retailer, final String catalogCategoryCode, final String productSkuCode, final int quantity) throws Exception {
         Set<CartItem> cartItems = cart.getCartItems();
         boolean productSkuIsNew = true;
         for (Iterator<CartItem> iterator = cartItems.iterator(); iterator.hasNext();) {
             CartItem cartItem = (CartItem) iterator.next();
             if (cartItem.getProductSkuCode().equalsIgnoreCase(productSkuCode)) {
                 cartItem.setQuantity(quantity);
+                cart.getPricing().updateCartItem(cartItem);
                 productSkuIsNew = false;
             }
         }
@@ -99,11 +119,12 @@ public class CartService {
                     cartItem.setCatalogCategoryCode(defaultVirtualCatalogCategory.getCode());
                 }
                 cart.getCartItems().add(cartItem);
+                cart.getPricing().updateCartItem(cartItem);
             } else {
                 // TODO : throw ??
             }
         }
-        return saveOrUpdateCart(cart);
+        return cart;
     }
     
     public Cart deleteCartItem(Cart cart, final String productSkuCode) throws Exception {
@@ -111,6 +132,13 @@ public class CartService {
     }
     
     public Cart deleteCartItem(Cart cart, Retailer retailer, final String productSkuCode) throws Exception {
+        return saveOrUpdateCart(deleteCartItemWithoutSave(cart, retailer, productSkuCode));
+    }
+
+    /**
+     * Same as {@link #deleteCartItem(Cart, Retailer, String)}, the cart is saved later by the caller.
+     */
+    public Cart deleteCartItemWithoutSave(Cart cart, Retailer retailer, final String productSkuCode) throws Exception {
         if(cart != null){
             Set<CartItem> cartItems = new HashSet<CartItem>(cart.getCartItems());
             for (Iterator<CartItem> iterator = cart.getCartItems().iterator(); iterator.hasNext();) {
@@ -118,35 +146,49 @@ public class CartService {
                 if (cartItem.getProductSkuCode().equalsIgnoreCase(productSkuCode)
                         && cartItem.getRetailerId().equals(retailer)) {
                     cartItems.remove(cartItem);
+                    cart.getPricing().removeCartItem(cartItem);
                 }
             }
             cart.setCartItems(cartItems);
         }
-        return saveOrUpdateCart(cart);
+        return cart;
     }
       
     public Cart setShippingAddress(Cart cart, Customer customer, Long customerAddressId) throws Exception {
+        return saveOrUpdateCart(setShippingAddressWithoutSave(cart, customer, customerAddressId));
+    }
+
+    public Cart setShippingAddressWithoutSave(Cart cart, Customer customer, Long customerAddressId) throws Exception {
         if(customer.getAddress(customerAddressId) != null){
             cart.setShippingAddressId(customerAddressId);
         }
-        return saveOrUpdateCart(cart);
+        return cart;
     }
 
     public Cart setBillingAddress(Cart cart, Customer customer, Long customerAddressId) throws Exception {
+        return saveOrUpdateCart(setBillingAddressWithoutSave(cart, customer, customerAddressId));
+    }
+
+    public Cart setBillingAddressWithoutSave(Cart cart, Customer customer, Long customerAddressId) throws Exception {
         if(customer.getAddress(customerAddressId) != null){
             cart.setShippingAddressId(customerAddressId);
         }
-        return saveOrUpdateCart(cart);
+        return cart;
     }
     
     public Cart setDeliveryMethod(Cart cart, String deliveryMethodCode) throws Exception {
+        return saveOrUpdateCart(setDeliveryMethodWithoutSave(cart, deliveryMethodCode));
+    }
+
+    public Cart setDeliveryMethodWithoutSave(Cart cart, String deliveryMethodCode) throws Exception {
         if(cart.getDeliveryMethods().isEmpty()){
             cart.getDeliveryMethods().add(deliveryMethodService.getDeliveryMethodByCode(deliveryMethodCode));
         } else {
             cart.getDeliveryMethods().clear();
             cart.getDeliveryMethods().add(deliveryMethodService.getDeliveryMethodByCode(deliveryMethodCode));
         }
-        return saveOrUpdateCart(cart);
+        cart.getPricing().updateDeliveryMethods();
+        return cart;
     }
     
     public Cart newCustomerCart(final MarketArea marketArea, Customer customer) {
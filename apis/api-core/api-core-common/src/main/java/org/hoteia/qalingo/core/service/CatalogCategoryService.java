@@ -9,9 +9,12 @@
  */
 package org.hoteia.qalingo.core.service;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.hoteia.qalingo.core.comparator.CatalogCategoryMasterComparator;
 import org.hoteia.qalingo.core.comparator.CatalogCategoryVirtualComparator;
@@ -133,10 +136,45 @@ public class CatalogCategoryService {
         List<CatalogCategoryVirtual> categories = catalogCategoryDao.findAllVirtualCatalogCategoriesByCatalogCode(catalogVirtualCode, params);
         return orderCategoryVirtualList(categories);
     }
+
+    /**
+     * The categories of the page are sorted as requested, not by their ranking.
+     */
+    public PagedResult<CatalogCategoryVirtual> findAllVirtualCatalogCategoriesByCatalogCode(final String catalogVirtualCode, final PageRequest pageRequest, Object... params) {
+        return catalogCategoryDao.findAllVirtualCatalogCategoriesByCatalogCode(catalogVirtualCode, pageRequest, params);
+    }
     
     public List<CatalogCategoryVirtual> findVirtualCategoriesByProductSkuId(final Long productSkuId, Object... params) {
         return catalogCategoryDao.findVirtualCategoriesByProductSkuId(productSkuId, params);
     }
+
+    /**
+     * Virtual categories by product sku id, for several product skus in one
+     * query : the default category of a product sku is the first of its list.
+     */
+    public Map<Long, List<CatalogCategoryVirtual>> findVirtualCategoriesByProductSkuIds(final List<Long> productSkuIds) {
+        Map<Long, List<CatalogCategoryVirtual>> categoriesByProductSkuId = new HashMap<Long, List<CatalogCategoryVirtual>>();
+        if (productSkuIds == null || productSkuIds.isEmpty()) {
+            return categoriesByProductSkuId;
+        }
+        List<Object[]> rows = catalogCategoryDao.findVirtualCategoriesByProductSkuIds(productSkuIds);
+        for (Object[] row : rows) {
+            Long productSkuId = (Long) row[0];
+            boolean isDefaultCategory = Boolean.TRUE.equals(row[1]);
+            CatalogCategoryVirtual catalogCategoryVirtual = (CatalogCategoryVirtual) row[2];
+            List<CatalogCategoryVirtual> categories = categoriesByProductSkuId.get(productSkuId);
+            if (categories == null) {
+                categories = new ArrayList<CatalogCategoryVirtual>();
+                categoriesByProductSkuId.put(productSkuId, categories);
+            }
+            if (isDefaultCategory) {
+                categories.add(0, catalogCategoryVirtual);
+            } else {
+                categories.add(catalogCategoryVirtual);
+            }
+        }
+        return categoriesByProductSkuId;
+    }
     
     public List<CatalogCategoryVirtual> orderCategoryVirtualList(final List<CatalogCategoryVirtual> categories) {
         Collections.sort(categories, new CatalogCategoryVirtualComparator());
@@ -13,6 +13,9 @@ import java.util.Date;
 import java.util.List;
 
 import org.hoteia.qalingo.core.dao.CustomerDao;
+import org.hoteia.qalingo.core.dao.EntityHandler;
+import org.hoteia.qalingo.core.dao.PageRequest;
+import org.hoteia.qalingo.core.dao.PagedResult;
 import org.hoteia.qalingo.core.domain.Customer;
 import org.hoteia.qalingo.core.domain.CustomerCredential;
 import org.hoteia.qalingo.core.domain.CustomerGroup;
@@ -61,6 +64,14 @@ public class CustomerService {
         return customerDao.findCustomers(params);
     }
 
+    public PagedResult<Customer> findCustomers(final PageRequest pageRequest, Object... params) {
+        return customerDao.findCustomers(pageRequest, params);
+    }
+
+    public int streamCustomers(final int pageSize, final EntityHandler<Customer> entityHandler, Object... params) throws Exception {
+        return customerDao.streamCustomers(pageSize, entityHandler, params);
+    }
+
     public Customer addProductSkuToWishlist(final MarketArea marketArea, Customer customer, final String catalogCategoryCode, final String productSkuCode) throws Exception {
         final CustomerMarketArea customerMarketArea = customer.getCurrentCustomerMarketArea(marketArea.getId());
         CustomerWishlist customerWishlist = customerMarketArea.getCustomerWishlistByProductSkuCode(productSkuCode);
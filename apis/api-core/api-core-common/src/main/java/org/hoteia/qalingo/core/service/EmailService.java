@@ -13,6 +13,7 @@ import java.io.IOException;
 import java.net.URLEncoder;
 import java.sql.Timestamp;
 import java.text.DateFormat;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -21,7 +22,6 @@ import java.util.UUID;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
-import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.exception.VelocityException;
 import org.hoteia.qalingo.core.Constants;
 import org.hoteia.qalingo.core.RequestConstants;
@@ -45,6 +45,8 @@ import org.hoteia.qalingo.core.email.bean.RetailerContactEmailBean;
 import org.hoteia.qalingo.core.email.bean.UserForgottenPasswordEmailBean;
 import org.hoteia.qalingo.core.email.bean.UserNewAccountConfirmationEmailBean;
 import org.hoteia.qalingo.core.email.bean.UserResetPasswordConfirmationEmailBean;
+import org.hoteia.qalingo.core.email.EmailRenderingEngine;
+import org.hoteia.qalingo.core.email.outbox.EmailOutboxEntry;
 import org.hoteia.qalingo.core.exception.EmailProcessException;
 import org.hoteia.qalingo.core.i18n.message.CoreMessageSource;
 import org.hoteia.qalingo.core.pojo.RequestData;
@@ -55,7 +57,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.mail.MailException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.ui.velocity.VelocityEngineUtils;
 
 @Service("emailService")
 @Transactional
@@ -74,7 +75,7 @@ public class EmailService {
 	protected UrlService urlService;
 	
 	@Autowired
-	protected VelocityEngine velocityEngine;
+	protected EmailRenderingEngine emailRenderingEngine;
     
 	@Autowired
 	protected CoreMessageSource coreMessageSource;
@@ -106,6 +107,42 @@ public class EmailService {
 		emailDao.saveEmail(email, mimeMessagePreparator);
 	}
 	
+    public List<Email> findEmailsByIds(final Collection<Long> emailIds, Object... params) {
+        return emailDao.findEmailsByIds(emailIds, params);
+    }
+
+    public List<EmailOutboxEntry> findEmailOutboxEntries(final int maxProcessedCount, final long renderLease, final int maxResults) {
+        return emailDao.findEmailOutboxEntries(maxProcessedCount, renderLease, maxResults);
+    }
+
+    public boolean claimEmail(final EmailOutboxEntry entry) {
+        return emailDao.claimEmail(entry);
+    }
+
+    public MimeMessagePreparatorImpl getEmailContent(final Email email) throws IOException {
+        return emailDao.getEmailContent(email);
+    }
+
+    public int markEmailsSended(final Collection<Long> emailIds) {
+        return emailDao.updateEmailsStatus(emailIds, Email.EMAIl_STATUS_SENDED, true);
+    }
+
+    /**
+     * Gives back claimed emails which were not sent, without counting an attempt.
+     */
+    public int releaseEmails(final Collection<Long> emailIds) {
+        return emailDao.updateEmailsStatus(emailIds, Email.EMAIl_STATUS_PENDING, false);
+    }
+
+    public void markEmailError(final Long emailId, final Exception exception) throws IOException {
+        Email email = emailDao.getEmailById(emailId);
+        if (email != null) {
+            email.setStatus(Email.EMAIl_STATUS_ERROR);
+            email.setProcessedCount(email.getProcessedCount() + 1);
+            emailDao.saveEmail(email, exception);
+        }
+    }
+
 	public void deleteEmail(final Email email) {
 		emailDao.deleteEmail(email);
 	}
@@ -137,7 +174,7 @@ public class EmailService {
         	java.sql.Timestamp currentDate = new java.sql.Timestamp((new java.util.Date()).getTime());
         	model.put(CURRENT_DATE, dateFormatter.format(currentDate));
         	model.put("contactEmailBean", contactEmailBean);
-        	model.put(WORDING, coreMessageSource.loadWording(Email.WORDING_SCOPE_EMAIL, locale));
+        	model.put(WORDING, emailRenderingEngine.getWording(locale));
 
             String fromAddress = handleFromAddress(contactEmailBean.getFromAddress(), contextNameValue);
             String fromName = handleFromName(contactEmailBean.getFromName(), locale);
@@ -150,15 +187,7 @@ public class EmailService {
         	mimeMessagePreparator.setReplyTo(fromAddress);
         	Object[] parameters = {contactEmailBean.getLastname(), contactEmailBean.getFirstname()};
         	mimeMessagePreparator.setSubject(coreMessageSource.getMessage("email.contact.email_subject", parameters, locale));
-        	mimeMessagePreparator.setHtmlContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "contact-html-content.vm", model));
-        	mimeMessagePreparator.setPlainTextContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "contact-text-content.vm", model));
-        	
-        	mimeMessagePreparator.getHtmlContent();
-        	
-        	Email email = new Email();
-        	email.setType(Email.EMAIl_TYPE_CONTACT);
-        	email.setStatus(Email.EMAIl_STATUS_PENDING);
-        	saveOrUpdateEmail(email, mimeMessagePreparator);
+        	emailRenderingEngine.renderAndSave(requestData, Email.EMAIl_TYPE_CONTACT, velocityPath, "contact", mimeMessagePreparator, model);
         	
         } catch (MailException e) {
         	logger.error("Error, can't save the message :", e);
@@ -191,7 +220,7 @@ public class EmailService {
         	model.put(CURRENT_DATE, dateFormatter.format(currentDate));
         	model.put(CUSTOMER, customer);
         	model.put("retailerContactEmailBean", retailerContactEmailBean);
-        	model.put(WORDING, coreMessageSource.loadWording(Email.WORDING_SCOPE_EMAIL, locale));
+        	model.put(WORDING, emailRenderingEngine.getWording(locale));
 
             String fromAddress = handleFromAddress(retailerContactEmailBean.getFromAddress(), contextNameValue);
             String fromName = handleFromName(retailerContactEmailBean.getFromName(), locale);
@@ -204,13 +233,7 @@ public class EmailService {
         	mimeMessagePreparator.setReplyTo(fromAddress);
         	Object[] parameters = {retailerContactEmailBean.getLastname(), retailerContactEmailBean.getFirstname()};
         	mimeMessagePreparator.setSubject(coreMessageSource.getMessage("email.retailer_contact.email_subject", parameters, locale));
-        	mimeMessagePreparator.setHtmlContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "retailer-contact-html-content.vm", model));
-        	mimeMessagePreparator.setPlainTextContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "retailer-contact-text-content.vm", model));
-        	
-        	Email email = new Email();
-        	email.setType(Email.EMAIl_TYPE_RETAILER_CONTACT);
-        	email.setStatus(Email.EMAIl_STATUS_PENDING);
-        	saveOrUpdateEmail(email, mimeMessagePreparator);
+        	emailRenderingEngine.renderAndSave(requestData, Email.EMAIl_TYPE_RETAILER_CONTACT, velocityPath, "retailer-contact", mimeMessagePreparator, model);
         	
         } catch (MailException e) {
         	logger.error("Error, can't save the message :", e);
@@ -244,7 +267,7 @@ public class EmailService {
         	java.sql.Timestamp currentDate = new java.sql.Timestamp((new java.util.Date()).getTime());
         	model.put(CURRENT_DATE, dateFormatter.format(currentDate));
         	model.put("newsletterEmailBean", newsletterEmailBean);
-        	model.put(WORDING, coreMessageSource.loadWording(Email.WORDING_SCOPE_EMAIL, locale));
+        	model.put(WORDING, emailRenderingEngine.getWording(locale));
 
     		Map<String, String> urlParams = new HashMap<String, String>();
     		urlParams.put(RequestConstants.REQUEST_PARAMETER_NEWSLETTER_EMAIL, URLEncoder.encode(newsletterEmailBean.getToEmail(), Constants.ANSI));
@@ -266,13 +289,7 @@ public class EmailService {
         	mimeMessagePreparator.setReplyTo(fromAddress);
         	Object[] parameters = {};
         	mimeMessagePreparator.setSubject(coreMessageSource.getMessage("email.newsletter_subscription.email_subject", parameters, locale));
-        	mimeMessagePreparator.setHtmlContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "newsletter-subscription-confirmation-html-content.vm", model));
-        	mimeMessagePreparator.setPlainTextContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "newsletter-subscription-confirmation-text-content.vm", model));
-        	
-        	Email email = new Email();
-        	email.setType(Email.EMAIl_TYPE_NEWSLETTER_SUBSCRIPTION);
-        	email.setStatus(Email.EMAIl_STATUS_PENDING);
-        	saveOrUpdateEmail(email, mimeMessagePreparator);
+        	emailRenderingEngine.renderAndSave(requestData, Email.EMAIl_TYPE_NEWSLETTER_SUBSCRIPTION, velocityPath, "newsletter-subscription-confirmation", mimeMessagePreparator, model);
         	
         } catch (MailException e) {
         	logger.error("Error, can't save the message :", e);
@@ -305,7 +322,7 @@ public class EmailService {
         	java.sql.Timestamp currentDate = new java.sql.Timestamp((new java.util.Date()).getTime());
         	model.put(CURRENT_DATE, dateFormatter.format(currentDate));
         	model.put("newsletterEmailBean", newsletterEmailBean);
-        	model.put(WORDING, coreMessageSource.loadWording(Email.WORDING_SCOPE_EMAIL, locale));
+        	model.put(WORDING, emailRenderingEngine.getWording(locale));
 
 			Map<String, String> urlParams = new HashMap<String, String>();
 			urlParams.put(RequestConstants.REQUEST_PARAMETER_NEWSLETTER_EMAIL, URLEncoder.encode(newsletterEmailBean.getToEmail(), Constants.ANSI));
@@ -329,13 +346,7 @@ public class EmailService {
         	mimeMessagePreparator.setReplyTo(fromAddress);
         	Object[] parameters = {};
         	mimeMessagePreparator.setSubject(coreMessageSource.getMessage("email.newsletter_unsubscription.email_subject", parameters, locale));
-        	mimeMessagePreparator.setHtmlContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "newsletter-unsubscription-confirmation-html-content.vm", model));
-        	mimeMessagePreparator.setPlainTextContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "newsletter-unsubscription-confirmation-text-content.vm", model));
-        	
-        	Email email = new Email();
-        	email.setType(Email.EMAIl_TYPE_NEWSLETTER_SUBSCRIPTION);
-        	email.setStatus(Email.EMAIl_STATUS_PENDING);
-        	saveOrUpdateEmail(email, mimeMessagePreparator);
+        	emailRenderingEngine.renderAndSave(requestData, Email.EMAIl_TYPE_NEWSLETTER_SUBSCRIPTION, velocityPath, "newsletter-unsubscription-confirmation", mimeMessagePreparator, model);
         	
         } catch (MailException e) {
         	logger.error("Error, can't save the message :", e);
@@ -368,7 +379,7 @@ public class EmailService {
         	java.sql.Timestamp currentDate = new java.sql.Timestamp((new java.util.Date()).getTime());
         	model.put(CURRENT_DATE, dateFormatter.format(currentDate));
         	model.put("customerNewAccountConfirmationEmailBean", customerNewAccountConfirmationEmailBean);
-        	model.put(WORDING, coreMessageSource.loadWording(Email.WORDING_SCOPE_EMAIL, locale));
+        	model.put(WORDING, emailRenderingEngine.getWording(locale));
 
 			Map<String, String> urlParams = new HashMap<String, String>();
 			urlParams.put(RequestConstants.REQUEST_PARAMETER_NEW_CUSTOMER_VALIDATION_EMAIL, URLEncoder.encode(customerNewAccountConfirmationEmailBean.getEmail(), Constants.ANSI));
@@ -387,13 +398,7 @@ public class EmailService {
         	mimeMessagePreparator.setReplyTo(fromAddress);
         	Object[] parameters = {customerNewAccountConfirmationEmailBean.getLastname(), customerNewAccountConfirmationEmailBean.getFirstname()};
         	mimeMessagePreparator.setSubject(coreMessageSource.getMessage("email.new_account.email_subject", parameters, locale));
-        	mimeMessagePreparator.setHtmlContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "new-account-confirmation-html-content.vm", model));
-        	mimeMessagePreparator.setPlainTextContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "new-account-confirmation-text-content.vm", model));
-        	
-        	Email email = new Email();
-        	email.setType(Email.EMAIl_TYPE_NEW_ACCOUNT_CONFIRMATION);
-        	email.setStatus(Email.EMAIl_STATUS_PENDING);
-        	saveOrUpdateEmail(email, mimeMessagePreparator);
+        	emailRenderingEngine.renderAndSave(requestData, Email.EMAIl_TYPE_NEW_ACCOUNT_CONFIRMATION, velocityPath, "new-account-confirmation", mimeMessagePreparator, model);
         	
         } catch (MailException e) {
         	logger.error("Error, can't save the message :", e);
@@ -428,7 +433,7 @@ public class EmailService {
         	model.put(CURRENT_DATE, dateFormatter.format(currentDate));
         	model.put(CUSTOMER, customer);
         	model.put("customerForgottenPasswordEmailBean", customerForgottenPasswordEmailBean);
-        	model.put(WORDING, coreMessageSource.loadWording(Email.WORDING_SCOPE_EMAIL, locale));
+        	model.put(WORDING, emailRenderingEngine.getWording(locale));
 
 			Map<String, String> urlParams = new HashMap<String, String>();
 			urlParams.put(RequestConstants.REQUEST_PARAMETER_PASSWORD_RESET_EMAIL, URLEncoder.encode(customer.getEmail(), Constants.ANSI));
@@ -450,13 +455,7 @@ public class EmailService {
         	mimeMessagePreparator.setReplyTo(fromAddress);
         	Object[] parameters = {customer.getLastname(), customer.getFirstname()};
         	mimeMessagePreparator.setSubject(coreMessageSource.getMessage("email.forgotten_password.email_subject", parameters, locale));
-        	mimeMessagePreparator.setHtmlContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "forgotten-password-html-content.vm", model));
-        	mimeMessagePreparator.setPlainTextContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "forgotten-password-text-content.vm", model));
-        	
-        	Email email = new Email();
-        	email.setType(Email.EMAIl_TYPE_FORGOTTEN_PASSWORD);
-        	email.setStatus(Email.EMAIl_STATUS_PENDING);
-        	saveOrUpdateEmail(email, mimeMessagePreparator);
+        	emailRenderingEngine.renderAndSave(requestData, Email.EMAIl_TYPE_FORGOTTEN_PASSWORD, velocityPath, "forgotten-password", mimeMessagePreparator, model);
         	
         } catch (MailException e) {
         	logger.error("Error, can't save the message :", e);
@@ -490,7 +489,7 @@ public class EmailService {
         	model.put(CURRENT_DATE, dateFormatter.format(currentDate));
         	model.put(CUSTOMER, customer);
         	model.put("customerResetPasswordConfirmationEmailBean", customerResetPasswordConfirmationEmailBean);
-        	model.put(WORDING, coreMessageSource.loadWording(Email.WORDING_SCOPE_EMAIL, locale));
+        	model.put(WORDING, emailRenderingEngine.getWording(locale));
 
 			String loginUrl = urlService.generateUrl(FoUrls.LOGIN, requestData);
         	model.put("loginUrl", urlService.buildAbsoluteUrl(requestData, loginUrl));
@@ -506,13 +505,7 @@ public class EmailService {
         	mimeMessagePreparator.setReplyTo(fromAddress);
         	Object[] parameters = {customer.getLastname(), customer.getFirstname()};
         	mimeMessagePreparator.setSubject(coreMessageSource.getMessage("email.reset_password_confirmation.email_subject", parameters, locale));
-        	mimeMessagePreparator.setHtmlContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "reset-password-confirmation-html-content.vm", model));
-        	mimeMessagePreparator.setPlainTextContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "reset-password-confirmation-text-content.vm", model));
-        	
-        	Email email = new Email();
-        	email.setType(Email.EMAIl_TYPE_RESET_PASSWORD_CONFIRMATION);
-        	email.setStatus(Email.EMAIl_STATUS_PENDING);
-        	saveOrUpdateEmail(email, mimeMessagePreparator);
+        	emailRenderingEngine.renderAndSave(requestData, Email.EMAIl_TYPE_RESET_PASSWORD_CONFIRMATION, velocityPath, "reset-password-confirmation", mimeMessagePreparator, model);
         	
         } catch (MailException e) {
         	logger.error("Error, can't save the message :", e);
@@ -545,7 +538,7 @@ public class EmailService {
             java.sql.Timestamp currentDate = new java.sql.Timestamp((new java.util.Date()).getTime());
             model.put(CURRENT_DATE, dateFormatter.format(currentDate));
             model.put("userNewAccountConfirmationEmailBean", userNewAccountConfirmationEmailBean);
-            model.put(WORDING, coreMessageSource.loadWording(Email.WORDING_SCOPE_EMAIL, locale));
+            model.put(WORDING, emailRenderingEngine.getWording(locale));
 
             Map<String, String> urlParams = new HashMap<String, String>();
             urlParams.put(RequestConstants.REQUEST_PARAMETER_NEW_CUSTOMER_VALIDATION_EMAIL, URLEncoder.encode(userNewAccountConfirmationEmailBean.getEmail(), Constants.ANSI));
@@ -564,13 +557,7 @@ public class EmailService {
             mimeMessagePreparator.setReplyTo(fromAddress);
             Object[] parameters = {userNewAccountConfirmationEmailBean.getLastname(), userNewAccountConfirmationEmailBean.getFirstname()};
             mimeMessagePreparator.setSubject(coreMessageSource.getMessage("email.new_account.email_subject", parameters, locale));
-            mimeMessagePreparator.setHtmlContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "new-account-confirmation-html-content.vm", model));
-            mimeMessagePreparator.setPlainTextContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "new-account-confirmation-text-content.vm", model));
-            
-            Email email = new Email();
-            email.setType(Email.EMAIl_TYPE_NEW_ACCOUNT_CONFIRMATION);
-            email.setStatus(Email.EMAIl_STATUS_PENDING);
-            saveOrUpdateEmail(email, mimeMessagePreparator);
+            emailRenderingEngine.renderAndSave(requestData, Email.EMAIl_TYPE_NEW_ACCOUNT_CONFIRMATION, velocityPath, "new-account-confirmation", mimeMessagePreparator, model);
             
         } catch (MailException e) {
             logger.error("Error, can't save the message :", e);
@@ -605,7 +592,7 @@ public class EmailService {
             model.put(CURRENT_DATE, dateFormatter.format(currentDate));
             model.put(CUSTOMER, user);
             model.put("userForgottenPasswordEmailBean", userForgottenPasswordEmailBean);
-            model.put(WORDING, coreMessageSource.loadWording(Email.WORDING_SCOPE_EMAIL, locale));
+            model.put(WORDING, emailRenderingEngine.getWording(locale));
 
             Map<String, String> urlParams = new HashMap<String, String>();
             urlParams.put(RequestConstants.REQUEST_PARAMETER_PASSWORD_RESET_EMAIL, URLEncoder.encode(user.getEmail(), Constants.ANSI));
@@ -629,13 +616,7 @@ public class EmailService {
             mimeMessagePreparator.setReplyTo(fromAddress);
             Object[] parameters = {user.getLastname(), user.getFirstname()};
             mimeMessagePreparator.setSubject(coreMessageSource.getMessage("email.forgotten_password.email_subject", parameters, locale));
-            mimeMessagePreparator.setHtmlContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "forgotten-password-html-content.vm", model));
-            mimeMessagePreparator.setPlainTextContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "forgotten-password-text-content.vm", model));
-            
-            Email email = new Email();
-            email.setType(Email.EMAIl_TYPE_FORGOTTEN_PASSWORD);
-            email.setStatus(Email.EMAIl_STATUS_PENDING);
-            saveOrUpdateEmail(email, mimeMessagePreparator);
+            emailRenderingEngine.renderAndSave(requestData, Email.EMAIl_TYPE_FORGOTTEN_PASSWORD, velocityPath, "forgotten-password", mimeMessagePreparator, model);
             
         } catch (MailException e) {
             logger.error("Error, can't save the message :", e);
@@ -669,7 +650,7 @@ public class EmailService {
             model.put(CURRENT_DATE, dateFormatter.format(currentDate));
             model.put(CUSTOMER, user);
             model.put("userResetPasswordConfirmationEmailBean", userResetPasswordConfirmationEmailBean);
-            model.put(WORDING, coreMessageSource.loadWording(Email.WORDING_SCOPE_EMAIL, locale));
+            model.put(WORDING, emailRenderingEngine.getWording(locale));
 
             String loginUrl = urlService.generateUrl(FoUrls.LOGIN, requestData);
             model.put("loginUrl", urlService.buildAbsoluteUrl(requestData, loginUrl));
@@ -685,13 +666,7 @@ public class EmailService {
             mimeMessagePreparator.setReplyTo(fromAddress);
             Object[] parameters = {user.getLastname(), user.getFirstname()};
             mimeMessagePreparator.setSubject(coreMessageSource.getMessage("email.reset_password_confirmation.email_subject", parameters, locale));
-            mimeMessagePreparator.setHtmlContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "reset-password-confirmation-html-content.vm", model));
-            mimeMessagePreparator.setPlainTextContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "reset-password-confirmation-text-content.vm", model));
-            
-            Email email = new Email();
-            email.setType(Email.EMAIl_TYPE_RESET_PASSWORD_CONFIRMATION);
-            email.setStatus(Email.EMAIl_STATUS_PENDING);
-            saveOrUpdateEmail(email, mimeMessagePreparator);
+            emailRenderingEngine.renderAndSave(requestData, Email.EMAIl_TYPE_RESET_PASSWORD_CONFIRMATION, velocityPath, "reset-password-confirmation", mimeMessagePreparator, model);
             
         } catch (MailException e) {
             logger.error("Error, can't save the message :", e);
@@ -725,7 +700,7 @@ public class EmailService {
         	model.put(CURRENT_DATE, dateFormatter.format(currentDate));
         	model.put(CUSTOMER, customer);
         	model.put("orderConfirmationEmailBean", orderConfirmationEmailBean);
-        	model.put(WORDING, coreMessageSource.loadWording(Email.WORDING_SCOPE_EMAIL, locale));
+        	model.put(WORDING, emailRenderingEngine.getWording(locale));
 
         	String fromAddress = handleFromAddress(orderConfirmationEmailBean.getFromAddress(), contextNameValue);
             String fromName = handleFromName(orderConfirmationEmailBean.getFromName(), locale);
@@ -738,13 +713,7 @@ public class EmailService {
         	mimeMessagePreparator.setReplyTo(fromAddress);
         	Object[] parameters = {customer.getLastname(), customer.getFirstname()};
         	mimeMessagePreparator.setSubject(coreMessageSource.getMessage("email.order.confirmation_email_subject", parameters, locale));
-        	mimeMessagePreparator.setHtmlContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "order-confirmation-html-content.vm", model));
-        	mimeMessagePreparator.setPlainTextContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "order-confirmation-text-content.vm", model));
-        	
-        	Email email = new Email();
-        	email.setType(Email.EMAIl_TYPE_ORDER_CONFIRMATION);
-        	email.setStatus(Email.EMAIl_STATUS_PENDING);
-        	saveOrUpdateEmail(email, mimeMessagePreparator);
+        	emailRenderingEngine.renderAndSave(requestData, Email.EMAIl_TYPE_ORDER_CONFIRMATION, velocityPath, "order-confirmation", mimeMessagePreparator, model);
         	
         } catch (MailException e) {
         	logger.error("Error, can't save the message :", e);
@@ -778,7 +747,7 @@ public class EmailService {
         	model.put(CURRENT_DATE, dateFormatter.format(currentDate));
         	model.put(CUSTOMER, customer);
         	model.put("orderSentConfirmationEmailBean", orderSentConfirmationEmailBean);
-        	model.put(WORDING, coreMessageSource.loadWording(Email.WORDING_SCOPE_EMAIL, locale));
+        	model.put(WORDING, emailRenderingEngine.getWording(locale));
 
         	String fromAddress = handleFromAddress(orderSentConfirmationEmailBean.getFromAddress(), contextNameValue);
             String fromName = handleFromName(orderSentConfirmationEmailBean.getFromName(), locale);
@@ -791,13 +760,7 @@ public class EmailService {
         	mimeMessagePreparator.setReplyTo(fromAddress);
         	Object[] parameters = {customer.getLastname(), customer.getFirstname()};
         	mimeMessagePreparator.setSubject(coreMessageSource.getMessage("email.order_shipped.shipped_email_subject", parameters, locale));
-        	mimeMessagePreparator.setHtmlContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "order-shipped-html-content.vm", model));
-        	mimeMessagePreparator.setPlainTextContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "order-shipped-text-content.vm", model));
-        	
-        	Email email = new Email();
-        	email.setType(Email.EMAIl_TYPE_ORDER_SHIPPED);
-        	email.setStatus(Email.EMAIl_STATUS_PENDING);
-        	saveOrUpdateEmail(email, mimeMessagePreparator);
+        	emailRenderingEngine.renderAndSave(requestData, Email.EMAIl_TYPE_ORDER_SHIPPED, velocityPath, "order-shipped", mimeMessagePreparator, model);
         	
         } catch (MailException e) {
         	logger.error("Error, can't save the message :", e);
@@ -831,7 +794,7 @@ public class EmailService {
         	model.put(CURRENT_DATE, dateFormatter.format(currentDate));
         	model.put(CUSTOMER, customer);
         	model.put("abandonedShoppingCartEmailBean", abandonedShoppingCartEmailBean);
-        	model.put(WORDING, coreMessageSource.loadWording(Email.WORDING_SCOPE_EMAIL, locale));
+        	model.put(WORDING, emailRenderingEngine.getWording(locale));
 
         	String fromAddress = handleFromAddress(abandonedShoppingCartEmailBean.getFromAddress(), contextNameValue);
             String fromName = handleFromName(abandonedShoppingCartEmailBean.getFromName(), locale);
@@ -844,13 +807,7 @@ public class EmailService {
         	mimeMessagePreparator.setReplyTo(fromAddress);
         	Object[] parameters = {customer.getLastname(), customer.getFirstname()};
         	mimeMessagePreparator.setSubject(coreMessageSource.getMessage("email.abandoned_shopping_cart.email_subject", parameters, locale));
-        	mimeMessagePreparator.setHtmlContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "abandoned-shopping-cart-html-content.vm", model));
-        	mimeMessagePreparator.setPlainTextContent(VelocityEngineUtils.mergeTemplateIntoString(velocityEngine, velocityPath + "abandoned-shopping-cart-text-content.vm", model));
-        	
-        	Email email = new Email();
-        	email.setType(Email.EMAIl_TYPE_ABANDONED_SHOPPING_CART);
-        	email.setStatus(Email.EMAIl_STATUS_PENDING);
-        	saveOrUpdateEmail(email, mimeMessagePreparator);
+        	emailRenderingEngine.renderAndSave(requestData, Email.EMAIl_TYPE_ABANDONED_SHOPPING_CART, velocityPath, "abandoned-shopping-cart", mimeMessagePreparator, model);
         	
         } catch (MailException e) {
         	logger.error("Error, can't save the message :", e);
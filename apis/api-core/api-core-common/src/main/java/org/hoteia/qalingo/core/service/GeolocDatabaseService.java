@@ -0,0 +1,307 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.service;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.hoteia.qalingo.core.domain.EngineSetting;
+import org.hoteia.qalingo.core.domain.bean.GeolocData;
+import org.hoteia.qalingo.core.domain.bean.GeolocDataCity;
+import org.hoteia.qalingo.core.domain.bean.GeolocDataCountry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.maxmind.db.Reader.FileMode;
+import com.maxmind.geoip2.DatabaseReader;
+import com.maxmind.geoip2.exception.AddressNotFoundException;
+import com.maxmind.geoip2.model.CityResponse;
+import com.maxmind.geoip2.model.CountryResponse;
+import com.maxmind.geoip2.record.City;
+import com.maxmind.geoip2.record.Country;
+
+/**
+ * Long-lived MaxMind readers shared by all the threads. The City and Country
+ * databases are memory-mapped once, and reloaded when the engine settings
+ * CITY_DATABASE_PATH/COUNTRY_DATABASE_PATH or the file modification dates
+ * change. The lookups results are kept in a bounded LRU cache by IP address.
+ */
+@Service("geolocDatabaseService")
+public class GeolocDatabaseService {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final int DEFAULT_LOOKUP_CACHE_SIZE = 10000;
+
+    public static final long DEFAULT_RELOAD_CHECK_DELAY = 60000;
+
+    private static final LookupResult NOT_FOUND = new LookupResult(null, null, null, null, null);
+
+    @Autowired
+    protected EngineSettingService engineSettingService;
+
+    private int lookupCacheSize = DEFAULT_LOOKUP_CACHE_SIZE;
+
+    private long reloadCheckDelay = DEFAULT_RELOAD_CHECK_DELAY;
+
+    private volatile DatabaseHolder cityDatabase;
+
+    private volatile DatabaseHolder countryDatabase;
+
+    private volatile long lastReloadCheck = 0;
+
+    private final Object reloadLock = new Object();
+
+    private Map<String, LookupResult> lookupCache = createLookupCache(DEFAULT_LOOKUP_CACHE_SIZE);
+
+    /**
+     * Country and city of this address, in one lookup.
+     *
+     * @return a new GeolocData instance, or null if the address can't be located.
+     */
+    public GeolocData lookup(final String remoteAddress) {
+        if (StringUtils.isEmpty(remoteAddress)) {
+            return null;
+        }
+        LookupResult result = lookupCache.get(remoteAddress);
+        if (result == null) {
+            result = lookupInDatabases(remoteAddress);
+            lookupCache.put(remoteAddress, result);
+        }
+        return result.toGeolocData(remoteAddress);
+    }
+
+    public Country lookupCountry(final String remoteAddress) throws Exception {
+        DatabaseHolder database = getCountryDatabase();
+        if (database == null) {
+            return null;
+        }
+        final CountryResponse countryResponse = database.getReader().country(InetAddress.getByName(remoteAddress));
+        return countryResponse != null ? countryResponse.getCountry() : null;
+    }
+
+    public City lookupCity(final String remoteAddress) throws Exception {
+        DatabaseHolder database = getCityDatabase();
+        if (database == null) {
+            return null;
+        }
+        final CityResponse cityResponse = database.getReader().city(InetAddress.getByName(remoteAddress));
+        return cityResponse != null ? cityResponse.getCity() : null;
+    }
+
+    /**
+     * Forces the reload check on the next lookup, and clears the lookup cache.
+     */
+    public void reload() {
+        lastReloadCheck = 0;
+        lookupCache.clear();
+    }
+
+    protected LookupResult lookupInDatabases(final String remoteAddress) {
+        try {
+            final InetAddress address = InetAddress.getByName(remoteAddress);
+
+            // THE CITY DATABASE CARRIES THE COUNTRY TOO
+            DatabaseHolder database = getCityDatabase();
+            if (database != null) {
+                try {
+                    final CityResponse cityResponse = database.getReader().city(address);
+                    if (cityResponse != null && cityResponse.getCountry() != null && StringUtils.isNotEmpty(cityResponse.getCountry().getIsoCode())) {
+                        Country country = cityResponse.getCountry();
+                        City city = cityResponse.getCity();
+                        return new LookupResult(country.getGeoNameId(), country.getIsoCode(), country.getName(), city != null ? city.getGeoNameId() : null,
+                                city != null ? city.getName() : null);
+                    }
+                } catch (AddressNotFoundException e) {
+                    // TRY THE COUNTRY DATABASE
+                }
+            }
+
+            database = getCountryDatabase();
+            if (database != null) {
+                final CountryResponse countryResponse = database.getReader().country(address);
+                if (countryResponse != null && countryResponse.getCountry() != null && StringUtils.isNotEmpty(countryResponse.getCountry().getIsoCode())) {
+                    Country country = countryResponse.getCountry();
+                    return new LookupResult(country.getGeoNameId(), country.getIsoCode(), country.getName(), null, null);
+                }
+            }
+        } catch (AddressNotFoundException e) {
+            logger.warn("Geoloc, can't find this address:" + remoteAddress);
+        } catch (Exception e) {
+            logger.error("Geoloc, exception to find country with this address:" + remoteAddress, e);
+        }
+        return NOT_FOUND;
+    }
+
+    protected DatabaseHolder getCityDatabase() {
+        checkReload();
+        return cityDatabase;
+    }
+
+    protected DatabaseHolder getCountryDatabase() {
+        checkReload();
+        return countryDatabase;
+    }
+
+    protected void checkReload() {
+        long now = System.currentTimeMillis();
+        if (now - lastReloadCheck < reloadCheckDelay) {
+            return;
+        }
+        synchronized (reloadLock) {
+            if (now - lastReloadCheck < reloadCheckDelay) {
+                return;
+            }
+            boolean reloaded = false;
+            DatabaseHolder newCityDatabase = reloadIfChanged(cityDatabase, getDatabasePath(engineSettingService.getSettingGeolocCityFilePath()));
+            if (newCityDatabase != cityDatabase) {
+                cityDatabase = newCityDatabase;
+                reloaded = true;
+            }
+            DatabaseHolder newCountryDatabase = reloadIfChanged(countryDatabase, getDatabasePath(engineSettingService.getSettingGeolocCountryFilePath()));
+            if (newCountryDatabase != countryDatabase) {
+                countryDatabase = newCountryDatabase;
+                reloaded = true;
+            }
+            if (reloaded) {
+                lookupCache.clear();
+            }
+            lastReloadCheck = System.currentTimeMillis();
+        }
+    }
+
+    protected DatabaseHolder reloadIfChanged(final DatabaseHolder database, final String path) {
+        if (StringUtils.isEmpty(path)) {
+            return null;
+        }
+        final File file = new File(path);
+        if (!file.exists()) {
+            logger.error("Geoloc, can't find database MaxMind: " + path);
+            return database;
+        }
+        final long lastModified = file.lastModified();
+        if (database != null && database.getPath().equals(path) && database.getLastModified() == lastModified) {
+            return database;
+        }
+        try {
+            final DatabaseReader reader = new DatabaseReader.Builder(file).fileMode(FileMode.MEMORY_MAPPED).build();
+            logger.info("Geoloc, MaxMind database loaded: " + path);
+            // THE PREVIOUS READER IS NOT CLOSED : LOOKUPS IN PROGRESS CAN STILL USE IT, THE MAPPING IS RELEASED BY THE GC
+            return new DatabaseHolder(path, lastModified, reader);
+        } catch (Exception e) {
+            logger.error("Geoloc, can't load database MaxMind: " + path, e);
+        }
+        return database;
+    }
+
+    protected String getDatabasePath(final EngineSetting engineSetting) {
+        return engineSetting != null ? engineSetting.getDefaultValue() : null;
+    }
+
+    protected Map<String, LookupResult> createLookupCache(final int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, LookupResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LookupResult> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    public void setLookupCacheSize(int lookupCacheSize) {
+        this.lookupCacheSize = lookupCacheSize;
+        this.lookupCache = createLookupCache(lookupCacheSize);
+    }
+
+    public int getLookupCacheSize() {
+        return lookupCacheSize;
+    }
+
+    public void setReloadCheckDelay(long reloadCheckDelay) {
+        this.reloadCheckDelay = reloadCheckDelay;
+    }
+
+    public long getReloadCheckDelay() {
+        return reloadCheckDelay;
+    }
+
+    protected static class DatabaseHolder {
+
+        private final String path;
+        private final long lastModified;
+        private final DatabaseReader reader;
+
+        public DatabaseHolder(String path, long lastModified, DatabaseReader reader) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.reader = reader;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public DatabaseReader getReader() {
+            return reader;
+        }
+    }
+
+    /**
+     * Immutable lookup result : the callers get their own GeolocData copy.
+     */
+    protected static class LookupResult {
+
+        private final Integer countryGeoNameId;
+        private final String countryIsoCode;
+        private final String countryName;
+        private final Integer cityGeoNameId;
+        private final String cityName;
+
+        public LookupResult(Integer countryGeoNameId, String countryIsoCode, String countryName, Integer cityGeoNameId, String cityName) {
+            this.countryGeoNameId = countryGeoNameId;
+            this.countryIsoCode = countryIsoCode;
+            this.countryName = countryName;
+            this.cityGeoNameId = cityGeoNameId;
+            this.cityName = cityName;
+        }
+
+        public GeolocData toGeolocData(final String remoteAddress) {
+            if (countryIsoCode == null) {
+                return null;
+            }
+            GeolocData geolocData = new GeolocData();
+            geolocData.setRemoteAddress(remoteAddress);
+            GeolocDataCountry geolocDataCountry = new GeolocDataCountry();
+            geolocDataCountry.setGeoNameId(countryGeoNameId);
+            geolocDataCountry.setIsoCode(countryIsoCode);
+            geolocDataCountry.setName(countryName);
+            geolocData.setCountry(geolocDataCountry);
+            if (cityName != null || cityGeoNameId != null) {
+                GeolocDataCity geolocDataCity = new GeolocDataCity();
+                geolocDataCity.setGeoNameId(cityGeoNameId);
+                geolocDataCity.setName(cityName);
+                geolocData.setCity(geolocDataCity);
+            }
+            return geolocData;
+        }
+    }
+
+}
@@ -9,29 +9,17 @@
  */
 package org.hoteia.qalingo.core.service;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.InetAddress;
 import java.text.ParseException;
 import java.util.Date;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.hibernate.internal.util.SerializationHelper;
 import org.hoteia.qalingo.core.dao.GeolocDao;
-import org.hoteia.qalingo.core.domain.EngineSetting;
 import org.hoteia.qalingo.core.domain.GeolocAddress;
 import org.hoteia.qalingo.core.domain.GeolocCity;
 import org.hoteia.qalingo.core.domain.bean.GeolocData;
-import org.hoteia.qalingo.core.domain.bean.GeolocDataCity;
-import org.hoteia.qalingo.core.domain.bean.GeolocDataCountry;
+import org.hoteia.qalingo.core.geoloc.GoogleGeocodingClient;
 import org.hoteia.qalingo.core.web.bean.geoloc.json.GoogleGeoCode;
 import org.hoteia.qalingo.core.web.bean.geoloc.json.GoogleGeoCodeResult;
 import org.slf4j.Logger;
@@ -40,11 +28,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.maxmind.geoip2.DatabaseReader;
 import com.maxmind.geoip2.exception.AddressNotFoundException;
-import com.maxmind.geoip2.model.CityResponse;
-import com.maxmind.geoip2.model.CountryResponse;
 import com.maxmind.geoip2.record.City;
 import com.maxmind.geoip2.record.Country;
 
@@ -63,13 +47,19 @@ public class GeolocService {
     @Autowired
     protected GeolocDao geolocDao;
     
+    @Autowired
+    protected GeolocDatabaseService geolocDatabaseService;
+    
+    @Autowired
+    protected GoogleGeocodingClient googleGeocodingClient;
+    
     // COMMON
     
     public GeolocCity geolocByCityAndCountry(final String city, final String country){
         GeolocCity geolocCity = null;
         String addressParam = encodeGoogleAddress(null, null, city, country);
         GoogleGeoCode geoCode = geolocGoogleWithAddress(addressParam);
-        if("OVER_QUERY_LIMIT".equals(geoCode.getStatus())){
+        if(geoCode != null && "OVER_QUERY_LIMIT".equals(geoCode.getStatus())){
             logger.error("API Geoloc returns message OVER_QUERY_LIMIT: " + geoCode.getErrorMessage());
             engineSettingService.flagSettingGoogleGeolocationApiOverQuota();
             return geolocCity;
@@ -91,7 +81,7 @@ public class GeolocService {
         GeolocAddress geolocAddress = null;
         String formatedAddress = encodeGoogleAddress(address, postalCode, city, country);
         GoogleGeoCode geoCode = geolocGoogleWithAddress(formatedAddress);
-        if("OVER_QUERY_LIMIT".equals(geoCode.getStatus())){
+        if(geoCode != null && "OVER_QUERY_LIMIT".equals(geoCode.getStatus())){
             logger.error("API Geoloc returns message OVER_QUERY_LIMIT: " + geoCode.getErrorMessage());
             engineSettingService.flagSettingGoogleGeolocationApiOverQuota();
             return geolocAddress;
@@ -115,13 +105,15 @@ public class GeolocService {
     public GeolocAddress geolocByLatitudeLongitude(final String latitude, final String longitude) {
         GeolocAddress geolocAddress = null;
         GoogleGeoCode geoCode = geolocGoogleWithLatitudeLongitude(latitude, longitude);
-        if("OVER_QUERY_LIMIT".equals(geoCode.getStatus())){
+        if(geoCode != null && "OVER_QUERY_LIMIT".equals(geoCode.getStatus())){
             logger.error("API Geoloc returns message OVER_QUERY_LIMIT: " + geoCode.getErrorMessage());
             engineSettingService.flagSettingGoogleGeolocationApiOverQuota();
             return geolocAddress;
         }
         
-        if(geoCode != null) {
+        if(geoCode != null
+                && geoCode.getResults() != null
+                && !geoCode.getResults().isEmpty()) {
             GoogleGeoCodeResult googleGeoCodeResult = geoCode.getResults().get(0);
             String formatedAdress = googleGeoCodeResult.getFormattedAddress();
             formatedAdress = formatedAdress.replace(" ", "+");
@@ -152,27 +144,11 @@ public class GeolocService {
                     logger.error("Google Geolocation API Key is mandatory!", e);
                 }
                 if (key != null && StringUtils.isNotEmpty(key)) {
-                    HttpPost httpPost = new HttpPost("https://maps.googleapis.com/maps/api/geocode/json?address=" + formatedAddress + "&key=" + key);
-                    HttpClient httpClient = new DefaultHttpClient();
-                    HttpResponse httpResponse = httpClient.execute(httpPost);
-
-                    BufferedReader streamReader = new BufferedReader(new InputStreamReader(httpResponse.getEntity().getContent()));
-                    StringBuilder responseStrBuilder = new StringBuilder();
-
-                    String inputStr;
-                    while ((inputStr = streamReader.readLine()) != null) {
-                        responseStrBuilder.append(inputStr);
-                    }
-                    String json = responseStrBuilder.toString();
-
-                    ObjectMapper mapper = new ObjectMapper();
-                    geoCode = mapper.readValue(json, GoogleGeoCode.class);
+                    geoCode = googleGeocodingClient.geocodeAddress(formatedAddress, key);
                 }
             } else {
                 logger.warn("Google Geolocation API still over Quota! We can't use geolocation for this address: " + formatedAddress);
             }
-        } catch (ClientProtocolException e) {
-            logger.error("", e);
         } catch (IOException e) {
             logger.error("", e);
         } catch (IllegalStateException e) {
@@ -197,27 +173,11 @@ public class GeolocService {
                     logger.error("Google Geolocation API Key is mandatory!", e);
                 }
                 if (key != null && StringUtils.isNotEmpty(key)) {
-                    HttpPost request = new HttpPost("https://maps.googleapis.com/maps/api/geocode/json?latlng=" + paramLatLong + "&key=" + key);
-                    HttpClient httpClient = new DefaultHttpClient();
-                    HttpResponse response = httpClient.execute(request);
-
-                    BufferedReader streamReader = new BufferedReader(new InputStreamReader(response.getEntity().getContent()));
-                    StringBuilder responseStrBuilder = new StringBuilder();
-
-                    String inputStr;
-                    while ((inputStr = streamReader.readLine()) != null) {
-                        responseStrBuilder.append(inputStr);
-                    }
-                    String json = responseStrBuilder.toString();
-
-                    ObjectMapper mapper = new ObjectMapper();
-                    geoCode = mapper.readValue(json, GoogleGeoCode.class);
+                    geoCode = googleGeocodingClient.geocodeLatitudeLongitude(latitude, longitude, key);
                 }
             } else {
                 logger.warn("Google Geolocation API still over Quota! We can't use geolocation for this lat/long: " + paramLatLong);
             }
-        } catch (ClientProtocolException e) {
-            logger.error("", e);
         } catch (IOException e) {
             logger.error("", e);
         } catch (IllegalStateException e) {
@@ -287,20 +247,10 @@ public class GeolocService {
     public GeolocData getGeolocData(final String remoteAddress) throws Exception {
         GeolocData geolocData = null;
         if(!remoteAddress.equals("127.0.0.1")){
-            geolocData = new GeolocData();
-            final Country country = geolocAndGetCountry(remoteAddress);
-            geolocData.setRemoteAddress(remoteAddress);
-            if(country != null 
-                    && StringUtils.isNotEmpty(country.getIsoCode())){
-                GeolocDataCountry geolocDataCountry = new GeolocDataCountry();
-                geolocDataCountry.setIsoCode(country.getIsoCode());
-                geolocDataCountry.setName(country.getName());
-                geolocData.setCountry(geolocDataCountry);
-                final City city = geolocAndGetCity(remoteAddress);
-                GeolocDataCity geolocDataCity = new GeolocDataCity();
-                geolocDataCity.setGeoNameId(city.getGeoNameId());
-                geolocDataCity.setName(city.getName());
-                geolocData.setCity(geolocDataCity);
+            geolocData = geolocDatabaseService.lookup(remoteAddress);
+            if(geolocData == null){
+                geolocData = new GeolocData();
+                geolocData.setRemoteAddress(remoteAddress);
             }
         }
         return geolocData;
@@ -319,17 +269,9 @@ public class GeolocService {
      */
     public Country geolocAndGetCountry(final String customerRemoteAddr) throws Exception {
         try {
-            final InetAddress address = InetAddress.getByName(customerRemoteAddr);
-            
-            final DatabaseReader databaseReader = new DatabaseReader.Builder(getCountryDataBase()).build();
-            final CountryResponse countryResponse = databaseReader.country(address);
-            if(countryResponse != null){
-                return countryResponse.getCountry();
-            }
+            return geolocDatabaseService.lookupCountry(customerRemoteAddr);
         } catch (AddressNotFoundException e) {
             logger.warn("Geoloc country, can't find this address:" + customerRemoteAddr);
-        } catch (FileNotFoundException e) {
-            logger.error("Geoloc country, can't find database MaxMind", e);
         } catch (Exception e) {
             logger.error("Geoloc country, exception to find country with this address:" + customerRemoteAddr, e);
         }
@@ -349,35 +291,13 @@ public class GeolocService {
      */
     public City geolocAndGetCity(final String customerRemoteAddr) throws Exception {
         try {
-            final InetAddress address = InetAddress.getByName(customerRemoteAddr);
-            
-            final DatabaseReader databaseReader = new DatabaseReader.Builder(getCityDataBase()).build();
-
-            final CityResponse cityResponse = databaseReader.city(address);
-            if(cityResponse != null){
-                return cityResponse.getCity();
-                
-            }
+            return geolocDatabaseService.lookupCity(customerRemoteAddr);
         } catch (AddressNotFoundException e) {
             logger.warn("Geoloc city, can't find this address:" + customerRemoteAddr);
-        } catch (FileNotFoundException e) {
-            logger.error("Geoloc city, can't find database MaxMind", e);
         } catch (Exception e) {
             logger.error("Geoloc city, can't find this city with this address:" + customerRemoteAddr, e);
         }
         return null;
     }
     
-    protected File getCityDataBase(){
-        EngineSetting engineSetting = engineSettingService.getSettingGeolocCityFilePath();
-        final File database = new File(engineSetting.getDefaultValue());
-        return database;
-    }
-    
-    protected File getCountryDataBase(){
-        EngineSetting engineSetting = engineSettingService.getSettingGeolocCountryFilePath();
-        final File database = new File(engineSetting.getDefaultValue());
-        return database;
-    }
-    
 }
\ No newline at end of file
@@ -11,7 +11,10 @@ package org.hoteia.qalingo.core.service;
 
 import java.util.List;
 
+import org.hoteia.qalingo.core.dao.EntityHandler;
 import org.hoteia.qalingo.core.dao.OrderCustomerDao;
+import org.hoteia.qalingo.core.dao.PageRequest;
+import org.hoteia.qalingo.core.dao.PagedResult;
 import org.hoteia.qalingo.core.domain.OrderCustomer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -24,6 +27,9 @@ public class OrderCustomerService {
     @Autowired
     private OrderCustomerDao orderDao;
 
+    @Autowired
+    private OrderNumberService orderNumberService;
+
     public OrderCustomer getOrderById(final Long orderCustomerId, Object... params) {
         return orderDao.getOrderById(orderCustomerId, params);
     }
@@ -50,7 +56,18 @@ public class OrderCustomerService {
         return orderDao.findOrders(params);
     }
 
+    public PagedResult<OrderCustomer> findOrders(final PageRequest pageRequest, Object... params) {
+        return orderDao.findOrders(pageRequest, params);
+    }
+
+    public int streamOrders(final int pageSize, final EntityHandler<OrderCustomer> entityHandler, Object... params) throws Exception {
+        return orderDao.streamOrders(pageSize, entityHandler, params);
+    }
+
     public OrderCustomer createNewOrder(final OrderCustomer orderCustomer) {
+        if (orderCustomer.getId() == null) {
+            orderCustomer.setOrderNum(orderNumberService.nextOrderNumber());
+        }
         return orderDao.createNewOrder(orderCustomer);
     }
 
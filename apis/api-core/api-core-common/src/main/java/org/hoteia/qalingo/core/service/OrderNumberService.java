@@ -0,0 +1,263 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.hoteia.qalingo.core.dao.OrderCustomerDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Hands out the order numbers from blocks reserved by this node. A block is
+ * reserved by one atomic increment of the order number row, in its own short
+ * transaction : the checkouts do not lock the row, and the numbers stay unique
+ * across the cluster.
+ *
+ * The next block is reserved ahead, on a background thread : a checkout never
+ * opens the reservation transaction while its own transaction holds a
+ * connection. A checkout which finds the next block not reserved yet waits
+ * for it, at most the reserve timeout.
+ *
+ * The numbers of the current block are lost on shutdown, and two nodes give
+ * numbers from different blocks : the order numbers are unique, not
+ * sequential.
+ */
+@Service("orderNumberService")
+@ManagedResource
+public class OrderNumberService {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private OrderCustomerDao orderCustomerDao;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${order.number.block.size:20}")
+    private int blockSize = 20;
+
+    @Value("${order.number.reserve.timeout:5000}")
+    private long reserveTimeout = 5000;
+
+    private volatile OrderNumberBlock block = new OrderNumberBlock(0, -1);
+
+    private final Object reserveLock = new Object();
+
+    // GUARDED BY THE RESERVE LOCK
+    private ExecutorService reserveExecutor;
+    private Future<OrderNumberBlock> nextBlock;
+
+    private final AtomicLong reservedBlockCount = new AtomicLong();
+    private final AtomicLong reserveWaitCount = new AtomicLong();
+    private final AtomicLong reserveErrorCount = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        synchronized (reserveLock) {
+            if (reserveExecutor != null) {
+                return;
+            }
+            reserveExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "order-number-reserve");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            reserveNextBlock();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        synchronized (reserveLock) {
+            if (reserveExecutor != null) {
+                reserveExecutor.shutdownNow();
+                reserveExecutor = null;
+                nextBlock = null;
+            }
+        }
+    }
+
+    public String nextOrderNumber() {
+        while (true) {
+            OrderNumberBlock currentBlock = block;
+            long orderNumber = currentBlock.next();
+            if (orderNumber >= 0) {
+                return Long.toString(orderNumber);
+            }
+            synchronized (reserveLock) {
+                // ONE RESERVATION FOR ALL THE THREADS WAITING ON THE SAME EMPTY BLOCK
+                if (block == currentBlock) {
+                    block = takeNextBlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the block reserved ahead, and reserves the next one. Called under the reserve lock.
+     */
+    private OrderNumberBlock takeNextBlock() {
+        if (reserveExecutor == null) {
+            throw new IllegalStateException("The order number service is stopped");
+        }
+        if (nextBlock == null) {
+            reserveNextBlock();
+        }
+        if (!nextBlock.isDone()) {
+            reserveWaitCount.incrementAndGet();
+        }
+        try {
+            OrderNumberBlock reservedBlock = nextBlock.get(reserveTimeout, TimeUnit.MILLISECONDS);
+            reserveNextBlock();
+            return reservedBlock;
+        } catch (TimeoutException e) {
+            // THE RESERVATION GOES ON : THE NEXT CHECKOUT WAITS FOR THE SAME BLOCK
+            throw new IllegalStateException("No order number block reserved after " + reserveTimeout + " ms");
+        } catch (ExecutionException e) {
+            reserveErrorCount.incrementAndGet();
+            nextBlock = null;
+            throw new IllegalStateException("The order number block reservation failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an order number block", e);
+        }
+    }
+
+    /**
+     * Called under the reserve lock.
+     */
+    private void reserveNextBlock() {
+        nextBlock = reserveExecutor.submit(new Callable<OrderNumberBlock>() {
+            public OrderNumberBlock call() throws Exception {
+                try {
+                    return reserveBlock();
+                } catch (RuntimeException e) {
+                    logger.error("Order number block reservation failed", e);
+                    throw e;
+                }
+            }
+        });
+    }
+
+    protected OrderNumberBlock reserveBlock() {
+        final int size = blockSize;
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Integer lastOrderNumber = transactionTemplate.execute(new TransactionCallback<Integer>() {
+            public Integer doInTransaction(TransactionStatus status) {
+                return orderCustomerDao.reserveOrderNumberBlock(size);
+            }
+        });
+        reservedBlockCount.incrementAndGet();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Order number block reserved: " + (lastOrderNumber - size + 1) + " to " + lastOrderNumber);
+        }
+        return new OrderNumberBlock(lastOrderNumber - size + 1, lastOrderNumber);
+    }
+
+    @ManagedAttribute
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    @ManagedAttribute
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("The block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
+
+    @ManagedAttribute
+    public long getReservedBlockCount() {
+        return reservedBlockCount.get();
+    }
+
+    @ManagedAttribute
+    public long getReserveTimeout() {
+        return reserveTimeout;
+    }
+
+    @ManagedAttribute
+    public void setReserveTimeout(long reserveTimeout) {
+        this.reserveTimeout = reserveTimeout;
+    }
+
+    /**
+     * @return the checkouts which waited for the next block, not reserved ahead yet.
+     */
+    @ManagedAttribute
+    public long getReserveWaitCount() {
+        return reserveWaitCount.get();
+    }
+
+    @ManagedAttribute
+    public long getReserveErrorCount() {
+        return reserveErrorCount.get();
+    }
+
+    @ManagedAttribute
+    public long getRemainingOrderNumbers() {
+        return block.remaining();
+    }
+
+    /**
+     * Order numbers from first to last, inclusive.
+     */
+    protected static class OrderNumberBlock {
+
+        private final AtomicLong nextOrderNumber;
+        private final long lastOrderNumber;
+
+        public OrderNumberBlock(long firstOrderNumber, long lastOrderNumber) {
+            this.nextOrderNumber = new AtomicLong(firstOrderNumber);
+            this.lastOrderNumber = lastOrderNumber;
+        }
+
+        /**
+         * @return the next order number, or -1 if the block is empty.
+         */
+        public long next() {
+            long orderNumber = nextOrderNumber.getAndIncrement();
+            return orderNumber <= lastOrderNumber ? orderNumber : -1;
+        }
+
+        public long remaining() {
+            return Math.max(lastOrderNumber - nextOrderNumber.get() + 1, 0);
+        }
+
+    }
+
+}
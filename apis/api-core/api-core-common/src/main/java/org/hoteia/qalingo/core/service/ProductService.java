@@ -13,6 +13,9 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import org.hoteia.qalingo.core.dao.EntityHandler;
+import org.hoteia.qalingo.core.dao.PageRequest;
+import org.hoteia.qalingo.core.dao.PagedResult;
 import org.hoteia.qalingo.core.dao.ProductDao;
 import org.hoteia.qalingo.core.domain.Asset;
 import org.hoteia.qalingo.core.domain.CatalogCategoryVirtual;
@@ -87,6 +90,22 @@ public class ProductService {
         List<ProductMarketing> productMarketings = productDao.findProductMarketings(params);
         return productMarketings;
     }
+
+    public PagedResult<ProductMarketing> findProductMarketings(final PageRequest pageRequest, Object... params) {
+        return productDao.findProductMarketings(pageRequest, params);
+    }
+
+    public int streamProductMarketings(final int pageSize, final EntityHandler<ProductMarketing> entityHandler, Object... params) throws Exception {
+        return productDao.streamProductMarketings(pageSize, entityHandler, params);
+    }
+
+    public List<Long> findProductMarketingIds(final Long lastProductMarketingId, int maxResults) {
+        return productDao.findProductMarketingIds(lastProductMarketingId, maxResults);
+    }
+
+    public List<ProductMarketing> findProductMarketingsByIds(final List<Long> productMarketingIds, Object... params) {
+        return productDao.findProductMarketingsByIds(productMarketingIds, params);
+    }
     
     public List<ProductMarketing> findProductMarketingByRandom(int maxResults, Object... params) {
         List<ProductMarketing> productMarketings = productDao.findProductMarketingByRandom(maxResults, params);
@@ -259,6 +278,10 @@ public class ProductService {
         List<ProductSku> skus = productDao.findProductSkusByVirtualCatalogCategoryId(categoryId, params);
         return skus;
     }
+
+    public PagedResult<ProductSku> findProductSkusByVirtualCatalogCategoryId(final Long categoryId, final PageRequest pageRequest, Object... params) {
+        return productDao.findProductSkusByVirtualCatalogCategoryId(categoryId, pageRequest, params);
+    }
     
     public List<ProductSku> findProductSkusNotInThisVirtualCatalogCategoryId(Long categoryId, Object... params) {
         List<ProductSku> skus = productDao.findProductSkusNotInThisVirtualCatalogCategoryId(categoryId, params);
@@ -279,6 +302,14 @@ public class ProductService {
         return skus;
     }
 
+    public List<Long> findProductSkuIds(final Long lastProductSkuId, int maxResults) {
+        return productDao.findProductSkuIds(lastProductSkuId, maxResults);
+    }
+
+    public List<ProductSku> findProductSkusByIds(final List<Long> productSkuIds, Object... params) {
+        return productDao.findProductSkusByIds(productSkuIds, params);
+    }
+
     public ProductSku saveOrUpdateProductSku(final ProductSku productSku) {
         return productDao.saveOrUpdateProductSku(productSku);
     }
@@ -13,6 +13,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.io.FilenameUtils;
+import org.hoteia.qalingo.core.dao.EntityHandler;
+import org.hoteia.qalingo.core.dao.PageRequest;
+import org.hoteia.qalingo.core.dao.PagedResult;
 import org.hoteia.qalingo.core.dao.RetailerDao;
 import org.hoteia.qalingo.core.domain.EngineSetting;
 import org.hoteia.qalingo.core.domain.Retailer;
@@ -35,6 +38,9 @@ public class RetailerService {
 
     @Autowired
     private EngineSettingService engineSettingService;
+
+    @Autowired
+    private StoreLocatorService storeLocatorService;
     
     // RETAILER
 
@@ -212,6 +218,22 @@ public class RetailerService {
     public List<Store> findStores(Object... params) {
         return retailerDao.findStores(params);
     }
+
+    public PagedResult<Store> findStores(final PageRequest pageRequest, Object... params) {
+        return retailerDao.findStores(pageRequest, params);
+    }
+
+    public int streamStores(final int pageSize, final EntityHandler<Store> entityHandler, Object... params) throws Exception {
+        return retailerDao.streamStores(pageSize, entityHandler, params);
+    }
+
+    public List<Long> findStoreIds(final Long lastStoreId, int maxResults) {
+        return retailerDao.findStoreIds(lastStoreId, maxResults);
+    }
+
+    public List<Store> findStoresByIds(final List<Long> storeIds, Object... params) {
+        return retailerDao.findStoresByIds(storeIds, params);
+    }
     
     public List<Store> findStoresByRetailerId(final Long retailerId, Object... params) {
         return retailerDao.findStoresByRetailerId(retailerId, params);
@@ -222,21 +244,28 @@ public class RetailerService {
     }
     
     public List<GeolocatedStore> findStoresByGeoloc(final String latitude, final String longitude, final String distance, int maxResults, Object... params) {
-        List<GeolocatedStore> geolocatedStores = retailerDao.findStoresByGeoloc(latitude, longitude, distance, maxResults, params);
+        List<GeolocatedStore> geolocatedStores = storeLocatorService.findStoresByGeoloc(latitude, longitude, distance, maxResults);
         return geolocatedStores;
     }
 
     public List<GeolocatedStore> findStoresByGeolocAndCountry(final String countryCode, final String latitude, final String longitude, final String distance, int maxResults, Object... params) {
-        List<GeolocatedStore> geolocatedStores = retailerDao.findStoresByGeolocAndCountry(countryCode, latitude, longitude, distance, maxResults, params);
+        List<GeolocatedStore> geolocatedStores = storeLocatorService.findStoresByGeolocAndCountry(countryCode, latitude, longitude, distance, maxResults);
         return geolocatedStores;
     }
 
+    public List<GeolocatedStore> findNearestStores(final String countryCode, final String latitude, final String longitude, int maxResults) {
+        return storeLocatorService.findNearestStores(countryCode, latitude, longitude, maxResults);
+    }
+
     public Store saveOrUpdateStore(final Store store) {
-        return retailerDao.saveOrUpdateStore(store);
+        Store savedStore = retailerDao.saveOrUpdateStore(store);
+        storeLocatorService.addOrUpdateStore(savedStore);
+        return savedStore;
     }
 
     public void deleteStore(final Store store) {
         retailerDao.deleteStore(store);
+        storeLocatorService.removeStore(store);
     }
     
     // STORE COMMENT/RATE
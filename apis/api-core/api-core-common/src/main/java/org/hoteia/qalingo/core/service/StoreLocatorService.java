@@ -0,0 +1,385 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.hoteia.qalingo.core.dao.RetailerDao;
+import org.hoteia.qalingo.core.domain.Store;
+import org.hoteia.qalingo.core.domain.bean.GeolocatedStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In-memory spatial index of the store coordinates, used by the store locator
+ * instead of a trigonometric full scan of teco_store.
+ *
+ * Stores are bucketed in a grid of CELL_SIZE degrees. A radius query reads
+ * the cells of the bounding box of the circle, then computes the exact
+ * haversine distance of the candidates. Distances are in miles, like the
+ * previous native query.
+ *
+ * The longitude span of the box is the one of the meridians tangent to the
+ * circle, all the longitudes when the circle contains a pole. The cells of a
+ * box which crosses the antimeridian wrap around to the other side.
+ */
+@Service("storeLocatorService")
+@Transactional
+public class StoreLocatorService {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final double EARTH_RADIUS_MILES = 3958.761;
+
+    public static final double MILES_PER_DEGREE = Math.PI * EARTH_RADIUS_MILES / 180;
+
+    public static final double CELL_SIZE = 0.5;
+
+    public static final int LONGITUDE_CELLS = (int) (360 / CELL_SIZE);
+
+    public static final double NEAREST_INITIAL_DISTANCE = 10;
+
+    public static final double MAX_DISTANCE = Math.PI * EARTH_RADIUS_MILES;
+
+    public static final long DEFAULT_REBUILD_DELAY = 3600000;
+
+    @Autowired
+    protected RetailerDao retailerDao;
+
+    private long rebuildDelay = DEFAULT_REBUILD_DELAY;
+
+    private volatile StoreGrid grid;
+
+    private final Object writeLock = new Object();
+
+    /**
+     * @return the stores in this distance (miles), the nearest first.
+     */
+    public List<GeolocatedStore> findStoresByGeoloc(final String latitude, final String longitude, final String distance, int maxResults) {
+        return findStoresByGeolocAndCountry(null, latitude, longitude, distance, maxResults);
+    }
+
+    /**
+     * @return the stores of this country in this distance (miles), the nearest first.
+     */
+    public List<GeolocatedStore> findStoresByGeolocAndCountry(final String countryCode, final String latitude, final String longitude, final String distance, int maxResults) {
+        return findStores(countryCode, Double.parseDouble(latitude), Double.parseDouble(longitude), Double.parseDouble(distance), maxResults);
+    }
+
+    /**
+     * @return the k nearest stores, optionally of this country.
+     */
+    public List<GeolocatedStore> findNearestStores(final String countryCode, final String latitude, final String longitude, int maxResults) {
+        final double latitudeValue = Double.parseDouble(latitude);
+        final double longitudeValue = Double.parseDouble(longitude);
+        double distance = NEAREST_INITIAL_DISTANCE;
+        while (true) {
+            List<GeolocatedStore> stores = findStores(countryCode, latitudeValue, longitudeValue, distance, maxResults);
+            if (stores.size() >= maxResults || distance >= MAX_DISTANCE) {
+                return stores;
+            }
+            distance = distance * 2;
+        }
+    }
+
+    public void addOrUpdateStore(final Store store) {
+        final IndexedStore indexedStore = IndexedStore.build(store.getId(), store.getCode(), store.getLatitude(), store.getLongitude(), store.getCountryCode());
+        final Long storeId = store.getId();
+        runAfterCommit(new Runnable() {
+            public void run() {
+                synchronized (writeLock) {
+                    StoreGrid currentGrid = grid;
+                    if (currentGrid != null) {
+                        currentGrid.remove(storeId);
+                        if (indexedStore != null) {
+                            currentGrid.add(indexedStore);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    public void removeStore(final Store store) {
+        final Long storeId = store.getId();
+        runAfterCommit(new Runnable() {
+            public void run() {
+                synchronized (writeLock) {
+                    StoreGrid currentGrid = grid;
+                    if (currentGrid != null) {
+                        currentGrid.remove(storeId);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Reloads all the store coordinates from the database.
+     */
+    public void rebuild() {
+        synchronized (writeLock) {
+            StoreGrid newGrid = new StoreGrid();
+            List<Object[]> storeLocations = retailerDao.findStoreLocations();
+            for (Iterator<Object[]> iterator = storeLocations.iterator(); iterator.hasNext();) {
+                Object[] storeLocation = iterator.next();
+                IndexedStore indexedStore = IndexedStore.build((Long) storeLocation[0], (String) storeLocation[1], (String) storeLocation[2], (String) storeLocation[3],
+                        (String) storeLocation[4]);
+                if (indexedStore != null) {
+                    newGrid.add(indexedStore);
+                }
+            }
+            grid = newGrid;
+            logger.info("Store locator index built with " + newGrid.size() + " stores");
+        }
+    }
+
+    protected List<GeolocatedStore> findStores(final String countryCode, final double latitude, final double longitude, final double distance, int maxResults) {
+        final StoreGrid currentGrid = getGrid();
+        final List<GeolocatedStore> stores = new ArrayList<GeolocatedStore>();
+
+        // BOUNDING BOX OF THE CIRCLE
+        final double angularDistance = distance / EARTH_RADIUS_MILES;
+        final double deltaLatitude = Math.toDegrees(angularDistance);
+        final double cosLatitude = Math.cos(Math.toRadians(latitude));
+        final double deltaLongitude;
+        if (latitude + deltaLatitude >= 90 || latitude - deltaLatitude <= -90) {
+            // THE CIRCLE CONTAINS A POLE : ALL THE LONGITUDES
+            deltaLongitude = 180;
+        } else {
+            // LONGITUDES OF THE MERIDIANS TANGENT TO THE CIRCLE
+            deltaLongitude = Math.toDegrees(Math.asin(Math.min(1, Math.sin(angularDistance) / cosLatitude)));
+        }
+        final double minLatitude = Math.max(-90, latitude - deltaLatitude);
+        final double maxLatitude = Math.min(90, latitude + deltaLatitude);
+
+        final int minLatitudeCell = StoreGrid.latitudeCell(minLatitude);
+        final int maxLatitudeCell = StoreGrid.latitudeCell(maxLatitude);
+        // NOT NORMALIZED : THE CELLS PAST THE ANTIMERIDIAN ARE NORMALIZED ONE BY ONE
+        final int firstLongitudeCell = (int) Math.floor((longitude - deltaLongitude + 180) / CELL_SIZE);
+        final int longitudeCells = Math.min(LONGITUDE_CELLS, (int) Math.floor((longitude + deltaLongitude + 180) / CELL_SIZE) - firstLongitudeCell + 1);
+
+        final double latitudeRadians = Math.toRadians(latitude);
+        final double longitudeRadians = Math.toRadians(longitude);
+        for (int latitudeCell = minLatitudeCell; latitudeCell <= maxLatitudeCell; latitudeCell++) {
+            for (int i = 0; i < longitudeCells; i++) {
+                Set<IndexedStore> cell = currentGrid.getCell(latitudeCell, StoreGrid.normalizeLongitudeCell(firstLongitudeCell + i));
+                if (cell == null) {
+                    continue;
+                }
+                for (IndexedStore indexedStore : cell) {
+                    if (indexedStore.getLatitude() < minLatitude || indexedStore.getLatitude() > maxLatitude) {
+                        continue;
+                    }
+                    if (countryCode != null && !countryCode.equalsIgnoreCase(indexedStore.getCountryCode())) {
+                        continue;
+                    }
+                    double storeDistance = indexedStore.distance(latitudeRadians, longitudeRadians, cosLatitude);
+                    if (storeDistance <= distance) {
+                        GeolocatedStore geolocatedStore = new GeolocatedStore();
+                        geolocatedStore.setId(indexedStore.getId());
+                        geolocatedStore.setCode(indexedStore.getCode());
+                        geolocatedStore.setDistance(storeDistance);
+                        stores.add(geolocatedStore);
+                    }
+                }
+            }
+        }
+
+        Collections.sort(stores, new Comparator<GeolocatedStore>() {
+            public int compare(GeolocatedStore o1, GeolocatedStore o2) {
+                return o1.getDistance().compareTo(o2.getDistance());
+            }
+        });
+        if (maxResults > 0 && stores.size() > maxResults) {
+            return new ArrayList<GeolocatedStore>(stores.subList(0, maxResults));
+        }
+        return stores;
+    }
+
+    protected StoreGrid getGrid() {
+        StoreGrid currentGrid = grid;
+        if (isStale(currentGrid)) {
+            synchronized (writeLock) {
+                // CHECKED AGAIN UNDER THE LOCK : THE REQUESTS WHICH WAITED FOR A REBUILD USE ITS GRID
+                if (isStale(grid)) {
+                    // PERIODIC RELOAD : THE STORES UPDATED ON THE OTHER NODES
+                    rebuild();
+                }
+                currentGrid = grid;
+            }
+        }
+        return currentGrid;
+    }
+
+    protected boolean isStale(final StoreGrid currentGrid) {
+        return currentGrid == null || System.currentTimeMillis() - currentGrid.getBuildTime() > rebuildDelay;
+    }
+
+    protected void runAfterCommit(final Runnable runnable) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    runnable.run();
+                }
+            });
+        } else {
+            runnable.run();
+        }
+    }
+
+    public long getRebuildDelay() {
+        return rebuildDelay;
+    }
+
+    public void setRebuildDelay(long rebuildDelay) {
+        this.rebuildDelay = rebuildDelay;
+    }
+
+    protected static class StoreGrid {
+
+        private final long buildTime = System.currentTimeMillis();
+        private final Map<Long, IndexedStore> storesById = new ConcurrentHashMap<Long, IndexedStore>();
+        private final Map<Long, Set<IndexedStore>> cells = new ConcurrentHashMap<Long, Set<IndexedStore>>();
+
+        public static int latitudeCell(double latitude) {
+            return (int) Math.floor((latitude + 90) / CELL_SIZE);
+        }
+
+        public static int longitudeCell(double longitude) {
+            return normalizeLongitudeCell((int) Math.floor((longitude + 180) / CELL_SIZE));
+        }
+
+        public static int normalizeLongitudeCell(int longitudeCell) {
+            int cell = longitudeCell % LONGITUDE_CELLS;
+            return cell < 0 ? cell + LONGITUDE_CELLS : cell;
+        }
+
+        protected static Long cellKey(int latitudeCell, int longitudeCell) {
+            return Long.valueOf(((long) latitudeCell << 32) | (longitudeCell & 0xffffffffL));
+        }
+
+        public Set<IndexedStore> getCell(int latitudeCell, int longitudeCell) {
+            return cells.get(cellKey(latitudeCell, longitudeCell));
+        }
+
+        public void add(IndexedStore indexedStore) {
+            Long key = cellKey(latitudeCell(indexedStore.getLatitude()), longitudeCell(indexedStore.getLongitude()));
+            Set<IndexedStore> cell = cells.get(key);
+            if (cell == null) {
+                cell = Collections.newSetFromMap(new ConcurrentHashMap<IndexedStore, Boolean>());
+                cells.put(key, cell);
+            }
+            cell.add(indexedStore);
+            storesById.put(indexedStore.getId(), indexedStore);
+        }
+
+        public void remove(Long storeId) {
+            if (storeId == null) {
+                return;
+            }
+            IndexedStore indexedStore = storesById.remove(storeId);
+            if (indexedStore != null) {
+                Set<IndexedStore> cell = cells.get(cellKey(latitudeCell(indexedStore.getLatitude()), longitudeCell(indexedStore.getLongitude())));
+                if (cell != null) {
+                    cell.remove(indexedStore);
+                }
+            }
+        }
+
+        public int size() {
+            return storesById.size();
+        }
+
+        public long getBuildTime() {
+            return buildTime;
+        }
+    }
+
+    protected static class IndexedStore {
+
+        private final Long id;
+        private final String code;
+        private final String countryCode;
+        private final double latitude;
+        private final double longitude;
+        private final double latitudeRadians;
+        private final double longitudeRadians;
+
+        public IndexedStore(Long id, String code, String countryCode, double latitude, double longitude) {
+            this.id = id;
+            this.code = code;
+            this.countryCode = countryCode;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.latitudeRadians = Math.toRadians(latitude);
+            this.longitudeRadians = Math.toRadians(longitude);
+        }
+
+        /**
+         * @return the indexed store, or null if the store has no valid coordinates.
+         */
+        public static IndexedStore build(Long id, String code, String latitude, String longitude, String countryCode) {
+            if (id == null || StringUtils.isBlank(latitude) || StringUtils.isBlank(longitude)) {
+                return null;
+            }
+            try {
+                return new IndexedStore(id, code, countryCode, Double.parseDouble(latitude.trim()), Double.parseDouble(longitude.trim()));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Haversine distance in miles.
+         */
+        public double distance(double fromLatitudeRadians, double fromLongitudeRadians, double cosFromLatitude) {
+            double sinDeltaLatitude = Math.sin((latitudeRadians - fromLatitudeRadians) / 2);
+            double sinDeltaLongitude = Math.sin((longitudeRadians - fromLongitudeRadians) / 2);
+            double a = sinDeltaLatitude * sinDeltaLatitude + cosFromLatitude * Math.cos(latitudeRadians) * sinDeltaLongitude * sinDeltaLongitude;
+            return 2 * EARTH_RADIUS_MILES * Math.asin(Math.min(1, Math.sqrt(a)));
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getCountryCode() {
+            return countryCode;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+    }
+
+}
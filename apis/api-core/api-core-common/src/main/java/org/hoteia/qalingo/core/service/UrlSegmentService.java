@@ -0,0 +1,415 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.Hibernate;
+import org.hoteia.qalingo.core.RequestConstants;
+import org.hoteia.qalingo.core.domain.AbstractCatalogCategory;
+import org.hoteia.qalingo.core.domain.AbstractExtendEntity;
+import org.hoteia.qalingo.core.domain.CartItem;
+import org.hoteia.qalingo.core.domain.CatalogCategoryMaster;
+import org.hoteia.qalingo.core.domain.CatalogCategoryVirtual;
+import org.hoteia.qalingo.core.domain.ProductBrand;
+import org.hoteia.qalingo.core.domain.ProductMarketing;
+import org.hoteia.qalingo.core.domain.ProductSku;
+import org.hoteia.qalingo.core.domain.Retailer;
+import org.hoteia.qalingo.core.domain.Store;
+import org.hoteia.qalingo.core.util.CoreUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+/**
+ * SEO url segments of the catalog entities : the normalized code and the
+ * normalized i18n name, computed once by entity and localization.
+ *
+ * A segment is computed again when the version of its entity changes. The
+ * segments of an entity are also evicted when it is saved, by the entity cache
+ * invalidation : an attribute update does not change the version of its
+ * entity. The i18n name is only read to compute a segment.
+ *
+ * The i18n name is an attribute : the segment of an entity without its
+ * attributes loaded is computed with the default name, and not kept.
+ *
+ * The least recently used entities are removed over the max entries.
+ */
+@Service("urlSegmentService")
+@ManagedResource
+public class UrlSegmentService {
+
+    @Value("${url.segment.cache.max.entries:50000}")
+    private int maxEntries = 50000;
+
+    private final ConcurrentMap<Class<?>, UrlSegmentType> typesByClass = new ConcurrentHashMap<Class<?>, UrlSegmentType>();
+
+    // THE SEGMENTS BY LOCALIZATION CODE, BY ENTITY
+    private final Map<String, Map<String, UrlSegment>> segments = new LinkedHashMap<String, Map<String, UrlSegment>>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        protected boolean removeEldestEntry(Map.Entry<String, Map<String, UrlSegment>> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @return the type of the url parameter, or null if it is not an entity of the urls.
+     */
+    public UrlSegmentType getType(final Object param) {
+        Class<?> paramClass = param.getClass();
+        UrlSegmentType type = typesByClass.get(paramClass);
+        if (type == null) {
+            // ONE INSTANCEOF CHAIN BY CLASS, HIBERNATE PROXIES INCLUDED
+            type = UrlSegmentType.fromParam(param);
+            if (type == null) {
+                return null;
+            }
+            typesByClass.putIfAbsent(paramClass, type);
+        }
+        return type;
+    }
+
+    public UrlSegment getSegment(final UrlSegmentType type, final Object entity, final String localizationCode) {
+        Long id = type.getId(entity);
+        int version = type.getVersion(entity);
+        if (id == null) {
+            return type.buildSegment(entity, version, localizationCode);
+        }
+        String key = buildKey(type, id);
+        UrlSegment segment = null;
+        synchronized (segments) {
+            Map<String, UrlSegment> entitySegments = segments.get(key);
+            if (entitySegments != null) {
+                segment = entitySegments.get(localizationCode);
+            }
+        }
+        if (segment != null && segment.getVersion() == version) {
+            hits.incrementAndGet();
+            return segment;
+        }
+        misses.incrementAndGet();
+        segment = type.buildSegment(entity, version, localizationCode);
+        if (!type.isCacheable(entity)) {
+            return segment;
+        }
+        synchronized (segments) {
+            Map<String, UrlSegment> entitySegments = segments.get(key);
+            if (entitySegments == null) {
+                entitySegments = new HashMap<String, UrlSegment>();
+                segments.put(key, entitySegments);
+            }
+            entitySegments.put(localizationCode, segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Evicts the segments of a saved entity, in all the localizations.
+     *
+     * @param entityType the simple name of the domain class of the entity.
+     */
+    public void evict(final String entityType, final Long id) {
+        if (id == null) {
+            return;
+        }
+        for (UrlSegmentType type : UrlSegmentType.values()) {
+            if (type.getEntityType().equals(entityType)) {
+                synchronized (segments) {
+                    segments.remove(buildKey(type, id));
+                }
+            }
+        }
+    }
+
+    protected String buildKey(final UrlSegmentType type, final Long id) {
+        return type.name() + ":" + id;
+    }
+
+    @ManagedOperation
+    public void clear() {
+        synchronized (segments) {
+            segments.clear();
+        }
+    }
+
+    /**
+     * @return the number of entities with segments.
+     */
+    @ManagedAttribute
+    public int getSize() {
+        synchronized (segments) {
+            return segments.size();
+        }
+    }
+
+    @ManagedAttribute
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @ManagedAttribute
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    @ManagedAttribute
+    public long getHits() {
+        return hits.get();
+    }
+
+    @ManagedAttribute
+    public long getMisses() {
+        return misses.get();
+    }
+
+    protected static String handleParamValue(String string) {
+        return CoreUtil.replaceSpaceAndUnderscore(string);
+    }
+
+    /**
+     * Normalized code, and normalized i18n name when the entity adds a path
+     * segment to the url.
+     */
+    public static class UrlSegment {
+
+        private final int version;
+        private final String code;
+        private final String slug;
+
+        public UrlSegment(int version, String code, String slug) {
+            this.version = version;
+            this.code = code;
+            this.slug = slug;
+        }
+
+        protected int getVersion() {
+            return version;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getSlug() {
+            return slug;
+        }
+
+    }
+
+    /**
+     * The entities of the urls : the url pattern of their code, and if their
+     * i18n name is a path segment.
+     */
+    public enum UrlSegmentType {
+
+        RETAILER("Retailer", RequestConstants.URL_PATTERN_RETAILER_CODE, true, true) {
+            protected Long getId(Object entity) {
+                return ((Retailer) entity).getId();
+            }
+            protected int getVersion(Object entity) {
+                return ((Retailer) entity).getVersion();
+            }
+            protected String getCode(Object entity) {
+                return ((Retailer) entity).getCode();
+            }
+            protected String getI18nName(Object entity, String localizationCode) {
+                return ((Retailer) entity).getI18nName(localizationCode);
+            }
+        },
+        PRODUCT_SKU("ProductSku", RequestConstants.URL_PATTERN_PRODUCT_SKU_CODE, true, false) {
+            protected Long getId(Object entity) {
+                return ((ProductSku) entity).getId();
+            }
+            protected int getVersion(Object entity) {
+                return ((ProductSku) entity).getVersion();
+            }
+            protected String getCode(Object entity) {
+                return ((ProductSku) entity).getCode();
+            }
+        },
+        PRODUCT_MARKETING("ProductMarketing", RequestConstants.URL_PATTERN_PRODUCT_MARKETING_CODE, true, true) {
+            protected Long getId(Object entity) {
+                return ((ProductMarketing) entity).getId();
+            }
+            protected int getVersion(Object entity) {
+                return ((ProductMarketing) entity).getVersion();
+            }
+            protected String getCode(Object entity) {
+                return ((ProductMarketing) entity).getCode();
+            }
+            protected String getI18nName(Object entity, String localizationCode) {
+                return ((ProductMarketing) entity).getI18nName(localizationCode);
+            }
+        },
+        CATALOG_CATEGORY_VIRTUAL("CatalogCategoryVirtual", RequestConstants.URL_PATTERN_CATEGORY_CODE, true, true) {
+            protected Long getId(Object entity) {
+                return ((AbstractCatalogCategory<?, ?, ?, ?>) entity).getId();
+            }
+            protected int getVersion(Object entity) {
+                return ((AbstractCatalogCategory<?, ?, ?, ?>) entity).getVersion();
+            }
+            protected String getCode(Object entity) {
+                return ((AbstractCatalogCategory<?, ?, ?, ?>) entity).getCode();
+            }
+            protected String getI18nName(Object entity, String localizationCode) {
+                return ((AbstractCatalogCategory<?, ?, ?, ?>) entity).getI18nName(localizationCode);
+            }
+        },
+        CATALOG_CATEGORY_MASTER("CatalogCategoryMaster", RequestConstants.URL_PATTERN_CATEGORY_CODE, true, true) {
+            protected Long getId(Object entity) {
+                return ((AbstractCatalogCategory<?, ?, ?, ?>) entity).getId();
+            }
+            protected int getVersion(Object entity) {
+                return ((AbstractCatalogCategory<?, ?, ?, ?>) entity).getVersion();
+            }
+            protected String getCode(Object entity) {
+                return ((AbstractCatalogCategory<?, ?, ?, ?>) entity).getCode();
+            }
+            protected String getI18nName(Object entity, String localizationCode) {
+                return ((AbstractCatalogCategory<?, ?, ?, ?>) entity).getI18nName(localizationCode);
+            }
+        },
+        PRODUCT_BRAND("ProductBrand", RequestConstants.URL_PATTERN_BRAND_CODE, true, true) {
+            protected Long getId(Object entity) {
+                return ((ProductBrand) entity).getId();
+            }
+            protected int getVersion(Object entity) {
+                return ((ProductBrand) entity).getVersion();
+            }
+            protected String getCode(Object entity) {
+                return ((ProductBrand) entity).getCode();
+            }
+            protected String getI18nName(Object entity, String localizationCode) {
+                return ((ProductBrand) entity).getI18nName(localizationCode);
+            }
+        },
+        CART_ITEM("CartItem", RequestConstants.URL_PATTERN_CART_ITEM_CODE, false, false) {
+            protected Long getId(Object entity) {
+                // NOTHING TO KEEP : THE CODE IS THE ID
+                return null;
+            }
+            protected int getVersion(Object entity) {
+                return 0;
+            }
+            protected String getCode(Object entity) {
+                return ((CartItem) entity).getId().toString();
+            }
+        },
+        STORE("Store", RequestConstants.URL_PATTERN_STORE_CODE, true, true) {
+            protected Long getId(Object entity) {
+                return ((Store) entity).getId();
+            }
+            protected int getVersion(Object entity) {
+                return ((Store) entity).getVersion();
+            }
+            protected String getCode(Object entity) {
+                return ((Store) entity).getCode();
+            }
+            protected String getI18nName(Object entity, String localizationCode) {
+                return ((Store) entity).getI18nName(localizationCode);
+            }
+        };
+
+        private final String entityType;
+        private final String urlPatternKey;
+        private final boolean withPrefix;
+        private final boolean withSlug;
+
+        private UrlSegmentType(String entityType, String urlPatternKey, boolean withPrefix, boolean withSlug) {
+            this.entityType = entityType;
+            this.urlPatternKey = urlPatternKey;
+            this.withPrefix = withPrefix;
+            this.withSlug = withSlug;
+        }
+
+        protected abstract Long getId(Object entity);
+
+        protected abstract int getVersion(Object entity);
+
+        protected abstract String getCode(Object entity);
+
+        protected String getI18nName(Object entity, String localizationCode) {
+            return null;
+        }
+
+        /**
+         * @return false if the i18n name can not be read : the attributes of the entity are not loaded.
+         */
+        protected boolean isCacheable(Object entity) {
+            if (!withSlug || !(entity instanceof AbstractExtendEntity)) {
+                return true;
+            }
+            Object attributes = ((AbstractExtendEntity<?>) entity).getAttributes();
+            return attributes != null && Hibernate.isInitialized(attributes);
+        }
+
+        protected UrlSegment buildSegment(Object entity, int version, String localizationCode) {
+            return new UrlSegment(version, handleParamValue(getCode(entity)), withSlug ? handleParamValue(getI18nName(entity, localizationCode)) : null);
+        }
+
+        /**
+         * @return the simple name of the domain class of the entity.
+         */
+        public String getEntityType() {
+            return entityType;
+        }
+
+        public String getUrlPatternKey() {
+            return urlPatternKey;
+        }
+
+        /**
+         * @return true if the url starts with the SEO prefix.
+         */
+        public boolean isWithPrefix() {
+            return withPrefix;
+        }
+
+        /**
+         * @return true if the i18n name is a path segment of the url.
+         */
+        public boolean isWithSlug() {
+            return withSlug;
+        }
+
+        protected static UrlSegmentType fromParam(Object param) {
+            if (param instanceof Retailer) {
+                return RETAILER;
+            } else if (param instanceof ProductSku) {
+                return PRODUCT_SKU;
+            } else if (param instanceof ProductMarketing) {
+                return PRODUCT_MARKETING;
+            } else if (param instanceof CatalogCategoryVirtual) {
+                return CATALOG_CATEGORY_VIRTUAL;
+            } else if (param instanceof CatalogCategoryMaster) {
+                return CATALOG_CATEGORY_MASTER;
+            } else if (param instanceof ProductBrand) {
+                return PRODUCT_BRAND;
+            } else if (param instanceof CartItem) {
+                return CART_ITEM;
+            } else if (param instanceof Store) {
+                return STORE;
+            }
+            return null;
+        }
+
+    }
+
+}
@@ -16,23 +16,19 @@ import java.util.Map;
 import org.apache.commons.lang.StringUtils;
 import org.hoteia.qalingo.core.Constants;
 import org.hoteia.qalingo.core.RequestConstants;
-import org.hoteia.qalingo.core.domain.CartItem;
-import org.hoteia.qalingo.core.domain.CatalogCategoryMaster;
-import org.hoteia.qalingo.core.domain.CatalogCategoryVirtual;
 import org.hoteia.qalingo.core.domain.CurrencyReferential;
 import org.hoteia.qalingo.core.domain.Localization;
 import org.hoteia.qalingo.core.domain.Market;
 import org.hoteia.qalingo.core.domain.MarketArea;
 import org.hoteia.qalingo.core.domain.MarketPlace;
-import org.hoteia.qalingo.core.domain.ProductBrand;
-import org.hoteia.qalingo.core.domain.ProductMarketing;
-import org.hoteia.qalingo.core.domain.ProductSku;
 import org.hoteia.qalingo.core.domain.Retailer;
-import org.hoteia.qalingo.core.domain.Store;
 import org.hoteia.qalingo.core.domain.enumtype.FoUrls;
 import org.hoteia.qalingo.core.pojo.RequestData;
+import org.hoteia.qalingo.core.service.UrlSegmentService.UrlSegment;
+import org.hoteia.qalingo.core.service.UrlSegmentService.UrlSegmentType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -42,6 +38,9 @@ public class UrlService extends AbstractUrlService {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    @Autowired
+    protected UrlSegmentService urlSegmentService;
+
     public String buildCustomerDetailsUrl(final RequestData requestData, String permalink) throws Exception {
         return buildContextPath(requestData) + "/customer/" + permalink;
     }
@@ -123,60 +122,39 @@ public class UrlService extends AbstractUrlService {
         final Localization localization = requestData.getMarketAreaLocalization();
         final String localizationCode = localization.getCode();
         String urlStr = null;
-        Map<String, String> getParams = new HashMap<String, String>();
-        Map<String, String> urlParams = new HashMap<String, String>();
+        Map<String, String> getParams = null;
+        Map<String, String> urlParams = new HashMap<String, String>(4);
         try {
+            StringBuilder path = null;
             if (params != null) {
                 for (Object param : params) {
                     if (param == null)
                         continue;
-                    if (param instanceof Retailer) {
-                        Retailer retailer = (Retailer) param;
-                        urlParams.put(RequestConstants.URL_PATTERN_RETAILER_CODE, handleParamValue(retailer.getCode()));
-                        urlStr = addFullPrefixUrl(requestData, urlStr) + handleParamValue(retailer.getI18nName(localizationCode)) + "/";
-                        
-                    } else if (param instanceof ProductSku) {
-                        ProductSku productSku = (ProductSku) param;
-                        urlParams.put(RequestConstants.URL_PATTERN_PRODUCT_SKU_CODE, handleParamValue(productSku.getCode()));
-                        urlStr = addFullPrefixUrl(requestData, urlStr);
-                        
-                    } else if (param instanceof ProductMarketing) {
-                        ProductMarketing productMarketing = (ProductMarketing) param;
-                        urlParams.put(RequestConstants.URL_PATTERN_PRODUCT_MARKETING_CODE, handleParamValue(productMarketing.getCode()));
-                        urlStr = addFullPrefixUrl(requestData, urlStr) + handleParamValue(productMarketing.getI18nName(localizationCode)) + "/";
-                        
-                    } else if (param instanceof CatalogCategoryVirtual) {
-                        CatalogCategoryVirtual category = (CatalogCategoryVirtual) param;
-                        urlParams.put(RequestConstants.URL_PATTERN_CATEGORY_CODE, handleParamValue(category.getCode()));
-                        urlStr = addFullPrefixUrl(requestData, urlStr) + handleParamValue(category.getI18nName(localizationCode)) + "/";
-                        
-                    } else if (param instanceof CatalogCategoryMaster) {
-                        CatalogCategoryMaster category = (CatalogCategoryMaster) param;
-                        urlParams.put(RequestConstants.URL_PATTERN_CATEGORY_CODE, handleParamValue(category.getCode()));
-                        urlStr = addFullPrefixUrl(requestData, urlStr) + handleParamValue(category.getI18nName(localizationCode)) + "/";
-                        
-                    } else if (param instanceof ProductBrand) {
-                        ProductBrand productBrand = (ProductBrand) param;
-                        urlParams.put(RequestConstants.URL_PATTERN_BRAND_CODE, handleParamValue(productBrand.getCode()));
-                        urlStr = addFullPrefixUrl(requestData, urlStr) + handleParamValue(productBrand.getI18nName(localizationCode)) + "/";
-                        
-                    } else if (param instanceof CartItem) {
-                        CartItem cartItem = (CartItem) param;
-                        urlParams.put(RequestConstants.URL_PATTERN_CART_ITEM_CODE, handleParamValue(cartItem.getId().toString()));
-                        
-                    }  else if (param instanceof Store) {
-                        Store store = (Store) param;
-                        urlParams.put(RequestConstants.URL_PATTERN_STORE_CODE, handleParamValue(store.getCode().toString()));
-                        urlStr = addFullPrefixUrl(requestData, urlStr) + handleParamValue(store.getI18nName(localizationCode)) + "/";
-                        
-                    } else if (param instanceof Map) {
+                    if (param instanceof Map) {
                         getParams = (Map<String, String>) param;
-                    } else {
+                        continue;
+                    }
+                    UrlSegmentType type = urlSegmentService.getType(param);
+                    if (type == null) {
                         logger.warn("Unknowned url parameter : [{}]", param);
+                        continue;
+                    }
+                    UrlSegment segment = urlSegmentService.getSegment(type, param, localizationCode);
+                    urlParams.put(type.getUrlPatternKey(), segment.getCode());
+                    if (type.isWithPrefix()) {
+                        if (path == null) {
+                            path = new StringBuilder(128).append(getFullPrefixUrl(requestData));
+                        }
+                        if (type.isWithSlug()) {
+                            path.append(segment.getSlug()).append('/');
+                        }
                     }
                 }
             }
 
+            if (path != null) {
+                urlStr = path.toString();
+            }
             if (StringUtils.isEmpty(urlStr)) {
                 // AD THE DEFAULT PREFIX - DEFAULT PATH IS 
                 urlStr = buildDefaultPrefix(requestData);
@@ -202,12 +180,4 @@ public class UrlService extends AbstractUrlService {
         return buildContextPath(requestData) + FoUrls.SPRING_SECURITY_URL;
     }
 
-    protected String addFullPrefixUrl(final RequestData requestData, String url) throws Exception {
-        String fullPrefixUrl = getFullPrefixUrl(requestData);
-        if (url == null || !url.contains(fullPrefixUrl)) {
-            url = fullPrefixUrl;
-        }
-        return url;
-    }
-
 }
\ No newline at end of file
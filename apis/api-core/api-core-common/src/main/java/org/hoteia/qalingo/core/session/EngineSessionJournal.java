@@ -0,0 +1,430 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.session;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.Hibernate;
+import org.hoteia.qalingo.core.domain.Cart;
+import org.hoteia.qalingo.core.domain.CartItem;
+import org.hoteia.qalingo.core.domain.EngineEcoSession;
+
+/**
+ * Append only file of the cart states not yet saved : one line by mutation,
+ * with the whole current cart of the engine session. The line is written
+ * before the answer of the request, so that the state survives a crash of the
+ * JVM between two flushes of the write behind.
+ *
+ * The write behind rotates the journal before each flush, and deletes the
+ * rotated file once its engine sessions are saved. The line holds the
+ * versions of the engine session and of its cart, so that a replay does not
+ * overwrite a newer save of another node.
+ *
+ * The lines which can't be saved are moved to the dead letter file, which
+ * is replayed on demand only.
+ */
+public class EngineSessionJournal {
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final String FLUSHING_SUFFIX = ".flushing";
+
+    private static final String DEAD_LETTER_SUFFIX = ".dead";
+
+    private static final String END_OF_LINE = "$";
+
+    private final File file;
+
+    private final boolean sync;
+
+    private FileOutputStream output;
+
+    /**
+     * @param sync true to force each line to the disk : it survives a crash of the system too, for a slower mutation.
+     */
+    public EngineSessionJournal(final File file, final boolean sync) {
+        this.file = file;
+        this.sync = sync;
+    }
+
+    public synchronized void append(final EngineEcoSession engineEcoSession) throws IOException {
+        if (output == null) {
+            output = new FileOutputStream(file, true);
+        }
+        output.write(toLine(engineEcoSession).getBytes(ENCODING));
+        output.flush();
+        if (sync) {
+            output.getFD().sync();
+        }
+    }
+
+    /**
+     * Keeps the current state of an engine session which can't be saved.
+     */
+    public void appendDeadLetter(final EngineEcoSession engineEcoSession) throws IOException {
+        appendDeadLetter(toLine(engineEcoSession));
+    }
+
+    /**
+     * Keeps a line of a replayed journal which can't be saved.
+     */
+    public synchronized void appendDeadLetter(final String line) throws IOException {
+        FileOutputStream deadLetterOutput = new FileOutputStream(getDeadLetterFile(), true);
+        try {
+            deadLetterOutput.write(line.getBytes(ENCODING));
+            deadLetterOutput.flush();
+            deadLetterOutput.getFD().sync();
+        } finally {
+            deadLetterOutput.close();
+        }
+    }
+
+    /**
+     * Moves the dead letter file aside as a rotated file : it is read by the next replay.
+     *
+     * @return false if there is no dead letter.
+     */
+    public synchronized boolean rotateDeadLetters() throws IOException {
+        File deadLetterFile = getDeadLetterFile();
+        if (!deadLetterFile.exists()) {
+            return false;
+        }
+        File flushingFile = new File(file.getPath() + FLUSHING_SUFFIX + "." + System.currentTimeMillis());
+        if (!deadLetterFile.renameTo(flushingFile)) {
+            throw new IOException("Engine session dead letters can't be moved to " + flushingFile);
+        }
+        return true;
+    }
+
+    public File getDeadLetterFile() {
+        return new File(file.getPath() + DEAD_LETTER_SUFFIX);
+    }
+
+    /**
+     * Closes the current file and moves it aside : the next lines go to a new file.
+     *
+     * @return the file to delete once its engine sessions are saved, null if the journal is empty.
+     */
+    public synchronized File rotate() throws IOException {
+        close();
+        if (!file.exists()) {
+            return null;
+        }
+        File flushingFile = new File(file.getPath() + FLUSHING_SUFFIX + "." + System.currentTimeMillis());
+        if (!file.renameTo(flushingFile)) {
+            throw new IOException("Engine session journal can't be moved to " + flushingFile);
+        }
+        return flushingFile;
+    }
+
+    public synchronized void close() throws IOException {
+        if (output != null) {
+            output.close();
+            output = null;
+        }
+    }
+
+    /**
+     * @return the files left by a previous run, the oldest first : rotated files, then the current file.
+     */
+    public synchronized List<File> getFilesToReplay() {
+        List<File> files = new ArrayList<File>();
+        File directory = file.getAbsoluteFile().getParentFile();
+        File[] flushingFiles = directory != null ? directory.listFiles() : null;
+        if (flushingFiles != null) {
+            List<File> sortedFiles = new ArrayList<File>();
+            for (File flushingFile : flushingFiles) {
+                if (flushingFile.getName().startsWith(file.getName() + FLUSHING_SUFFIX + ".")) {
+                    sortedFiles.add(flushingFile);
+                }
+            }
+            Collections.sort(sortedFiles);
+            files.addAll(sortedFiles);
+        }
+        if (file.exists()) {
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * @return the last state of each engine session in these files, by engine session guid.
+     */
+    public static Map<String, JournalRecord> read(final List<File> files) throws IOException {
+        Map<String, JournalRecord> records = new LinkedHashMap<String, JournalRecord>();
+        for (File journalFile : files) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), ENCODING));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // A LINE CUT BY THE CRASH HAS NO END OF LINE FIELD
+                    JournalRecord record = JournalRecord.parse(line);
+                    if (record != null) {
+                        records.remove(record.engineSessionGuid);
+                        records.put(record.engineSessionGuid, record);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return records;
+    }
+
+    protected static String toLine(final EngineEcoSession engineEcoSession) throws UnsupportedEncodingException {
+        StringBuilder line = new StringBuilder();
+        line.append(encode(engineEcoSession.getEngineSessionGuid()));
+        line.append('\t').append(engineEcoSession.getVersion());
+        Cart cart = getCurrentCart(engineEcoSession);
+        if (cart != null) {
+            line.append('\t').append(encode(cart.getId()));
+            line.append('\t').append(cart.getVersion());
+            line.append('\t').append(encode(cart.getMarketAreaId()));
+            line.append('\t').append(encode(cart.getLocalizationId()));
+            line.append('\t').append(encode(cart.getRetailerId()));
+            line.append('\t').append(encode(cart.getCurrency() != null ? cart.getCurrency().getId() : null));
+            line.append('\t').append(encode(cart.getCustomerId()));
+            line.append('\t').append(encode(cart.getBillingAddressId()));
+            line.append('\t').append(encode(cart.getShippingAddressId()));
+            line.append('\t');
+            boolean first = true;
+            for (CartItem cartItem : new ArrayList<CartItem>(cart.getCartItems())) {
+                if (!first) {
+                    line.append(';');
+                }
+                line.append(encode(cartItem.getProductSkuCode())).append(',');
+                line.append(encode(cartItem.getProductMarketingCode())).append(',');
+                line.append(encode(cartItem.getCatalogCategoryCode())).append(',');
+                line.append(encode(cartItem.getRetailerId())).append(',');
+                line.append(cartItem.getQuantity());
+                first = false;
+            }
+        }
+        return line.append('\t').append(END_OF_LINE).append('\n').toString();
+    }
+
+    /**
+     * @return the cart of the current market area, null if the engine session has none : without market area yet too.
+     */
+    protected static Cart getCurrentCart(final EngineEcoSession engineEcoSession) {
+        if (engineEcoSession.getCurrentMarketArea() == null
+                || engineEcoSession.getCurrentMarketAreaRetailer() == null
+                || !Hibernate.isInitialized(engineEcoSession.getCarts())) {
+            return null;
+        }
+        return engineEcoSession.getCart();
+    }
+
+    private static String encode(final Object value) throws UnsupportedEncodingException {
+        return value != null ? URLEncoder.encode(value.toString(), ENCODING) : "";
+    }
+
+    private static String decode(final String value) throws UnsupportedEncodingException {
+        return value.length() > 0 ? URLDecoder.decode(value, ENCODING) : null;
+    }
+
+    private static Long decodeLong(final String value) throws UnsupportedEncodingException {
+        String decodedValue = decode(value);
+        return decodedValue != null ? Long.valueOf(decodedValue) : null;
+    }
+
+    private static Integer decodeInteger(final String value) throws UnsupportedEncodingException {
+        String decodedValue = decode(value);
+        return decodedValue != null ? Integer.valueOf(decodedValue) : null;
+    }
+
+    /**
+     * The cart of an engine session, as written in the journal : without cart
+     * fields, the engine session has no cart anymore. The lines written before
+     * the versions are read without versions.
+     */
+    public static class JournalRecord {
+
+        private static final int FIELD_COUNT = 3;
+        private static final int CART_FIELD_COUNT = 13;
+        private static final int UNVERSIONED_FIELD_COUNT = 2;
+        private static final int UNVERSIONED_CART_FIELD_COUNT = 11;
+
+        private String line;
+        private String engineSessionGuid;
+        private Integer engineSessionVersion;
+        private boolean withCart;
+        private Long cartId;
+        private Integer cartVersion;
+        private Long marketAreaId;
+        private Long localizationId;
+        private Long retailerId;
+        private Long currencyId;
+        private Long customerId;
+        private Long billingAddressId;
+        private Long shippingAddressId;
+        private List<JournalCartItem> cartItems = new ArrayList<JournalCartItem>();
+
+        protected static JournalRecord parse(final String line) throws UnsupportedEncodingException {
+            String[] fields = line.split("\t", -1);
+            boolean versioned = fields.length == FIELD_COUNT || fields.length == CART_FIELD_COUNT;
+            if ((!versioned && fields.length != UNVERSIONED_FIELD_COUNT && fields.length != UNVERSIONED_CART_FIELD_COUNT)
+                    || !END_OF_LINE.equals(fields[fields.length - 1])) {
+                return null;
+            }
+            JournalRecord record = new JournalRecord();
+            record.line = line + "\n";
+            try {
+                int field = 0;
+                record.engineSessionGuid = decode(fields[field++]);
+                if (versioned) {
+                    record.engineSessionVersion = decodeInteger(fields[field++]);
+                }
+                if (fields.length == CART_FIELD_COUNT || fields.length == UNVERSIONED_CART_FIELD_COUNT) {
+                    record.withCart = true;
+                    record.cartId = decodeLong(fields[field++]);
+                    if (versioned) {
+                        record.cartVersion = decodeInteger(fields[field++]);
+                    }
+                    record.marketAreaId = decodeLong(fields[field++]);
+                    record.localizationId = decodeLong(fields[field++]);
+                    record.retailerId = decodeLong(fields[field++]);
+                    record.currencyId = decodeLong(fields[field++]);
+                    record.customerId = decodeLong(fields[field++]);
+                    record.billingAddressId = decodeLong(fields[field++]);
+                    record.shippingAddressId = decodeLong(fields[field++]);
+                    if (fields[field].length() > 0) {
+                        for (String item : fields[field].split(";")) {
+                            String[] itemFields = item.split(",", -1);
+                            if (itemFields.length != 5) {
+                                return null;
+                            }
+                            record.cartItems.add(new JournalCartItem(decode(itemFields[0]), decode(itemFields[1]), decode(itemFields[2]),
+                                                                     decodeLong(itemFields[3]), Integer.parseInt(itemFields[4])));
+                        }
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            return record.engineSessionGuid != null ? record : null;
+        }
+
+        /**
+         * @return the line of the record in the journal, with its end of line.
+         */
+        public String getLine() {
+            return line;
+        }
+
+        public String getEngineSessionGuid() {
+            return engineSessionGuid;
+        }
+
+        /**
+         * @return the version of the engine session at the mutation, null for a line written before the versions.
+         */
+        public Integer getEngineSessionVersion() {
+            return engineSessionVersion;
+        }
+
+        public boolean isWithCart() {
+            return withCart;
+        }
+
+        public Long getCartId() {
+            return cartId;
+        }
+
+        public Integer getCartVersion() {
+            return cartVersion;
+        }
+
+        public Long getMarketAreaId() {
+            return marketAreaId;
+        }
+
+        public Long getLocalizationId() {
+            return localizationId;
+        }
+
+        public Long getRetailerId() {
+            return retailerId;
+        }
+
+        public Long getCurrencyId() {
+            return currencyId;
+        }
+
+        public Long getCustomerId() {
+            return customerId;
+        }
+
+        public Long getBillingAddressId() {
+            return billingAddressId;
+        }
+
+        public Long getShippingAddressId() {
+            return shippingAddressId;
+        }
+
+        public List<JournalCartItem> getCartItems() {
+            return cartItems;
+        }
+
+    }
+
+    public static class JournalCartItem {
+
+        private final String productSkuCode;
+        private final String productMarketingCode;
+        private final String catalogCategoryCode;
+        private final Long retailerId;
+        private final int quantity;
+
+        protected JournalCartItem(String productSkuCode, String productMarketingCode, String catalogCategoryCode, Long retailerId, int quantity) {
+            this.productSkuCode = productSkuCode;
+            this.productMarketingCode = productMarketingCode;
+            this.catalogCategoryCode = catalogCategoryCode;
+            this.retailerId = retailerId;
+            this.quantity = quantity;
+        }
+
+        public String getProductSkuCode() {
+            return productSkuCode;
+        }
+
+        public String getProductMarketingCode() {
+            return productMarketingCode;
+        }
+
+        public String getCatalogCategoryCode() {
+            return catalogCategoryCode;
+        }
+
+        public Long getRetailerId() {
+            return retailerId;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+    }
+
+}
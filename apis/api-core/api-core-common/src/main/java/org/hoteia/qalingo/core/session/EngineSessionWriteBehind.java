@@ -0,0 +1,668 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.session;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.NoResultException;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang.StringUtils;
+import org.hibernate.Hibernate;
+import org.hoteia.qalingo.core.domain.Cart;
+import org.hoteia.qalingo.core.domain.CartItem;
+import org.hoteia.qalingo.core.domain.EngineEcoSession;
+import org.hoteia.qalingo.core.service.CurrencyReferentialService;
+import org.hoteia.qalingo.core.service.EngineSessionService;
+import org.hoteia.qalingo.core.session.EngineSessionJournal.JournalCartItem;
+import org.hoteia.qalingo.core.session.EngineSessionJournal.JournalRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Saves the engine sessions behind the requests : the engine session of the
+ * http session stays the authoritative one, a mutation only marks it dirty
+ * and writes its cart in the {@link EngineSessionJournal}. The dirty engine
+ * sessions are saved on a short delay, the mutations of the delay in one
+ * save ; the checkout saves its engine session at once with {@link #flush(EngineEcoSession)}.
+ *
+ * After a save, only the generated values (ids and versions) are copied back
+ * on the engine session of the http session, instead of reloading it. The
+ * engine session is saved under its own lock : the request threads change
+ * its carts under the same lock, see RequestUtil.getCurrentCartLock.
+ *
+ * The journal left by a crash is replayed on the start of the application,
+ * except the carts saved since by another node : their engine session or
+ * cart has a newer version. The engine sessions which can't be saved, after
+ * the max attempts of the flushes or by the replay, are kept in the dead
+ * letter file of the journal, replayed on demand by {@link #replayDeadLetters()}.
+ * Each webapp of each node has its own journal file in the journal directory.
+ */
+@Component(value = "engineSessionWriteBehind")
+@ManagedResource
+public class EngineSessionWriteBehind {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    protected EngineSessionService engineSessionService;
+
+    @Autowired
+    protected CurrencyReferentialService currencyReferentialService;
+
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    @Value("${engine.session.write.behind.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${engine.session.write.behind.delay:2000}")
+    private long flushDelay = 2000;
+
+    @Value("${engine.session.write.behind.max.attempts:5}")
+    private int maxAttempts = 5;
+
+    @Value("${engine.session.write.behind.journal.dir:}")
+    private String journalDirectory;
+
+    @Value("${app.name:qalingo}")
+    private String applicationName = "qalingo";
+
+    @Value("${context.name:}")
+    private String contextName;
+
+    @Value("${engine.session.write.behind.journal.sync:false}")
+    private boolean journalSync;
+
+    private EngineSessionJournal journal;
+
+    private ScheduledExecutorService flushExecutor;
+
+    // DIRTY ENGINE SESSIONS BY GUID : THE JOURNAL LOCK KEEPS THE MAP AND THE JOURNAL FILE IN STEP
+    private final Map<String, EngineEcoSession> dirtySessions = new LinkedHashMap<String, EngineEcoSession>();
+    private final Map<String, Integer> failedAttempts = new HashMap<String, Integer>();
+    private final Object journalLock = new Object();
+
+    // THE REQUEST THREADS START THE FLUSHER : THEY MUST NOT WAIT A FLUSH ON THE BEAN LOCK
+    private final Object flushLock = new Object();
+
+    private final AtomicLong markedCount = new AtomicLong();
+    private final AtomicLong savedCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong replayedCount = new AtomicLong();
+    private final AtomicLong replaySkippedCount = new AtomicLong();
+    private final AtomicLong deadLetterCount = new AtomicLong();
+    private volatile int lastFlushSize;
+
+    @PostConstruct
+    public void init() {
+        String directory = journalDirectory;
+        if (StringUtils.isEmpty(directory)) {
+            directory = System.getProperty("java.io.tmpdir");
+        }
+        journal = new EngineSessionJournal(new File(directory, getJournalFileName()), journalSync);
+        replay();
+    }
+
+    /**
+     * The journal of the webapp on this node : the webapps of a host don't replay or rotate the journals of the others.
+     */
+    protected String getJournalFileName() {
+        String hostName;
+        try {
+            hostName = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            hostName = "localhost";
+        }
+        String nodeName = applicationName;
+        if (StringUtils.isNotEmpty(contextName)) {
+            nodeName = nodeName + "." + contextName;
+        }
+        nodeName = nodeName + "." + hostName;
+        return "qalingo-engine-session-" + nodeName.replaceAll("[^A-Za-z0-9.]", "_") + ".journal";
+    }
+
+    /**
+     * The engine session (its cart) changed : it is saved by the next flush.
+     * An engine session never saved is saved at once, the write behind needs its guid.
+     */
+    public void markDirty(final EngineEcoSession engineEcoSession) throws Exception {
+        if (!enabled
+                || engineEcoSession.getEngineSessionGuid() == null) {
+            flush(engineEcoSession);
+            return;
+        }
+        boolean journaled = true;
+        synchronized (journalLock) {
+            dirtySessions.put(engineEcoSession.getEngineSessionGuid(), engineEcoSession);
+            try {
+                journal.append(engineEcoSession);
+            } catch (IOException e) {
+                logger.error("Engine session " + engineEcoSession.getEngineSessionGuid() + " can't be journaled, it is saved now", e);
+                dirtySessions.remove(engineEcoSession.getEngineSessionGuid());
+                journaled = false;
+            }
+        }
+        if (!journaled) {
+            flush(engineEcoSession);
+            return;
+        }
+        markedCount.incrementAndGet();
+        start();
+    }
+
+    /**
+     * Saves the engine session now, with its pending mutations : for the checkout.
+     */
+    public EngineEcoSession flush(final EngineEcoSession engineEcoSession) throws Exception {
+        String engineSessionGuid = engineEcoSession.getEngineSessionGuid();
+        if (engineSessionGuid != null) {
+            synchronized (journalLock) {
+                dirtySessions.remove(engineSessionGuid);
+            }
+        }
+        try {
+            save(engineEcoSession);
+        } catch (Exception e) {
+            if (engineSessionGuid != null && enabled) {
+                synchronized (journalLock) {
+                    if (!dirtySessions.containsKey(engineSessionGuid)) {
+                        dirtySessions.put(engineSessionGuid, engineEcoSession);
+                    }
+                }
+            }
+            throw e;
+        }
+        if (enabled) {
+            // THE PREVIOUS LINES OF THE ENGINE SESSION MUST NOT BE REPLAYED : THE CART CAN BE ORDERED SINCE
+            synchronized (journalLock) {
+                try {
+                    journal.append(engineEcoSession);
+                } catch (IOException e) {
+                    logger.error("Engine session " + engineSessionGuid + " can't be journaled after its save", e);
+                }
+            }
+        }
+        return engineEcoSession;
+    }
+
+    protected synchronized void start() {
+        if (flushExecutor != null) {
+            return;
+        }
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "engine-session-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        flushExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    flushDirtySessions();
+                } catch (Exception e) {
+                    logger.error("Engine session write behind failed", e);
+                }
+            }
+        }, flushDelay, flushDelay, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        synchronized (this) {
+            if (flushExecutor != null) {
+                flushExecutor.shutdown();
+                try {
+                    flushExecutor.awaitTermination(flushDelay, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                flushExecutor = null;
+            }
+        }
+        flushDirtySessions();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.error("Engine session journal can't be closed", e);
+        }
+    }
+
+    /**
+     * Saves the dirty engine sessions. The journal is rotated first : the
+     * mutations during the flush go to a new file, and the rotated file is
+     * deleted once its engine sessions are saved.
+     */
+    @ManagedOperation
+    public void flushDirtySessions() {
+        synchronized (flushLock) {
+            flushRound();
+        }
+    }
+
+    private void flushRound() {
+        File flushingFile;
+        List<EngineEcoSession> engineEcoSessions;
+        synchronized (journalLock) {
+            try {
+                flushingFile = journal.rotate();
+            } catch (IOException e) {
+                logger.error("Engine session journal can't be rotated, the flush waits the next round", e);
+                return;
+            }
+            engineEcoSessions = new ArrayList<EngineEcoSession>(dirtySessions.values());
+            dirtySessions.clear();
+        }
+        lastFlushSize = engineEcoSessions.size();
+
+        for (EngineEcoSession engineEcoSession : engineEcoSessions) {
+            String engineSessionGuid = engineEcoSession.getEngineSessionGuid();
+            try {
+                save(engineEcoSession);
+                failedAttempts.remove(engineSessionGuid);
+            } catch (Exception e) {
+                errorCount.incrementAndGet();
+                Integer attempts = failedAttempts.get(engineSessionGuid);
+                attempts = attempts != null ? attempts + 1 : 1;
+                if (attempts >= maxAttempts) {
+                    failedAttempts.remove(engineSessionGuid);
+                    logger.error("Engine session " + engineSessionGuid + " not saved after " + attempts + " attempts, it is moved to the dead letters", e);
+                    synchronized (engineEcoSession) {
+                        appendDeadLetter(engineSessionGuid, engineEcoSession, null);
+                    }
+                    continue;
+                }
+                failedAttempts.put(engineSessionGuid, attempts);
+                logger.warn("Engine session " + engineSessionGuid + " not saved, it is saved again by the next round: " + e.getMessage());
+                synchronized (engineEcoSession) {
+                    synchronized (journalLock) {
+                        // A NEWER MUTATION IS ALREADY DIRTY AND JOURNALED
+                        if (!dirtySessions.containsKey(engineSessionGuid)) {
+                            dirtySessions.put(engineSessionGuid, engineEcoSession);
+                            try {
+                                journal.append(engineEcoSession);
+                            } catch (IOException ioe) {
+                                logger.error("Engine session " + engineSessionGuid + " can't be journaled again", ioe);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (flushingFile != null && !flushingFile.delete()) {
+            logger.warn("Engine session journal " + flushingFile + " can't be deleted, it is replayed on the next start");
+        }
+    }
+
+    /**
+     * Merges the engine session, with its carts, and copies the generated values back.
+     * The request threads change the carts under the same lock : the merge and
+     * the copy back see no concurrent change, and the sets which hold the
+     * carts and items are rebuilt before another thread can change them.
+     */
+    protected void save(final EngineEcoSession engineEcoSession) {
+        synchronized (engineEcoSession) {
+            new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    EngineEcoSession savedEngineEcoSession = engineSessionService.saveOrUpdateEngineEcoSession(engineEcoSession);
+                    if (savedEngineEcoSession != engineEcoSession) {
+                        synchronizeGeneratedValues(engineEcoSession, savedEngineEcoSession);
+                    }
+                }
+            });
+        }
+        savedCount.incrementAndGet();
+    }
+
+    /**
+     * Copies the ids and versions of the merged entities on the engine session
+     * of the http session : the next merge updates the rows instead of
+     * inserting them again.
+     */
+    protected void synchronizeGeneratedValues(final EngineEcoSession engineEcoSession, final EngineEcoSession savedEngineEcoSession) {
+        engineEcoSession.setId(savedEngineEcoSession.getId());
+        engineEcoSession.setVersion(savedEngineEcoSession.getVersion());
+        if (!Hibernate.isInitialized(engineEcoSession.getCarts())) {
+            return;
+        }
+        List<Cart> savedCarts = new ArrayList<Cart>(savedEngineEcoSession.getCarts());
+        List<Cart> carts = new ArrayList<Cart>(engineEcoSession.getCarts());
+        Set<Cart> newCarts = new HashSet<Cart>();
+        for (Cart cart : carts) {
+            if (cart.getId() != null) {
+                synchronizeGeneratedValues(cart, removeSavedCart(savedCarts, cart, true));
+                newCarts.add(cart);
+            }
+        }
+        for (Cart cart : carts) {
+            if (cart.getId() == null) {
+                synchronizeGeneratedValues(cart, removeSavedCart(savedCarts, cart, false));
+                newCarts.add(cart);
+            }
+        }
+        // THE HASH CODES USE THE IDS : THE SETS ARE REBUILT UNDER THE LOCK OF THE ENGINE SESSION
+        engineEcoSession.setCarts(newCarts);
+    }
+
+    private void synchronizeGeneratedValues(final Cart cart, final Cart savedCart) {
+        if (savedCart == null) {
+            return;
+        }
+        cart.setId(savedCart.getId());
+        cart.setVersion(savedCart.getVersion());
+        List<CartItem> savedCartItems = new ArrayList<CartItem>(savedCart.getCartItems());
+        List<CartItem> cartItems = new ArrayList<CartItem>(cart.getCartItems());
+        for (CartItem cartItem : cartItems) {
+            if (cartItem.getId() != null) {
+                for (Iterator<CartItem> iterator = savedCartItems.iterator(); iterator.hasNext();) {
+                    if (cartItem.getId().equals(iterator.next().getId())) {
+                        iterator.remove();
+                        break;
+                    }
+                }
+            }
+        }
+        for (CartItem cartItem : cartItems) {
+            if (cartItem.getId() == null) {
+                for (Iterator<CartItem> iterator = savedCartItems.iterator(); iterator.hasNext();) {
+                    CartItem savedCartItem = iterator.next();
+                    if (ObjectUtils.equals(cartItem.getProductSkuCode(), savedCartItem.getProductSkuCode())
+                            && ObjectUtils.equals(cartItem.getRetailerId(), savedCartItem.getRetailerId())) {
+                        cartItem.setId(savedCartItem.getId());
+                        iterator.remove();
+                        break;
+                    }
+                }
+            }
+        }
+        cart.setCartItems(new HashSet<CartItem>(cartItems));
+    }
+
+    private Cart removeSavedCart(final List<Cart> savedCarts, final Cart cart, final boolean byId) {
+        for (Iterator<Cart> iterator = savedCarts.iterator(); iterator.hasNext();) {
+            Cart savedCart = iterator.next();
+            boolean same = byId ? cart.getId().equals(savedCart.getId())
+                    : ObjectUtils.equals(cart.getMarketAreaId(), savedCart.getMarketAreaId())
+                    && ObjectUtils.equals(cart.getRetailerId(), savedCart.getRetailerId());
+            if (same) {
+                iterator.remove();
+                return savedCart;
+            }
+        }
+        return null;
+    }
+
+    private boolean appendDeadLetter(final String engineSessionGuid, final EngineEcoSession engineEcoSession, final String line) {
+        try {
+            if (engineEcoSession != null) {
+                journal.appendDeadLetter(engineEcoSession);
+            } else {
+                journal.appendDeadLetter(line);
+            }
+            deadLetterCount.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            logger.error("Engine session " + engineSessionGuid + " can't be moved to the dead letters " + journal.getDeadLetterFile() + ", its mutations are lost", e);
+            return false;
+        }
+    }
+
+    /**
+     * Replays the dead letters with the journal : the ones which still can't be saved are kept.
+     */
+    @ManagedOperation
+    public synchronized void replayDeadLetters() {
+        try {
+            if (journal.rotateDeadLetters()) {
+                replay();
+            }
+        } catch (IOException e) {
+            logger.error("Engine session dead letters can't be replayed", e);
+        }
+    }
+
+    /**
+     * Saves the carts of the journal left by the previous run, then deletes
+     * it. The records which can't be saved are moved to the dead letters
+     * first : the journal is kept if they can't.
+     */
+    @ManagedOperation
+    public synchronized void replay() {
+        List<File> files = journal.getFilesToReplay();
+        if (files.isEmpty()) {
+            return;
+        }
+        Map<String, JournalRecord> records;
+        try {
+            records = EngineSessionJournal.read(files);
+        } catch (IOException e) {
+            logger.error("Engine session journal can't be read, it is replayed on the next start", e);
+            return;
+        }
+        boolean kept = true;
+        for (final JournalRecord record : records.values()) {
+            if (!record.isWithCart()) {
+                continue;
+            }
+            try {
+                Boolean restored = new TransactionTemplate(transactionManager).execute(new TransactionCallback<Boolean>() {
+                    public Boolean doInTransaction(TransactionStatus status) {
+                        return restore(record);
+                    }
+                });
+                if (restored) {
+                    replayedCount.incrementAndGet();
+                }
+            } catch (Exception e) {
+                logger.error("Engine session " + record.getEngineSessionGuid() + " can't be replayed, it is moved to the dead letters", e);
+                kept &= appendDeadLetter(record.getEngineSessionGuid(), null, record.getLine());
+            }
+        }
+        if (!kept) {
+            logger.error("Engine session journal is kept, it is replayed on the next start: " + files);
+            return;
+        }
+        for (File file : files) {
+            if (!file.delete()) {
+                logger.warn("Engine session journal " + file + " can't be deleted");
+            }
+        }
+        logger.info("Engine session journal replayed: " + replayedCount.get() + " carts");
+    }
+
+    /**
+     * Puts the cart of the journal on the engine session read in the transaction : it is saved by the commit.
+     *
+     * @return false if the engine session or its cart are gone (the cart is
+     *         ordered), or saved since the record by another node.
+     */
+    protected boolean restore(final JournalRecord record) {
+        EngineEcoSession engineEcoSession;
+        try {
+            engineEcoSession = engineSessionService.getEngineEcoSessionByEngineSessionGuid(record.getEngineSessionGuid());
+        } catch (NoResultException e) {
+            return false;
+        } catch (EmptyResultDataAccessException e) {
+            return false;
+        }
+        if (engineEcoSession == null) {
+            return false;
+        }
+        if (record.getEngineSessionVersion() != null
+                && engineEcoSession.getVersion() > record.getEngineSessionVersion()) {
+            replaySkippedCount.incrementAndGet();
+            logger.info("Engine session " + record.getEngineSessionGuid() + " saved since its journal record, it is not replayed");
+            return false;
+        }
+        Cart cart = null;
+        for (Cart sessionCart : engineEcoSession.getCarts()) {
+            if (record.getCartId() != null ? record.getCartId().equals(sessionCart.getId())
+                    : ObjectUtils.equals(record.getMarketAreaId(), sessionCart.getMarketAreaId())
+                    && ObjectUtils.equals(record.getRetailerId(), sessionCart.getRetailerId())) {
+                cart = sessionCart;
+                break;
+            }
+        }
+        if (cart != null
+                && record.getCartVersion() != null
+                && cart.getVersion() > record.getCartVersion()) {
+            replaySkippedCount.incrementAndGet();
+            logger.info("Cart " + cart.getId() + " saved since its journal record, it is not replayed");
+            return false;
+        }
+        Date now = new Date();
+        if (cart == null) {
+            if (record.getCartId() != null) {
+                return false;
+            }
+            cart = new Cart();
+            cart.setMarketAreaId(record.getMarketAreaId());
+            cart.setLocalizationId(record.getLocalizationId());
+            cart.setRetailerId(record.getRetailerId());
+            if (record.getCurrencyId() != null) {
+                cart.setCurrency(currencyReferentialService.getCurrencyReferentialById(record.getCurrencyId()));
+            }
+            cart.setDateCreate(now);
+            engineEcoSession.getCarts().add(cart);
+        }
+        cart.setCustomerId(record.getCustomerId());
+        cart.setBillingAddressId(record.getBillingAddressId());
+        cart.setShippingAddressId(record.getShippingAddressId());
+        cart.setDateUpdate(now);
+
+        // THE ITEMS OF A CART ARE KEYED AS ITS PRICING LINES : BY SKU AND RETAILER
+        Map<String, JournalCartItem> journalCartItems = new LinkedHashMap<String, JournalCartItem>();
+        for (JournalCartItem journalCartItem : record.getCartItems()) {
+            journalCartItems.put(getCartItemKey(journalCartItem.getProductSkuCode(), journalCartItem.getRetailerId()), journalCartItem);
+        }
+        for (Iterator<CartItem> iterator = cart.getCartItems().iterator(); iterator.hasNext();) {
+            CartItem cartItem = iterator.next();
+            JournalCartItem journalCartItem = journalCartItems.remove(getCartItemKey(cartItem.getProductSkuCode(), cartItem.getRetailerId()));
+            if (journalCartItem != null) {
+                cartItem.setQuantity(journalCartItem.getQuantity());
+            } else {
+                iterator.remove();
+            }
+        }
+        for (JournalCartItem journalCartItem : journalCartItems.values()) {
+            CartItem cartItem = new CartItem();
+            cartItem.setProductSkuCode(journalCartItem.getProductSkuCode());
+            cartItem.setProductMarketingCode(journalCartItem.getProductMarketingCode());
+            cartItem.setCatalogCategoryCode(journalCartItem.getCatalogCategoryCode());
+            cartItem.setRetailerId(journalCartItem.getRetailerId());
+            cartItem.setQuantity(journalCartItem.getQuantity());
+            cart.getCartItems().add(cartItem);
+        }
+        engineEcoSession.setDateUpdate(now);
+        return true;
+    }
+
+    private static String getCartItemKey(final String productSkuCode, final Long retailerId) {
+        return productSkuCode + ":" + retailerId;
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @ManagedAttribute
+    public boolean isStarted() {
+        return flushExecutor != null;
+    }
+
+    @ManagedAttribute
+    public int getDirtySessionCount() {
+        synchronized (journalLock) {
+            return dirtySessions.size();
+        }
+    }
+
+    @ManagedAttribute
+    public long getMarkedCount() {
+        return markedCount.get();
+    }
+
+    @ManagedAttribute
+    public long getSavedCount() {
+        return savedCount.get();
+    }
+
+    @ManagedAttribute
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    @ManagedAttribute
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    /**
+     * @return the number of journal records not replayed, their engine session or cart being saved since by another node.
+     */
+    @ManagedAttribute
+    public long getReplaySkippedCount() {
+        return replaySkippedCount.get();
+    }
+
+    @ManagedAttribute
+    public long getDeadLetterCount() {
+        return deadLetterCount.get();
+    }
+
+    @ManagedAttribute
+    public int getLastFlushSize() {
+        return lastFlushSize;
+    }
+
+    @ManagedAttribute
+    public long getFlushDelay() {
+        return flushDelay;
+    }
+
+}
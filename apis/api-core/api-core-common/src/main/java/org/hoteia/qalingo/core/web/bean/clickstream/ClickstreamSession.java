@@ -10,24 +10,28 @@
 package org.hoteia.qalingo.core.web.bean.clickstream;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
+/**
+ * Navigation of a visitor held by its session : only the last requests are
+ * kept, the full clickstream goes to the ClickstreamPipeline.
+ */
 public class ClickstreamSession implements Serializable {
 
     /**
      * Generated UID
      */
-    private static final long serialVersionUID = -353480945411897928L;
+    private static final long serialVersionUID = -353480945411897929L;
     
     private Date lastRequest;
     private String hostname;
     private String initialReferrer;
     private boolean isBot;
     
-    private List<ClickstreamRequest> requests = Collections.synchronizedList(new ArrayList<ClickstreamRequest>());
+    private final ArrayDeque<ClickstreamRequest> requests = new ArrayDeque<ClickstreamRequest>();
 
     public ClickstreamSession() {
     }
@@ -64,12 +68,32 @@ public class ClickstreamSession implements Serializable {
         this.isBot = isBot;
     }
 
+    /**
+     * @return a copy of the last requests, the oldest first.
+     */
     public List<ClickstreamRequest> getRequests() {
-        return requests;
+        synchronized (requests) {
+            return new ArrayList<ClickstreamRequest>(requests);
+        }
     }
     
     public void setRequests(List<ClickstreamRequest> requests) {
-        this.requests = requests;
+        synchronized (this.requests) {
+            this.requests.clear();
+            this.requests.addAll(requests);
+        }
+    }
+    
+    /**
+     * Adds the request, and removes the oldest ones beyond the maximum.
+     */
+    public void addRequest(ClickstreamRequest request, int maxRequests) {
+        synchronized (requests) {
+            requests.addLast(request);
+            while (requests.size() > maxRequests) {
+                requests.removeFirst();
+            }
+        }
     }
     
 }
\ No newline at end of file
@@ -0,0 +1,92 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.web.filter;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import org.hoteia.qalingo.core.Constants;
+import org.hoteia.qalingo.core.web.util.RequestDataMetrics;
+import org.springframework.context.ApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+
+/**
+ * Scope of the RequestData of a request : the RequestUtil builds it on the
+ * first call of the request and reuses it, this filter releases it at the end
+ * of the request and counts its builds.
+ *
+ * Must be mapped before the other Qalingo filters.
+ */
+public class RequestDataFilter implements Filter {
+
+    private static final String FILTERED_ATTRIBUTE = RequestDataFilter.class.getName() + ".FILTERED";
+
+    protected ApplicationContext ctx;
+    protected FilterConfig filterConfig;
+
+    /**
+     * Processes the given httpServletRequest and/or response.
+     *
+     * @param servletRequest The servletRequest
+     * @param servletResponse The response
+     * @param chain The processing chain
+     * @throws IOException If an error occurs
+     * @throws ServletException If an error occurs
+     */
+    public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse, final FilterChain chain) throws IOException, ServletException {
+        final HttpServletRequest httpServletRequest = (HttpServletRequest) servletRequest;
+        if (httpServletRequest.getAttribute(FILTERED_ATTRIBUTE) != null) {
+            // FORWARD OR INCLUDE : THE SCOPE IS THE ONE OF THE INITIAL REQUEST
+            chain.doFilter(servletRequest, servletResponse);
+            return;
+        }
+
+        RequestDataMetrics requestDataMetrics = (RequestDataMetrics) ctx.getBean("requestDataMetrics");
+
+        httpServletRequest.setAttribute(FILTERED_ATTRIBUTE, Boolean.TRUE);
+        try {
+            chain.doFilter(servletRequest, servletResponse);
+        } finally {
+            requestDataMetrics.onRequestEnd(httpServletRequest);
+            httpServletRequest.removeAttribute(Constants.ENGINE_REQUEST_DATA);
+            httpServletRequest.removeAttribute(Constants.ENGINE_REQUEST_DATA_BUILDS);
+            httpServletRequest.removeAttribute(FILTERED_ATTRIBUTE);
+        }
+    }
+
+    /**
+     * Initializes this filter.
+     *
+     * @param filterConfig The filter configuration
+     * @throws ServletException If an error occurs
+     */
+    public void init(FilterConfig filterConfig) throws ServletException {
+        this.filterConfig = filterConfig;
+        final ServletContext context = filterConfig.getServletContext();
+        if(ctx == null){
+            this.ctx = WebApplicationContextUtils.getRequiredWebApplicationContext(context);
+        }
+    }
+
+    /**
+     * Destroys this filter.
+     */
+    public void destroy() {
+    }
+
+}
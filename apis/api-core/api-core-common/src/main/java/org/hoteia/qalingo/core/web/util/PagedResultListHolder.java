@@ -0,0 +1,47 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.web.util;
+
+import java.util.List;
+
+import org.springframework.beans.support.PagedListHolder;
+
+/**
+ * {@link PagedListHolder} of one page read in the database : the source is
+ * the page only, and the number of elements is the total count of the finder.
+ * The list screens keep their pagination without loading the whole list.
+ */
+public class PagedResultListHolder<E> extends PagedListHolder<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int nrOfElements;
+
+    /**
+     * @param page first page is 0.
+     */
+    public PagedResultListHolder(final List<E> pageList, final int page, final int pageSize, final long nrOfElements) {
+        super(pageList);
+        this.nrOfElements = (int) Math.min(nrOfElements, Integer.MAX_VALUE);
+        setPageSize(pageSize);
+        setPage(page);
+    }
+
+    @Override
+    public int getNrOfElements() {
+        return nrOfElements;
+    }
+
+    @Override
+    public List<E> getPageList() {
+        return getSource();
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.web.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.hoteia.qalingo.core.Constants;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Number of RequestData builds per request : one is expected, more means the
+ * engine session was changed during the request. The requests are counted by
+ * the RequestDataFilter.
+ */
+@Component(value = "requestDataMetrics")
+@ManagedResource
+public class RequestDataMetrics {
+
+    private final AtomicLong buildCount = new AtomicLong();
+    private final AtomicLong reuseCount = new AtomicLong();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong requestWithoutBuildCount = new AtomicLong();
+    private final AtomicLong requestWithSeveralBuildsCount = new AtomicLong();
+    private final AtomicLong requestBuildCount = new AtomicLong();
+    private final AtomicInteger maxBuildsPerRequest = new AtomicInteger();
+
+    public void onBuild(final HttpServletRequest request) {
+        buildCount.incrementAndGet();
+        int[] builds = (int[]) request.getAttribute(Constants.ENGINE_REQUEST_DATA_BUILDS);
+        if (builds == null) {
+            builds = new int[1];
+            request.setAttribute(Constants.ENGINE_REQUEST_DATA_BUILDS, builds);
+        }
+        builds[0]++;
+    }
+
+    public void onReuse(final HttpServletRequest request) {
+        reuseCount.incrementAndGet();
+    }
+
+    public void onRequestEnd(final HttpServletRequest request) {
+        int[] builds = (int[]) request.getAttribute(Constants.ENGINE_REQUEST_DATA_BUILDS);
+        int count = builds != null ? builds[0] : 0;
+        requestCount.incrementAndGet();
+        requestBuildCount.addAndGet(count);
+        if (count == 0) {
+            requestWithoutBuildCount.incrementAndGet();
+        } else if (count > 1) {
+            requestWithSeveralBuildsCount.incrementAndGet();
+        }
+        int max = maxBuildsPerRequest.get();
+        while (count > max && !maxBuildsPerRequest.compareAndSet(max, count)) {
+            max = maxBuildsPerRequest.get();
+        }
+    }
+
+    @ManagedAttribute
+    public long getBuildCount() {
+        return buildCount.get();
+    }
+
+    @ManagedAttribute
+    public long getReuseCount() {
+        return reuseCount.get();
+    }
+
+    @ManagedAttribute
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    @ManagedAttribute
+    public long getRequestWithoutBuildCount() {
+        return requestWithoutBuildCount.get();
+    }
+
+    @ManagedAttribute
+    public long getRequestWithSeveralBuildsCount() {
+        return requestWithSeveralBuildsCount.get();
+    }
+
+    @ManagedAttribute
+    public int getMaxBuildsPerRequest() {
+        return maxBuildsPerRequest.get();
+    }
+
+    /**
+     * @return the average number of builds of the requests which needed a RequestData.
+     */
+    @ManagedAttribute
+    public double getAverageBuildsPerRequest() {
+        long requests = requestCount.get() - requestWithoutBuildCount.get();
+        return requests > 0 ? (double) requestBuildCount.get() / requests : 0;
+    }
+
+    @ManagedOperation
+    public void reset() {
+        buildCount.set(0);
+        reuseCount.set(0);
+        requestCount.set(0);
+        requestWithoutBuildCount.set(0);
+        requestWithSeveralBuildsCount.set(0);
+        requestBuildCount.set(0);
+        maxBuildsPerRequest.set(0);
+    }
+
+}
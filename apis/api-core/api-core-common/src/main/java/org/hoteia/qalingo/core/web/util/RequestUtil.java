@@ -21,6 +21,7 @@ import java.util.Locale;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
 import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.StringUtils;
@@ -50,11 +51,15 @@ import org.hoteia.qalingo.core.domain.bean.GeolocDataCountry;
 import org.hoteia.qalingo.core.domain.enumtype.EnvironmentType;
 import org.hoteia.qalingo.core.domain.enumtype.FoUrls;
 import org.hoteia.qalingo.core.fetchplan.customer.FetchPlanGraphCustomer;
+import org.hoteia.qalingo.core.geoloc.AsyncGeocoder;
 import org.hoteia.qalingo.core.i18n.enumtype.ScopeCommonMessage;
 import org.hoteia.qalingo.core.i18n.message.CoreMessageSource;
 import org.hoteia.qalingo.core.pojo.RequestData;
+import org.hoteia.qalingo.core.pojo.RequestDataResolver;
 import org.hoteia.qalingo.core.pojo.UrlParameterMapping;
 import org.hoteia.qalingo.core.service.CartService;
+import org.hoteia.qalingo.core.clickstream.ClickstreamEvent;
+import org.hoteia.qalingo.core.clickstream.ClickstreamPipeline;
 import org.hoteia.qalingo.core.service.CatalogCategoryService;
 import org.hoteia.qalingo.core.service.CurrencyReferentialService;
 import org.hoteia.qalingo.core.service.CustomerService;
@@ -67,6 +72,7 @@ import org.hoteia.qalingo.core.service.ProductService;
 import org.hoteia.qalingo.core.service.ReferentialDataService;
 import org.hoteia.qalingo.core.service.RetailerService;
 import org.hoteia.qalingo.core.service.UserService;
+import org.hoteia.qalingo.core.session.EngineSessionWriteBehind;
 import org.hoteia.qalingo.core.web.bean.clickstream.ClickstreamRequest;
 import org.hoteia.qalingo.core.web.bean.clickstream.ClickstreamSession;
 import org.slf4j.Logger;
@@ -133,12 +139,80 @@ public class RequestUtil {
     @Autowired
     protected EngineSessionService engineSessionService;
     
+    @Autowired
+    protected EngineSessionWriteBehind engineSessionWriteBehind;
+    
+    @Autowired
+    protected ClickstreamPipeline clickstreamPipeline;
+    
+    @Autowired
+    protected RequestDataMetrics requestDataMetrics;
+    
+    // THE PARTS OF THE REQUEST DATA RARELY USED ARE RESOLVED ON THEIR FIRST READ
+    protected final RequestDataResolver requestDataResolver = new RequestDataResolver() {
+        public GeolocData resolveGeolocData(RequestData requestData) {
+            final HttpServletRequest request = requestData.getRequest();
+            try {
+                if (requestData.isBackoffice()) {
+                    return null;
+                }
+                final boolean currentRequestData = isCurrentRequestData(requestData);
+                EngineEcoSession engineEcoSession = checkGeolocData(request, getCurrentEcoSession(request));
+                if (currentRequestData) {
+                    keepRequestData(requestData);
+                }
+                return engineEcoSession.getGeolocData();
+            } catch (Exception e) {
+                throw new IllegalStateException("GeolocData can't be resolved", e);
+            }
+        }
+        
+        public Customer resolveCustomer(RequestData requestData) {
+            final HttpServletRequest request = requestData.getRequest();
+            try {
+                if (requestData.isBackoffice()) {
+                    return null;
+                }
+                final boolean currentRequestData = isCurrentRequestData(requestData);
+                Customer customer = getCurrentCustomer(request);
+                if (currentRequestData) {
+                    keepRequestData(requestData);
+                }
+                return customer;
+            } catch (Exception e) {
+                throw new IllegalStateException("Customer can't be resolved", e);
+            }
+        }
+        
+        public Cart resolveCart(RequestData requestData) {
+            try {
+                if (requestData.isBackoffice()) {
+                    return null;
+                }
+                return getCurrentCart(requestData.getRequest());
+            } catch (Exception e) {
+                throw new IllegalStateException("Cart can't be resolved", e);
+            }
+        }
+        
+        public Localization resolveBackofficeLocalization(RequestData requestData) {
+            try {
+                return getCurrentBackofficeLocalization(requestData);
+            } catch (Exception e) {
+                throw new IllegalStateException("Backoffice Localization can't be resolved", e);
+            }
+        }
+    };
+    
     @Autowired
     protected CartService cartService;
     
     @Autowired
     protected GeolocService geolocService;
     
+    @Autowired
+    protected AsyncGeocoder asyncGeocoder;
+    
     @Autowired
     protected CoreMessageSource coreMessageSource;
     
@@ -686,14 +760,23 @@ public class RequestUtil {
      * 
      */
     public void addClickstream(final HttpServletRequest request) throws Exception {
-        ClickstreamSession clickstream = getClickstreamSession(request);
+        HttpSession session = request.getSession();
+        ClickstreamSession clickstream = (ClickstreamSession) session.getAttribute(Constants.ENGINE_CLICKSTREAM);
+        boolean newClickstream = clickstream == null;
+        if(newClickstream){
+            clickstream = getClickstreamSession(request);
+        }
         Date lastRequest = new Date();
         clickstream.setLastRequest(lastRequest);
         clickstream.setHostname(request.getRemoteHost());
         
-        clickstream.getRequests().add(new ClickstreamRequest(request, lastRequest));
+        // THE SESSION ONLY KEEPS THE LAST REQUESTS : THE FULL CLICKSTREAM IS WRITTEN BEHIND
+        clickstream.addRequest(new ClickstreamRequest(request, lastRequest), clickstreamPipeline.getSessionRequests());
+        clickstreamPipeline.offer(new ClickstreamEvent(request, lastRequest.getTime()));
 
-        request.getSession().setAttribute(Constants.ENGINE_CLICKSTREAM, clickstream);
+        if(newClickstream){
+            session.setAttribute(Constants.ENGINE_CLICKSTREAM, clickstream);
+        }
     }
     
     /**
@@ -991,6 +1074,7 @@ public class RequestUtil {
      */
     public void setCurrentEcoSession(final HttpServletRequest request, final EngineEcoSession engineEcoSession) throws Exception {
         request.getSession().setAttribute(Constants.ENGINE_ECO_SESSION_OBJECT, engineEcoSession);
+        resetRequestData(request);
     }
 
     
@@ -1014,6 +1098,7 @@ public class RequestUtil {
      */
     public void setCurrentBoSession(final HttpServletRequest request, final EngineBoSession engineBoSession) throws Exception {
         request.getSession().setAttribute(Constants.ENGINE_BO_SESSION_OBJECT, engineBoSession);
+        resetRequestData(request);
     }
 
     /**
@@ -1021,29 +1106,44 @@ public class RequestUtil {
      */
     public void resetCurrentCart(final HttpServletRequest request) throws Exception {
         EngineEcoSession engineEcoSession = getCurrentEcoSession(request);
-        engineEcoSession.resetCurrentCart();
+        synchronized (engineEcoSession) {
+            engineEcoSession.resetCurrentCart();
+        }
         updateCurrentEcoSession(request, engineEcoSession);
     }
     
     /**
-     * 
+     * The cart must be changed under the lock of the engine session, see {@link #getCurrentCartLock(HttpServletRequest)}.
      */
     public void updateCurrentCart(final HttpServletRequest request, final Cart cart) throws Exception {
-        // SAVE AND UPDATE THE ENGINE SESSION AT THE END
-        EngineEcoSession engineEcoSessionWithTransientValues = getCurrentEcoSession(request);
-        engineEcoSessionWithTransientValues.updateCart(cart);
-        engineEcoSessionWithTransientValues = engineSessionService.updateAndSynchronizeEngineEcoSession(engineEcoSessionWithTransientValues);
-        updateCurrentEcoSession(request, engineEcoSessionWithTransientValues); 
+        // THE ENGINE SESSION OF THE HTTP SESSION IS THE RIGHT ONE : IT IS SAVED BEHIND THE REQUEST
+        EngineEcoSession engineEcoSession = getCurrentEcoSession(request);
+        synchronized (engineEcoSession) {
+            engineEcoSession.updateCart(cart);
+            engineSessionWriteBehind.markDirty(engineEcoSession);
+        }
+        updateCurrentEcoSession(request, engineEcoSession); 
     }
     
     /**
      * 
      */
     public void deleteCurrentCartAndSaveEngineSession(final HttpServletRequest request) throws Exception {
-        EngineEcoSession engineEcoSessionWithTransientValues = getCurrentEcoSession(request);
-        engineEcoSessionWithTransientValues.deleteCurrentCart();
-        engineSessionService.updateAndSynchronizeEngineEcoSession(engineEcoSessionWithTransientValues);
-        updateCurrentEcoSession(request, engineEcoSessionWithTransientValues); 
+        EngineEcoSession engineEcoSession = getCurrentEcoSession(request);
+        synchronized (engineEcoSession) {
+            engineEcoSession.deleteCurrentCart();
+            // CHECKOUT : SAVED NOW, WITH THE MUTATIONS NOT YET SAVED BEHIND
+            engineSessionWriteBehind.flush(engineEcoSession);
+        }
+        updateCurrentEcoSession(request, engineEcoSession); 
+    }
+    
+    /**
+     * The lock of the carts of the engine session : the write behind saves the
+     * engine session under this lock, and copies the generated ids back on its carts.
+     */
+    public Object getCurrentCartLock(final HttpServletRequest request) throws Exception {
+        return getCurrentEcoSession(request);
     }
     
     /**
@@ -1473,9 +1573,47 @@ public class RequestUtil {
     }
 
     /**
-     * 
+     * The request data is built once per request, and built again if the
+     * engine session changes during the request.
      */
     public RequestData getRequestData(final HttpServletRequest request) throws Exception {
+        RequestData requestData = (RequestData) request.getAttribute(Constants.ENGINE_REQUEST_DATA);
+        if (requestData != null) {
+            requestDataMetrics.onReuse(request);
+            return requestData;
+        }
+        requestData = buildRequestData(request);
+        request.setAttribute(Constants.ENGINE_REQUEST_DATA, requestData);
+        requestDataMetrics.onBuild(request);
+        return requestData;
+    }
+
+    /**
+     * The request data must be built again : the engine session has changed.
+     */
+    public void resetRequestData(final HttpServletRequest request) {
+        request.removeAttribute(Constants.ENGINE_REQUEST_DATA);
+    }
+
+    /**
+     * 
+     */
+    protected boolean isCurrentRequestData(final RequestData requestData) {
+        return requestData.getRequest().getAttribute(Constants.ENGINE_REQUEST_DATA) == requestData;
+    }
+
+    /**
+     * A lazy resolution which saves the engine session doesn't change the
+     * rest of the request data : it is kept for the request.
+     */
+    protected void keepRequestData(final RequestData requestData) {
+        requestData.getRequest().setAttribute(Constants.ENGINE_REQUEST_DATA, requestData);
+    }
+
+    /**
+     * 
+     */
+    protected RequestData buildRequestData(final HttpServletRequest request) throws Exception {
         final RequestData requestData = new RequestData();
         requestData.setRequest(request);
         
@@ -1492,9 +1630,8 @@ public class RequestUtil {
         if (requestData.isBackoffice()) {
             checkEngineBoSession(request);
         } else {
-            // SPECIFIC FRONTOFFICE
-            checkEngineEcoSession(request);
-            requestData.setGeolocData(getCurrentGeolocData(request));
+            // SPECIFIC FRONTOFFICE : THE GEOLOC DATA IS CHECKED ON ITS FIRST READ
+            checkEngineEcoSession(request, false);
         }
         
         requestData.setVelocityEmailPrefix(getCurrentVelocityEmailPrefix(requestData));
@@ -1517,18 +1654,10 @@ public class RequestUtil {
             if (company != null) {
                 requestData.setCompany(company);
             }
-
-            requestData.setBackofficeLocalization(getCurrentBackofficeLocalization(requestData));
-
-        } else {
-            // SPECIFIC FRONTOFFICE
-            Customer customer = getCurrentCustomer(request);
-            if (customer != null) {
-                requestData.setCustomer(customer);
-            }
-            
-            requestData.setCart(getCurrentCart(request));
         }
+        
+        // GEOLOC, CUSTOMER, CART AND BACKOFFICE LOCALIZATION
+        requestData.setResolver(requestDataResolver);
 
         return requestData;
     }
@@ -1551,41 +1680,40 @@ public class RequestUtil {
             
             // TODO : ? requeter pour avoir la ville la plus proche à 5 km
             
-            GeolocAddress geolocAddress = geolocService.getGeolocAddressByLatitudeAndLongitude(latitude, longitude);
+            // ADDRESS FROM THE CACHE OR THE GEOLOC TABLES - ELSE GOOGLE GEOLOC FOUNDS IT BEHIND THE REQUEST, AND A NEXT REQUEST UPGRADES THE GEOLOC DATA
+            GeolocAddress geolocAddress = asyncGeocoder.getGeolocAddress(latitude, longitude, null);
             if (geolocAddress != null) {
                 geolocData.setLatitude(geolocAddress.getLatitude());
                 geolocData.setLongitude(geolocAddress.getLongitude());
-                
-                GeolocDataCountry geolocDataCountry = new GeolocDataCountry();
-                geolocDataCountry.setIsoCode(geolocAddress.getCountry());
-                geolocDataCountry.setName(referentialDataService.getCountryByLocale(geolocAddress.getCountry(), requestData.getLocale()));
-                geolocData.setCountry(geolocDataCountry);
-                
-                GeolocDataCity geolocDataCity = new GeolocDataCity();
-                geolocDataCity.setName(geolocAddress.getCity());
-                geolocData.setCity(geolocDataCity);
-                
+                setGeolocAddress(geolocData, geolocAddress, requestData.getLocale());
+                geolocData.setAddressPending(false);
             } else {
-                // LATITUDE/LONGITUDE DOESN'T EXIST - WE USE GOOGLE GEOLOC TO FOUND IT
-                geolocAddress = geolocService.geolocByLatitudeLongitude(latitude, longitude);
-                if (geolocAddress != null) {
-                    GeolocDataCountry geolocDataCountry = new GeolocDataCountry();
-                    geolocDataCountry.setIsoCode(geolocAddress.getCountry());
-                    geolocDataCountry.setName(referentialDataService.getCountryByLocale(geolocAddress.getCountry(), requestData.getLocale()));
-                    geolocData.setCountry(geolocDataCountry);
-                    
-                    GeolocDataCity geolocDataCity = new GeolocDataCity();
-                    geolocDataCity.setName(geolocAddress.getCity());
-                    geolocData.setCity(geolocDataCity);
-                    
-                }
+                geolocData.setLatitude(latitude);
+                geolocData.setLongitude(longitude);
+                geolocData.setAddressPending(true);
             }
+            // THE LATITUDE/LONGITUDE OF THE CUSTOMER, NOT THE ONES OF THE CITY
+            geolocData.setLocationPending(false);
             engineEcoSession.setGeolocData(geolocData);
             engineEcoSession = updateCurrentEcoSession(request, engineEcoSession);
         }
         return engineEcoSession;
     }
     
+    /**
+     * 
+     */
+    protected void setGeolocAddress(final GeolocData geolocData, final GeolocAddress geolocAddress, final Locale locale) {
+        GeolocDataCountry geolocDataCountry = new GeolocDataCountry();
+        geolocDataCountry.setIsoCode(geolocAddress.getCountry());
+        geolocDataCountry.setName(referentialDataService.getCountryByLocale(geolocAddress.getCountry(), locale));
+        geolocData.setCountry(geolocDataCountry);
+        
+        GeolocDataCity geolocDataCity = new GeolocDataCity();
+        geolocDataCity.setName(geolocAddress.getCity());
+        geolocData.setCity(geolocDataCity);
+    }
+    
     protected UrlParameterMapping handleUrlParameters(final HttpServletRequest request) {
         UrlParameterMapping urlParameterMapping = new UrlParameterMapping();
         String marketPlaceCode = null;
@@ -1685,10 +1813,47 @@ public class RequestUtil {
                 // IP ADDRESS HAS CHANGED - RELOAD
                 geolocData = geolocService.getGeolocData(remoteAddress);
                 handleGeolocData(request, engineEcoSession, geolocData);
+            } else if (geolocData.isAddressPending() || geolocData.isLocationPending()) {
+                engineEcoSession = applyGeocodedData(request, engineEcoSession, geolocData);
             }
         }
         return engineEcoSession;
     }
+
+    /**
+     * Upgrades the geoloc data of the session with the lookups geocoded since
+     * a previous request : on the request thread, from the geocoder cache.
+     */
+    protected EngineEcoSession applyGeocodedData(final HttpServletRequest request, EngineEcoSession engineEcoSession, final GeolocData geolocData) throws Exception {
+        boolean updated = false;
+        if (geolocData.isAddressPending()) {
+            GeolocAddress geolocAddress = asyncGeocoder.getCachedGeolocAddress(geolocData.getLatitude(), geolocData.getLongitude());
+            if (geolocAddress != null) {
+                Locale locale = request.getLocale();
+                if (engineEcoSession.getCurrentMarketAreaLocalization() != null) {
+                    locale = engineEcoSession.getCurrentMarketAreaLocalization().getLocale();
+                }
+                setGeolocAddress(geolocData, geolocAddress, locale);
+                geolocData.setAddressPending(false);
+                updated = true;
+            }
+        }
+        if (geolocData.isLocationPending()
+                && geolocData.getCity() != null && geolocData.getCountry() != null) {
+            GeolocCity geolocCity = asyncGeocoder.getCachedGeolocCity(geolocData.getCity().getName(), geolocData.getCountry().getName());
+            if (geolocCity != null) {
+                geolocData.setLatitude(geolocCity.getLatitude());
+                geolocData.setLongitude(geolocCity.getLongitude());
+                geolocData.setLocationPending(false);
+                updated = true;
+            }
+        }
+        if (updated) {
+            engineEcoSession.setGeolocData(geolocData);
+            engineEcoSession = updateCurrentEcoSession(request, engineEcoSession);
+        }
+        return engineEcoSession;
+    }
     
     /**
      * 
@@ -1698,18 +1863,18 @@ public class RequestUtil {
             // FIND LATITUDE/LONGITUDE BY CITY/COUNTRY
             GeolocDataCity geolocDataCity = geolocData.getCity();
             GeolocDataCountry country = geolocData.getCountry();
-            GeolocCity geolocCity = geolocService.getGeolocCityByCityAndCountry(geolocDataCity.getName(), country.getName());
+            if (geolocDataCity == null || country == null) {
+                // ADDRESS NOT LOCATED : KEEP THE REMOTE ADDRESS ONLY
+                engineEcoSession.setGeolocData(geolocData);
+                return updateCurrentEcoSession(request, engineEcoSession);
+            }
+            // LATITUDE/LONGITUDE FROM THE CACHE OR THE GEOLOC TABLES - ELSE GOOGLE GEOLOC FOUNDS IT BEHIND THE REQUEST, AND A NEXT REQUEST UPGRADES THE GEOLOC DATA
+            GeolocCity geolocCity = asyncGeocoder.getGeolocCity(geolocDataCity.getName(), country.getName(), null);
             if (geolocCity != null) {
                 geolocData.setLatitude(geolocCity.getLatitude());
                 geolocData.setLongitude(geolocCity.getLongitude());
-            } else {
-                // LATITUDE/LONGITUDE DOESN'T EXIST - WE USE GOOGLE GEOLOC TO FOUND IT
-                geolocCity = geolocService.geolocByCityAndCountry(geolocDataCity.getName(), country.getName());
-                if (geolocCity != null) {
-                    geolocData.setLatitude(geolocCity.getLatitude());
-                    geolocData.setLongitude(geolocCity.getLongitude());
-                }
             }
+            geolocData.setLocationPending(geolocCity == null);
             engineEcoSession.setGeolocData(geolocData);
             engineEcoSession = updateCurrentEcoSession(request, engineEcoSession);
         }
@@ -1720,6 +1885,13 @@ public class RequestUtil {
      * 
      */
     protected EngineEcoSession checkEngineEcoSession(final HttpServletRequest request) throws Exception {
+        return checkEngineEcoSession(request, true);
+    }
+
+    /**
+     * 
+     */
+    protected EngineEcoSession checkEngineEcoSession(final HttpServletRequest request, final boolean checkGeolocData) throws Exception {
         EngineEcoSession engineEcoSession = getCurrentEcoSession(request);
         String jSessionId = request.getSession().getId();
         if (engineEcoSession == null) {
@@ -1751,7 +1923,9 @@ public class RequestUtil {
         }
 
         // CHECK GEOLOC DATA : create or reload
-        engineEcoSession = checkGeolocData(request, engineEcoSession);
+        if (checkGeolocData) {
+            engineEcoSession = checkGeolocData(request, engineEcoSession);
+        }
 
         return engineEcoSession;
     }
@@ -1875,7 +2049,9 @@ public class RequestUtil {
     protected void resetCart(final HttpServletRequest request) throws Exception {
         // Reset Cart
         final EngineEcoSession engineEcoSession = getCurrentEcoSession(request);
-        engineEcoSession.resetCurrentCart();
+        synchronized (engineEcoSession) {
+            engineEcoSession.resetCurrentCart();
+        }
         updateCurrentEcoSession(request, engineEcoSession);
     }
 
@@ -0,0 +1,113 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.clickstream;
+
+import static org.hoteia.qalingo.core.clickstream.ClickstreamSegmentsTest.newEvent;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The live rollup of the events written in the segments only, and the segments
+ * deleted after the retention hours.
+ */
+public class ClickstreamPipelineTest {
+
+    private static final long HOUR = 3600000L;
+
+    private File directory;
+
+    private ClickstreamPipeline pipeline;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("qalingo-clickstream-pipeline", "");
+        directory.delete();
+        directory.mkdirs();
+        pipeline = newPipeline(directory);
+    }
+
+    @After
+    public void tearDown() {
+        pipeline.stop();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testWrittenEventsAreRolledUp() {
+        long now = System.currentTimeMillis();
+        assertTrue(pipeline.offer(newEvent(now, "SESSION_1", "/fr/home.html")));
+        assertTrue(pipeline.offer(newEvent(now, "SESSION_2", "/fr/home.html")));
+        pipeline.flush();
+
+        assertEquals(2, pipeline.getWrittenCount());
+        assertEquals(0, pipeline.getQueueSize());
+        assertEquals(2, pipeline.getLiveRollup().getEventCount());
+        assertEquals(2, pipeline.getRollup(1).getEventCount());
+    }
+
+    @Test
+    public void testFailedWriteIsNotRolledUp() throws IOException {
+        // THE SEGMENT DIRECTORY IS A FILE : NO SEGMENT CAN BE WRITTEN
+        File file = File.createTempFile("qalingo-clickstream-pipeline", "");
+        ClickstreamPipeline failingPipeline = newPipeline(file);
+        try {
+            assertTrue(failingPipeline.offer(newEvent(System.currentTimeMillis(), "SESSION_1", "/fr/home.html")));
+            failingPipeline.flush();
+
+            assertEquals(1, failingPipeline.getErrorCount());
+            assertEquals(0, failingPipeline.getWrittenCount());
+            assertEquals(0, failingPipeline.getLiveRollup().getEventCount());
+        } finally {
+            failingPipeline.stop();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testExpiredSegmentsAreDeleted() {
+        long now = System.currentTimeMillis();
+        pipeline.offer(newEvent(now - 48 * HOUR, "SESSION_1", "/fr/home.html"));
+        pipeline.flush();
+        pipeline.offer(newEvent(now, "SESSION_2", "/fr/home.html"));
+        pipeline.flush();
+        assertEquals(2, pipeline.getRollup(49).getEventCount());
+
+        pipeline.setRetentionHours(24);
+        pipeline.deleteExpiredSegments();
+        assertEquals(1, pipeline.getDeletedSegmentCount());
+        assertEquals(1, pipeline.getRollup(49).getEventCount());
+
+        // NO RETENTION : THE SEGMENTS ARE ALL KEPT
+        pipeline.setRetentionHours(0);
+        pipeline.deleteExpiredSegments();
+        assertEquals(1, pipeline.getDeletedSegmentCount());
+    }
+
+    private ClickstreamPipeline newPipeline(File segmentDirectory) {
+        ClickstreamPipeline clickstreamPipeline = new ClickstreamPipeline();
+        ReflectionTestUtils.setField(clickstreamPipeline, "segmentPath", segmentDirectory.getPath());
+        // THE EVENTS ARE WRITTEN BY THE FLUSHES OF THE TEST
+        ReflectionTestUtils.setField(clickstreamPipeline, "flushDelay", 3600000L);
+        clickstreamPipeline.init();
+        return clickstreamPipeline;
+    }
+
+}
@@ -0,0 +1,124 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.clickstream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The events read back from the segments, and the segments deleted after the
+ * retention, never the current one.
+ */
+public class ClickstreamSegmentsTest {
+
+    private static final long HOUR = 3600000L;
+
+    private File directory;
+
+    private ClickstreamSegments segments;
+
+    private long now;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("qalingo-clickstream-segments", "");
+        directory.delete();
+        directory.mkdirs();
+        segments = new ClickstreamSegments(directory, "qalingo.node-1", 16777216);
+        now = System.currentTimeMillis();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        assertTrue(segments.write(Arrays.asList(newEvent(now, "SESSION_1", "/fr/home.html"),
+                                                newEvent(now + 1, "SESSION_1", "/fr/cart.html"))) > 0);
+        // EACH BATCH IS A GZIP MEMBER OF THE SAME SEGMENT
+        assertTrue(segments.write(Arrays.asList(newEvent(now + 2, "SESSION_2", "/fr/home.html"))) > 0);
+        assertEquals(1, segments.getSegments(null, null).size());
+
+        ClickstreamRollup rollup = new ClickstreamRollup(100);
+        assertEquals(3, ClickstreamSegments.read(segments.getCurrentSegment(), rollup, now, now + HOUR));
+        assertEquals(3, rollup.getEventCount());
+        assertEquals(2, rollup.getSessionCount());
+        assertEquals("/fr/home.html", rollup.getTopPaths(1).get(0).getValue());
+        assertEquals(2, rollup.getTopPaths(1).get(0).getCount());
+
+        // THE EVENTS OUT OF THE PERIOD ARE SKIPPED
+        assertEquals(1, ClickstreamSegments.read(segments.getCurrentSegment(), new ClickstreamRollup(100), now + 2, now + HOUR));
+    }
+
+    @Test
+    public void testSegmentsOfTheHours() throws IOException {
+        segments.write(Arrays.asList(newEvent(now - 2 * HOUR, "SESSION_1", "/fr/home.html")));
+        segments.write(Arrays.asList(newEvent(now, "SESSION_1", "/fr/home.html")));
+
+        assertEquals(2, segments.getSegments(null, null).size());
+        List<File> lastSegments = segments.getSegments(new Date(now - HOUR), new Date(now));
+        assertEquals(Arrays.asList(segments.getCurrentSegment()), lastSegments);
+    }
+
+    @Test
+    public void testRetention() throws IOException {
+        segments.write(Arrays.asList(newEvent(now - 10 * HOUR, "SESSION_1", "/fr/home.html")));
+        segments.write(Arrays.asList(newEvent(now - 8 * HOUR, "SESSION_1", "/fr/home.html")));
+        segments.write(Arrays.asList(newEvent(now - 2 * HOUR, "SESSION_1", "/fr/home.html")));
+        assertEquals(3, segments.getSegments(null, null).size());
+
+        assertEquals(2, segments.deleteSegmentsBefore(new Date(now - 5 * HOUR)));
+        assertEquals(1, segments.getSegments(null, null).size());
+
+        // THE CURRENT SEGMENT IS KEPT, EVEN BEFORE THE DATE
+        File current = segments.getCurrentSegment();
+        assertEquals(0, segments.deleteSegmentsBefore(new Date(now + HOUR)));
+        assertTrue(current.exists());
+    }
+
+    @Test
+    public void testSegmentOfPreviousRunIsNotAppended() throws IOException {
+        segments.write(Arrays.asList(newEvent(now, "SESSION_1", "/fr/home.html")));
+        File previous = segments.getCurrentSegment();
+
+        ClickstreamSegments nextRun = new ClickstreamSegments(directory, "qalingo.node-1", 16777216);
+        nextRun.write(Arrays.asList(newEvent(now, "SESSION_2", "/fr/home.html")));
+        assertTrue(!previous.equals(nextRun.getCurrentSegment()));
+
+        List<File> files = new ArrayList<File>(nextRun.getSegments(null, null));
+        assertEquals(2, files.size());
+        ClickstreamRollup rollup = new ClickstreamRollup(100);
+        for (File file : files) {
+            ClickstreamSegments.read(file, rollup, now, now + HOUR);
+        }
+        assertEquals(2, rollup.getEventCount());
+    }
+
+    protected static ClickstreamEvent newEvent(long timestamp, String sessionKey, String requestURI) {
+        return new ClickstreamEvent(timestamp, sessionKey, "www.qalingo.com", requestURI, null, null);
+    }
+
+}
@@ -0,0 +1,175 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.dao;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hoteia.qalingo.core.domain.Asset;
+import org.hoteia.qalingo.core.domain.AttributeDefinition;
+import org.hoteia.qalingo.core.domain.ProductMarketing;
+import org.hoteia.qalingo.core.domain.ProductMarketingAttribute;
+import org.hoteia.qalingo.core.domain.ProductSku;
+import org.hoteia.qalingo.core.fetchplan.FetchPlan;
+import org.hoteia.qalingo.core.fetchplan.catalog.FetchPlanGraphProduct;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Loads product marketings with the full fetch plan, on the H2 database of the
+ * DAO tests : each product has 8 skus, 12 attributes and 5 assets. The join
+ * fetch reads 8 x 12 x 5 = 480 rows by product, the two phases read the
+ * product, then 8 + 12 + 5 rows in one query by collection.
+ *
+ * Run it with the main method (test classpath) : it is not a unit test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProductFetchPlanBenchmark {
+
+    private static final int PRODUCT_COUNT = 50;
+    private static final int SKU_COUNT = 8;
+    private static final int ATTRIBUTE_COUNT = 12;
+    private static final int ASSET_COUNT = 5;
+
+    @Param({ "true", "false" })
+    public boolean twoPhase;
+
+    private ClassPathXmlApplicationContext context;
+    private ProductDao productDao;
+    private TransactionTemplate transactionTemplate;
+    private List<Long> productMarketingIds;
+    private FetchPlan fetchPlan;
+
+    @Setup
+    public void setup() {
+        context = new ClassPathXmlApplicationContext("conf/spring/test/qalingo-core-dao-test-context.xml");
+        productDao = context.getBean("productDao", ProductDao.class);
+        productDao.setCollectionBatchFetch(twoPhase);
+        transactionTemplate = new TransactionTemplate(context.getBean("transactionManager", PlatformTransactionManager.class));
+        fetchPlan = FetchPlanGraphProduct.fullProductMarketingFetchPlan();
+
+        final EntityManagerFactory entityManagerFactory = context.getBean("entityManagerFactory", EntityManagerFactory.class);
+        productMarketingIds = transactionTemplate.execute(new TransactionCallback<List<Long>>() {
+            public List<Long> doInTransaction(TransactionStatus status) {
+                EntityManager em = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+                Date now = new Date();
+                AttributeDefinition attributeDefinition = new AttributeDefinition();
+                attributeDefinition.setCode("BENCHMARK_ATTRIBUTE");
+                attributeDefinition.setDateCreate(now);
+                attributeDefinition.setDateUpdate(now);
+                em.persist(attributeDefinition);
+
+                List<Long> ids = new ArrayList<Long>();
+                for (int i = 0; i < PRODUCT_COUNT; i++) {
+                    ProductMarketing productMarketing = new ProductMarketing();
+                    productMarketing.setCode("BENCHMARK_PRODUCT_" + i);
+                    productMarketing.setName("Benchmark product " + i);
+                    productMarketing.setDateCreate(now);
+                    productMarketing.setDateUpdate(now);
+                    for (int j = 0; j < SKU_COUNT; j++) {
+                        ProductSku productSku = new ProductSku();
+                        productSku.setCode("BENCHMARK_SKU_" + i + "_" + j);
+                        productSku.setName("Benchmark sku " + i + " " + j);
+                        productSku.setProductMarketing(productMarketing);
+                        productSku.setDateCreate(now);
+                        productSku.setDateUpdate(now);
+                        productMarketing.getProductSkus().add(productSku);
+                    }
+                    for (int j = 0; j < ATTRIBUTE_COUNT; j++) {
+                        ProductMarketingAttribute attribute = new ProductMarketingAttribute();
+                        attribute.setAttributeDefinition(attributeDefinition);
+                        attribute.setShortStringValue("Value " + j);
+                        attribute.setLocalizationCode("en");
+                        // THE ATTRIBUTES ARE EQUAL BY DATE CREATE AND ID : ONE DATE BY ATTRIBUTE OF THE SET
+                        attribute.setDateCreate(new Date(now.getTime() + j));
+                        attribute.setDateUpdate(now);
+                        productMarketing.getAttributes().add(attribute);
+                    }
+                    for (int j = 0; j < ASSET_COUNT; j++) {
+                        Asset asset = new Asset();
+                        asset.setName("Benchmark asset " + i + " " + j);
+                        asset.setPath("/benchmark/" + i + "/" + j + ".jpg");
+                        asset.setType("PACKSHOT");
+                        asset.setDateCreate(now);
+                        asset.setDateUpdate(now);
+                        productMarketing.getAssets().add(asset);
+                    }
+                    em.persist(productMarketing);
+                    ids.add(productMarketing.getId());
+                }
+                return ids;
+            }
+        });
+
+        // THE BENCHMARK READS THE EXPECTED NUMBER OF ROWS
+        transactionTemplate.execute(new TransactionCallback<Void>() {
+            public Void doInTransaction(TransactionStatus status) {
+                List<ProductMarketing> productMarketings = productDao.findProductMarketingsByIds(productMarketingIds, fetchPlan);
+                assertEquals(PRODUCT_COUNT, productMarketings.size());
+                for (ProductMarketing productMarketing : productMarketings) {
+                    assertEquals(SKU_COUNT, productMarketing.getProductSkus().size());
+                    assertEquals(ATTRIBUTE_COUNT, productMarketing.getAttributes().size());
+                    assertEquals(ASSET_COUNT, productMarketing.getAssets().size());
+                }
+                return null;
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int findProductMarketingsByIds() {
+        return transactionTemplate.execute(new TransactionCallback<Integer>() {
+            public Integer doInTransaction(TransactionStatus status) {
+                int size = 0;
+                for (ProductMarketing productMarketing : productDao.findProductMarketingsByIds(productMarketingIds, fetchPlan)) {
+                    size += productMarketing.getProductSkus().size() + productMarketing.getAttributes().size() + productMarketing.getAssets().size();
+                }
+                return size;
+            }
+        });
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(ProductFetchPlanBenchmark.class.getSimpleName()).forks(1).warmupIterations(5).measurementIterations(5).build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.domain;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The attributes resolved by the attribute index : the same as the scans of
+ * the attributes, after the attributes are added, removed or modified in place.
+ */
+public class AbstractExtendEntityTest {
+
+    private static final String I18N_NAME = ProductMarketingAttribute.PRODUCT_MARKETING_ATTRIBUTE_I18N_NAME;
+
+    private ProductMarketing productMarketing;
+
+    private Set<ProductMarketingAttribute> attributes;
+
+    private AttributeDefinition globalDefinition;
+
+    private AttributeDefinition marketAreaDefinition;
+
+    @Before
+    public void setUp() {
+        globalDefinition = buildAttributeDefinition(I18N_NAME, true);
+        marketAreaDefinition = buildAttributeDefinition("MARKET_AREA_CODE", false);
+        attributes = new HashSet<ProductMarketingAttribute>();
+        attributes.add(buildAttribute(1L, globalDefinition, null, "fr"));
+        attributes.add(buildAttribute(2L, globalDefinition, null, "en"));
+        attributes.add(buildAttribute(3L, marketAreaDefinition, 1L, null));
+        attributes.add(buildAttribute(4L, marketAreaDefinition, 2L, null));
+        productMarketing = new ProductMarketing();
+        productMarketing.setAttributes(attributes);
+    }
+
+    @Test
+    public void testSameAsScans() {
+        String[] codes = { I18N_NAME, I18N_NAME.toLowerCase(), "MARKET_AREA_CODE", "UNKNOWN" };
+        Long[] marketAreaIds = { null, 1L, 2L, 3L };
+        String[] localizationCodes = { null, "fr", "en", "de" };
+        for (String code : codes) {
+            for (Long marketAreaId : marketAreaIds) {
+                for (String localizationCode : localizationCodes) {
+                    assertSame(code + "|" + marketAreaId + "|" + localizationCode, scanAttribute(code, marketAreaId, localizationCode),
+                               productMarketing.getAttribute(code, marketAreaId, localizationCode));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAttributeModifiedInPlace() {
+        ProductMarketingAttribute frName = (ProductMarketingAttribute) productMarketing.getAttribute(I18N_NAME, "fr");
+        assertNull(productMarketing.getAttribute(I18N_NAME, "de"));
+
+        frName.setLocalizationCode("de");
+        assertNull(productMarketing.getAttribute(I18N_NAME, "fr"));
+        assertSame(frName, productMarketing.getAttribute(I18N_NAME, "de"));
+
+        ProductMarketingAttribute marketAreaAttribute = (ProductMarketingAttribute) productMarketing.getAttribute("MARKET_AREA_CODE", 1L);
+        marketAreaAttribute.setMarketAreaId(3L);
+        assertSame(marketAreaAttribute, productMarketing.getAttribute("MARKET_AREA_CODE", 3L));
+    }
+
+    @Test
+    public void testAttributeReplacedWithSameSize() {
+        ProductMarketingAttribute enName = (ProductMarketingAttribute) productMarketing.getAttribute(I18N_NAME, "en");
+        attributes.remove(enName);
+        ProductMarketingAttribute newEnName = buildAttribute(5L, globalDefinition, null, "en");
+        attributes.add(newEnName);
+
+        assertSame(newEnName, productMarketing.getAttribute(I18N_NAME, "en"));
+    }
+
+    /**
+     * Resolution by scans of the attributes, as it was done before the attribute index.
+     */
+    private AbstractAttribute scanAttribute(String attributeCode, Long marketAreaId, String localizationCode) {
+        AbstractAttribute globalAttribute = productMarketing.getAttribute(productMarketing.getGlobalAttributes(), attributeCode, marketAreaId, localizationCode);
+        AbstractAttribute marketAreaAttribute = productMarketing.getAttribute(productMarketing.getMarketAreaAttributes(marketAreaId), attributeCode, marketAreaId, localizationCode);
+        return marketAreaAttribute != null ? marketAreaAttribute : globalAttribute;
+    }
+
+    private AttributeDefinition buildAttributeDefinition(String code, boolean global) {
+        AttributeDefinition attributeDefinition = new AttributeDefinition();
+        attributeDefinition.setCode(code);
+        attributeDefinition.setGlobal(global);
+        attributeDefinition.setAttributeType(AttributeDefinition.ATTRIBUTE_TYPE_SHORT_STRING);
+        return attributeDefinition;
+    }
+
+    private ProductMarketingAttribute buildAttribute(long id, AttributeDefinition attributeDefinition, Long marketAreaId, String localizationCode) {
+        ProductMarketingAttribute attribute = new ProductMarketingAttribute();
+        attribute.setId(id);
+        attribute.setDateCreate(new Date());
+        attribute.setAttributeDefinition(attributeDefinition);
+        attribute.setMarketAreaId(marketAreaId);
+        attribute.setLocalizationCode(localizationCode);
+        attribute.setShortStringValue(attributeDefinition.getCode() + "_" + id);
+        return attribute;
+    }
+
+}
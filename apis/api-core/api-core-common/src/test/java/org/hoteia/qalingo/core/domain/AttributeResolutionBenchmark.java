@@ -0,0 +1,122 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.domain;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the indexed attribute resolution of {@link AbstractExtendEntity}
+ * with the previous scans of the global and market area attributes, on a
+ * product marketing with 60 attributes.
+ *
+ * Run it with the main method (test classpath) : it is not a unit test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AttributeResolutionBenchmark {
+
+    private static final String[] LOCALIZATION_CODES = { "en", "fr", "de" };
+
+    private static final Long MARKET_AREA_ID = Long.valueOf(2L);
+
+    private ProductMarketing productMarketing;
+
+    @Setup
+    public void setup() {
+        productMarketing = new ProductMarketing();
+        productMarketing.setCode("PRODUCT_MARKETING");
+        Set<ProductMarketingAttribute> attributes = new HashSet<ProductMarketingAttribute>();
+        long id = 1;
+        Date dateCreate = new Date();
+        for (int i = 0; i < 10; i++) {
+            // GLOBAL LOCALIZED ATTRIBUTES : 10 CODES X 3 LOCALIZATIONS
+            AttributeDefinition globalDefinition = buildAttributeDefinition(i == 0 ? ProductMarketingAttribute.PRODUCT_MARKETING_ATTRIBUTE_I18N_NAME : "GLOBAL_" + i, true);
+            for (String localizationCode : LOCALIZATION_CODES) {
+                attributes.add(buildAttribute(id++, dateCreate, globalDefinition, null, localizationCode));
+            }
+            // MARKET AREA ATTRIBUTES : 10 CODES X 3 MARKET AREAS
+            AttributeDefinition marketAreaDefinition = buildAttributeDefinition("MARKET_AREA_" + i, false);
+            for (long marketAreaId = 1; marketAreaId <= 3; marketAreaId++) {
+                attributes.add(buildAttribute(id++, dateCreate, marketAreaDefinition, marketAreaId, null));
+            }
+        }
+        productMarketing.setAttributes(attributes);
+    }
+
+    @Benchmark
+    public Object indexedI18nName() {
+        return productMarketing.getAttribute(ProductMarketingAttribute.PRODUCT_MARKETING_ATTRIBUTE_I18N_NAME, null, "fr");
+    }
+
+    @Benchmark
+    public Object indexedMarketAreaAttribute() {
+        return productMarketing.getAttribute("MARKET_AREA_5", MARKET_AREA_ID, "fr");
+    }
+
+    @Benchmark
+    public Object legacyI18nName() {
+        return legacyGetAttribute(ProductMarketingAttribute.PRODUCT_MARKETING_ATTRIBUTE_I18N_NAME, null, "fr");
+    }
+
+    @Benchmark
+    public Object legacyMarketAreaAttribute() {
+        return legacyGetAttribute("MARKET_AREA_5", MARKET_AREA_ID, "fr");
+    }
+
+    /**
+     * Resolution as it was done before the attribute index.
+     */
+    protected AbstractAttribute legacyGetAttribute(String attributeCode, Long marketAreaId, String localizationCode) {
+        AbstractAttribute globalAttribute = productMarketing.getAttribute(productMarketing.getGlobalAttributes(), attributeCode, marketAreaId, localizationCode);
+        AbstractAttribute marketAreaAttribute = productMarketing.getAttribute(productMarketing.getMarketAreaAttributes(marketAreaId), attributeCode, marketAreaId, localizationCode);
+        return marketAreaAttribute != null ? marketAreaAttribute : globalAttribute;
+    }
+
+    protected AttributeDefinition buildAttributeDefinition(String code, boolean global) {
+        AttributeDefinition attributeDefinition = new AttributeDefinition();
+        attributeDefinition.setCode(code);
+        attributeDefinition.setGlobal(global);
+        attributeDefinition.setAttributeType(AttributeDefinition.ATTRIBUTE_TYPE_SHORT_STRING);
+        return attributeDefinition;
+    }
+
+    protected ProductMarketingAttribute buildAttribute(long id, Date dateCreate, AttributeDefinition attributeDefinition, Long marketAreaId, String localizationCode) {
+        ProductMarketingAttribute attribute = new ProductMarketingAttribute();
+        attribute.setId(id);
+        attribute.setDateCreate(dateCreate);
+        attribute.setAttributeDefinition(attributeDefinition);
+        attribute.setMarketAreaId(marketAreaId);
+        attribute.setLocalizationCode(localizationCode);
+        attribute.setShortStringValue(attributeDefinition.getCode() + "_" + id);
+        return attribute;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(AttributeResolutionBenchmark.class.getSimpleName()).forks(1).warmupIterations(5).measurementIterations(5).build();
+        new Runner(options).run();
+    }
+
+}
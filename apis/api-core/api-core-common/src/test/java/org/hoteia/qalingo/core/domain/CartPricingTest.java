@@ -0,0 +1,136 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The totals of the priced snapshot : the same as the totals computed item by
+ * item, after the items, their quantities or their prices change.
+ */
+public class CartPricingTest {
+
+    private static final Long MARKET_AREA_ID = 1L;
+
+    private static final Long RETAILER_ID = 10L;
+
+    private Cart cart;
+
+    private ProductSku productSku;
+
+    private ProductSkuPrice price;
+
+    @Before
+    public void setUp() {
+        productSku = new ProductSku();
+        productSku.setCode("SKU_1");
+        price = buildPrice(1L, "12.50");
+        productSku.getPrices().add(price);
+        cart = new Cart();
+        cart.setMarketAreaId(MARKET_AREA_ID);
+        cart.setRetailerId(RETAILER_ID);
+    }
+
+    @Test
+    public void testSameSkuAndRetailerTwice() {
+        cart.getCartItems().add(buildCartItem("CATEGORY_1", 2));
+        cart.getCartItems().add(buildCartItem("CATEGORY_2", 3));
+
+        assertEquals(0, new BigDecimal("62.50").compareTo(cart.getCartItemTotal()));
+        assertTotalsPerItem();
+        assertEquals(0, new BigDecimal("62.50").compareTo(cart.getPricing().getCartItemTotal("SKU_1", RETAILER_ID)));
+        assertNull(cart.getPricing().getCartItemTotal("SKU_2", RETAILER_ID));
+    }
+
+    @Test
+    public void testItemsUpdatedAndRemoved() {
+        CartItem first = buildCartItem("CATEGORY_1", 2);
+        CartItem second = buildCartItem("CATEGORY_2", 3);
+        cart.getCartItems().add(first);
+        cart.getCartItems().add(second);
+        assertTotalsPerItem();
+
+        first.setQuantity(5);
+        cart.getPricing().updateCartItem(first);
+        assertTotalsPerItem();
+
+        second.setQuantity(1);
+        assertTotalsPerItem();
+
+        cart.getCartItems().remove(first);
+        cart.getPricing().removeCartItem(first);
+        assertTotalsPerItem();
+
+        cart.getCartItems().remove(second);
+        assertTotalsPerItem();
+        assertEquals(0, BigDecimal.ZERO.compareTo(cart.getCartItemTotal()));
+    }
+
+    @Test
+    public void testPriceReplacedOrUpdated() {
+        cart.getCartItems().add(buildCartItem("CATEGORY_1", 2));
+        assertTotalsPerItem();
+
+        // THE SIZE OF THE PRICES IS THE SAME
+        productSku.getPrices().remove(price);
+        ProductSkuPrice newPrice = buildPrice(2L, "9.90");
+        productSku.getPrices().add(newPrice);
+        assertSame(newPrice, productSku.getPrice(MARKET_AREA_ID, RETAILER_ID));
+        assertTotalsPerItem();
+
+        newPrice.setSalePrice(new BigDecimal("8.00"));
+        assertTotalsPerItem();
+
+        newPrice.setRetailerId(20L);
+        assertNull(productSku.getPrice(MARKET_AREA_ID, RETAILER_ID));
+        assertTotalsPerItem();
+    }
+
+    /**
+     * Totals computed item by item, as they were before the priced snapshot.
+     */
+    private void assertTotalsPerItem() {
+        BigDecimal cartItemTotal = BigDecimal.ZERO;
+        for (CartItem cartItem : cart.getCartItems()) {
+            cartItemTotal = cartItemTotal.add(cartItem.getTotalAmountCartItem(MARKET_AREA_ID, RETAILER_ID));
+        }
+        assertEquals(0, cartItemTotal.compareTo(cart.getCartItemTotal()));
+        assertEquals(0, cartItemTotal.compareTo(cart.getCartTotal()));
+    }
+
+    private CartItem buildCartItem(String catalogCategoryCode, int quantity) {
+        CartItem cartItem = new CartItem();
+        cartItem.setProductSkuCode(productSku.getCode());
+        cartItem.setProductSku(productSku);
+        cartItem.setCatalogCategoryCode(catalogCategoryCode);
+        cartItem.setRetailerId(RETAILER_ID);
+        cartItem.setQuantity(quantity);
+        return cartItem;
+    }
+
+    private ProductSkuPrice buildPrice(long id, String catalogPrice) {
+        ProductSkuPrice productSkuPrice = new ProductSkuPrice();
+        productSkuPrice.setId(id);
+        productSkuPrice.setDateCreate(new Date());
+        productSkuPrice.setMarketAreaId(MARKET_AREA_ID);
+        productSkuPrice.setRetailerId(RETAILER_ID);
+        productSkuPrice.setCatalogPrice(new BigDecimal(catalogPrice));
+        return productSkuPrice;
+    }
+
+}
@@ -0,0 +1,170 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.email.outbox;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.hoteia.qalingo.core.domain.Email;
+import org.hoteia.qalingo.core.email.outbox.SmtpTransportPool.PooledTransport;
+import org.hoteia.qalingo.core.service.EmailService;
+import org.hoteia.qalingo.core.util.impl.MimeMessagePreparatorImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * A dispatcher round against a mocked outbox and SMTP server : the due emails
+ * claimed, the emails over the rate of their domain given back, each email
+ * marked as sent right after its send.
+ */
+public class EmailOutboxDispatcherTest {
+
+    private static final long SENDING_LEASE = 600000;
+
+    private EmailOutboxDispatcher dispatcher;
+
+    private EmailService emailService;
+
+    private Transport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        emailService = mock(EmailService.class);
+        when(emailService.getEmailContent(any(Email.class))).thenReturn(newMimeMessagePreparator("customer@example.com"));
+        dispatcher = new EmailOutboxDispatcher();
+        dispatcher.emailService = emailService;
+        dispatcher.mailSender = mock(JavaMailSenderImpl.class);
+        ReflectionTestUtils.setField(dispatcher, "sendingLease", SENDING_LEASE);
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Test
+    public void testOnlyDueEmailsClaimedAreSent() throws Exception {
+        start();
+        long now = System.currentTimeMillis();
+        EmailOutboxEntry pending = new EmailOutboxEntry(1L, 0, Email.EMAIl_STATUS_PENDING, 0, new Date(now));
+        EmailOutboxEntry sending = new EmailOutboxEntry(2L, 1, Email.EMAIl_STATUS_SENDING, 1, new Date(now));
+        EmailOutboxEntry sendingOverLease = new EmailOutboxEntry(3L, 1, Email.EMAIl_STATUS_SENDING, 1, new Date(now - 2 * SENDING_LEASE));
+        EmailOutboxEntry errorBeforeRetry = new EmailOutboxEntry(4L, 2, Email.EMAIl_STATUS_ERROR, 1, new Date(now));
+        EmailOutboxEntry claimedByAnotherNode = new EmailOutboxEntry(5L, 0, Email.EMAIl_STATUS_PENDING, 0, new Date(now));
+        when(emailService.findEmailOutboxEntries(eq(5), eq(600000L), eq(400)))
+            .thenReturn(Arrays.asList(pending, sending, sendingOverLease, errorBeforeRetry, claimedByAnotherNode));
+        when(emailService.claimEmail(pending)).thenReturn(true);
+        when(emailService.claimEmail(sendingOverLease)).thenReturn(true);
+        when(emailService.findEmailsByIds(Arrays.asList(1L, 3L))).thenReturn(newEmails(1L, 3L));
+
+        dispatcher.dispatch();
+
+        verify(emailService, never()).claimEmail(sending);
+        verify(emailService, never()).claimEmail(errorBeforeRetry);
+        verify(emailService).claimEmail(claimedByAnotherNode);
+        verify(emailService).markEmailsSended(Collections.singletonList(1L));
+        verify(emailService).markEmailsSended(Collections.singletonList(3L));
+        assertEquals(2, dispatcher.getSendedCount());
+        assertEquals(2, dispatcher.getLastRoundSize());
+    }
+
+    @Test
+    public void testEmailsOverDomainRateAreGivenBack() throws Exception {
+        ReflectionTestUtils.setField(dispatcher, "domainMaxPerMinute", 1);
+        start();
+        long now = System.currentTimeMillis();
+        List<EmailOutboxEntry> entries = Arrays.asList(new EmailOutboxEntry(1L, 0, Email.EMAIl_STATUS_PENDING, 0, new Date(now)),
+                                                       new EmailOutboxEntry(2L, 0, Email.EMAIl_STATUS_PENDING, 0, new Date(now)));
+        when(emailService.findEmailOutboxEntries(eq(5), eq(600000L), eq(400))).thenReturn(entries);
+        when(emailService.claimEmail(any(EmailOutboxEntry.class))).thenReturn(true);
+        when(emailService.findEmailsByIds(anyCollection())).thenReturn(newEmails(1L, 2L));
+
+        dispatcher.dispatch();
+
+        verify(emailService).markEmailsSended(Collections.singletonList(1L));
+        verify(emailService).releaseEmails(Collections.singletonList(2L));
+        assertEquals(1, dispatcher.getSendedCount());
+        assertEquals(1, dispatcher.getDeferredCount());
+    }
+
+    @Test
+    public void testEmailIsMarkedSentRightAfterItsSend() throws Exception {
+        start();
+        MessagingException rejected = new MessagingException("Rejected");
+        doNothing().doThrow(rejected).when(transport).sendMessage(any(Message.class), any(Address[].class));
+        when(transport.isConnected()).thenReturn(true);
+
+        dispatcher.send(Arrays.asList(new EmailOutboxDispatcher.OutboxEmail(1L, newMimeMessagePreparator("first@example.com")),
+                                      new EmailOutboxDispatcher.OutboxEmail(2L, newMimeMessagePreparator("second@example.com"))));
+
+        InOrder inOrder = inOrder(transport, emailService);
+        inOrder.verify(transport).sendMessage(any(Message.class), any(Address[].class));
+        inOrder.verify(emailService).markEmailsSended(Collections.singletonList(1L));
+        inOrder.verify(transport).sendMessage(any(Message.class), any(Address[].class));
+        inOrder.verify(emailService).markEmailError(2L, rejected);
+        verify(emailService, never()).markEmailsSended(Collections.singletonList(2L));
+        assertEquals(1, dispatcher.getSendedCount());
+        assertEquals(1, dispatcher.getErrorCount());
+    }
+
+    private void start() throws Exception {
+        dispatcher.start();
+        transport = mock(Transport.class);
+        SmtpTransportPool transportPool = mock(SmtpTransportPool.class);
+        when(transportPool.getSession()).thenReturn(Session.getInstance(new Properties()));
+        when(transportPool.borrow()).thenReturn(new PooledTransport(transport));
+        ReflectionTestUtils.setField(dispatcher, "transportPool", transportPool);
+    }
+
+    private List<Email> newEmails(final Long... ids) {
+        List<Email> emails = new ArrayList<Email>();
+        for (Long id : ids) {
+            Email email = new Email();
+            email.setId(id);
+            emails.add(email);
+        }
+        return emails;
+    }
+
+    private MimeMessagePreparatorImpl newMimeMessagePreparator(final String to) {
+        MimeMessagePreparatorImpl mimeMessagePreparator = new MimeMessagePreparatorImpl();
+        mimeMessagePreparator.setTo(to);
+        mimeMessagePreparator.setSubject("Test");
+        mimeMessagePreparator.setPlainTextContent("Test");
+        return mimeMessagePreparator;
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.geoloc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hoteia.qalingo.core.domain.GeolocCity;
+import org.hoteia.qalingo.core.service.EngineSettingService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The lookups queued to the workers : coalesced by location, not queued while
+ * Google is over quota, read from the cache by the next requests.
+ */
+public class AsyncGeocoderTest {
+
+    private AsyncGeocoder geocoder;
+
+    private final AtomicInteger lookupCount = new AtomicInteger();
+
+    private final CountDownLatch lookupRelease = new CountDownLatch(1);
+
+    private final Callable<String> lookup = new Callable<String>() {
+        public String call() throws Exception {
+            lookupCount.incrementAndGet();
+            lookupRelease.await(5, TimeUnit.SECONDS);
+            return "PARIS";
+        }
+    };
+
+    @Before
+    public void setUp() {
+        geocoder = new AsyncGeocoder();
+        geocoder.engineSettingService = mock(EngineSettingService.class);
+    }
+
+    @After
+    public void tearDown() {
+        geocoder.stop();
+    }
+
+    @Test
+    public void testSameLocationIsCoalesced() throws Exception {
+        final List<String> results = new CopyOnWriteArrayList<String>();
+        final CountDownLatch callbacksDone = new CountDownLatch(3);
+        GeocodingCallback<String> callback = new GeocodingCallback<String>() {
+            public void onGeocoded(String result) {
+                results.add(result);
+                callbacksDone.countDown();
+            }
+        };
+        for (int i = 0; i < 3; i++) {
+            assertNull(geocoder.queue("CITY|Paris|FR", String.class, callback, lookup));
+        }
+        assertEquals(1, geocoder.getQueuedCount());
+        assertEquals(2, geocoder.getCoalescedCount());
+        assertEquals(1, geocoder.getPendingCount());
+
+        lookupRelease.countDown();
+        assertTrue(callbacksDone.await(5, TimeUnit.SECONDS));
+        assertEquals(1, lookupCount.get());
+        assertEquals(3, results.size());
+        assertEquals("PARIS", results.get(0));
+        assertEquals(1, geocoder.getGeocodedCount());
+        assertEquals(1, geocoder.getCacheSize());
+    }
+
+    @Test
+    public void testNotQueuedWhileOverQuota() throws Exception {
+        when(geocoder.engineSettingService.isGoogleGeolocationApiStillOverQuotas(any(Date.class))).thenReturn(true);
+        lookupRelease.countDown();
+
+        // THE WORKER FINDS GOOGLE OVER QUOTA : NO CALL
+        geocoder.new GeocodingTask<String>("CITY|Paris|FR", lookup).run();
+        assertEquals(0, lookupCount.get());
+        assertTrue(geocoder.isOverQuotaPaused());
+
+        // THE NEXT MISSES ARE NOT QUEUED, AND THE SETTINGS ARE NOT READ AGAIN
+        assertNull(geocoder.queue("CITY|Lyon|FR", String.class, null, lookup));
+        geocoder.new GeocodingTask<String>("CITY|Nice|FR", lookup).run();
+        assertEquals(0, geocoder.getQueuedCount());
+        assertEquals(0, geocoder.getPendingCount());
+        assertEquals(0, lookupCount.get());
+        assertEquals(0, geocoder.getCacheSize());
+        verify(geocoder.engineSettingService, times(1)).isGoogleGeolocationApiStillOverQuotas(any(Date.class));
+    }
+
+    @Test
+    public void testGeocodedLocationIsReadFromCache() throws Exception {
+        final GeolocCity paris = new GeolocCity();
+        paris.setLatitude("48.856614");
+        paris.setLongitude("2.3522219");
+        Callable<GeolocCity> cityLookup = new Callable<GeolocCity>() {
+            public GeolocCity call() throws Exception {
+                lookupRelease.await(5, TimeUnit.SECONDS);
+                return paris;
+            }
+        };
+
+        // NO CALLBACK : THE NEXT REQUEST READS THE CACHE
+        assertNull(geocoder.queue(AsyncGeocoder.cityKey("Paris", "FR"), GeolocCity.class, null, cityLookup));
+        assertNull(geocoder.getCachedGeolocCity("Paris", "FR"));
+
+        lookupRelease.countDown();
+        long timeout = System.currentTimeMillis() + 5000;
+        while (geocoder.getPendingCount() > 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertSame(paris, geocoder.getCachedGeolocCity("Paris", "FR"));
+        assertNull(geocoder.getCachedGeolocAddress("48.856614", "2.3522219"));
+    }
+
+}
@@ -0,0 +1,109 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.geoloc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hoteia.qalingo.core.mapper.JsonMapper;
+import org.hoteia.qalingo.core.web.bean.geoloc.json.GoogleGeoCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The client against a local server which answers like the Google Geocoding API.
+ */
+public class GoogleGeocodingClientTest {
+
+    private static final String PARIS = "{\"results\":[{\"formatted_address\":\"Paris, France\","
+            + "\"geometry\":{\"location\":{\"lat\":48.856614,\"lng\":2.3522219},\"location_type\":\"APPROXIMATE\"},"
+            + "\"types\":[\"locality\"]}],\"status\":\"OK\"}";
+
+    private HttpServer server;
+
+    private GoogleGeocodingClient client;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    private volatile int statusCode = 200;
+
+    private volatile String lastQuery;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/geocode/json", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requestCount.incrementAndGet();
+                lastQuery = exchange.getRequestURI().getRawQuery();
+                byte[] body = PARIS.getBytes("UTF-8");
+                exchange.sendResponseHeaders(statusCode, body.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                output.close();
+            }
+        });
+        server.start();
+        client = new GoogleGeocodingClient("http://127.0.0.1:" + server.getAddress().getPort() + "/geocode/json");
+        client.jsonMapper = new JsonMapper();
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testGeocodeAddress() throws IOException {
+        GoogleGeoCode geoCode = client.geocodeAddress("Paris,France,", "KEY");
+        assertEquals("OK", geoCode.getStatus());
+        assertEquals("48.856614", geoCode.getLatitude());
+        assertEquals("2.3522219", geoCode.getLongitude());
+        assertEquals("address=Paris,France,&key=KEY", lastQuery);
+    }
+
+    @Test
+    public void testGeocodeLatitudeLongitude() throws IOException {
+        client.geocodeLatitudeLongitude(" 48.856614", "2.3522219 ", "KEY");
+        assertEquals("latlng=48.856614,2.3522219&key=KEY", lastQuery);
+    }
+
+    @Test
+    public void testPooledConnectionIsReleased() throws IOException {
+        // THE POOL HAS 10 CONNECTIONS : A CONNECTION NOT RELEASED BLOCKS THE 11TH CALL
+        for (int i = 0; i < 30; i++) {
+            client.geocodeAddress("Paris,France,", "KEY");
+        }
+        assertEquals(30, requestCount.get());
+    }
+
+    @Test
+    public void testErrorStatus() {
+        statusCode = 500;
+        try {
+            client.geocodeAddress("Paris,France,", "KEY");
+            fail("HTTP status 500 must fail");
+        } catch (IOException e) {
+            assertEquals("Google geocoding returns HTTP status 500", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.reporting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.hoteia.qalingo.core.dao.OrderCustomerDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * The incremental refresh of the cube : paged by update date and id, reading
+ * again the orders committed late during the refresh lag.
+ */
+public class SalesReportingEngineTest {
+
+    private static final long REFRESH_LAG = 300000;
+
+    private SalesReportingEngine engine;
+
+    private OrderCustomerDao orderCustomerDao;
+
+    @Before
+    public void setUp() {
+        orderCustomerDao = mock(OrderCustomerDao.class);
+        when(orderCustomerDao.findSalesItemRows(anyCollection())).thenReturn(new ArrayList<Object[]>());
+        when(orderCustomerDao.findSalesTaxRows(anyCollection())).thenReturn(new ArrayList<Object[]>());
+        when(orderCustomerDao.findSalesShippingRows(anyCollection())).thenReturn(new ArrayList<Object[]>());
+        engine = new SalesReportingEngine();
+        engine.orderCustomerDao = orderCustomerDao;
+        engine.transactionManager = mock(PlatformTransactionManager.class);
+        ReflectionTestUtils.setField(engine, "refreshLag", REFRESH_LAG);
+    }
+
+    @After
+    public void tearDown() {
+        engine.stop();
+    }
+
+    @Test
+    public void testLateCommittedOrderIsRead() {
+        // NO ORDER AT THE REBUILD
+        engine.rebuild();
+        Date lastUpdate = new Date(engine.getRefreshedSince().getTime() + 60000);
+        Date lateUpdate = new Date(lastUpdate.getTime() - 30000);
+        when(orderCustomerDao.findOrderIdsUpdatedSince(any(Date.class), any(Long.class), anyInt()))
+            .thenReturn(rows(new Object[] { 1L, lastUpdate }))
+            .thenReturn(rows(new Object[] { 2L, lateUpdate }, new Object[] { 1L, lastUpdate }));
+
+        engine.refresh();
+        assertEquals(1, engine.getRefreshedOrderCount());
+        assertEquals(lastUpdate, engine.getRefreshedSince());
+
+        // THE ORDER 2, COMMITTED AFTER THE FIRST REFRESH, IS READ IN THE LAG : THE ORDER 1 IS UNCHANGED
+        engine.refresh();
+        assertEquals(2, engine.getRefreshedOrderCount());
+        assertEquals(lastUpdate, engine.getRefreshedSince());
+        verify(orderCustomerDao).findOrderIdsUpdatedSince(eq(new Date(lastUpdate.getTime() - REFRESH_LAG)), (Long) eq(null), anyInt());
+
+        ArgumentCaptor<Collection> orderIds = ArgumentCaptor.forClass(Collection.class);
+        verify(orderCustomerDao, times(2)).findSalesItemRows(orderIds.capture());
+        assertEquals(Arrays.asList(1L), new ArrayList<Object>(orderIds.getAllValues().get(0)));
+        assertEquals(Arrays.asList(2L), new ArrayList<Object>(orderIds.getAllValues().get(1)));
+    }
+
+    @Test
+    public void testRefreshIsPagedByUpdateDateAndId() {
+        ReflectionTestUtils.setField(engine, "refreshBatchSize", 2);
+        engine.rebuild();
+        Date update = new Date(engine.getRefreshedSince().getTime() + 60000);
+        when(orderCustomerDao.findOrderIdsUpdatedSince(any(Date.class), any(Long.class), anyInt()))
+            .thenReturn(rows(new Object[] { 1L, update }, new Object[] { 2L, update }))
+            .thenReturn(rows(new Object[] { 3L, update }));
+
+        engine.refresh();
+
+        verify(orderCustomerDao).findOrderIdsUpdatedSince(update, 2L, 2);
+        assertEquals(3, engine.getRefreshedOrderCount());
+        assertEquals(update, engine.getRefreshedSince());
+    }
+
+    @Test
+    public void testNoFiguresUntilBuilt() {
+        SalesQuery query = new SalesQuery();
+        query.setGroupBy(SalesDimension.DAY);
+        assertTrue(engine.query(query).isEmpty());
+    }
+
+    private List<Object[]> rows(final Object[]... rows) {
+        return new ArrayList<Object[]>(Arrays.asList(rows));
+    }
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.hoteia.qalingo.core.dao.RetailerDao;
+import org.hoteia.qalingo.core.domain.bean.GeolocatedStore;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The stores found in a radius : the same as a scan of all the stores, at high
+ * latitudes, around a pole and across the antimeridian.
+ */
+public class StoreLocatorServiceTest {
+
+    private StoreLocatorService storeLocatorService;
+
+    private List<Object[]> storeLocations;
+
+    @Before
+    public void setUp() {
+        storeLocations = new ArrayList<Object[]>();
+        RetailerDao retailerDao = mock(RetailerDao.class);
+        when(retailerDao.findStoreLocations()).thenReturn(storeLocations);
+        storeLocatorService = new StoreLocatorService();
+        storeLocatorService.retailerDao = retailerDao;
+    }
+
+    @Test
+    public void testHighLatitude() {
+        // 585 MILES AWAY : OUT OF A SPAN OF DISTANCE / COS(LATITUDE)
+        addStore(1L, 85, 58);
+        addStore(2L, 80, 10);
+        addStore(3L, 80, 70);
+
+        assertStores("80", "0", "600", 2L, 1L);
+        assertSameAsScan(80, 0, 600);
+        assertSameAsScan(85, 0, 400);
+    }
+
+    @Test
+    public void testCircleContainingPole() {
+        // 552 MILES AWAY, ACROSS THE NORTH POLE
+        addStore(1L, 87, 180);
+        addStore(2L, -87, 180);
+
+        assertStores("85", "0", "600", 1L);
+        assertStores("-85", "0", "600", 2L);
+        assertSameAsScan(85, 0, 600);
+        assertSameAsScan(-89.9, 45, 100);
+    }
+
+    @Test
+    public void testAntimeridian() {
+        addStore(1L, 0, -179.8);
+        addStore(2L, 0, 179.5);
+        addStore(3L, 0, 180);
+        addStore(4L, 0, 178);
+
+        assertStores("0", "179.9", "50", 3L, 1L, 2L);
+        assertStores("0", "-179.95", "50", 3L, 1L, 2L);
+        assertSameAsScan(0, 179.9, 50);
+        assertSameAsScan(65, -179.5, 200);
+    }
+
+    private void addStore(long id, double latitude, double longitude) {
+        storeLocations.add(new Object[] { id, "STORE_" + id, String.valueOf(latitude), String.valueOf(longitude), "FR" });
+        storeLocatorService.rebuild();
+    }
+
+    private void assertStores(String latitude, String longitude, String distance, Long... storeIds) {
+        List<GeolocatedStore> stores = storeLocatorService.findStoresByGeoloc(latitude, longitude, distance, 0);
+        List<Long> ids = new ArrayList<Long>();
+        for (GeolocatedStore store : stores) {
+            ids.add(store.getId());
+        }
+        assertEquals(Arrays.asList(storeIds), ids);
+    }
+
+    /**
+     * Stores found by the haversine distance of all the stores, as the native
+     * query did before the grid.
+     */
+    private void assertSameAsScan(double latitude, double longitude, double distance) {
+        List<Long> expectedIds = new ArrayList<Long>();
+        double latitudeRadians = Math.toRadians(latitude);
+        for (Object[] storeLocation : storeLocations) {
+            StoreLocatorService.IndexedStore indexedStore = StoreLocatorService.IndexedStore.build((Long) storeLocation[0], (String) storeLocation[1],
+                    (String) storeLocation[2], (String) storeLocation[3], (String) storeLocation[4]);
+            if (indexedStore.distance(latitudeRadians, Math.toRadians(longitude), Math.cos(latitudeRadians)) <= distance) {
+                expectedIds.add(indexedStore.getId());
+            }
+        }
+        List<Long> ids = new ArrayList<Long>();
+        for (GeolocatedStore store : storeLocatorService.findStores(null, latitude, longitude, distance, 0)) {
+            ids.add(store.getId());
+        }
+        Collections.sort(expectedIds);
+        Collections.sort(ids);
+        assertEquals(expectedIds, ids);
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.hibernate.collection.internal.PersistentSet;
+import org.hoteia.qalingo.core.domain.Retailer;
+import org.hoteia.qalingo.core.service.UrlSegmentService.UrlSegment;
+import org.hoteia.qalingo.core.service.UrlSegmentService.UrlSegmentType;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The segments kept by entity : computed again on a new version or after the
+ * eviction of a saved entity, never kept without the attributes loaded.
+ */
+public class UrlSegmentServiceTest {
+
+    private UrlSegmentService urlSegmentService;
+
+    private Retailer retailer;
+
+    @Before
+    public void setUp() {
+        urlSegmentService = new UrlSegmentService();
+        retailer = new Retailer();
+        retailer.setId(10L);
+        retailer.setVersion(1);
+        retailer.setCode("RETAILER_1");
+        retailer.setName("Retailer");
+    }
+
+    @Test
+    public void testSegmentIsKept() {
+        UrlSegment segment = urlSegmentService.getSegment(UrlSegmentType.RETAILER, retailer, "fr");
+        assertSame(segment, urlSegmentService.getSegment(UrlSegmentType.RETAILER, retailer, "fr"));
+        assertEquals(1, urlSegmentService.getHits());
+        assertEquals(1, urlSegmentService.getMisses());
+    }
+
+    @Test
+    public void testNewVersionIsComputedAgain() {
+        UrlSegment segment = urlSegmentService.getSegment(UrlSegmentType.RETAILER, retailer, "fr");
+        retailer.setVersion(2);
+        retailer.setName("Retailer renamed");
+
+        UrlSegment newSegment = urlSegmentService.getSegment(UrlSegmentType.RETAILER, retailer, "fr");
+        assertNotSame(segment, newSegment);
+        assertEquals(UrlSegmentService.handleParamValue("Retailer renamed"), newSegment.getSlug());
+        assertSame(newSegment, urlSegmentService.getSegment(UrlSegmentType.RETAILER, retailer, "fr"));
+    }
+
+    @Test
+    public void testSavedEntityIsEvicted() {
+        UrlSegment segment = urlSegmentService.getSegment(UrlSegmentType.RETAILER, retailer, "fr");
+        urlSegmentService.getSegment(UrlSegmentType.RETAILER, retailer, "en");
+
+        // AN ATTRIBUTE UPDATE DOES NOT CHANGE THE VERSION OF THE ENTITY
+        urlSegmentService.evict("Retailer", 10L);
+        assertEquals(0, urlSegmentService.getSize());
+        assertNotSame(segment, urlSegmentService.getSegment(UrlSegmentType.RETAILER, retailer, "fr"));
+        assertEquals(3, urlSegmentService.getMisses());
+    }
+
+    @Test
+    public void testSegmentWithoutAttributesIsNotKept() {
+        retailer.setAttributes(new PersistentSet());
+
+        urlSegmentService.getSegment(UrlSegmentType.RETAILER, retailer, "fr");
+        urlSegmentService.getSegment(UrlSegmentType.RETAILER, retailer, "fr");
+        assertEquals(0, urlSegmentService.getSize());
+        assertEquals(2, urlSegmentService.getMisses());
+    }
+
+}
@@ -0,0 +1,169 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hoteia.qalingo.core.domain.Cart;
+import org.hoteia.qalingo.core.domain.CartItem;
+import org.hoteia.qalingo.core.domain.CurrencyReferential;
+import org.hoteia.qalingo.core.domain.EngineEcoSession;
+import org.hoteia.qalingo.core.domain.MarketArea;
+import org.hoteia.qalingo.core.domain.Retailer;
+import org.hoteia.qalingo.core.session.EngineSessionJournal.JournalCartItem;
+import org.hoteia.qalingo.core.session.EngineSessionJournal.JournalRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The journal lines written for an engine session are read back as its last
+ * state, with the versions of the engine session and of its cart.
+ */
+public class EngineSessionJournalTest {
+
+    private File directory;
+
+    private EngineSessionJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("qalingo-engine-session-journal", "");
+        directory.delete();
+        directory.mkdirs();
+        journal = new EngineSessionJournal(new File(directory, "test.journal"), false);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        journal.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        EngineEcoSession engineEcoSession = newEngineEcoSession("GUID-1", 3, 10L, 4);
+        Cart cart = engineEcoSession.getCart();
+        cart.getCartItems().add(newCartItem(null, "SKU 1;,%", 2L, 2));
+        cart.getCartItems().add(newCartItem(null, "SKU2", 3L, 1));
+        journal.append(engineEcoSession);
+
+        cart.getCartItems().iterator().next().setQuantity(7);
+        engineEcoSession.setVersion(5);
+        journal.append(engineEcoSession);
+        appendRaw(journal.getFilesToReplay().get(0), "GUID-1\t6\t10\t4\t1\t");
+
+        Map<String, JournalRecord> records = EngineSessionJournal.read(journal.getFilesToReplay());
+        assertEquals(1, records.size());
+        JournalRecord record = records.get("GUID-1");
+        assertTrue(record.isWithCart());
+        assertEquals(Integer.valueOf(5), record.getEngineSessionVersion());
+        assertEquals(Long.valueOf(10), record.getCartId());
+        assertEquals(Integer.valueOf(4), record.getCartVersion());
+        assertEquals(Long.valueOf(1), record.getMarketAreaId());
+        assertEquals(Long.valueOf(2), record.getRetailerId());
+        assertEquals(Long.valueOf(5), record.getCurrencyId());
+
+        Map<String, Integer> quantities = new HashMap<String, Integer>();
+        for (CartItem cartItem : cart.getCartItems()) {
+            quantities.put(cartItem.getProductSkuCode() + ":" + cartItem.getRetailerId(), cartItem.getQuantity());
+        }
+        assertEquals(2, record.getCartItems().size());
+        for (JournalCartItem journalCartItem : record.getCartItems()) {
+            assertEquals(quantities.get(journalCartItem.getProductSkuCode() + ":" + journalCartItem.getRetailerId()),
+                    Integer.valueOf(journalCartItem.getQuantity()));
+        }
+    }
+
+    @Test
+    public void testLineWithoutVersions() throws IOException {
+        File file = new File(directory, "test.journal");
+        appendRaw(file, "GUID-2\t10\t1\t1\t2\t\t\t\t\tSKU1,,,2,3\t$\n");
+
+        JournalRecord record = EngineSessionJournal.read(Arrays.asList(file)).get("GUID-2");
+        assertNull(record.getEngineSessionVersion());
+        assertNull(record.getCartVersion());
+        assertEquals(Long.valueOf(10), record.getCartId());
+        assertEquals(3, record.getCartItems().get(0).getQuantity());
+    }
+
+    @Test
+    public void testDeadLettersAreReplayed() throws IOException {
+        EngineEcoSession engineEcoSession = newEngineEcoSession("GUID-3", 1, 11L, 1);
+        engineEcoSession.getCart().getCartItems().add(newCartItem(null, "SKU1", 2L, 1));
+        journal.appendDeadLetter(engineEcoSession);
+        assertTrue(journal.getFilesToReplay().isEmpty());
+
+        assertTrue(journal.rotateDeadLetters());
+        assertFalse(journal.getDeadLetterFile().exists());
+        List<File> files = journal.getFilesToReplay();
+        assertEquals(1, files.size());
+        JournalRecord record = EngineSessionJournal.read(files).get("GUID-3");
+        assertEquals(Long.valueOf(11), record.getCartId());
+        assertEquals(record.getLine(), EngineSessionJournal.toLine(engineEcoSession));
+    }
+
+    protected static EngineEcoSession newEngineEcoSession(final String engineSessionGuid, final int version, final Long cartId, final int cartVersion) {
+        MarketArea marketArea = new MarketArea();
+        marketArea.setId(1L);
+        Retailer retailer = new Retailer();
+        retailer.setId(2L);
+        CurrencyReferential currency = new CurrencyReferential();
+        currency.setId(5L);
+
+        EngineEcoSession engineEcoSession = new EngineEcoSession();
+        engineEcoSession.setEngineSessionGuid(engineSessionGuid);
+        engineEcoSession.setVersion(version);
+        engineEcoSession.setCurrentMarketArea(marketArea);
+        engineEcoSession.setCurrentMarketAreaRetailer(retailer);
+
+        Cart cart = new Cart();
+        cart.setId(cartId);
+        cart.setVersion(cartVersion);
+        cart.setMarketAreaId(1L);
+        cart.setRetailerId(2L);
+        cart.setCurrency(currency);
+        engineEcoSession.getCarts().add(cart);
+        return engineEcoSession;
+    }
+
+    protected static CartItem newCartItem(final Long id, final String productSkuCode, final Long retailerId, final int quantity) {
+        CartItem cartItem = new CartItem();
+        cartItem.setId(id);
+        cartItem.setProductSkuCode(productSkuCode);
+        cartItem.setRetailerId(retailerId);
+        cartItem.setQuantity(quantity);
+        return cartItem;
+    }
+
+    private void appendRaw(final File file, final String content) throws IOException {
+        FileOutputStream output = new FileOutputStream(file, true);
+        try {
+            output.write(content.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.session;
+
+import static org.hoteia.qalingo.core.session.EngineSessionJournalTest.newCartItem;
+import static org.hoteia.qalingo.core.session.EngineSessionJournalTest.newEngineEcoSession;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hoteia.qalingo.core.domain.CartItem;
+import org.hoteia.qalingo.core.domain.EngineEcoSession;
+import org.hoteia.qalingo.core.service.EngineSessionService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * The replay of a journal left by a crash, against the engine sessions of the database.
+ */
+public class EngineSessionWriteBehindTest {
+
+    private File directory;
+
+    private EngineSessionWriteBehind writeBehind;
+
+    private EngineSessionService engineSessionService;
+
+    private EngineSessionJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("qalingo-engine-session-write-behind", "");
+        directory.delete();
+        directory.mkdirs();
+        engineSessionService = mock(EngineSessionService.class);
+        writeBehind = new EngineSessionWriteBehind();
+        writeBehind.engineSessionService = engineSessionService;
+        writeBehind.transactionManager = mock(PlatformTransactionManager.class);
+        ReflectionTestUtils.setField(writeBehind, "journalDirectory", directory.getPath());
+        writeBehind.init();
+        journal = new EngineSessionJournal(new File(directory, writeBehind.getJournalFileName()), false);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        journal.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testReplayMatchesItemsBySkuAndRetailer() throws IOException {
+        EngineEcoSession journaledSession = newEngineEcoSession("GUID-1", 3, 10L, 4);
+        journaledSession.getCart().getCartItems().add(newCartItem(100L, "SKU1", 2L, 5));
+        journaledSession.getCart().getCartItems().add(newCartItem(101L, "SKU1", 3L, 1));
+        journal.append(journaledSession);
+        journal.close();
+
+        EngineEcoSession savedSession = newEngineEcoSession("GUID-1", 3, 10L, 4);
+        savedSession.getCart().getCartItems().add(newCartItem(100L, "SKU1", 2L, 1));
+        savedSession.getCart().getCartItems().add(newCartItem(101L, "SKU1", 3L, 1));
+        when(engineSessionService.getEngineEcoSessionByEngineSessionGuid("GUID-1")).thenReturn(savedSession);
+
+        writeBehind.replay();
+
+        assertEquals(1, writeBehind.getReplayedCount());
+        Map<Long, Integer> quantities = new HashMap<Long, Integer>();
+        for (CartItem cartItem : savedSession.getCart().getCartItems()) {
+            quantities.put(cartItem.getRetailerId(), cartItem.getQuantity());
+        }
+        assertEquals(2, quantities.size());
+        assertEquals(Integer.valueOf(5), quantities.get(2L));
+        assertEquals(Integer.valueOf(1), quantities.get(3L));
+        assertTrue(journal.getFilesToReplay().isEmpty());
+    }
+
+    @Test
+    public void testReplaySkipsNewerSave() throws IOException {
+        EngineEcoSession journaledSession = newEngineEcoSession("GUID-2", 3, 10L, 4);
+        journaledSession.getCart().getCartItems().add(newCartItem(100L, "SKU1", 2L, 5));
+        journal.append(journaledSession);
+        journal.close();
+
+        // ANOTHER NODE SAVED THE ENGINE SESSION AFTER THE FAILOVER
+        EngineEcoSession savedSession = newEngineEcoSession("GUID-2", 4, 10L, 5);
+        savedSession.getCart().getCartItems().add(newCartItem(100L, "SKU1", 2L, 1));
+        savedSession.getCart().getCartItems().add(newCartItem(102L, "SKU2", 2L, 1));
+        when(engineSessionService.getEngineEcoSessionByEngineSessionGuid("GUID-2")).thenReturn(savedSession);
+
+        writeBehind.replay();
+
+        assertEquals(0, writeBehind.getReplayedCount());
+        assertEquals(1, writeBehind.getReplaySkippedCount());
+        assertEquals(2, savedSession.getCart().getCartItems().size());
+        for (CartItem cartItem : savedSession.getCart().getCartItems()) {
+            assertEquals(1, cartItem.getQuantity());
+        }
+        assertTrue(journal.getFilesToReplay().isEmpty());
+    }
+
+    @Test
+    public void testFailedReplayIsKeptInDeadLetters() throws IOException {
+        EngineEcoSession journaledSession = newEngineEcoSession("GUID-3", 3, 10L, 4);
+        journaledSession.getCart().getCartItems().add(newCartItem(100L, "SKU1", 2L, 5));
+        journal.append(journaledSession);
+        journal.close();
+        when(engineSessionService.getEngineEcoSessionByEngineSessionGuid("GUID-3")).thenThrow(new IllegalStateException("Database is down"));
+
+        writeBehind.replay();
+
+        assertEquals(1, writeBehind.getDeadLetterCount());
+        assertTrue(journal.getFilesToReplay().isEmpty());
+        assertTrue(journal.getDeadLetterFile().exists());
+
+        // THE DATABASE IS BACK
+        EngineEcoSession savedSession = newEngineEcoSession("GUID-3", 3, 10L, 4);
+        savedSession.getCart().getCartItems().add(newCartItem(100L, "SKU1", 2L, 1));
+        engineSessionService = mock(EngineSessionService.class);
+        writeBehind.engineSessionService = engineSessionService;
+        when(engineSessionService.getEngineEcoSessionByEngineSessionGuid("GUID-3")).thenReturn(savedSession);
+
+        writeBehind.replayDeadLetters();
+
+        assertEquals(1, writeBehind.getReplayedCount());
+        assertEquals(5, savedSession.getCart().getCartItems().iterator().next().getQuantity());
+        assertFalse(journal.getDeadLetterFile().exists());
+    }
+
+}
@@ -21,6 +21,8 @@ public interface RuleRepositoryDao {
 
 	List<RuleRepository> findActiveRuleRepositories();
 
+	List<Object[]> findActiveRuleRepositoryVersions();
+
 	void saveRuleRepository(RuleRepository ruleConditionRepository);
 	
 	void deleteRuleRepository(RuleRepository ruleConditionRepository);
@@ -55,6 +55,20 @@ public class RuleRepositoryDaoImpl extends AbstractGenericDao implements RuleRep
 		return ruleRepositories;
 	}
 	
+	/**
+	 * @return id and version of the active rule repositories with the id and version of each of their rules
+	 * (null for a repository without rule), without loading the rules.
+	 */
+	public List<Object[]> findActiveRuleRepositoryVersions() {
+		Session session = (Session) em.getDelegate();
+		String sql = "SELECT ruleRepository.id, ruleRepository.version, ruleReferential.id, ruleReferential.version FROM RuleRepository ruleRepository LEFT JOIN ruleRepository.rules ruleReferential "
+		        + "WHERE ruleRepository.active = 1 AND ruleRepository.startDate <= :currentDate AND ruleRepository.endDate >= :currentDate ORDER BY ruleRepository.id, ruleReferential.id";
+		Query query = session.createQuery(sql);
+		query.setDate("currentDate", new Date());
+		List<Object[]> ruleRepositoryVersions = (List<Object[]>) query.list();
+		return ruleRepositoryVersions;
+	}
+	
 	public void saveRuleRepository(RuleRepository ruleConditionRepository) {
 		if(ruleConditionRepository.getDateCreate() == null){
 			ruleConditionRepository.setDateCreate(new Date());
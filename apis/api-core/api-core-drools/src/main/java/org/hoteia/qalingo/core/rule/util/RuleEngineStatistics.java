@@ -0,0 +1,110 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.rule.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counters of the rule engine : knowledge base compilations and rule
+ * executions. The durations are in nanoseconds.
+ */
+@Component(value = "ruleEngineStatistics")
+@ManagedResource
+public class RuleEngineStatistics {
+
+    private final AtomicLong compileCount = new AtomicLong();
+    private final AtomicLong compileErrorCount = new AtomicLong();
+    private final AtomicLong compileTotalTime = new AtomicLong();
+    private volatile long lastCompileTime;
+
+    private final AtomicLong fireCount = new AtomicLong();
+    private final AtomicLong fireErrorCount = new AtomicLong();
+    private final AtomicLong fireTotalTime = new AtomicLong();
+    private final AtomicLong fireMaxTime = new AtomicLong();
+
+    public void recordCompile(long duration, boolean success) {
+        compileCount.incrementAndGet();
+        compileTotalTime.addAndGet(duration);
+        lastCompileTime = duration;
+        if (!success) {
+            compileErrorCount.incrementAndGet();
+        }
+    }
+
+    public void recordFire(long duration, boolean success) {
+        fireCount.incrementAndGet();
+        fireTotalTime.addAndGet(duration);
+        long max = fireMaxTime.get();
+        while (duration > max && !fireMaxTime.compareAndSet(max, duration)) {
+            max = fireMaxTime.get();
+        }
+        if (!success) {
+            fireErrorCount.incrementAndGet();
+        }
+    }
+
+    @ManagedAttribute
+    public long getCompileCount() {
+        return compileCount.get();
+    }
+
+    @ManagedAttribute
+    public long getCompileErrorCount() {
+        return compileErrorCount.get();
+    }
+
+    @ManagedAttribute
+    public long getCompileTotalTime() {
+        return compileTotalTime.get();
+    }
+
+    @ManagedAttribute
+    public long getLastCompileTime() {
+        return lastCompileTime;
+    }
+
+    @ManagedAttribute
+    public long getFireCount() {
+        return fireCount.get();
+    }
+
+    @ManagedAttribute
+    public long getFireErrorCount() {
+        return fireErrorCount.get();
+    }
+
+    @ManagedAttribute
+    public long getFireTotalTime() {
+        return fireTotalTime.get();
+    }
+
+    @ManagedAttribute
+    public long getFireMaxTime() {
+        return fireMaxTime.get();
+    }
+
+    @ManagedAttribute
+    public long getFireAverageTime() {
+        long count = fireCount.get();
+        return count > 0 ? fireTotalTime.get() / count : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "RuleEngineStatistics [compileCount=" + getCompileCount() + ", compileErrorCount=" + getCompileErrorCount() + ", lastCompileTime="
+                + getLastCompileTime() + ", fireCount=" + getFireCount() + ", fireErrorCount=" + getFireErrorCount() + ", fireAverageTime="
+                + getFireAverageTime() + ", fireMaxTime=" + getFireMaxTime() + "]";
+    }
+
+}
@@ -14,5 +14,11 @@ import java.util.List;
 public interface RuleUtil {
 
 	void handleRuleSession(List<Object> objects);
-	
+
+	void reloadRules();
+
+	long getKnowledgeBaseVersion();
+
+	RuleEngineStatistics getStatistics();
+
 }
\ No newline at end of file
@@ -11,11 +11,18 @@ package org.hoteia.qalingo.core.rule.util.impl;
 
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
 import org.drools.builder.KnowledgeBuilder;
 import org.drools.builder.KnowledgeBuilderError;
 import org.drools.builder.KnowledgeBuilderErrors;
@@ -24,14 +31,16 @@ import org.drools.builder.ResourceType;
 import org.drools.definition.KnowledgePackage;
 import org.drools.io.Resource;
 import org.drools.io.ResourceFactory;
-import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.StatelessKnowledgeSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import org.hoteia.qalingo.core.domain.AbstractRuleReferential;
 import org.hoteia.qalingo.core.domain.RuleRepository;
+import org.hoteia.qalingo.core.rule.util.RuleEngineStatistics;
 import org.hoteia.qalingo.core.rule.util.RuleUtil;
 import org.hoteia.qalingo.core.service.RuleRepositoryService;
 
@@ -40,58 +49,242 @@ import org.hoteia.qalingo.core.service.RuleRepositoryService;
  * <a href="RuleUtilImpl.java.html"><i>View Source</i></a>
  * </p>
  *
+ * The active rules are compiled once in an immutable knowledge base, which is
+ * replaced when the id/version of the active rule repositories or of their
+ * rules change. Each call runs in its own stateless session.
+ *
  * @author Denis Gosset <a href="http://www.hoteia.com"><i>Hoteia.com</i></a>
- * 
+ *
  */
 @Service("ruleUtil")
 @Transactional
 public class RuleUtilImpl implements RuleUtil {
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
-	
+
+	public static final long DEFAULT_REFRESH_CHECK_DELAY = 30000;
+
 	@Autowired
 	protected RuleRepositoryService ruleRepositoryService;
 
+	private long refreshCheckDelay = DEFAULT_REFRESH_CHECK_DELAY;
+
+	private final AtomicReference<CompiledRules> compiledRules = new AtomicReference<CompiledRules>();
+
+	private final AtomicLong knowledgeBaseVersion = new AtomicLong();
+
+	private final ReentrantLock refreshLock = new ReentrantLock();
+
 	@Autowired
-	protected StatefulKnowledgeSession ksession;
+	protected RuleEngineStatistics statistics;
+
+	private volatile long lastRefreshCheck = 0;
+
+	// RULE SET WHICH CAN'T BE COMPILED : NOT RETRIED UNTIL IT CHANGES
+	private volatile String failedFingerprint;
 
 	public void handleRuleSession(List<Object> objects){
+		if (objects == null || objects.isEmpty()) {
+			return;
+		}
+		CompiledRules rules = getCompiledRules();
+		if (rules == null || rules.isEmpty()) {
+			return;
+		}
+		long start = System.nanoTime();
+		boolean success = false;
     	try {
-//    		StatefulKnowledgeSession ksession = (StatefulKnowledgeSession) ctx.getBean("ksessionQalingo");
+    		StatelessKnowledgeSession session = rules.getKnowledgeBase().newStatelessKnowledgeSession();
+    		session.execute(objects);
+    		success = true;
 
-    		KnowledgeBase kbase = ksession.getKnowledgeBase();
-    		KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+		} catch (Exception e) {
+			logger.error("Rule session failed with the knowledge base version " + rules.getVersion(), e);
+		} finally {
+			statistics.recordFire(System.nanoTime() - start, success);
+		}
+	}
 
-    		List<RuleRepository> activeRules = ruleRepositoryService.findActiveRuleRepositories();
+	public void reloadRules() {
+		refreshLock.lock();
+		try {
+			failedFingerprint = null;
+			refresh(true);
+		} finally {
+			refreshLock.unlock();
+		}
+	}
 
-    		for (Iterator<RuleRepository> iterator = activeRules.iterator(); iterator.hasNext();) {
-				RuleRepository ruleRepository = (RuleRepository) iterator.next();
-				String ruleDRL = ruleRepository.getRuleString().toString();
-				Resource ruleResource = ResourceFactory.newReaderResource((Reader) new StringReader(ruleDRL)); 
-				kbuilder.add(ruleResource, ResourceType.DRL); 
-			}
+	public long getKnowledgeBaseVersion() {
+		CompiledRules rules = compiledRules.get();
+		return rules != null ? rules.getVersion() : 0;
+	}
+
+	public RuleEngineStatistics getStatistics() {
+		return statistics;
+	}
 
-			if (kbuilder.hasErrors()) {
-				KnowledgeBuilderErrors errors = kbuilder.getErrors();
-				if(errors != null){
-					for (Iterator<KnowledgeBuilderError> iterator = errors.iterator(); iterator.hasNext();) {
-						KnowledgeBuilderError knowledgeBuilderError = (KnowledgeBuilderError) iterator.next();
-						logger.error(knowledgeBuilderError.getMessage());
-					}
+	protected CompiledRules getCompiledRules() {
+		CompiledRules rules = compiledRules.get();
+		if (rules == null) {
+			// FIRST CALL : THE CALLERS WAIT FOR THE COMPILATION
+			refreshLock.lock();
+			try {
+				if (compiledRules.get() == null) {
+					refresh(false);
 				}
-	            throw new RuntimeException("Unable to compile drl"); 
-	        } 
-			
-    		Collection<KnowledgePackage> pkgs = kbuilder.getKnowledgePackages();
-    		kbase.addKnowledgePackages(pkgs);
-    		for (Iterator<Object> iterator = objects.iterator(); iterator.hasNext();) {
-    			Object object = (Object) iterator.next();
-	    		ksession.insert(object);
+			} finally {
+				refreshLock.unlock();
+			}
+			return compiledRules.get();
+		}
+		if (System.currentTimeMillis() - lastRefreshCheck > refreshCheckDelay && refreshLock.tryLock()) {
+			// ONE THREAD CHECKS THE RULES, THE OTHERS KEEP THE CURRENT KNOWLEDGE BASE
+			try {
+				if (System.currentTimeMillis() - lastRefreshCheck > refreshCheckDelay) {
+					refresh(false);
+				}
+			} finally {
+				refreshLock.unlock();
+			}
+			return compiledRules.get();
+		}
+		return rules;
+	}
+
+	protected void refresh(boolean force) {
+		try {
+			CompiledRules current = compiledRules.get();
+			String fingerprint = buildFingerprint(ruleRepositoryService.findActiveRuleRepositoryVersions());
+			if (!force && ((current != null && fingerprint.equals(current.getFingerprint()))
+					|| fingerprint.equals(failedFingerprint))) {
+				return;
+			}
+			CompiledRules rules = compile();
+			if (rules != null) {
+				compiledRules.set(rules);
+				logger.info("Rules knowledge base version " + rules.getVersion() + " compiled: " + rules.getFingerprint());
+			} else if (current == null) {
+				// NO RULE CAN FIRE UNTIL THE RULES ARE FIXED
+				compiledRules.set(new CompiledRules(KnowledgeBaseFactory.newKnowledgeBase(), knowledgeBaseVersion.incrementAndGet(), failedFingerprint, true));
 			}
-    		ksession.fireAllRules();
-        		
 		} catch (Exception e) {
-			logger.error("UrlParams Filter & HandleUrlParameters failed, e");
+			logger.error("Rules knowledge base refresh failed", e);
+		} finally {
+			lastRefreshCheck = System.currentTimeMillis();
+		}
+	}
+
+	protected CompiledRules compile() {
+		long start = System.nanoTime();
+		KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+
+		// SAME ORDER AS THE VERSIONS QUERY, FOR THE FINGERPRINT
+		List<RuleRepository> activeRules = new ArrayList<RuleRepository>(ruleRepositoryService.findActiveRuleRepositories());
+		Collections.sort(activeRules, new Comparator<RuleRepository>() {
+			public int compare(RuleRepository o1, RuleRepository o2) {
+				return o1.getId().compareTo(o2.getId());
+			}
+		});
+		StringBuilder fingerprint = new StringBuilder();
+		for (Iterator<RuleRepository> iterator = activeRules.iterator(); iterator.hasNext();) {
+			RuleRepository ruleRepository = (RuleRepository) iterator.next();
+			List<AbstractRuleReferential> ruleReferentials = new ArrayList<AbstractRuleReferential>(ruleRepository.getRules());
+			Collections.sort(ruleReferentials, new Comparator<AbstractRuleReferential>() {
+				public int compare(AbstractRuleReferential o1, AbstractRuleReferential o2) {
+					return o1.getId().compareTo(o2.getId());
+				}
+			});
+			if (ruleReferentials.isEmpty()) {
+				appendFingerprint(fingerprint, ruleRepository.getId(), ruleRepository.getVersion(), null, null);
+			}
+			for (AbstractRuleReferential ruleReferential : ruleReferentials) {
+				appendFingerprint(fingerprint, ruleRepository.getId(), ruleRepository.getVersion(), ruleReferential.getId(), ruleReferential.getVersion());
+			}
+			String ruleDRL = ruleRepository.getRuleString().toString();
+			Resource ruleResource = ResourceFactory.newReaderResource((Reader) new StringReader(ruleDRL));
+			kbuilder.add(ruleResource, ResourceType.DRL);
+		}
+
+		if (kbuilder.hasErrors()) {
+			KnowledgeBuilderErrors errors = kbuilder.getErrors();
+			if(errors != null){
+				for (Iterator<KnowledgeBuilderError> iterator = errors.iterator(); iterator.hasNext();) {
+					KnowledgeBuilderError knowledgeBuilderError = (KnowledgeBuilderError) iterator.next();
+					logger.error(knowledgeBuilderError.getMessage());
+				}
+			}
+			failedFingerprint = fingerprint.toString();
+			statistics.recordCompile(System.nanoTime() - start, false);
+			logger.error("Unable to compile drl, the rules knowledge base version " + getKnowledgeBaseVersion() + " is kept");
+			return null;
+		}
+
+		Collection<KnowledgePackage> pkgs = kbuilder.getKnowledgePackages();
+		KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+		kbase.addKnowledgePackages(pkgs);
+		failedFingerprint = null;
+		statistics.recordCompile(System.nanoTime() - start, true);
+		return new CompiledRules(kbase, knowledgeBaseVersion.incrementAndGet(), fingerprint.toString(), activeRules.isEmpty());
+	}
+
+	protected String buildFingerprint(List<Object[]> ruleRepositoryVersions) {
+		StringBuilder fingerprint = new StringBuilder();
+		if (ruleRepositoryVersions != null) {
+			for (Object[] ruleRepositoryVersion : ruleRepositoryVersions) {
+				appendFingerprint(fingerprint, ruleRepositoryVersion[0], ruleRepositoryVersion[1], ruleRepositoryVersion[2], ruleRepositoryVersion[3]);
+			}
+		}
+		return fingerprint.toString();
+	}
+
+	/**
+	 * One rule of a rule repository : a changed rule, or a rule added or removed from the repository, changes the fingerprint.
+	 */
+	private void appendFingerprint(StringBuilder fingerprint, Object ruleRepositoryId, Object ruleRepositoryVersion, Object ruleId, Object ruleVersion) {
+		fingerprint.append(ruleRepositoryId).append(":").append(ruleRepositoryVersion)
+			.append("/").append(ruleId).append(":").append(ruleVersion).append(";");
+	}
+
+	public void setRefreshCheckDelay(long refreshCheckDelay) {
+		this.refreshCheckDelay = refreshCheckDelay;
+	}
+
+	public long getRefreshCheckDelay() {
+		return refreshCheckDelay;
+	}
+
+	/**
+	 * Knowledge base of one rule set : never modified once published.
+	 */
+	protected static class CompiledRules {
+
+		private final KnowledgeBase knowledgeBase;
+		private final long version;
+		private final String fingerprint;
+		private final boolean empty;
+
+		public CompiledRules(KnowledgeBase knowledgeBase, long version, String fingerprint, boolean empty) {
+			this.knowledgeBase = knowledgeBase;
+			this.version = version;
+			this.fingerprint = fingerprint;
+			this.empty = empty;
+		}
+
+		public KnowledgeBase getKnowledgeBase() {
+			return knowledgeBase;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+
+		public String getFingerprint() {
+			return fingerprint;
+		}
+
+		public boolean isEmpty() {
+			return empty;
 		}
 	}
 }
@@ -21,6 +21,8 @@ public interface RuleRepositoryService {
 
 	List<RuleRepository> findActiveRuleRepositories();
 
+	List<Object[]> findActiveRuleRepositoryVersions();
+
 	void saveRuleRepository(RuleRepository ruleRepository);
 	
 	void deleteRuleRepository(RuleRepository ruleCondruleRepositoryitionRepository);
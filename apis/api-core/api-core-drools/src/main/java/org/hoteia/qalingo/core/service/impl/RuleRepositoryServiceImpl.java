@@ -39,6 +39,10 @@ public class RuleRepositoryServiceImpl implements RuleRepositoryService {
 	public List<RuleRepository> findActiveRuleRepositories() {
 		return ruleRepositoryDao.findActiveRuleRepositories();
 	}
+
+	public List<Object[]> findActiveRuleRepositoryVersions() {
+		return ruleRepositoryDao.findActiveRuleRepositoryVersions();
+	}
 	
 	public void saveRuleRepository(RuleRepository ruleRepository) {
 		ruleRepositoryDao.saveRuleRepository(ruleRepository);
@@ -0,0 +1,45 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.aop.cacheserveurmanagement;
+
+import org.aspectj.lang.JoinPoint;
+import org.hoteia.qalingo.core.jms.cacheserveurmanagement.CacheInvalidationBus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * After a save or a delete of a service, invalidates the entity in the caches
+ * of all the nodes : the saved entity returned by the service, or the entity
+ * given to it.
+ */
+@Component(value = "cacheInvalidationAspect")
+public class CacheInvalidationAspect {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    public void afterReturning(final JoinPoint joinPoint, final Object result) {
+        try {
+            Object entity = result;
+            if (entity == null
+                    && joinPoint.getArgs().length > 0) {
+                entity = joinPoint.getArgs()[0];
+            }
+            cacheInvalidationBus.invalidate(entity);
+        } catch (Exception e) {
+            logger.error("CacheInvalidationAspect error: " + e);
+        }
+    }
+
+}
@@ -0,0 +1,366 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.jms.cacheserveurmanagement;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.lang3.StringUtils;
+import org.hoteia.qalingo.core.cache.CacheInvalidation;
+import org.hoteia.qalingo.core.cache.CacheInvalidationHandler;
+import org.hoteia.qalingo.core.jms.cacheserveurmanagement.producer.CacheServeurManagementMessageJms;
+import org.hoteia.qalingo.core.jms.cacheserveurmanagement.producer.CacheServeurManagementMessageJms.EntityInvalidation;
+import org.hoteia.qalingo.core.jms.cacheserveurmanagement.producer.CacheServeurManagementMessageProducer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Cache invalidation bus, on the cache serveur management topic.
+ *
+ * The entities saved during a transaction are collected, then evicted from the
+ * local caches and published in one message once the transaction commits ; a
+ * rollback publishes nothing. The other nodes evict them from their caches and
+ * answer with an ack : the acks give, per node, the last invalidation it
+ * applied and how long it took.
+ */
+@Component(value = "cacheInvalidationBus")
+@ManagedResource
+public class CacheInvalidationBus {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    protected CacheServeurManagementMessageProducer cacheServeurManagementMessageProducer;
+
+    @Autowired(required = false)
+    protected CacheInvalidationHandler cacheInvalidationHandler;
+
+    @Value("${env.name}")
+    protected String environmentName;
+
+    @Value("${env.id}")
+    protected String environmentId;
+
+    @Value("${app.name}")
+    protected String applicationName;
+
+    @Value("${cache.invalidation.bus.enabled:true}")
+    private boolean enabled = true;
+
+    private String nodeId;
+    private String serverName;
+    private String serverIp;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicLong localEvictedCount = new AtomicLong();
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong publishedInvalidationCount = new AtomicLong();
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong receivedEvictedCount = new AtomicLong();
+    private final AtomicLong ackSentCount = new AtomicLong();
+    private final AtomicLong ackReceivedCount = new AtomicLong();
+    private volatile long lastReceivedLag;
+
+    private final ConcurrentMap<String, NodeAck> nodeAcks = new ConcurrentHashMap<String, NodeAck>();
+
+    @PostConstruct
+    public void init() {
+        try {
+            serverName = InetAddress.getLocalHost().getHostName();
+            serverIp = InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            logger.warn("Local host can't be resolved for the cache invalidation bus", e);
+        }
+        // A RESTARTED NODE IS A NEW NODE : ITS SEQUENCE STARTS AGAIN
+        nodeId = applicationName + "@" + serverName + "/" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * Invalidates the entity once the current transaction commits, with the
+     * other entities of the transaction ; at once without transaction.
+     */
+    public void invalidate(final Object entity) {
+        CacheInvalidation invalidation = CacheInvalidation.of(entity);
+        if (invalidation == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(Collections.singleton(invalidation));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Set<CacheInvalidation> invalidations = (Set<CacheInvalidation>) TransactionSynchronizationManager.getResource(this);
+        if (invalidations == null) {
+            final Set<CacheInvalidation> transactionInvalidations = new LinkedHashSet<CacheInvalidation>();
+            TransactionSynchronizationManager.bindResource(this, transactionInvalidations);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CacheInvalidationBus.this);
+                    if (status == STATUS_COMMITTED) {
+                        publish(transactionInvalidations);
+                    }
+                }
+            });
+            invalidations = transactionInvalidations;
+        }
+        invalidations.add(invalidation);
+    }
+
+    /**
+     * Evicts the entities from the local caches, and publishes them to the other nodes.
+     */
+    public void publish(final Collection<CacheInvalidation> invalidations) {
+        if (invalidations.isEmpty()) {
+            return;
+        }
+        try {
+            if (cacheInvalidationHandler != null) {
+                localEvictedCount.addAndGet(cacheInvalidationHandler.invalidate(invalidations));
+            }
+            if (!enabled) {
+                return;
+            }
+            CacheServeurManagementMessageJms message = newMessage(CacheServeurManagementMessageJms.MESSAGE_TYPE_INVALIDATION);
+            message.setSequence(sequence.incrementAndGet());
+            List<EntityInvalidation> entityInvalidations = new ArrayList<EntityInvalidation>(invalidations.size());
+            for (CacheInvalidation invalidation : invalidations) {
+                entityInvalidations.add(new EntityInvalidation(invalidation.getEntityType(), invalidation.getId(), invalidation.getCode()));
+            }
+            message.setInvalidations(entityInvalidations);
+            cacheServeurManagementMessageProducer.generateMessages(message);
+            publishedCount.incrementAndGet();
+            publishedInvalidationCount.addAndGet(invalidations.size());
+        } catch (Exception e) {
+            logger.error("Cache invalidation failed for " + invalidations, e);
+        }
+    }
+
+    /**
+     * A message of the topic : the invalidations of another node, or an ack of one of our invalidations.
+     */
+    public void onMessage(final CacheServeurManagementMessageJms message) {
+        if (message == null
+                || nodeId.equals(message.getNodeId())
+                || !StringUtils.equals(environmentId, message.getEnvironmentId())) {
+            return;
+        }
+        if (CacheServeurManagementMessageJms.MESSAGE_TYPE_INVALIDATION.equals(message.getMessageType())) {
+            onInvalidation(message);
+        } else if (CacheServeurManagementMessageJms.MESSAGE_TYPE_ACK.equals(message.getMessageType())) {
+            onAck(message);
+        }
+    }
+
+    protected void onInvalidation(final CacheServeurManagementMessageJms message) {
+        List<CacheInvalidation> invalidations = new ArrayList<CacheInvalidation>();
+        if (message.getInvalidations() != null) {
+            for (EntityInvalidation entityInvalidation : message.getInvalidations()) {
+                invalidations.add(new CacheInvalidation(entityInvalidation.getEntityType(), entityInvalidation.getId(), entityInvalidation.getCode()));
+            }
+        }
+        int evictedCount = 0;
+        if (cacheInvalidationHandler != null && !invalidations.isEmpty()) {
+            evictedCount = cacheInvalidationHandler.invalidate(invalidations);
+        }
+        receivedCount.incrementAndGet();
+        receivedEvictedCount.addAndGet(evictedCount);
+        if (message.getSentTime() != null) {
+            lastReceivedLag = System.currentTimeMillis() - message.getSentTime();
+        }
+        if (!enabled) {
+            return;
+        }
+        try {
+            CacheServeurManagementMessageJms ack = newMessage(CacheServeurManagementMessageJms.MESSAGE_TYPE_ACK);
+            ack.setAckedNodeId(message.getNodeId());
+            ack.setAckedSequence(message.getSequence());
+            ack.setAckedSentTime(message.getSentTime());
+            ack.setEvictedCount(Long.valueOf(evictedCount));
+            cacheServeurManagementMessageProducer.generateMessages(ack);
+            ackSentCount.incrementAndGet();
+        } catch (Exception e) {
+            logger.error("Cache invalidation ack failed for the node " + message.getNodeId(), e);
+        }
+    }
+
+    protected void onAck(final CacheServeurManagementMessageJms message) {
+        if (!nodeId.equals(message.getAckedNodeId()) || message.getNodeId() == null) {
+            return;
+        }
+        ackReceivedCount.incrementAndGet();
+        NodeAck nodeAck = nodeAcks.get(message.getNodeId());
+        if (nodeAck == null) {
+            NodeAck newNodeAck = new NodeAck();
+            nodeAck = nodeAcks.putIfAbsent(message.getNodeId(), newNodeAck);
+            if (nodeAck == null) {
+                nodeAck = newNodeAck;
+            }
+        }
+        nodeAck.ack(message, System.currentTimeMillis());
+    }
+
+    protected CacheServeurManagementMessageJms newMessage(final String messageType) {
+        CacheServeurManagementMessageJms message = new CacheServeurManagementMessageJms();
+        message.setEnvironmentName(environmentName);
+        message.setEnvironmentId(environmentId);
+        message.setApplicationName(applicationName);
+        message.setServerName(serverName);
+        message.setServerIp(serverIp);
+        message.setMessageType(messageType);
+        message.setNodeId(nodeId);
+        message.setSentTime(System.currentTimeMillis());
+        return message;
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @ManagedAttribute
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @ManagedAttribute
+    public long getLastSequence() {
+        return sequence.get();
+    }
+
+    @ManagedAttribute
+    public long getLocalEvictedCount() {
+        return localEvictedCount.get();
+    }
+
+    @ManagedAttribute
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    @ManagedAttribute
+    public long getPublishedInvalidationCount() {
+        return publishedInvalidationCount.get();
+    }
+
+    @ManagedAttribute
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    @ManagedAttribute
+    public long getReceivedEvictedCount() {
+        return receivedEvictedCount.get();
+    }
+
+    /**
+     * Milliseconds between the publication and the reception of the last invalidation of another node.
+     */
+    @ManagedAttribute
+    public long getLastReceivedLag() {
+        return lastReceivedLag;
+    }
+
+    @ManagedAttribute
+    public long getAckSentCount() {
+        return ackSentCount.get();
+    }
+
+    @ManagedAttribute
+    public long getAckReceivedCount() {
+        return ackReceivedCount.get();
+    }
+
+    /**
+     * One line per node which acknowledged our invalidations : the acks, the
+     * invalidations it is behind, the last round trip.
+     */
+    @ManagedAttribute
+    public String[] getNodeAcks() {
+        Map<String, NodeAck> sortedNodeAcks = new TreeMap<String, NodeAck>(nodeAcks);
+        String[] lines = new String[sortedNodeAcks.size()];
+        long lastSequence = sequence.get();
+        int i = 0;
+        for (Map.Entry<String, NodeAck> entry : sortedNodeAcks.entrySet()) {
+            lines[i++] = entry.getKey() + ": " + entry.getValue().describe(lastSequence);
+        }
+        return lines;
+    }
+
+    @ManagedOperation
+    public void resetNodeAcks() {
+        nodeAcks.clear();
+    }
+
+    /**
+     * The acks of one node.
+     */
+    protected static class NodeAck {
+
+        private long ackCount;
+        private long evictedCount;
+        private long lastAckedSequence;
+        private long lastRoundTrip;
+        private long maxRoundTrip;
+        private long lastAckTime;
+
+        protected synchronized void ack(final CacheServeurManagementMessageJms message, final long now) {
+            ackCount++;
+            if (message.getEvictedCount() != null) {
+                evictedCount += message.getEvictedCount();
+            }
+            if (message.getAckedSequence() != null) {
+                lastAckedSequence = Math.max(lastAckedSequence, message.getAckedSequence());
+            }
+            if (message.getAckedSentTime() != null) {
+                lastRoundTrip = now - message.getAckedSentTime();
+                maxRoundTrip = Math.max(maxRoundTrip, lastRoundTrip);
+            }
+            lastAckTime = now;
+        }
+
+        protected synchronized String describe(final long lastSequence) {
+            return "acks=" + ackCount + ", evicted=" + evictedCount + ", lastAckedSequence=" + lastAckedSequence + ", behind="
+                    + Math.max(lastSequence - lastAckedSequence, 0) + ", lastRoundTripMs=" + lastRoundTrip + ", maxRoundTripMs=" + maxRoundTrip
+                    + ", lastAck=" + new Date(lastAckTime);
+        }
+
+    }
+
+}
@@ -10,14 +10,21 @@
 package org.hoteia.qalingo.core.jms.cacheserveurmanagement.listener;
 
 import java.beans.ExceptionListener;
+import java.io.IOException;
 
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
 import javax.jms.TextMessage;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hoteia.qalingo.core.jms.cacheserveurmanagement.CacheInvalidationBus;
+import org.hoteia.qalingo.core.jms.cacheserveurmanagement.producer.CacheServeurManagementMessageJms;
+import org.hoteia.qalingo.core.jms.codec.MessageCodec;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 @Component(value = "cacheServeurManagementQueueListener")
@@ -25,20 +32,36 @@ public class CacheServeurManagementQueueListener implements MessageListener, Exc
 
     protected final Log logger = LogFactory.getLog(getClass());
 
+    @Autowired
+    protected MessageCodec messageCodec;
+
+    @Autowired
+    protected CacheInvalidationBus cacheInvalidationBus;
+
     /**
      * Implementation of <code>MessageListener</code>.
      */
     public void onMessage(Message message) {
         try {
-            if (message instanceof TextMessage) {
-                TextMessage tm = (TextMessage) message;
-                String valueJMSMessage = tm.getText();
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Processed message, value: " + valueJMSMessage);
+            if (message instanceof TextMessage
+                    || message instanceof BytesMessage) {
+                String valueJMSMessage = messageCodec.getDescription(message);
+
+                if(StringUtils.isNotEmpty(valueJMSMessage)){
+                    final CacheServeurManagementMessageJms cacheServeurManagementMessageJms = messageCodec.readMessage(message, CacheServeurManagementMessageJms.class);
+                    cacheInvalidationBus.onMessage(cacheServeurManagementMessageJms);
+
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Processed message, value: " + valueJMSMessage);
+                    }
+                } else {
+                    logger.warn("Cache serveur management: Jms Message is empty");
                 }
             }
         } catch (JMSException e) {
             logger.error(e.getMessage(), e);
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
         }
     }
 
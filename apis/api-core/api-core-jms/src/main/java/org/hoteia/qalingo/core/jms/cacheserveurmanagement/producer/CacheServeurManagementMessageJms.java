@@ -0,0 +1,157 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.jms.cacheserveurmanagement.producer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hoteia.qalingo.core.jms.cacheserveurmanagement.listener.AbstractMessageJms;
+
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
+
+/**
+ * A message of the cache invalidation bus : the invalidations of a
+ * transaction of a node, or the ack of a node which evicted them.
+ */
+public class CacheServeurManagementMessageJms extends AbstractMessageJms {
+
+    public static final String MESSAGE_TYPE_INVALIDATION = "INVALIDATION";
+    public static final String MESSAGE_TYPE_ACK = "ACK";
+
+    private String messageType;
+    private String nodeId;
+    private Long sequence;
+    private Long sentTime;
+
+    // ACK : THE NODE AND THE SEQUENCE OF THE ACKNOWLEDGED INVALIDATION
+    private String ackedNodeId;
+    private Long ackedSequence;
+    private Long ackedSentTime;
+    private Long evictedCount;
+
+    @JacksonXmlElementWrapper(localName = "invalidations")
+    @JacksonXmlProperty(localName = "invalidation")
+    private List<EntityInvalidation> invalidations = new ArrayList<EntityInvalidation>();
+
+    public String getMessageType() {
+        return messageType;
+    }
+
+    public void setMessageType(String messageType) {
+        this.messageType = messageType;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
+
+    public Long getSentTime() {
+        return sentTime;
+    }
+
+    public void setSentTime(Long sentTime) {
+        this.sentTime = sentTime;
+    }
+
+    public String getAckedNodeId() {
+        return ackedNodeId;
+    }
+
+    public void setAckedNodeId(String ackedNodeId) {
+        this.ackedNodeId = ackedNodeId;
+    }
+
+    public Long getAckedSequence() {
+        return ackedSequence;
+    }
+
+    public void setAckedSequence(Long ackedSequence) {
+        this.ackedSequence = ackedSequence;
+    }
+
+    public Long getAckedSentTime() {
+        return ackedSentTime;
+    }
+
+    public void setAckedSentTime(Long ackedSentTime) {
+        this.ackedSentTime = ackedSentTime;
+    }
+
+    public Long getEvictedCount() {
+        return evictedCount;
+    }
+
+    public void setEvictedCount(Long evictedCount) {
+        this.evictedCount = evictedCount;
+    }
+
+    public List<EntityInvalidation> getInvalidations() {
+        return invalidations;
+    }
+
+    public void setInvalidations(List<EntityInvalidation> invalidations) {
+        this.invalidations = invalidations;
+    }
+
+    public static class EntityInvalidation {
+
+        private String entityType;
+        private Long id;
+        private String code;
+
+        public EntityInvalidation() {
+        }
+
+        public EntityInvalidation(String entityType, Long id, String code) {
+            this.entityType = entityType;
+            this.id = id;
+            this.code = code;
+        }
+
+        public String getEntityType() {
+            return entityType;
+        }
+
+        public void setEntityType(String entityType) {
+            this.entityType = entityType;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public void setCode(String code) {
+            this.code = code;
+        }
+
+    }
+
+}
@@ -15,10 +15,11 @@ import javax.annotation.Resource;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Session;
-import javax.jms.TextMessage;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hoteia.qalingo.core.jms.codec.MessageCodec;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.core.MessageCreator;
 import org.springframework.stereotype.Component;
@@ -31,19 +32,21 @@ public class CacheServeurManagementMessageProducer {
     @Resource(name="cacheServeurManagementJmsTemplate")
     private JmsTemplate jmsTemplate;
 
+    @Autowired
+    protected MessageCodec messageCodec;
+
     /**
      * Generates JMS messages
      * 
      * @throws UnsupportedEncodingException
      */
-    public void generateMessages() throws JMSException, UnsupportedEncodingException {
+    public void generateMessages(final CacheServeurManagementMessageJms cacheServeurManagementMessageJms) throws JMSException, UnsupportedEncodingException {
         try {
-            final String valueJMSMessage = "message JMS";
             jmsTemplate.send(new MessageCreator() {
                 public Message createMessage(Session session) throws JMSException {
-                    TextMessage message = session.createTextMessage(valueJMSMessage);
+                    Message message = messageCodec.createMessage(session, cacheServeurManagementMessageJms);
                     if (logger.isDebugEnabled()) {
-                        logger.info("Sending JMS message: " + valueJMSMessage);
+                        logger.info("Sending JMS message: " + messageCodec.getDescription(cacheServeurManagementMessageJms));
                     }
                     return message;
                 }
@@ -0,0 +1,372 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.jms.codec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.hoteia.qalingo.core.domain.Email;
+import org.hoteia.qalingo.core.domain.enumtype.OrderDocumentType;
+import org.hoteia.qalingo.core.jms.cacheserveurmanagement.listener.AbstractMessageJms;
+import org.hoteia.qalingo.core.jms.cacheserveurmanagement.producer.CacheServeurManagementMessageJms;
+import org.hoteia.qalingo.core.jms.cacheserveurmanagement.producer.CacheServeurManagementMessageJms.EntityInvalidation;
+import org.hoteia.qalingo.core.jms.document.producer.GenerationDocumentMessageJms;
+import org.hoteia.qalingo.core.jms.geoloc.producer.AddressGeolocMessageJms;
+import org.hoteia.qalingo.core.jms.indexing.producer.IndexingObjectMessageJms;
+import org.hoteia.qalingo.core.jms.notification.producer.EmailNotificationMessageJms;
+import org.hoteia.qalingo.core.jms.syncserveur.producer.SyncServeurMessageJms;
+
+/**
+ * Binary encoding of the messages :
+ * <ul>
+ * <li>a header : the magic byte, the format version, the type id and the schema version,</li>
+ * <li>the envelope of {@link AbstractMessageJms}, the server IP as 4 bytes,</li>
+ * <li>the length of the fields, then the fields of the type, see its {@link BinaryMessageSchema}.</li>
+ * </ul>
+ * The envelope is the same for all the messages of a node : it is encoded once
+ * by the writer, and its values are interned by the reader.
+ *
+ * During a rolling upgrade, a reader reads the messages of a newer schema
+ * version as its own version : the fields appended by the newer version are
+ * skipped, by the length of the fields.
+ */
+public class BinaryMessageFormat {
+
+    public static final int MAGIC = 0x51;
+    public static final int FORMAT_VERSION = 2;
+
+    private static final int IP_NULL = 0;
+    private static final int IP_TEXT = 1;
+    private static final int IP_V4 = 4;
+
+    private static final int MAX_INTERNED_VALUES = 1024;
+
+    // KNOWN VALUES : FROZEN, A NEW VALUE IS WRITTEN AS TEXT, WHICH ALL THE READERS READ
+    private static final String[] OBJECT_TYPES = new String[] { "ProductMarketing", "ProductSku", "Store", "Retailer" };
+    private static final String[] CACHE_MESSAGE_TYPES = new String[] { CacheServeurManagementMessageJms.MESSAGE_TYPE_INVALIDATION,
+            CacheServeurManagementMessageJms.MESSAGE_TYPE_ACK };
+    private static final String[] ENTITY_TYPES = new String[] { "ProductMarketing", "ProductSku", "ProductBrand", "CatalogCategoryMaster",
+            "CatalogCategoryVirtual", "CatalogMaster", "CatalogVirtual", "Retailer", "Store", "MarketPlace", "Market", "MarketArea" };
+    private static final String[] GEOLOC_TYPES = new String[] { "GeolocAddress" };
+    private static final String[] DOCUMENT_TYPES = new String[] { OrderDocumentType.ORDER_CONFIRMATION.getPropertyKey(),
+            OrderDocumentType.SHIPPING_CONFIRMATION.getPropertyKey(), OrderDocumentType.INVOICE.getPropertyKey() };
+    private static final String[] EMAIL_TYPES = new String[] { Email.EMAIl_TYPE_NEW_ACCOUNT_CONFIRMATION, Email.EMAIl_TYPE_FORGOTTEN_PASSWORD,
+            Email.EMAIl_TYPE_RESET_PASSWORD_CONFIRMATION, Email.EMAIl_TYPE_CONTACT, Email.EMAIl_TYPE_RETAILER_CONTACT,
+            Email.EMAIl_TYPE_NEWSLETTER_SUBSCRIPTION, Email.EMAIl_TYPE_NEWSLETTER_UNSUBSCRIPTION, Email.EMAIl_TYPE_ORDER_CONFIRMATION,
+            Email.EMAIl_TYPE_ORDER_SHIPPED, Email.EMAIl_TYPE_ABANDONED_SHOPPING_CART };
+
+    private final Map<Integer, BinaryMessageSchema<?>> schemasByTypeId = new HashMap<Integer, BinaryMessageSchema<?>>();
+    private final Map<Class<?>, BinaryMessageSchema<?>> schemasByClass = new HashMap<Class<?>, BinaryMessageSchema<?>>();
+
+    private final ConcurrentMap<String, String> internedValues = new ConcurrentHashMap<String, String>();
+
+    private volatile EncodedEnvelope lastEnvelope;
+
+    public BinaryMessageFormat() {
+        register(new BinaryMessageSchema<SyncServeurMessageJms>(1, 1, SyncServeurMessageJms.class) {
+            protected SyncServeurMessageJms newMessage() {
+                return new SyncServeurMessageJms();
+            }
+            protected void writeFields(BinaryMessageOutput output, SyncServeurMessageJms message) {
+                // THE ENVELOPE ONLY
+            }
+            protected void readFields(BinaryMessageInput input, int version, SyncServeurMessageJms message) {
+            }
+        });
+        register(new BinaryMessageSchema<IndexingObjectMessageJms>(2, 1, IndexingObjectMessageJms.class) {
+            protected IndexingObjectMessageJms newMessage() {
+                return new IndexingObjectMessageJms();
+            }
+            protected void writeFields(BinaryMessageOutput output, IndexingObjectMessageJms message) {
+                output.writeLong(message.getObjectId());
+                output.writeEnumerated(message.getObjectType(), OBJECT_TYPES);
+            }
+            protected void readFields(BinaryMessageInput input, int version, IndexingObjectMessageJms message) throws IOException {
+                message.setObjectId(input.readLong());
+                message.setObjectType(input.readEnumerated(OBJECT_TYPES));
+            }
+        });
+        register(new BinaryMessageSchema<EmailNotificationMessageJms>(3, 1, EmailNotificationMessageJms.class) {
+            protected EmailNotificationMessageJms newMessage() {
+                return new EmailNotificationMessageJms();
+            }
+            protected void writeFields(BinaryMessageOutput output, EmailNotificationMessageJms message) {
+                output.writeEnumerated(message.getEmailType(), EMAIL_TYPES);
+            }
+            protected void readFields(BinaryMessageInput input, int version, EmailNotificationMessageJms message) throws IOException {
+                message.setEmailType(input.readEnumerated(EMAIL_TYPES));
+            }
+        });
+        register(new BinaryMessageSchema<GenerationDocumentMessageJms>(4, 1, GenerationDocumentMessageJms.class) {
+            protected GenerationDocumentMessageJms newMessage() {
+                return new GenerationDocumentMessageJms();
+            }
+            protected void writeFields(BinaryMessageOutput output, GenerationDocumentMessageJms message) {
+                output.writeLong(message.getOrderId());
+                output.writeEnumerated(message.getDocumentType(), DOCUMENT_TYPES);
+            }
+            protected void readFields(BinaryMessageInput input, int version, GenerationDocumentMessageJms message) throws IOException {
+                message.setOrderId(input.readLong());
+                message.setDocumentType(input.readEnumerated(DOCUMENT_TYPES));
+            }
+        });
+        register(new BinaryMessageSchema<AddressGeolocMessageJms>(5, 1, AddressGeolocMessageJms.class) {
+            protected AddressGeolocMessageJms newMessage() {
+                return new AddressGeolocMessageJms();
+            }
+            protected void writeFields(BinaryMessageOutput output, AddressGeolocMessageJms message) {
+                output.writeLong(message.getObjectId());
+                output.writeEnumerated(message.getObjectType(), OBJECT_TYPES);
+                output.writeString(message.getAddress());
+                output.writeString(message.getPostalCode());
+                output.writeString(message.getCity());
+                output.writeString(message.getCountryCode());
+                output.writeEnumerated(message.getGeolocType(), GEOLOC_TYPES);
+            }
+            protected void readFields(BinaryMessageInput input, int version, AddressGeolocMessageJms message) throws IOException {
+                message.setObjectId(input.readLong());
+                message.setObjectType(input.readEnumerated(OBJECT_TYPES));
+                message.setAddress(input.readString());
+                message.setPostalCode(input.readString());
+                message.setCity(input.readString());
+                message.setCountryCode(input.readString());
+                message.setGeolocType(input.readEnumerated(GEOLOC_TYPES));
+            }
+        });
+        register(new BinaryMessageSchema<CacheServeurManagementMessageJms>(6, 1, CacheServeurManagementMessageJms.class) {
+            protected CacheServeurManagementMessageJms newMessage() {
+                return new CacheServeurManagementMessageJms();
+            }
+            protected void writeFields(BinaryMessageOutput output, CacheServeurManagementMessageJms message) {
+                output.writeEnumerated(message.getMessageType(), CACHE_MESSAGE_TYPES);
+                output.writeString(message.getNodeId());
+                output.writeLong(message.getSequence());
+                output.writeLong(message.getSentTime());
+                output.writeString(message.getAckedNodeId());
+                output.writeLong(message.getAckedSequence());
+                output.writeLong(message.getAckedSentTime());
+                output.writeLong(message.getEvictedCount());
+                List<EntityInvalidation> invalidations = message.getInvalidations();
+                output.writeVarLong(invalidations == null ? 0 : invalidations.size());
+                if (invalidations != null) {
+                    for (EntityInvalidation invalidation : invalidations) {
+                        output.writeEnumerated(invalidation.getEntityType(), ENTITY_TYPES);
+                        output.writeLong(invalidation.getId());
+                        output.writeString(invalidation.getCode());
+                    }
+                }
+            }
+            protected void readFields(BinaryMessageInput input, int version, CacheServeurManagementMessageJms message) throws IOException {
+                message.setMessageType(input.readEnumerated(CACHE_MESSAGE_TYPES));
+                message.setNodeId(intern(input.readString()));
+                message.setSequence(input.readLong());
+                message.setSentTime(input.readLong());
+                message.setAckedNodeId(intern(input.readString()));
+                message.setAckedSequence(input.readLong());
+                message.setAckedSentTime(input.readLong());
+                message.setEvictedCount(input.readLong());
+                long size = input.readVarLong();
+                if (size > input.remaining()) {
+                    throw new IOException("Binary message malformed, invalidation count: " + size);
+                }
+                List<EntityInvalidation> invalidations = new ArrayList<EntityInvalidation>((int) size);
+                for (int i = 0; i < size; i++) {
+                    invalidations.add(new EntityInvalidation(input.readEnumerated(ENTITY_TYPES), input.readLong(), input.readString()));
+                }
+                message.setInvalidations(invalidations);
+            }
+        });
+    }
+
+    protected void register(BinaryMessageSchema<?> schema) {
+        schemasByTypeId.put(schema.getTypeId(), schema);
+        schemasByClass.put(schema.getMessageClass(), schema);
+    }
+
+    /**
+     * @return true if the messages of this type can be encoded.
+     */
+    public boolean isSupported(Class<?> messageClass) {
+        return schemasByClass.containsKey(messageClass);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends AbstractMessageJms> byte[] encode(T message) {
+        BinaryMessageSchema<T> schema = (BinaryMessageSchema<T>) schemasByClass.get(message.getClass());
+        if (schema == null) {
+            throw new IllegalArgumentException("No binary schema for the message type: " + message.getClass().getName());
+        }
+        BinaryMessageOutput output = new BinaryMessageOutput(128);
+        output.writeByte(MAGIC);
+        output.writeByte(FORMAT_VERSION);
+        output.writeVarLong(schema.getTypeId());
+        output.writeVarLong(schema.getVersion());
+        output.writeBytes(encodeEnvelope(message));
+        BinaryMessageOutput fields = new BinaryMessageOutput(64);
+        schema.writeFields(fields, message);
+        output.writeVarLong(fields.size());
+        output.writeBytes(fields.toByteArray());
+        return output.toByteArray();
+    }
+
+    public <T extends AbstractMessageJms> T decode(byte[] bytes, Class<T> messageClass) throws IOException {
+        BinaryMessageInput input = new BinaryMessageInput(bytes);
+        if (input.readByte() != MAGIC) {
+            throw new IOException("Not a binary message");
+        }
+        int formatVersion = input.readByte();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Binary message format version not supported: " + formatVersion);
+        }
+        int typeId = (int) input.readVarLong();
+        int version = (int) input.readVarLong();
+        BinaryMessageSchema<?> schema = schemasByTypeId.get(typeId);
+        if (schema == null
+                || !messageClass.isAssignableFrom(schema.getMessageClass())) {
+            throw new IOException("Binary message type " + typeId + " is not a " + messageClass.getName());
+        }
+        // A NEWER VERSION ONLY APPENDS FIELDS : READ AS THE VERSION OF THIS SCHEMA
+        return messageClass.cast(readMessage(schema, input, Math.min(version, schema.getVersion())));
+    }
+
+    private <T extends AbstractMessageJms> T readMessage(BinaryMessageSchema<T> schema, BinaryMessageInput input, int version) throws IOException {
+        T message = schema.newMessage();
+        message.setEnvironmentName(intern(input.readString()));
+        message.setEnvironmentId(intern(input.readString()));
+        message.setApplicationName(intern(input.readString()));
+        message.setServerName(intern(input.readString()));
+        message.setServerIp(intern(readIp(input)));
+        long fieldsLength = input.readVarLong();
+        if (fieldsLength > input.remaining()) {
+            throw new IOException("Binary message malformed, fields length: " + fieldsLength);
+        }
+        // THE FIELDS UNKNOWN TO THIS VERSION ARE LEFT IN THE FIELDS INPUT
+        schema.readFields(new BinaryMessageInput(input.readBytes((int) fieldsLength)), version, message);
+        return message;
+    }
+
+    protected byte[] encodeEnvelope(AbstractMessageJms message) {
+        EncodedEnvelope envelope = lastEnvelope;
+        if (envelope != null && envelope.isEnvelopeOf(message)) {
+            return envelope.bytes;
+        }
+        BinaryMessageOutput output = new BinaryMessageOutput(64);
+        output.writeString(message.getEnvironmentName());
+        output.writeString(message.getEnvironmentId());
+        output.writeString(message.getApplicationName());
+        output.writeString(message.getServerName());
+        writeIp(output, message.getServerIp());
+        envelope = new EncodedEnvelope(message, output.toByteArray());
+        lastEnvelope = envelope;
+        return envelope.bytes;
+    }
+
+    protected void writeIp(BinaryMessageOutput output, String ip) {
+        if (ip == null) {
+            output.writeByte(IP_NULL);
+            return;
+        }
+        byte[] address = parseIpV4(ip);
+        if (address != null) {
+            output.writeByte(IP_V4);
+            output.writeBytes(address);
+        } else {
+            output.writeByte(IP_TEXT);
+            output.writeString(ip);
+        }
+    }
+
+    protected String readIp(BinaryMessageInput input) throws IOException {
+        int kind = input.readByte();
+        if (kind == IP_NULL) {
+            return null;
+        } else if (kind == IP_V4) {
+            byte[] address = input.readBytes(4);
+            return (address[0] & 0xFF) + "." + (address[1] & 0xFF) + "." + (address[2] & 0xFF) + "." + (address[3] & 0xFF);
+        }
+        return input.readString();
+    }
+
+    /**
+     * @return the 4 bytes of a dotted IPv4 address, or null : no name resolution.
+     */
+    protected static byte[] parseIpV4(String ip) {
+        String[] parts = StringUtils.split(ip, '.');
+        if (parts.length != 4) {
+            return null;
+        }
+        byte[] address = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            String part = parts[i];
+            if (part.length() == 0 || part.length() > 3 || !StringUtils.isNumeric(part)
+                    || (part.length() > 1 && part.charAt(0) == '0')) {
+                return null;
+            }
+            int value = Integer.parseInt(part);
+            if (value > 255) {
+                return null;
+            }
+            address[i] = (byte) value;
+        }
+        return address;
+    }
+
+    protected String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String interned = internedValues.get(value);
+        if (interned == null) {
+            if (internedValues.size() >= MAX_INTERNED_VALUES) {
+                internedValues.clear();
+            }
+            interned = internedValues.putIfAbsent(value, value);
+            if (interned == null) {
+                interned = value;
+            }
+        }
+        return interned;
+    }
+
+    private static class EncodedEnvelope {
+
+        private final String environmentName;
+        private final String environmentId;
+        private final String applicationName;
+        private final String serverName;
+        private final String serverIp;
+        private final byte[] bytes;
+
+        private EncodedEnvelope(AbstractMessageJms message, byte[] bytes) {
+            this.environmentName = message.getEnvironmentName();
+            this.environmentId = message.getEnvironmentId();
+            this.applicationName = message.getApplicationName();
+            this.serverName = message.getServerName();
+            this.serverIp = message.getServerIp();
+            this.bytes = bytes;
+        }
+
+        private boolean isEnvelopeOf(AbstractMessageJms message) {
+            return StringUtils.equals(environmentName, message.getEnvironmentName())
+                    && StringUtils.equals(environmentId, message.getEnvironmentId())
+                    && StringUtils.equals(applicationName, message.getApplicationName())
+                    && StringUtils.equals(serverName, message.getServerName())
+                    && StringUtils.equals(serverIp, message.getServerIp());
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.jms.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Reads the fields written by a {@link BinaryMessageOutput}.
+ */
+public class BinaryMessageInput {
+
+    private final byte[] buffer;
+    private int position;
+
+    public BinaryMessageInput(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    public int readByte() throws IOException {
+        if (position >= buffer.length) {
+            throw new EOFException("Binary message truncated, length: " + buffer.length);
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    public byte[] readBytes(int length) throws IOException {
+        if (length < 0 || position + length > buffer.length) {
+            throw new EOFException("Binary message truncated, length: " + buffer.length);
+        }
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer, position, bytes, 0, length);
+        position += length;
+        return bytes;
+    }
+
+    public long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Binary message malformed, number too long");
+    }
+
+    public Long readLong() throws IOException {
+        int marker = readByte();
+        if (marker == BinaryMessageOutput.NULL_MARKER) {
+            return null;
+        } else if (marker != BinaryMessageOutput.VALUE_MARKER) {
+            throw new IOException("Binary message malformed, number marker: " + marker);
+        }
+        long value = readVarLong();
+        return Long.valueOf((value >>> 1) ^ -(value & 1));
+    }
+
+    public String readString() throws IOException {
+        long length = readVarLong();
+        if (length == 0) {
+            return null;
+        }
+        if (length - 1 > buffer.length - position) {
+            throw new EOFException("Binary message truncated, length: " + buffer.length);
+        }
+        String value = new String(buffer, position, (int) (length - 1), BinaryMessageOutput.UTF_8);
+        position += (int) (length - 1);
+        return value;
+    }
+
+    /**
+     * @return the known value instance, or the value written as is.
+     */
+    public String readEnumerated(String[] knownValues) throws IOException {
+        long index = readVarLong();
+        if (index == 0) {
+            return readString();
+        }
+        if (index > knownValues.length) {
+            throw new IOException("Binary message malformed, unknown value index: " + index);
+        }
+        return knownValues[(int) (index - 1)];
+    }
+
+    public int remaining() {
+        return buffer.length - position;
+    }
+
+}
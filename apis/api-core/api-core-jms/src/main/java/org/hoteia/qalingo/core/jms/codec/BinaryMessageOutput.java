@@ -0,0 +1,112 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.jms.codec;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Writes the fields of a binary message : variable length numbers, null
+ * aware, and strings as UTF-8 bytes.
+ */
+public class BinaryMessageOutput {
+
+    protected static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    protected static final int NULL_MARKER = 0;
+    protected static final int VALUE_MARKER = 1;
+
+    private byte[] buffer;
+    private int size;
+
+    public BinaryMessageOutput(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    public void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    /**
+     * Unsigned variable length number : 7 bits by byte.
+     */
+    public void writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    /**
+     * A null marker byte, or a value marker byte then the value zigzag encoded :
+     * the small negative values are short too.
+     */
+    public void writeLong(Long value) {
+        if (value == null) {
+            writeByte(NULL_MARKER);
+        } else {
+            writeByte(VALUE_MARKER);
+            long longValue = value.longValue();
+            writeVarLong((longValue << 1) ^ (longValue >> 63));
+        }
+    }
+
+    /**
+     * Null is 0, other strings are their UTF-8 length plus one, then their bytes.
+     */
+    public void writeString(String value) {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarLong(bytes.length + 1);
+        writeBytes(bytes);
+    }
+
+    /**
+     * Index of a known value plus one, or 0 then the value.
+     */
+    public void writeEnumerated(String value, String[] knownValues) {
+        if (value != null) {
+            for (int i = 0; i < knownValues.length; i++) {
+                if (knownValues[i].equals(value)) {
+                    writeVarLong(i + 1);
+                    return;
+                }
+            }
+        }
+        writeVarLong(0);
+        writeString(value);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void ensureCapacity(int length) {
+        if (size + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.jms.codec;
+
+import java.io.IOException;
+
+import org.hoteia.qalingo.core.jms.cacheserveurmanagement.listener.AbstractMessageJms;
+
+/**
+ * Binary layout of the fields of a message type, after the envelope.
+ *
+ * The type id is never reused. A new version only appends fields : the
+ * readers of the previous versions skip them, and the readers of the new
+ * version read the fields of the version the message was written with. The
+ * known values of an enumerated field are never changed : a value unknown to
+ * them is written as text.
+ */
+public abstract class BinaryMessageSchema<T extends AbstractMessageJms> {
+
+    private final int typeId;
+    private final int version;
+    private final Class<T> messageClass;
+
+    protected BinaryMessageSchema(int typeId, int version, Class<T> messageClass) {
+        this.typeId = typeId;
+        this.version = version;
+        this.messageClass = messageClass;
+    }
+
+    protected abstract T newMessage();
+
+    protected abstract void writeFields(BinaryMessageOutput output, T message);
+
+    /**
+     * @param version the version the message was written with, at most the version of this schema.
+     */
+    protected abstract void readFields(BinaryMessageInput input, int version, T message) throws IOException;
+
+    public int getTypeId() {
+        return typeId;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public Class<T> getMessageClass() {
+        return messageClass;
+    }
+
+}
@@ -0,0 +1,175 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.jms.codec;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.commons.lang3.StringUtils;
+import org.hoteia.qalingo.core.jms.cacheserveurmanagement.listener.AbstractMessageJms;
+import org.hoteia.qalingo.core.mapper.XmlMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Encodes the messages of the producers and decodes the messages of the
+ * listeners : XML in a TextMessage, or binary in a BytesMessage.
+ *
+ * The listeners read both. During a rolling upgrade, the binary encoding is
+ * enabled once all the nodes run a version which reads it.
+ */
+@Component(value = "messageCodec")
+@ManagedResource
+public class MessageCodec {
+
+    @Autowired
+    protected XmlMapper xmlMapper;
+
+    @Value("${jms.message.codec.binary:false}")
+    protected boolean binary = false;
+
+    protected final BinaryMessageFormat binaryMessageFormat = new BinaryMessageFormat();
+
+    private final AtomicLong textMessagesSent = new AtomicLong();
+    private final AtomicLong textBytesSent = new AtomicLong();
+    private final AtomicLong binaryMessagesSent = new AtomicLong();
+    private final AtomicLong binaryBytesSent = new AtomicLong();
+
+    public Message createMessage(final Session session, final AbstractMessageJms messageJms) throws JMSException {
+        try {
+            if (binary && binaryMessageFormat.isSupported(messageJms.getClass())) {
+                byte[] bytes = binaryMessageFormat.encode(messageJms);
+                BytesMessage message = session.createBytesMessage();
+                message.writeBytes(bytes);
+                binaryMessagesSent.incrementAndGet();
+                binaryBytesSent.addAndGet(bytes.length);
+                return message;
+            }
+            String value = toText(messageJms);
+            textMessagesSent.incrementAndGet();
+            textBytesSent.addAndGet(value.length());
+            return session.createTextMessage(value);
+        } catch (IOException e) {
+            JMSException jmsException = new JMSException("Message encoding failed: " + e.getMessage());
+            jmsException.setLinkedException(e);
+            throw jmsException;
+        }
+    }
+
+    /**
+     * @return the message, or null if it is empty or neither a TextMessage nor a BytesMessage.
+     */
+    public <T extends AbstractMessageJms> T readMessage(final Message message, final Class<T> messageClass) throws JMSException, IOException {
+        if (message instanceof TextMessage) {
+            String value = ((TextMessage) message).getText();
+            if (StringUtils.isEmpty(value)) {
+                return null;
+            }
+            return xmlMapper.getReader(messageClass).readValue(value);
+        } else if (message instanceof BytesMessage) {
+            BytesMessage bytesMessage = (BytesMessage) message;
+            bytesMessage.reset();
+            byte[] bytes = new byte[(int) bytesMessage.getBodyLength()];
+            if (bytes.length == 0) {
+                return null;
+            }
+            bytesMessage.readBytes(bytes);
+            return binaryMessageFormat.decode(bytes, messageClass);
+        }
+        return null;
+    }
+
+    /**
+     * @return the text of a TextMessage, or a short description of a BytesMessage : for the logs.
+     */
+    public String getDescription(final Message message) throws JMSException {
+        if (message instanceof TextMessage) {
+            return ((TextMessage) message).getText();
+        } else if (message instanceof BytesMessage) {
+            long length = ((BytesMessage) message).getBodyLength();
+            if (length == 0) {
+                return null;
+            }
+            return "binary message, " + length + " bytes";
+        }
+        return null;
+    }
+
+    /**
+     * @return the message as compact XML, or its type if it can not be written : for the logs.
+     */
+    public String getDescription(final AbstractMessageJms messageJms) {
+        try {
+            return toText(messageJms);
+        } catch (IOException e) {
+            return messageJms.getClass().getSimpleName();
+        }
+    }
+
+    /**
+     * @return the message as compact XML, whatever its encoding on the wire.
+     */
+    public String toText(final AbstractMessageJms messageJms) throws IOException {
+        return xmlMapper.getCompactWriter(messageJms.getClass()).writeValueAsString(messageJms);
+    }
+
+    /**
+     * @return the text of a TextMessage, or its message as compact XML.
+     */
+    public String toText(final Message message, final AbstractMessageJms messageJms) throws JMSException, IOException {
+        if (message instanceof TextMessage) {
+            return ((TextMessage) message).getText();
+        }
+        return toText(messageJms);
+    }
+
+    @ManagedAttribute
+    public boolean isBinary() {
+        return binary;
+    }
+
+    @ManagedAttribute
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    @ManagedAttribute
+    public long getTextMessagesSent() {
+        return textMessagesSent.get();
+    }
+
+    /**
+     * Characters of the XML messages : bytes for the ASCII messages.
+     */
+    @ManagedAttribute
+    public long getTextBytesSent() {
+        return textBytesSent.get();
+    }
+
+    @ManagedAttribute
+    public long getBinaryMessagesSent() {
+        return binaryMessagesSent.get();
+    }
+
+    @ManagedAttribute
+    public long getBinaryBytesSent() {
+        return binaryBytesSent.get();
+    }
+
+}
@@ -12,6 +12,7 @@ package org.hoteia.qalingo.core.jms.document.listener;
 import java.beans.ExceptionListener;
 import java.io.IOException;
 
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
@@ -22,8 +23,8 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hoteia.qalingo.core.domain.OrderCustomer;
 import org.hoteia.qalingo.core.domain.enumtype.OrderDocumentType;
+import org.hoteia.qalingo.core.jms.codec.MessageCodec;
 import org.hoteia.qalingo.core.jms.document.producer.GenerationDocumentMessageJms;
-import org.hoteia.qalingo.core.mapper.XmlMapper;
 import org.hoteia.qalingo.core.service.DocumentService;
 import org.hoteia.qalingo.core.service.OrderCustomerService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,7 +36,7 @@ public class DocumentQueueListener implements MessageListener, ExceptionListener
     protected final Log logger = LogFactory.getLog(getClass());
 
     @Autowired
-    protected XmlMapper xmlMapper;
+    protected MessageCodec messageCodec;
     
     @Autowired
     protected DocumentService documentService;
@@ -48,12 +49,12 @@ public class DocumentQueueListener implements MessageListener, ExceptionListener
      */
     public void onMessage(Message message) {
         try {
-            if (message instanceof TextMessage) {
-                TextMessage tm = (TextMessage) message;
-                String valueJMSMessage = tm.getText();
+            if (message instanceof TextMessage
+                    || message instanceof BytesMessage) {
+                String valueJMSMessage = messageCodec.getDescription(message);
                 
                 if(StringUtils.isNotEmpty(valueJMSMessage)){
-                    final GenerationDocumentMessageJms documentMessageJms = xmlMapper.getXmlMapper().readValue(valueJMSMessage, GenerationDocumentMessageJms.class);
+                    final GenerationDocumentMessageJms documentMessageJms = messageCodec.readMessage(message, GenerationDocumentMessageJms.class);
                     
                     final OrderCustomer order = orderCustomerService.getOrderById(documentMessageJms.getOrderId());
                     
@@ -13,20 +13,16 @@ import javax.annotation.Resource;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Session;
-import javax.jms.TextMessage;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.hoteia.qalingo.core.mapper.XmlMapper;
+import org.hoteia.qalingo.core.jms.codec.MessageCodec;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jms.JmsException;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.core.MessageCreator;
 import org.springframework.stereotype.Component;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-
 @Component(value = "documentMessageProducer")
 public class DocumentMessageProducer {
 
@@ -36,7 +32,7 @@ public class DocumentMessageProducer {
     private JmsTemplate jmsTemplate;
 
     @Autowired
-    protected XmlMapper xmlMapper;
+    protected MessageCodec messageCodec;
     
     /**
      * Generates JMS messages
@@ -44,27 +40,19 @@ public class DocumentMessageProducer {
      */
     public void generateAndSendMessages(final GenerationDocumentMessageJms documentMessageJms) {
         try {
-            final String valueJMSMessage = xmlMapper.getXmlMapper().writeValueAsString(documentMessageJms);
-
-            if(StringUtils.isNotEmpty(valueJMSMessage)){
-                jmsTemplate.send( new MessageCreator() {
-                    public Message createMessage(Session session) throws JMSException {
-                        TextMessage message = session.createTextMessage(valueJMSMessage);
-                        if (logger.isDebugEnabled()) {
-                            logger.info("Sending JMS message: " + valueJMSMessage);
-                        }
-                        return message;
+            jmsTemplate.send( new MessageCreator() {
+                public Message createMessage(Session session) throws JMSException {
+                    Message message = messageCodec.createMessage(session, documentMessageJms);
+                    if (logger.isDebugEnabled()) {
+                        logger.info("Sending JMS message: " + messageCodec.getDescription(documentMessageJms));
                     }
-                });                
-            } else {
-                logger.warn("Doucment Message Jms Message is empty");
-            }
+                    return message;
+                }
+            });
 
         } catch (JmsException e) {
             logger.error("Exception during create/send message process");
-        } catch (JsonProcessingException e) {
-            logger.error("Exception during build message process");
-        } 
+        }
     }
     
 }
\ No newline at end of file
@@ -14,6 +14,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
@@ -29,8 +30,8 @@ import org.hoteia.qalingo.core.domain.Retailer_;
 import org.hoteia.qalingo.core.domain.Store;
 import org.hoteia.qalingo.core.fetchplan.FetchPlan;
 import org.hoteia.qalingo.core.fetchplan.SpecificFetchMode;
+import org.hoteia.qalingo.core.jms.codec.MessageCodec;
 import org.hoteia.qalingo.core.jms.geoloc.producer.AddressGeolocMessageJms;
-import org.hoteia.qalingo.core.mapper.XmlMapper;
 import org.hoteia.qalingo.core.service.GeolocService;
 import org.hoteia.qalingo.core.service.RetailerService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -42,7 +43,7 @@ public class AddressGeolocQueueListener implements MessageListener, ExceptionLis
     protected final Log logger = LogFactory.getLog(getClass());
 
     @Autowired
-    protected XmlMapper xmlMapper;
+    protected MessageCodec messageCodec;
     
     @Autowired
     protected RetailerService retailerService;
@@ -61,12 +62,12 @@ public class AddressGeolocQueueListener implements MessageListener, ExceptionLis
      */
     public void onMessage(Message message) {
         try {
-            if (message instanceof TextMessage) {
-                TextMessage tm = (TextMessage) message;
-                String valueJMSMessage = tm.getText();
+            if (message instanceof TextMessage
+                    || message instanceof BytesMessage) {
+                String valueJMSMessage = messageCodec.getDescription(message);
                 
                 if(StringUtils.isNotEmpty(valueJMSMessage)){
-                    final AddressGeolocMessageJms documentMessageJms = xmlMapper.getXmlMapper().readValue(valueJMSMessage, AddressGeolocMessageJms.class);
+                    final AddressGeolocMessageJms documentMessageJms = messageCodec.readMessage(message, AddressGeolocMessageJms.class);
                     
                     String address = documentMessageJms.getAddress();
                     String postalCode = documentMessageJms.getPostalCode();
@@ -14,6 +14,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
@@ -34,8 +35,8 @@ import org.hoteia.qalingo.core.domain.Store;
 import org.hoteia.qalingo.core.domain.Store_;
 import org.hoteia.qalingo.core.fetchplan.FetchPlan;
 import org.hoteia.qalingo.core.fetchplan.SpecificFetchMode;
+import org.hoteia.qalingo.core.jms.codec.MessageCodec;
 import org.hoteia.qalingo.core.jms.indexing.producer.IndexingObjectMessageJms;
-import org.hoteia.qalingo.core.mapper.XmlMapper;
 import org.hoteia.qalingo.core.service.CatalogCategoryService;
 import org.hoteia.qalingo.core.service.ProductService;
 import org.hoteia.qalingo.core.service.RetailerService;
@@ -51,7 +52,7 @@ public class IndexingObjectQueueListener implements MessageListener, ExceptionLi
     protected final Log logger = LogFactory.getLog(getClass());
 
     @Autowired
-    protected XmlMapper xmlMapper;
+    protected MessageCodec messageCodec;
 
     @Autowired
     protected CatalogCategoryService catalogCategoryService;
@@ -108,12 +109,12 @@ public class IndexingObjectQueueListener implements MessageListener, ExceptionLi
      */
     public void onMessage(Message message) {
         try {
-            if (message instanceof TextMessage) {
-                TextMessage tm = (TextMessage) message;
-                String valueJMSMessage = tm.getText();
+            if (message instanceof TextMessage
+                    || message instanceof BytesMessage) {
+                String valueJMSMessage = messageCodec.getDescription(message);
                 
                 if(StringUtils.isNotEmpty(valueJMSMessage)){
-                    final IndexingObjectMessageJms documentMessageJms = xmlMapper.getXmlMapper().readValue(valueJMSMessage, IndexingObjectMessageJms.class);
+                    final IndexingObjectMessageJms documentMessageJms = messageCodec.readMessage(message, IndexingObjectMessageJms.class);
                     Long objectId = documentMessageJms.getObjectId();
 
                     if("ProductMarketing".equals(documentMessageJms.getObjectType())){
@@ -15,11 +15,10 @@ import javax.annotation.Resource;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Session;
-import javax.jms.TextMessage;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.hoteia.qalingo.core.mapper.XmlMapper;
+import org.hoteia.qalingo.core.jms.codec.MessageCodec;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.core.MessageCreator;
@@ -34,7 +33,7 @@ public class IndexingObjectMessageProducer {
     private JmsTemplate jmsTemplate;
 
     @Autowired
-    protected XmlMapper xmlMapper;
+    protected MessageCodec messageCodec;
     
     /**
      * Generates JMS messages
@@ -43,13 +42,11 @@ public class IndexingObjectMessageProducer {
      */
     public void generateMessages(final IndexingObjectMessageJms indexingObjectMessageJms) throws JMSException, UnsupportedEncodingException {
         try {
-            final String valueJMSMessage = xmlMapper.getXmlMapper().writeValueAsString(indexingObjectMessageJms);
-
             jmsTemplate.send(new MessageCreator() {
                 public Message createMessage(Session session) throws JMSException {
-                    TextMessage message = session.createTextMessage(valueJMSMessage);
+                    Message message = messageCodec.createMessage(session, indexingObjectMessageJms);
                     if (logger.isDebugEnabled()) {
-                        logger.info("Sending JMS message: " + valueJMSMessage);
+                        logger.info("Sending JMS message: " + messageCodec.getDescription(indexingObjectMessageJms));
                     }
                     return message;
                 }
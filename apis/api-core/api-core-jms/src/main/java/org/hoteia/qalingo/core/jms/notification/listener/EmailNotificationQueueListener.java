@@ -13,6 +13,7 @@ import java.beans.ExceptionListener;
 import java.io.IOException;
 import java.util.Date;
 
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
@@ -32,8 +33,9 @@ import org.springframework.batch.core.repository.JobRestartException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import org.hoteia.qalingo.core.email.outbox.EmailOutboxDispatcher;
+import org.hoteia.qalingo.core.jms.codec.MessageCodec;
 import org.hoteia.qalingo.core.jms.notification.producer.EmailNotificationMessageJms;
-import org.hoteia.qalingo.core.mapper.XmlMapper;
 
 @Component(value = "emailNotificationMessageListener")
 public class EmailNotificationQueueListener implements MessageListener, ExceptionListener {
@@ -47,23 +49,34 @@ public class EmailNotificationQueueListener implements MessageListener, Exceptio
     protected Job emailSyncJob;
     
     @Autowired
-    protected XmlMapper xmlMapper;
+    protected MessageCodec messageCodec;
+    
+    @Autowired
+    protected EmailOutboxDispatcher emailOutboxDispatcher;
     
     /**
      * Implementation of <code>MessageListener</code>.
      */
     public void onMessage(Message message) {
         try {
-            if (message instanceof TextMessage) {
-                TextMessage tm = (TextMessage) message;
-                String valueJMSMessage = tm.getText();
+            if (message instanceof TextMessage
+                    || message instanceof BytesMessage) {
+                String valueJMSMessage = messageCodec.getDescription(message);
 
                 if (logger.isDebugEnabled()) {
                     logger.debug("Processed message, value: " + valueJMSMessage);
                 }
 
                 if(StringUtils.isNotEmpty(valueJMSMessage)){
-                    final EmailNotificationMessageJms emailnotificationMessageJms = xmlMapper.getXmlMapper().readValue(valueJMSMessage, EmailNotificationMessageJms.class);
+                    final EmailNotificationMessageJms emailnotificationMessageJms = messageCodec.readMessage(message, EmailNotificationMessageJms.class);
+                    
+                    // THE OUTBOX DISPATCHER SENDS THE EMAIL WITH THE OTHER PENDING EMAILS
+                    if (emailOutboxDispatcher.wakeUp()) {
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Wake up the email outbox dispatcher for a new email, type: " + emailnotificationMessageJms.getEmailType());
+                        }
+                        return;
+                    }
                     
                     // TRIGGER A BATCH TO PROCESS THE EMAIL
                     if (logger.isDebugEnabled()) {
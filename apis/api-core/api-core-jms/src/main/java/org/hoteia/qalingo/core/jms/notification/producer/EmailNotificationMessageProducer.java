@@ -15,7 +15,6 @@ import javax.annotation.Resource;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Session;
-import javax.jms.TextMessage;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -24,7 +23,7 @@ import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.core.MessageCreator;
 import org.springframework.stereotype.Component;
 
-import org.hoteia.qalingo.core.mapper.XmlMapper;
+import org.hoteia.qalingo.core.jms.codec.MessageCodec;
 
 @Component(value = "emailNotificationMessageProducer")
 public class EmailNotificationMessageProducer {
@@ -35,7 +34,7 @@ public class EmailNotificationMessageProducer {
     private JmsTemplate jmsTemplate;
 
     @Autowired
-    protected XmlMapper xmlMapper;
+    protected MessageCodec messageCodec;
     
     /**
      * Generates JMS messages
@@ -44,13 +43,11 @@ public class EmailNotificationMessageProducer {
      */
     public void generateMessages(final EmailNotificationMessageJms emailnotificationMessageJms) throws JMSException, UnsupportedEncodingException {
         try {
-            final String valueJMSMessage = xmlMapper.getXmlMapper().writeValueAsString(emailnotificationMessageJms);
-
             jmsTemplate.send(new MessageCreator() {
                 public Message createMessage(Session session) throws JMSException {
-                    TextMessage message = session.createTextMessage(valueJMSMessage);
+                    Message message = messageCodec.createMessage(session, emailnotificationMessageJms);
                     if (logger.isDebugEnabled()) {
-                        logger.info("Sending JMS message: " + valueJMSMessage);
+                        logger.info("Sending JMS message: " + messageCodec.getDescription(emailnotificationMessageJms));
                     }
                     return message;
                 }
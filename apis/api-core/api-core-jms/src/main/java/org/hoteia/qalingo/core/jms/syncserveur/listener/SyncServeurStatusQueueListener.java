@@ -13,6 +13,7 @@ import java.beans.ExceptionListener;
 import java.io.IOException;
 import java.util.Date;
 
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
@@ -25,8 +26,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import org.hoteia.qalingo.core.domain.ServerStatus;
+import org.hoteia.qalingo.core.jms.codec.MessageCodec;
 import org.hoteia.qalingo.core.jms.syncserveur.producer.SyncServeurMessageJms;
-import org.hoteia.qalingo.core.mapper.XmlMapper;
 import org.hoteia.qalingo.core.service.ServerService;
 
 @Component(value = "syncServeurStatusQueueListener")
@@ -38,26 +39,26 @@ public class SyncServeurStatusQueueListener implements MessageListener, Exceptio
     protected ServerService serverService;
     
     @Autowired
-    protected XmlMapper xmlMapper;
+    protected MessageCodec messageCodec;
     
     /**
      * Implementation of <code>MessageListener</code>.
      */
     public void onMessage(Message message) {
         try {
-            if (message instanceof TextMessage) {
-                TextMessage tm = (TextMessage) message;
-                String valueJMSMessage = tm.getText();
+            if (message instanceof TextMessage
+                    || message instanceof BytesMessage) {
+                String valueJMSMessage = messageCodec.getDescription(message);
                 
                 if(StringUtils.isNotEmpty(valueJMSMessage)){
-                    final SyncServeurMessageJms syncServeurMessageJms = xmlMapper.getXmlMapper().readValue(valueJMSMessage, SyncServeurMessageJms.class);
+                    final SyncServeurMessageJms syncServeurMessageJms = messageCodec.readMessage(message, SyncServeurMessageJms.class);
                     
                     ServerStatus serverStatus = new ServerStatus();
                     serverStatus.setLastCheckReceived(new Date());
                     serverStatus.setServerName(syncServeurMessageJms.getServerName());
                     serverStatus.setServerIp(syncServeurMessageJms.getServerIp());
                     
-                    serverService.saveOrUpdateServerStatus(serverStatus, valueJMSMessage);
+                    serverService.saveOrUpdateServerStatus(serverStatus, messageCodec.toText(message, syncServeurMessageJms));
                     
                     if (logger.isDebugEnabled()) {
                         logger.debug("Processed message, value: " + valueJMSMessage);
@@ -13,9 +13,7 @@ import javax.annotation.Resource;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Session;
-import javax.jms.TextMessage;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,9 +22,7 @@ import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.core.MessageCreator;
 import org.springframework.stereotype.Component;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-
-import org.hoteia.qalingo.core.mapper.XmlMapper;
+import org.hoteia.qalingo.core.jms.codec.MessageCodec;
 
 @Component(value = "syncServeurStatusMessageProducer")
 public class SyncServeurStatusMessageProducer {
@@ -37,7 +33,7 @@ public class SyncServeurStatusMessageProducer {
     private JmsTemplate jmsTemplate;
     
     @Autowired
-    protected XmlMapper xmlMapper;
+    protected MessageCodec messageCodec;
     
     /**
      * Generates JMS messages
@@ -45,27 +41,19 @@ public class SyncServeurStatusMessageProducer {
      */
     public void generateAndSendMessages(final SyncServeurMessageJms syncServeurMessageJms) {
         try {
-            final String valueJMSMessage = xmlMapper.getXmlMapper().writeValueAsString(syncServeurMessageJms);
-
-            if(StringUtils.isNotEmpty(valueJMSMessage)){
-                jmsTemplate.send( new MessageCreator() {
-                    public Message createMessage(Session session) throws JMSException {
-                        TextMessage message = session.createTextMessage(valueJMSMessage);
-                        if (logger.isDebugEnabled()) {
-                            logger.info("Sending JMS message: " + valueJMSMessage);
-                        }
-                        return message;
+            jmsTemplate.send( new MessageCreator() {
+                public Message createMessage(Session session) throws JMSException {
+                    Message message = messageCodec.createMessage(session, syncServeurMessageJms);
+                    if (logger.isDebugEnabled()) {
+                        logger.info("Sending JMS message: " + messageCodec.getDescription(syncServeurMessageJms));
                     }
-                });                
-            } else {
-                logger.warn("SyncServeur Jms Message is empty");
-            }
+                    return message;
+                }
+            });
 
         } catch (JmsException e) {
             logger.error("Exception during create/send message process");
-        } catch (JsonProcessingException e) {
-            logger.error("Exception during build message process");
-        } 
+        }
     }
     
 }
\ No newline at end of file
@@ -0,0 +1,103 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.jms;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hoteia.qalingo.core.jms.indexing.producer.IndexingObjectMessageJms;
+import org.hoteia.qalingo.core.mapper.XmlMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.xml.JacksonXmlModule;
+
+/**
+ * Compares the shared {@link XmlMapper} readers and writers with the mapper
+ * previously configured again for each message.
+ *
+ * Run it with the main method (test classpath) : it is not a unit test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageMapperBenchmark {
+
+    private XmlMapper xmlMapper;
+
+    private IndexingObjectMessageJms message;
+    private String indentedValue;
+    private String compactValue;
+
+    @Setup
+    public void setup() throws Exception {
+        xmlMapper = new XmlMapper();
+
+        message = new IndexingObjectMessageJms();
+        message.setEnvironmentName("PROD");
+        message.setEnvironmentId("1");
+        message.setApplicationName("qalingo-bo-business");
+        message.setServerName("node-1");
+        message.setServerIp("10.0.0.1");
+        message.setObjectId(42L);
+        message.setObjectType("PRODUCT_MARKETING");
+
+        indentedValue = xmlMapper.getWriter(IndexingObjectMessageJms.class).writeValueAsString(message);
+        compactValue = xmlMapper.getCompactWriter(IndexingObjectMessageJms.class).writeValueAsString(message);
+    }
+
+    @Benchmark
+    public Object sharedCompactWrite() throws Exception {
+        return xmlMapper.getCompactWriter(IndexingObjectMessageJms.class).writeValueAsString(message);
+    }
+
+    @Benchmark
+    public Object sharedRead() throws Exception {
+        return xmlMapper.getReader(IndexingObjectMessageJms.class).readValue(compactValue);
+    }
+
+    @Benchmark
+    public Object legacyWrite() throws Exception {
+        return legacyMapper().writeValueAsString(message);
+    }
+
+    @Benchmark
+    public Object legacyRead() throws Exception {
+        return legacyMapper().readValue(indentedValue, IndexingObjectMessageJms.class);
+    }
+
+    /**
+     * Mapper as it was built for each message before the shared mapper.
+     */
+    protected com.fasterxml.jackson.dataformat.xml.XmlMapper legacyMapper() {
+        JacksonXmlModule module = new JacksonXmlModule();
+        module.setDefaultUseWrapper(true);
+
+        com.fasterxml.jackson.dataformat.xml.XmlMapper mapper = new com.fasterxml.jackson.dataformat.xml.XmlMapper(module);
+        mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        mapper.configure(SerializationFeature.INDENT_OUTPUT, true);
+        return mapper;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(MessageMapperBenchmark.class.getSimpleName()).forks(1).warmupIterations(5).measurementIterations(5).build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,225 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.jms.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hoteia.qalingo.core.domain.Email;
+import org.hoteia.qalingo.core.jms.cacheserveurmanagement.listener.AbstractMessageJms;
+import org.hoteia.qalingo.core.jms.cacheserveurmanagement.producer.CacheServeurManagementMessageJms;
+import org.hoteia.qalingo.core.jms.cacheserveurmanagement.producer.CacheServeurManagementMessageJms.EntityInvalidation;
+import org.hoteia.qalingo.core.jms.document.producer.GenerationDocumentMessageJms;
+import org.hoteia.qalingo.core.jms.geoloc.producer.AddressGeolocMessageJms;
+import org.hoteia.qalingo.core.jms.indexing.producer.IndexingObjectMessageJms;
+import org.hoteia.qalingo.core.jms.notification.producer.EmailNotificationMessageJms;
+import org.hoteia.qalingo.core.jms.syncserveur.producer.SyncServeurMessageJms;
+import org.junit.Test;
+
+/**
+ * The messages read back from their binary encoding, by a reader of the same
+ * version, of a previous version and of a next version.
+ */
+public class BinaryMessageFormatTest {
+
+    private final BinaryMessageFormat format = new BinaryMessageFormat();
+
+    @Test
+    public void testSyncServeurRoundTrip() throws IOException {
+        SyncServeurMessageJms message = newMessage(new SyncServeurMessageJms());
+        message.setServerIp("qalingo-node-1");
+
+        SyncServeurMessageJms decoded = roundTrip(message);
+        assertEnvelope(message, decoded);
+    }
+
+    @Test
+    public void testIndexingObjectRoundTrip() throws IOException {
+        IndexingObjectMessageJms message = newMessage(new IndexingObjectMessageJms());
+        message.setObjectId(123456789L);
+        message.setObjectType("ProductSku");
+
+        IndexingObjectMessageJms decoded = roundTrip(message);
+        assertEnvelope(message, decoded);
+        assertEquals(Long.valueOf(123456789L), decoded.getObjectId());
+        assertEquals("ProductSku", decoded.getObjectType());
+    }
+
+    @Test
+    public void testEmailNotificationRoundTrip() throws IOException {
+        EmailNotificationMessageJms message = newMessage(new EmailNotificationMessageJms());
+        message.setEmailType(Email.EMAIl_TYPE_ORDER_CONFIRMATION);
+
+        assertEquals(Email.EMAIl_TYPE_ORDER_CONFIRMATION, roundTrip(message).getEmailType());
+    }
+
+    @Test
+    public void testGenerationDocumentRoundTrip() throws IOException {
+        GenerationDocumentMessageJms message = newMessage(new GenerationDocumentMessageJms());
+        message.setOrderId(42L);
+        message.setDocumentType("INVOICE_UNKNOWN_TO_THE_KNOWN_VALUES");
+
+        GenerationDocumentMessageJms decoded = roundTrip(message);
+        assertEquals(Long.valueOf(42L), decoded.getOrderId());
+        assertEquals("INVOICE_UNKNOWN_TO_THE_KNOWN_VALUES", decoded.getDocumentType());
+    }
+
+    @Test
+    public void testAddressGeolocRoundTrip() throws IOException {
+        AddressGeolocMessageJms message = newMessage(new AddressGeolocMessageJms());
+        message.setObjectId(7L);
+        message.setObjectType("Store");
+        message.setAddress("1 rue de Rivoli");
+        message.setPostalCode("75001");
+        message.setCity("Paris");
+        message.setCountryCode(null);
+        message.setGeolocType("GeolocAddress");
+
+        AddressGeolocMessageJms decoded = roundTrip(message);
+        assertEquals(Long.valueOf(7L), decoded.getObjectId());
+        assertEquals("Store", decoded.getObjectType());
+        assertEquals("1 rue de Rivoli", decoded.getAddress());
+        assertEquals("75001", decoded.getPostalCode());
+        assertEquals("Paris", decoded.getCity());
+        assertNull(decoded.getCountryCode());
+        assertEquals("GeolocAddress", decoded.getGeolocType());
+    }
+
+    @Test
+    public void testCacheServeurManagementRoundTrip() throws IOException {
+        CacheServeurManagementMessageJms message = newMessage(new CacheServeurManagementMessageJms());
+        message.setMessageType(CacheServeurManagementMessageJms.MESSAGE_TYPE_INVALIDATION);
+        message.setNodeId("node-1");
+        message.setSequence(0L);
+        message.setSentTime(System.currentTimeMillis());
+        message.setAckedNodeId(null);
+        message.setAckedSequence(-1L);
+        message.setAckedSentTime(null);
+        message.setEvictedCount(Long.MAX_VALUE);
+        List<EntityInvalidation> invalidations = new ArrayList<EntityInvalidation>();
+        invalidations.add(new EntityInvalidation("ProductSku", 12L, "SKU-12"));
+        invalidations.add(new EntityInvalidation("Warehouse", null, null));
+        message.setInvalidations(invalidations);
+
+        CacheServeurManagementMessageJms decoded = roundTrip(message);
+        assertEquals(CacheServeurManagementMessageJms.MESSAGE_TYPE_INVALIDATION, decoded.getMessageType());
+        assertEquals("node-1", decoded.getNodeId());
+        assertEquals(Long.valueOf(0L), decoded.getSequence());
+        assertEquals(message.getSentTime(), decoded.getSentTime());
+        assertNull(decoded.getAckedNodeId());
+        assertEquals(Long.valueOf(-1L), decoded.getAckedSequence());
+        assertNull(decoded.getAckedSentTime());
+        assertEquals(Long.valueOf(Long.MAX_VALUE), decoded.getEvictedCount());
+        assertEquals(2, decoded.getInvalidations().size());
+        assertEquals("ProductSku", decoded.getInvalidations().get(0).getEntityType());
+        assertEquals(Long.valueOf(12L), decoded.getInvalidations().get(0).getId());
+        assertEquals("SKU-12", decoded.getInvalidations().get(0).getCode());
+        assertEquals("Warehouse", decoded.getInvalidations().get(1).getEntityType());
+        assertNull(decoded.getInvalidations().get(1).getId());
+        assertNull(decoded.getInvalidations().get(1).getCode());
+    }
+
+    @Test
+    public void testNullAndNegativeLongs() throws IOException {
+        Long[] values = new Long[] { null, -1L, 0L, 1L, Long.MIN_VALUE, Long.MAX_VALUE };
+        BinaryMessageOutput output = new BinaryMessageOutput(16);
+        for (Long value : values) {
+            output.writeLong(value);
+        }
+        BinaryMessageInput input = new BinaryMessageInput(output.toByteArray());
+        for (Long value : values) {
+            assertEquals(value, input.readLong());
+        }
+        assertEquals(0, input.remaining());
+    }
+
+    @Test
+    public void testNextVersionIsReadByPreviousReader() throws IOException {
+        IndexingObjectMessageJms message = newMessage(new IndexingObjectMessageJms());
+        message.setObjectId(5L);
+        message.setObjectType("Retailer");
+
+        // THE NEXT VERSION APPENDS A FIELD : THE PREVIOUS READER SKIPS IT
+        IndexingObjectMessageJms decoded = format.decode(new NextVersionFormat().encode(message), IndexingObjectMessageJms.class);
+        assertEquals(Long.valueOf(5L), decoded.getObjectId());
+        assertEquals("Retailer", decoded.getObjectType());
+        assertEnvelope(message, decoded);
+    }
+
+    @Test
+    public void testPreviousVersionIsReadByNextReader() throws IOException {
+        IndexingObjectMessageJms message = newMessage(new IndexingObjectMessageJms());
+        message.setObjectId(5L);
+        message.setObjectType("Retailer");
+
+        NextVersionFormat nextVersionFormat = new NextVersionFormat();
+        IndexingObjectMessageJms decoded = nextVersionFormat.decode(format.encode(message), IndexingObjectMessageJms.class);
+        assertEquals(Long.valueOf(5L), decoded.getObjectId());
+        assertEquals("Retailer", decoded.getObjectType());
+        assertEquals(1, nextVersionFormat.lastReadVersion);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends AbstractMessageJms> T roundTrip(T message) throws IOException {
+        return (T) format.decode(format.encode(message), message.getClass());
+    }
+
+    private <T extends AbstractMessageJms> T newMessage(T message) {
+        message.setEnvironmentName("PROD");
+        message.setEnvironmentId("1");
+        message.setApplicationName("qalingo-bo-business");
+        message.setServerName("node-1");
+        message.setServerIp("10.0.0.12");
+        return message;
+    }
+
+    private void assertEnvelope(AbstractMessageJms message, AbstractMessageJms decoded) {
+        assertEquals(message.getEnvironmentName(), decoded.getEnvironmentName());
+        assertEquals(message.getEnvironmentId(), decoded.getEnvironmentId());
+        assertEquals(message.getApplicationName(), decoded.getApplicationName());
+        assertEquals(message.getServerName(), decoded.getServerName());
+        assertEquals(message.getServerIp(), decoded.getServerIp());
+    }
+
+    /**
+     * A next version of the indexing messages, with a priority appended.
+     */
+    private static class NextVersionFormat extends BinaryMessageFormat {
+
+        private int lastReadVersion;
+
+        private NextVersionFormat() {
+            register(new BinaryMessageSchema<IndexingObjectMessageJms>(2, 2, IndexingObjectMessageJms.class) {
+                protected IndexingObjectMessageJms newMessage() {
+                    return new IndexingObjectMessageJms();
+                }
+                protected void writeFields(BinaryMessageOutput output, IndexingObjectMessageJms message) {
+                    output.writeLong(message.getObjectId());
+                    output.writeEnumerated(message.getObjectType(), new String[] { "ProductMarketing", "ProductSku", "Store", "Retailer" });
+                    output.writeString("HIGH");
+                }
+                protected void readFields(BinaryMessageInput input, int version, IndexingObjectMessageJms message) throws IOException {
+                    lastReadVersion = version;
+                    message.setObjectId(input.readLong());
+                    message.setObjectType(input.readEnumerated(new String[] { "ProductMarketing", "ProductSku", "Store", "Retailer" }));
+                    if (version >= 2) {
+                        input.readString();
+                    }
+                }
+            });
+        }
+
+    }
+
+}
@@ -0,0 +1,109 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.jms.codec;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.hoteia.qalingo.core.jms.indexing.producer.IndexingObjectMessageJms;
+import org.hoteia.qalingo.core.mapper.XmlMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Sends and receives an indexing message through an embedded broker, as XML
+ * and as binary, and prints the bytes by message of each encoding.
+ *
+ * Run it with the main method (test classpath) : it is not a unit test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MessageCodecBenchmark {
+
+    @Param({ "false", "true" })
+    private boolean binary;
+
+    private MessageCodec messageCodec;
+
+    private Connection connection;
+    private Session session;
+    private MessageProducer producer;
+    private MessageConsumer consumer;
+
+    private IndexingObjectMessageJms message;
+
+    @Setup
+    public void setup() throws Exception {
+        messageCodec = new MessageCodec();
+        messageCodec.xmlMapper = new XmlMapper();
+        messageCodec.setBinary(binary);
+
+        ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory("vm://codec-benchmark?broker.persistent=false&broker.useJmx=false");
+        connection = connectionFactory.createConnection();
+        connection.start();
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Queue queue = session.createQueue("codec_benchmark_queue");
+        producer = session.createProducer(queue);
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        consumer = session.createConsumer(queue);
+
+        message = new IndexingObjectMessageJms();
+        message.setEnvironmentName("PROD");
+        message.setEnvironmentId("1");
+        message.setApplicationName("qalingo-bo-business");
+        message.setServerName("node-1.qalingo.local");
+        message.setServerIp("10.0.0.1");
+        message.setObjectId(42L);
+        message.setObjectType("ProductSku");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (binary) {
+            System.out.println("Binary bytes by message: " + (messageCodec.getBinaryBytesSent() / Math.max(1, messageCodec.getBinaryMessagesSent())));
+        } else {
+            System.out.println("XML bytes by message: " + (messageCodec.getTextBytesSent() / Math.max(1, messageCodec.getTextMessagesSent())));
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public Object sendAndReceive() throws Exception {
+        producer.send(messageCodec.createMessage(session, message));
+        Message received = consumer.receive(1000);
+        return messageCodec.readMessage(received, IndexingObjectMessageJms.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(MessageCodecBenchmark.class.getSimpleName()).forks(1).warmupIterations(5).measurementIterations(5).build();
+        new Runner(options).run();
+    }
+
+}
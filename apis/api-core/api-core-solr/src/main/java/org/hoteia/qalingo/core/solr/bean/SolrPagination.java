@@ -0,0 +1,131 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.solr.bean;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Window of a Solr search : start/rows paging, or cursor paging for the deep
+ * pages, with the sort and the returned fields.
+ *
+ * The cursor paging walks the documents by unique key : the cursor mark is the
+ * last id of the previous page, and the results are sorted by id.
+ */
+public class SolrPagination {
+
+    public static final String CURSOR_MARK_START = "*";
+
+    public static final String SORT_ORDER_ASC = "asc";
+    public static final String SORT_ORDER_DESC = "desc";
+
+    private int start;
+    // NEGATIVE : MAX ROWS OF THE SERVICE, 0 : FACETS ONLY
+    private int rows = -1;
+    private String cursorMark;
+    private String sortField;
+    private boolean sortAscending = true;
+    private List<String> fields = new ArrayList<String>();
+
+    public SolrPagination() {
+    }
+
+    public SolrPagination(int start, int rows) {
+        this.start = start;
+        this.rows = rows;
+    }
+
+    /**
+     * @param page first page is 0.
+     */
+    public static SolrPagination page(int page, int pageSize) {
+        return new SolrPagination(Math.max(page, 0) * pageSize, pageSize);
+    }
+
+    /**
+     * @param cursorMark CURSOR_MARK_START for the first page, then the nextCursorMark of the previous response.
+     */
+    public static SolrPagination cursor(String cursorMark, int rows) {
+        SolrPagination pagination = new SolrPagination(0, rows);
+        pagination.setCursorMark(cursorMark != null ? cursorMark : CURSOR_MARK_START);
+        return pagination;
+    }
+
+    public boolean isCursor() {
+        return cursorMark != null;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public void setStart(int start) {
+        this.start = start;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public void setRows(int rows) {
+        this.rows = rows;
+    }
+
+    public String getCursorMark() {
+        return cursorMark;
+    }
+
+    public void setCursorMark(String cursorMark) {
+        this.cursorMark = cursorMark;
+    }
+
+    public String getSortField() {
+        return sortField;
+    }
+
+    public void setSortField(String sortField) {
+        this.sortField = sortField;
+    }
+
+    public boolean isSortAscending() {
+        return sortAscending;
+    }
+
+    public void setSortAscending(boolean sortAscending) {
+        this.sortAscending = sortAscending;
+    }
+
+    public void setSort(String sortField, String order) {
+        this.sortField = sortField;
+        this.sortAscending = !SORT_ORDER_DESC.equalsIgnoreCase(order);
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public void setFields(List<String> fields) {
+        this.fields = fields;
+    }
+
+    public void addField(String field) {
+        if (fields == null) {
+            fields = new ArrayList<String>();
+        }
+        fields.add(field);
+    }
+
+    @Override
+    public String toString() {
+        return "SolrPagination [start=" + start + ", rows=" + rows + ", cursorMark=" + cursorMark + ", sortField=" + sortField + ", sortAscending="
+                + sortAscending + ", fields=" + fields + "]";
+    }
+
+}
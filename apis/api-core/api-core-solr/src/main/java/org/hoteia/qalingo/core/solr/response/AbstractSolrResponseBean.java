@@ -0,0 +1,76 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.solr.response;
+
+public abstract class AbstractSolrResponseBean {
+
+    // TOTAL NUMBER OF MATCHING DOCUMENTS, NOT THE SIZE OF THE RETURNED PAGE
+    private long totalHits;
+
+    private int start;
+
+    private int rows;
+
+    private String nextCursorMark;
+
+    private boolean truncated;
+
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    public void setTotalHits(long totalHits) {
+        this.totalHits = totalHits;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public void setStart(int start) {
+        this.start = start;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public void setRows(int rows) {
+        this.rows = rows;
+    }
+
+    public String getNextCursorMark() {
+        return nextCursorMark;
+    }
+
+    public void setNextCursorMark(String nextCursorMark) {
+        this.nextCursorMark = nextCursorMark;
+    }
+
+    /**
+     * @return true if a cursor search has more documents after this page.
+     */
+    public boolean hasNextCursorMark() {
+        return nextCursorMark != null;
+    }
+
+    /**
+     * @return true if the search asked for all the documents, or for more than
+     *         the max rows, and got only the first max rows of them.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+
+}
@@ -15,7 +15,7 @@ import java.util.List;
 import org.apache.solr.client.solrj.response.FacetField;
 import org.hoteia.qalingo.core.solr.bean.CatalogCategorySolr;
 
-public class CatalogCategoryResponseBean {
+public class CatalogCategoryResponseBean extends AbstractSolrResponseBean {
 
     private List<CatalogCategorySolr> catalogCategorySolrList = new ArrayList<CatalogCategorySolr>();
 
@@ -15,7 +15,7 @@ import java.util.List;
 import org.apache.solr.client.solrj.response.FacetField;
 import org.hoteia.qalingo.core.solr.bean.CustomerSolr;
 
-public class CustomerResponseBean {
+public class CustomerResponseBean extends AbstractSolrResponseBean {
 
     private List<CustomerSolr> customerSolrList = new ArrayList<CustomerSolr>();
 
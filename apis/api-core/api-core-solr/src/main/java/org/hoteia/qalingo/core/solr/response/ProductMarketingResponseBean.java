@@ -10,12 +10,13 @@
 package org.hoteia.qalingo.core.solr.response;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.solr.client.solrj.response.FacetField;
 import org.hoteia.qalingo.core.solr.bean.ProductMarketingSolr;
 
-public class ProductMarketingResponseBean {
+public class ProductMarketingResponseBean extends AbstractSolrResponseBean {
 
     public static final String PRODUCT_MARKETING_SEARCH_FIELD_CODE            = "code";
     public static final String PRODUCT_MARKETING_SEARCH_FIELD_CATEGORIES_CODE = "catalogCategories";
@@ -24,6 +25,9 @@ public class ProductMarketingResponseBean {
     public static final String PRODUCT_MARKETING_DEFAULT_SEARCH_FIELD         = "text";
     public static final String PRODUCT_MARKETING_DEFAULT_FACET_FIELD          = "catalogCategories";
 
+    // SORTABLE FIELDS OF THE SCHEMA (NOT TOKENIZED)
+    public static final List<String> PRODUCT_MARKETING_SORT_FIELDS = Arrays.asList("code", "price", "datecreate", "dateupdate");
+
     private List<ProductMarketingSolr> productMarketingSolrList = new ArrayList<ProductMarketingSolr>();
 
     private List<FacetField> productMarketingSolrFacetFieldList = new ArrayList<FacetField>();
@@ -0,0 +1,54 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.solr.response;
+
+import java.util.List;
+
+import org.springframework.beans.support.PagedListHolder;
+
+/**
+ * PagedListHolder of one page of Solr results : the source is the current page
+ * only, the number of elements is the total hits of the search.
+ */
+public class SolrPagedListHolder<E> extends PagedListHolder<E> {
+
+    /**
+     * Generated UID
+     */
+    private static final long serialVersionUID = -4626349719637357519L;
+
+    private final long totalHits;
+
+    public SolrPagedListHolder(final List<E> pageList, final long totalHits, final int page, final int pageSize) {
+        super(pageList);
+        this.totalHits = totalHits;
+        setPageSize(pageSize);
+        setPage(page);
+    }
+
+    public SolrPagedListHolder(final List<E> pageList, final AbstractSolrResponseBean responseBean, final int pageSize) {
+        this(pageList, responseBean.getTotalHits(), pageSize > 0 ? responseBean.getStart() / pageSize : 0, pageSize);
+    }
+
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    @Override
+    public int getNrOfElements() {
+        return (int) Math.min(totalHits, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<E> getPageList() {
+        return getSource();
+    }
+
+}
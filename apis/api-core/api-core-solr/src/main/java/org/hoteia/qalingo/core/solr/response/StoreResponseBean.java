@@ -10,18 +10,22 @@
 package org.hoteia.qalingo.core.solr.response;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.solr.client.solrj.response.FacetField;
 import org.hoteia.qalingo.core.solr.bean.StoreSolr;
 
-public class StoreResponseBean {
+public class StoreResponseBean extends AbstractSolrResponseBean {
 
     public static final String STORE_DEFAULT_SEARCH_FIELD   = "text";
     public static final String STORE_DEFAULT_FACET_FIELD    = "city";
     public static final String STORE_SECOND_FACET_FIELD     = "countrycode";
     public static final String STORE_SEARCH_FIELD_TAG_CODE  = "tagCode";
 
+    // SORTABLE FIELDS OF THE SCHEMA (NOT TOKENIZED)
+    public static final List<String> STORE_SORT_FIELDS = Arrays.asList("code", "name", "city", "countrycode");
+
     private List<StoreSolr> storeSolrList = new ArrayList<StoreSolr>();
 
     private List<FacetField> storeSolrFacetFieldList = new ArrayList<FacetField>();
@@ -9,11 +9,210 @@
  */
 package org.hoteia.qalingo.core.solr.service;
 
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrQuery.ORDER;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrRequest.METHOD;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.StreamingResponseCallback;
+import org.apache.solr.client.solrj.beans.DocumentObjectBinder;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.hoteia.qalingo.core.solr.bean.SolrPagination;
+import org.hoteia.qalingo.core.solr.response.AbstractSolrResponseBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 public abstract class AbstractSolrService {
 
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
     // SEARCH PAGINATION
     public static final String SEARCH_FACET_FIELD_LIST = "facetFieldList";
     public static final String SEARCH_TEXT = "searchText";
+
+    /**
+     * @deprecated the searches are bounded by the max rows, use a SolrPagination.
+     */
+    @Deprecated
     public static final String ROWS_DEFAULT_VALUE = "10000000";
 
+    public static final int DEFAULT_MAX_ROWS = 1000;
+    public static final int DEFAULT_STREAMING_BATCH_SIZE = 500;
+
+    public static final String UNIQUE_KEY_FIELD = "id";
+
+    private int maxRows = DEFAULT_MAX_ROWS;
+
+    private int streamingBatchSize = DEFAULT_STREAMING_BATCH_SIZE;
+
+    /**
+     * Window of the searches without pagination : the first max rows documents.
+     */
+    protected SolrPagination getDefaultPagination() {
+        return new SolrPagination(0, maxRows);
+    }
+
+    protected void applyPagination(final SolrQuery solrQuery, SolrPagination pagination) {
+        if (pagination == null) {
+            pagination = getDefaultPagination();
+        }
+        int rows = pagination.getRows() >= 0 ? Math.min(pagination.getRows(), maxRows) : maxRows;
+        solrQuery.setRows(rows);
+
+        if (pagination.isCursor()) {
+            // DEEP PAGING : NO OFFSET, THE NEXT PAGE STARTS AFTER THE LAST ID OF THE PREVIOUS ONE
+            solrQuery.setStart(0);
+            if (!SolrPagination.CURSOR_MARK_START.equals(pagination.getCursorMark())) {
+                solrQuery.addFilterQuery(UNIQUE_KEY_FIELD + ":{" + ClientUtils.escapeQueryChars(pagination.getCursorMark()) + " TO *]");
+            }
+            solrQuery.setSortField(UNIQUE_KEY_FIELD, ORDER.asc);
+        } else {
+            solrQuery.setStart(Math.max(pagination.getStart(), 0));
+            if (StringUtils.isNotEmpty(pagination.getSortField())) {
+                solrQuery.addSortField(pagination.getSortField(), pagination.isSortAscending() ? ORDER.asc : ORDER.desc);
+                if (!UNIQUE_KEY_FIELD.equals(pagination.getSortField())) {
+                    // SAME ORDER FOR THE EQUAL VALUES FROM ONE PAGE TO THE OTHER
+                    solrQuery.addSortField(UNIQUE_KEY_FIELD, ORDER.asc);
+                }
+            }
+        }
+
+        final List<String> fields = pagination.getFields();
+        if (fields != null && !fields.isEmpty()) {
+            solrQuery.setFields(fields.toArray(new String[fields.size()]));
+            if (!fields.contains(UNIQUE_KEY_FIELD)) {
+                solrQuery.addField(UNIQUE_KEY_FIELD);
+            }
+        }
+    }
+
+    /**
+     * Query "searchBy:searchText*", or all the documents with a searchBy value.
+     */
+    protected SolrQuery buildSearchQuery(final String searchBy, final String searchText) {
+        if (StringUtils.isEmpty(searchBy)) {
+            throw new IllegalArgumentException("SearchBy field can not be Empty or Blank!");
+        }
+        SolrQuery solrQuery = new SolrQuery();
+        if (StringUtils.isEmpty(searchText)) {
+            solrQuery.setQuery(searchBy + ":*");
+        } else {
+            solrQuery.setQuery(searchBy + ":" + searchText + "*");
+        }
+        return solrQuery;
+    }
+
+    protected QueryResponse query(final SolrServer solrServer, final SolrQuery solrQuery) throws SolrServerException, IOException {
+        SolrRequest request = new QueryRequest(solrQuery, METHOD.POST);
+        return new QueryResponse(solrServer.request(request), solrServer);
+    }
+
+    /**
+     * Total hits and window of the response. For a cursor search, the total
+     * hits are the documents after the cursor mark. A search bounded by the
+     * max rows is flagged as truncated and logged.
+     */
+    protected void fillPagination(final AbstractSolrResponseBean responseBean, final QueryResponse response, final SolrQuery solrQuery, final SolrPagination pagination) {
+        final SolrDocumentList results = response.getResults();
+        if (results == null) {
+            return;
+        }
+        responseBean.setTotalHits(results.getNumFound());
+        responseBean.setStart((int) results.getStart());
+        responseBean.setRows(solrQuery.getRows() != null ? solrQuery.getRows() : results.size());
+        if (pagination != null && pagination.isCursor() && !results.isEmpty() && results.getNumFound() > results.size()) {
+            Object lastId = results.get(results.size() - 1).getFieldValue(UNIQUE_KEY_FIELD);
+            responseBean.setNextCursorMark(lastId != null ? lastId.toString() : null);
+        }
+        if (isBoundedByMaxRows(solrQuery, pagination)
+                && results.getNumFound() > results.getStart() + results.size()) {
+            responseBean.setTruncated(true);
+            logger.warn("Solr search truncated to the first " + results.size() + " of " + results.getNumFound() + " documents, page it with a SolrPagination or stream it : "
+                    + solrQuery.getQuery());
+        }
+    }
+
+    /**
+     * @return true if the search asked for all the documents, or for more than the max rows.
+     */
+    protected boolean isBoundedByMaxRows(final SolrQuery solrQuery, final SolrPagination pagination) {
+        if (pagination == null || pagination.getRows() < 0) {
+            return true;
+        }
+        return solrQuery.getRows() != null && pagination.getRows() > solrQuery.getRows();
+    }
+
+    /**
+     * Streams all the documents matching the query, by cursor pages of the
+     * streaming batch size : only the current document is held in memory.
+     *
+     * @return the number of handled documents.
+     */
+    protected <T> long stream(final SolrServer solrServer, final SolrQuery solrQuery, final Class<T> beanClass, final SolrDocumentHandler<T> handler)
+            throws SolrServerException, IOException {
+        final DocumentObjectBinder binder = solrServer.getBinder();
+        final String[] lastId = new String[1];
+        final long[] pageCount = new long[1];
+        long count = 0;
+        String cursorMark = SolrPagination.CURSOR_MARK_START;
+        while (true) {
+            SolrQuery pageQuery = solrQuery.getCopy();
+            pageQuery.setFacet(false);
+            applyPagination(pageQuery, SolrPagination.cursor(cursorMark, streamingBatchSize));
+
+            lastId[0] = null;
+            pageCount[0] = 0;
+            solrServer.queryAndStreamResponse(pageQuery, new StreamingResponseCallback() {
+
+                @Override
+                public void streamSolrDocument(SolrDocument document) {
+                    Object id = document.getFieldValue(UNIQUE_KEY_FIELD);
+                    lastId[0] = id != null ? id.toString() : null;
+                    pageCount[0]++;
+                    try {
+                        handler.handle(binder.getBean(beanClass, document));
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Solr streaming handler failed on document " + lastId[0], e);
+                    }
+                }
+
+                @Override
+                public void streamDocListInfo(long numFound, long start, Float maxScore) {
+                }
+            });
+
+            count += pageCount[0];
+            if (pageCount[0] < pageQuery.getRows() || lastId[0] == null) {
+                break;
+            }
+            cursorMark = lastId[0];
+        }
+        return count;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public void setMaxRows(int maxRows) {
+        this.maxRows = maxRows;
+    }
+
+    public int getStreamingBatchSize() {
+        return streamingBatchSize;
+    }
+
+    public void setStreamingBatchSize(int streamingBatchSize) {
+        this.streamingBatchSize = streamingBatchSize;
+    }
+
 }
\ No newline at end of file
@@ -14,17 +14,15 @@ import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.solr.client.solrj.SolrQuery;
-import org.apache.solr.client.solrj.SolrRequest;
-import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.hoteia.qalingo.core.domain.CatalogCategoryMaster;
 import org.hoteia.qalingo.core.domain.MarketArea;
 import org.hoteia.qalingo.core.solr.bean.CatalogCategorySolr;
 import org.hoteia.qalingo.core.solr.bean.StoreSolr;
+import org.hoteia.qalingo.core.solr.bean.SolrPagination;
 import org.hoteia.qalingo.core.solr.response.CatalogCategoryResponseBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,8 +36,13 @@ public class CatalogCategorySolrService extends AbstractSolrService {
 	
     private final Logger logger = LoggerFactory.getLogger(getClass());
 	
+    public static final String CORE_NAME = "catalogCategory";
+
     @Autowired
     public SolrServer catalogCategorySolrServer;
+
+    @Autowired
+    protected SolrIndexingPipeline solrIndexingPipeline;
     
 	public void addOrUpdateCatalogCategory(final CatalogCategoryMaster catalogCategoryMaster, final MarketArea marketArea) throws SolrServerException, IOException {
         if (catalogCategoryMaster.getId() == null) {
@@ -56,8 +59,7 @@ public class CatalogCategorySolrService extends AbstractSolrService {
         categorySolr.setDateUpdate(catalogCategoryMaster.getDateUpdate());
         categorySolr.setName(catalogCategoryMaster.getName());
 
-        catalogCategorySolrServer.addBean(categorySolr);
-        catalogCategorySolrServer.commit();
+        solrIndexingPipeline.add(CORE_NAME, catalogCategorySolrServer, categorySolr.getId(), categorySolr);
         
         logger.debug("Fields has been added sucessfully ");
     }
@@ -69,13 +71,21 @@ public class CatalogCategorySolrService extends AbstractSolrService {
         if (logger.isDebugEnabled()) {
             logger.debug("Remove Index category " + categorySolr.getId() + " : " + categorySolr.getName());
         }
-        catalogCategorySolrServer.deleteById(categorySolr.getId().toString());
-        catalogCategorySolrServer.commit();
+        solrIndexingPipeline.delete(CORE_NAME, catalogCategorySolrServer, categorySolr.getId());
     }
     
-	public CatalogCategoryResponseBean searchCatalogCategory(String searchBy,String searchText, String facetField) throws SolrServerException, IOException {
+	/**
+	 * @deprecated bounded by the max rows, the response is then flagged as truncated : page the
+	 *             search with a SolrPagination, or stream all the documents.
+	 */
+	@Deprecated
+	public CatalogCategoryResponseBean searchCatalogCategory(final String searchBy, final String searchText, final String facetField) throws SolrServerException, IOException {
+	    return searchCatalogCategory(searchBy, searchText, facetField, null);
+	}
+
+	public CatalogCategoryResponseBean searchCatalogCategory(final String searchBy, final String searchText, final String facetField, final SolrPagination pagination) throws SolrServerException, IOException {
         SolrQuery solrQuery = new SolrQuery();
-        solrQuery.setParam("rows", ROWS_DEFAULT_VALUE);
+        applyPagination(solrQuery, pagination);
         
         if (StringUtils.isEmpty(searchBy)) {
             throw new IllegalArgumentException("SearchBy field can not be Empty or Blank!");
@@ -96,14 +106,13 @@ public class CatalogCategorySolrService extends AbstractSolrService {
 
         logger.debug("QueryRequest solrQuery: " + solrQuery);
 
-        SolrRequest request = new QueryRequest(solrQuery, METHOD.POST);
-
-        QueryResponse response = new QueryResponse(catalogCategorySolrServer.request(request), catalogCategorySolrServer);
+        QueryResponse response = query(catalogCategorySolrServer, solrQuery);
         
         logger.debug("QueryResponse Obj: " + response.toString());
 
         List<CatalogCategorySolr> solrList = response.getBeans(CatalogCategorySolr.class);
         CatalogCategoryResponseBean catalogCategoryResponseBean = new CatalogCategoryResponseBean();
+        fillPagination(catalogCategoryResponseBean, response, solrQuery, pagination);
         catalogCategoryResponseBean.setCatalogCategorySolrList(solrList);
         
         if (StringUtils.isNotEmpty(facetField)) {
@@ -114,9 +123,14 @@ public class CatalogCategorySolrService extends AbstractSolrService {
         return catalogCategoryResponseBean;
     }
 
+    /**
+     * @deprecated bounded by the max rows, the response is then flagged as truncated : page the
+     *             search with a SolrPagination, or stream all the documents.
+     */
+    @Deprecated
     public CatalogCategoryResponseBean searchCatalogCategory() throws SolrServerException, IOException {
         SolrQuery solrQuery = new SolrQuery();
-        solrQuery.setParam("rows", ROWS_DEFAULT_VALUE);
+        applyPagination(solrQuery, null);
         
         solrQuery.setQuery("*");
         solrQuery.setFacet(true);
@@ -126,9 +140,7 @@ public class CatalogCategorySolrService extends AbstractSolrService {
 
         logger.debug("QueryRequest solrQuery: " + solrQuery);
 
-        SolrRequest request = new QueryRequest(solrQuery, METHOD.POST);
-
-        QueryResponse response = new QueryResponse(catalogCategorySolrServer.request(request), catalogCategorySolrServer);
+        QueryResponse response = query(catalogCategorySolrServer, solrQuery);
         
         logger.debug("QueryResponse Obj: " + response.toString());
 
@@ -136,9 +148,21 @@ public class CatalogCategorySolrService extends AbstractSolrService {
         List<FacetField> solrFacetFieldList = response.getFacetFields();
 
         CatalogCategoryResponseBean catalogCategoryResponseBean = new CatalogCategoryResponseBean();
+        fillPagination(catalogCategoryResponseBean, response, solrQuery, null);
         catalogCategoryResponseBean.setCatalogCategorySolrList(solrList);
         catalogCategoryResponseBean.setCatalogCategorySolrFacetFieldList(solrFacetFieldList);
         return catalogCategoryResponseBean;
     }
 
+    /**
+     * Streams all the matching catalog categories to the handler, without loading the whole result.
+     * 
+     * @return the number of handled documents.
+     */
+    public long streamCatalogCategory(final String searchBy, final String searchText, final SolrDocumentHandler<CatalogCategorySolr> handler) throws SolrServerException, IOException {
+        SolrQuery solrQuery = buildSearchQuery(searchBy, searchText);
+        logger.debug("Stream solrQuery: " + solrQuery);
+        return stream(catalogCategorySolrServer, solrQuery, CatalogCategorySolr.class, handler);
+    }
+
 }
\ No newline at end of file
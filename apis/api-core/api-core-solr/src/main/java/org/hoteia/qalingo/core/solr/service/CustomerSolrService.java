@@ -14,17 +14,15 @@ import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.solr.client.solrj.SolrQuery;
-import org.apache.solr.client.solrj.SolrRequest;
-import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.hoteia.qalingo.core.domain.Customer;
 import org.hoteia.qalingo.core.domain.MarketArea;
 import org.hoteia.qalingo.core.solr.bean.CustomerSolr;
 import org.hoteia.qalingo.core.solr.bean.StoreSolr;
+import org.hoteia.qalingo.core.solr.bean.SolrPagination;
 import org.hoteia.qalingo.core.solr.response.CustomerResponseBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,8 +36,13 @@ public class CustomerSolrService extends AbstractSolrService {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 	
+    public static final String CORE_NAME = "customer";
+
     @Autowired
     public SolrServer customerSolrServer;
+
+    @Autowired
+    protected SolrIndexingPipeline solrIndexingPipeline;
     
     public void addOrUpdateCustomer(final Customer customer, final MarketArea marketArea) throws SolrServerException, IOException, IllegalArgumentException {
         if (customer.getId() == null) {
@@ -55,8 +58,7 @@ public class CustomerSolrService extends AbstractSolrService {
         customerSolr.setEmail(customer.getEmail());
         customerSolr.setGender(customer.getGender());
         customerSolr.setTitle(customer.getTitle());
-        customerSolrServer.addBean(customerSolr);
-        customerSolrServer.commit();
+        solrIndexingPipeline.add(CORE_NAME, customerSolrServer, customerSolr.getId(), customerSolr);
     }
 	
     public void removeCustomer(final CustomerSolr customerSolr) throws SolrServerException, IOException {
@@ -66,13 +68,21 @@ public class CustomerSolrService extends AbstractSolrService {
         if (logger.isDebugEnabled()) {
             logger.debug("Remove Index Customer " + customerSolr.getId() + " : " + customerSolr.getLastname() + " : " + customerSolr.getFirstname());
         }
-        customerSolrServer.deleteById(customerSolr.getId().toString());
-        customerSolrServer.commit();
+        solrIndexingPipeline.delete(CORE_NAME, customerSolrServer, customerSolr.getId());
     }
     
-    public CustomerResponseBean searchCustomer(String searchBy, String searchText, String facetField) throws IllegalArgumentException, SolrServerException, IOException {
+    /**
+     * @deprecated bounded by the max rows, the response is then flagged as truncated : page the
+     *             search with a SolrPagination, or stream all the documents.
+     */
+    @Deprecated
+    public CustomerResponseBean searchCustomer(final String searchBy, final String searchText, final String facetField) throws IllegalArgumentException, SolrServerException, IOException {
+        return searchCustomer(searchBy, searchText, facetField, null);
+    }
+
+    public CustomerResponseBean searchCustomer(final String searchBy, final String searchText, final String facetField, final SolrPagination pagination) throws IllegalArgumentException, SolrServerException, IOException {
         SolrQuery solrQuery = new SolrQuery();
-        solrQuery.setParam("rows", ROWS_DEFAULT_VALUE);
+        applyPagination(solrQuery, pagination);
         
         if (StringUtils.isEmpty(searchBy)) {
             throw new IllegalArgumentException("SearchBy field can not be Empty or Blank!");
@@ -93,14 +103,13 @@ public class CustomerSolrService extends AbstractSolrService {
 
         logger.debug("QueryRequest solrQuery: " + solrQuery);
 
-        SolrRequest request = new QueryRequest(solrQuery, METHOD.POST);
-
-        QueryResponse response = new QueryResponse(customerSolrServer.request(request), customerSolrServer);
+        QueryResponse response = query(customerSolrServer, solrQuery);
 
         logger.debug("QueryResponse Obj: " + response.toString());
         
         List<CustomerSolr> solrList = response.getBeans(CustomerSolr.class);
         CustomerResponseBean customerResponseBean = new CustomerResponseBean();
+        fillPagination(customerResponseBean, response, solrQuery, pagination);
         customerResponseBean.setCustomerSolrList(solrList);
         
         if (StringUtils.isNotEmpty(facetField)) {
@@ -110,9 +119,14 @@ public class CustomerSolrService extends AbstractSolrService {
         return customerResponseBean;
     }
 	
+    /**
+     * @deprecated bounded by the max rows, the response is then flagged as truncated : page the
+     *             search with a SolrPagination, or stream all the documents.
+     */
+    @Deprecated
     public CustomerResponseBean searchCustomer() throws IllegalArgumentException, SolrServerException, IOException {
         SolrQuery solrQuery = new SolrQuery();
-        solrQuery.setParam("rows", ROWS_DEFAULT_VALUE);
+        applyPagination(solrQuery, null);
         
         solrQuery.setQuery("*");
         solrQuery.setFacet(true);
@@ -122,9 +136,7 @@ public class CustomerSolrService extends AbstractSolrService {
 
         logger.debug("QueryRequest solrQuery: " + solrQuery);
 
-        SolrRequest request = new QueryRequest(solrQuery, METHOD.POST);
-        
-        QueryResponse response = new QueryResponse(customerSolrServer.request(request), customerSolrServer);
+        QueryResponse response = query(customerSolrServer, solrQuery);
         
         logger.debug("QueryResponse Obj: " + response.toString());
 
@@ -132,9 +144,21 @@ public class CustomerSolrService extends AbstractSolrService {
         List<FacetField> solrFacetFieldList = response.getFacetFields();
         
         CustomerResponseBean customerResponseBean = new CustomerResponseBean();
+        fillPagination(customerResponseBean, response, solrQuery, null);
         customerResponseBean.setCustomerSolrList(solrList);
         customerResponseBean.setCustomerSolrFacetFieldList(solrFacetFieldList);
         return customerResponseBean;
     }
 
+    /**
+     * Streams all the matching customers to the handler, without loading the whole result.
+     * 
+     * @return the number of handled documents.
+     */
+    public long streamCustomer(final String searchBy, final String searchText, final SolrDocumentHandler<CustomerSolr> handler) throws SolrServerException, IOException {
+        SolrQuery solrQuery = buildSearchQuery(searchBy, searchText);
+        logger.debug("Stream solrQuery: " + solrQuery);
+        return stream(customerSolrServer, solrQuery, CustomerSolr.class, handler);
+    }
+
 }
\ No newline at end of file
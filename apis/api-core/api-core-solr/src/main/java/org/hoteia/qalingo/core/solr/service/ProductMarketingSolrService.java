@@ -17,11 +17,8 @@ import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.solr.client.solrj.SolrQuery;
-import org.apache.solr.client.solrj.SolrRequest;
-import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.hoteia.qalingo.core.domain.CatalogCategoryVirtual;
@@ -32,11 +29,13 @@ import org.hoteia.qalingo.core.domain.Retailer;
 import org.hoteia.qalingo.core.service.ProductService;
 import org.hoteia.qalingo.core.solr.bean.ProductMarketingSolr;
 import org.hoteia.qalingo.core.solr.bean.StoreSolr;
+import org.hoteia.qalingo.core.solr.bean.SolrPagination;
 import org.hoteia.qalingo.core.solr.response.ProductMarketingResponseBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service("productMarketingSolrService")
@@ -45,8 +44,13 @@ public class ProductMarketingSolrService extends AbstractSolrService {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 	
+    public static final String CORE_NAME = "productMarketing";
+
     @Autowired
     public SolrServer productMarketingSolrServer;
+
+    @Autowired
+    protected SolrIndexingPipeline solrIndexingPipeline;
     
     @Autowired
     protected ProductService productService;
@@ -58,14 +62,22 @@ public class ProductMarketingSolrService extends AbstractSolrService {
         if (logger.isDebugEnabled()) {
             logger.debug("Indexing productMarketing " + productMarketing.getId() + " : " + productMarketing.getCode() + " : " + productMarketing.getName());
         }
-        
+        CatalogCategoryVirtual defaultVirtualCatalogCategory = productService.getDefaultVirtualCatalogCategory(productMarketing, catalogCategories, true);
+        ProductMarketingSolr productSolr = buildProductMarketingSolr(productMarketing, catalogCategories, defaultVirtualCatalogCategory, marketArea, retailer);
+        solrIndexingPipeline.add(CORE_NAME, productMarketingSolrServer, productSolr.getId(), productSolr);
+    }
+
+    /**
+     * Solr document of the product marketing, without database access : the categories, with their catalog, and the product skus with their prices must be loaded.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public ProductMarketingSolr buildProductMarketingSolr(final ProductMarketing productMarketing, final List<CatalogCategoryVirtual> catalogCategories,
+            final CatalogCategoryVirtual defaultVirtualCatalogCategory, final MarketArea marketArea, final Retailer retailer) {
         ProductMarketingSolr productSolr = new ProductMarketingSolr();
         productSolr.setId(productMarketing.getId());
         productSolr.setCode(productMarketing.getCode());
         productSolr.setName(productMarketing.getName());
         productSolr.setDescription(productMarketing.getDescription());
-        
-        CatalogCategoryVirtual defaultVirtualCatalogCategory = productService.getDefaultVirtualCatalogCategory(productMarketing, catalogCategories, true);
 
         if(defaultVirtualCatalogCategory != null){
             productSolr.setDefaultCategoryCode(defaultVirtualCatalogCategory.getCode());
@@ -88,9 +100,7 @@ public class ProductMarketingSolrService extends AbstractSolrService {
                 productSolr.setPrice(salePrice.floatValue());
             }
         }
-        
-        productMarketingSolrServer.addBean(productSolr);
-        productMarketingSolrServer.commit();
+        return productSolr;
     }
 
     public void removeProductMarketing(final ProductMarketingSolr productSolr) throws SolrServerException, IOException {
@@ -100,20 +110,40 @@ public class ProductMarketingSolrService extends AbstractSolrService {
         if (logger.isDebugEnabled()) {
             logger.debug("Remove Index ProductMarketing " + productSolr.getId() + " : " + productSolr.getCode() + " : " + productSolr.getName());
         }
-        productMarketingSolrServer.deleteById(productSolr.getId().toString());
-        productMarketingSolrServer.commit();
+        solrIndexingPipeline.delete(CORE_NAME, productMarketingSolrServer, productSolr.getId());
     }
     
+    /**
+     * @deprecated bounded by the max rows, the response is then flagged as truncated : page the
+     *             search with a SolrPagination, or stream all the documents.
+     */
+    @Deprecated
     public ProductMarketingResponseBean searchProductMarketing(String searchBy, String searchText, String facetField) throws SolrServerException, IOException {
         return searchProductMarketing(searchBy, searchText, facetField, null, null);
     }
 
+    /**
+     * @deprecated bounded by the max rows, the response is then flagged as truncated : page the
+     *             search with a SolrPagination, or stream all the documents.
+     */
+    @Deprecated
     public ProductMarketingResponseBean searchProductMarketing(String searchBy, String searchText, String facetField, BigDecimal priceStart, BigDecimal priceEnd) throws SolrServerException, IOException {
     	return searchProductMarketing(searchBy, searchText, facetField, priceStart, priceEnd, null);
     }
 
+    /**
+     * @deprecated bounded by the max rows, the response is then flagged as truncated : page the
+     *             search with a SolrPagination, or stream all the documents.
+     */
+    @Deprecated
     public ProductMarketingResponseBean searchProductMarketing(final String searchBy, final String searchText, final String facetField, 
                                                                final BigDecimal priceStart, final BigDecimal priceEnd, final List<String> catalogCategories) throws SolrServerException, IOException {
+        return searchProductMarketing(searchBy, searchText, facetField, priceStart, priceEnd, catalogCategories, null);
+    }
+
+    public ProductMarketingResponseBean searchProductMarketing(final String searchBy, final String searchText, final String facetField, 
+                                                               final BigDecimal priceStart, final BigDecimal priceEnd, final List<String> catalogCategories,
+                                                               final SolrPagination pagination) throws SolrServerException, IOException {
         String searchQuery = null;
         if (StringUtils.isEmpty(searchBy)) {
             throw new IllegalArgumentException("SearchBy field can not be Empty or Blank");
@@ -144,14 +174,25 @@ public class ProductMarketingSolrService extends AbstractSolrService {
             filterQueries.add(fq.toString());
         }
         
-        return searchProductMarketing(searchQuery, facetField, priceStart, priceEnd, filterQueries);
+        return searchProductMarketing(searchQuery, facetField, priceStart, priceEnd, filterQueries, pagination);
     }
 
+    /**
+     * @deprecated bounded by the max rows, the response is then flagged as truncated : page the
+     *             search with a SolrPagination, or stream all the documents.
+     */
+    @Deprecated
     public ProductMarketingResponseBean searchProductMarketing(final String searchQuery, final String facetField, 
                                                                final BigDecimal priceStart, final BigDecimal priceEnd, 
                                                                final List<String> filterQueries) throws SolrServerException, IOException {
+        return searchProductMarketing(searchQuery, facetField, priceStart, priceEnd, filterQueries, null);
+    }
+
+    public ProductMarketingResponseBean searchProductMarketing(final String searchQuery, final String facetField, 
+                                                               final BigDecimal priceStart, final BigDecimal priceEnd, 
+                                                               final List<String> filterQueries, final SolrPagination pagination) throws SolrServerException, IOException {
     	SolrQuery solrQuery = new SolrQuery();
-    	solrQuery.setParam("rows", ROWS_DEFAULT_VALUE);
+    	applyPagination(solrQuery, pagination);
 
         solrQuery.setQuery(searchQuery);
 
@@ -169,13 +210,13 @@ public class ProductMarketingSolrService extends AbstractSolrService {
 
         logger.debug("QueryRequest solrQuery: " + solrQuery);
 
-        SolrRequest request = new QueryRequest(solrQuery, METHOD.POST);
-        QueryResponse response = new QueryResponse(productMarketingSolrServer.request(request), productMarketingSolrServer);
+        QueryResponse response = query(productMarketingSolrServer, solrQuery);
 
         logger.debug("QueryResponse Obj: " + response.toString());
 
         List<ProductMarketingSolr> solrList = response.getBeans(ProductMarketingSolr.class);
         ProductMarketingResponseBean productMarketingResponseBean = new ProductMarketingResponseBean();
+        fillPagination(productMarketingResponseBean, response, solrQuery, pagination);
         productMarketingResponseBean.setProductMarketingSolrList(solrList);
 
         if (StringUtils.isNotEmpty(facetField)) {
@@ -185,9 +226,14 @@ public class ProductMarketingSolrService extends AbstractSolrService {
         return productMarketingResponseBean;
     }
 
+    /**
+     * @deprecated bounded by the max rows, the response is then flagged as truncated : page the
+     *             search with a SolrPagination, or stream all the documents.
+     */
+    @Deprecated
     public ProductMarketingResponseBean searchProductMarketing() throws SolrServerException, IOException {
         SolrQuery solrQuery = new SolrQuery();
-        solrQuery.setParam("rows", ROWS_DEFAULT_VALUE);
+        applyPagination(solrQuery, null);
         solrQuery.setQuery("*");
         solrQuery.setFacet(true);
         solrQuery.setFacetMinCount(1);
@@ -196,9 +242,7 @@ public class ProductMarketingSolrService extends AbstractSolrService {
         
         logger.debug("QueryRequest solrQuery: " + solrQuery);
 
-        SolrRequest request = new QueryRequest(solrQuery, METHOD.POST);
-        
-        QueryResponse response = new QueryResponse(productMarketingSolrServer.request(request), productMarketingSolrServer);
+        QueryResponse response = query(productMarketingSolrServer, solrQuery);
         
         logger.debug("QueryResponse Obj: " + response.toString());
         
@@ -206,10 +250,29 @@ public class ProductMarketingSolrService extends AbstractSolrService {
         List<FacetField> solrFacetFieldList = response.getFacetFields();
         
         ProductMarketingResponseBean productMarketingResponseBean = new ProductMarketingResponseBean();
+        fillPagination(productMarketingResponseBean, response, solrQuery, null);
         productMarketingResponseBean.setProductMarketingSolrList(solrList);
         productMarketingResponseBean.setProductMarketingSolrFacetFieldList(solrFacetFieldList);
         
         return productMarketingResponseBean;
     }
 
+    /**
+     * Streams all the product marketings matching the query and the filter queries to the handler, without loading the whole result.
+     * 
+     * @return the number of handled documents.
+     */
+    public long streamProductMarketing(final String searchQuery, final List<String> filterQueries, final SolrDocumentHandler<ProductMarketingSolr> handler) throws SolrServerException, IOException {
+        SolrQuery solrQuery = new SolrQuery();
+        solrQuery.setQuery(searchQuery);
+        if (filterQueries != null) {
+            for (Iterator<String> iterator = filterQueries.iterator(); iterator.hasNext();) {
+                String filterQuery = (String) iterator.next();
+                solrQuery.addFilterQuery(filterQuery);
+            }
+        }
+        logger.debug("Stream solrQuery: " + solrQuery);
+        return stream(productMarketingSolrServer, solrQuery, ProductMarketingSolr.class, handler);
+    }
+
 }
\ No newline at end of file
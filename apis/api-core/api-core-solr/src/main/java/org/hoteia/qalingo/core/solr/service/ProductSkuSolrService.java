@@ -15,11 +15,8 @@ import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.solr.client.solrj.SolrQuery;
-import org.apache.solr.client.solrj.SolrRequest;
-import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.hoteia.qalingo.core.domain.CatalogCategoryVirtual;
@@ -30,11 +27,13 @@ import org.hoteia.qalingo.core.domain.Retailer;
 import org.hoteia.qalingo.core.service.ProductService;
 import org.hoteia.qalingo.core.solr.bean.ProductSkuSolr;
 import org.hoteia.qalingo.core.solr.bean.StoreSolr;
+import org.hoteia.qalingo.core.solr.bean.SolrPagination;
 import org.hoteia.qalingo.core.solr.response.ProductSkuResponseBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service("productSkuSolrService")
@@ -43,8 +42,13 @@ public class ProductSkuSolrService extends AbstractSolrService {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 	
+    public static final String CORE_NAME = "productSku";
+
     @Autowired
     public SolrServer productSkuSolrServer;
+
+    @Autowired
+    protected SolrIndexingPipeline solrIndexingPipeline;
     
     @Autowired
     protected ProductService productService;
@@ -56,14 +60,23 @@ public class ProductSkuSolrService extends AbstractSolrService {
         if (logger.isDebugEnabled()) {
             logger.debug("Indexing productSku " + productSku.getId() + " : " + productSku.getCode()+ " : " + productSku.getName());
         }
+        CatalogCategoryVirtual defaultVirtualCatalogCategory = productService.getDefaultVirtualCatalogCategory(productSku, catalogCategories, true);
+        ProductSkuSolr productSkuSolr = buildProductSkuSolr(productSku, catalogCategories, defaultVirtualCatalogCategory, marketArea, retailer);
+        solrIndexingPipeline.add(CORE_NAME, productSkuSolrServer, productSkuSolr.getId(), productSkuSolr);
+    }
+
+    /**
+     * Solr document of the product sku, without database access : the categories, with their catalog, and the prices must be loaded.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public ProductSkuSolr buildProductSkuSolr(final ProductSku productSku, final List<CatalogCategoryVirtual> catalogCategories, final CatalogCategoryVirtual defaultVirtualCatalogCategory,
+            final MarketArea marketArea, final Retailer retailer) {
         ProductSkuSolr productSkuSolr = new ProductSkuSolr();
         productSkuSolr.setId(productSku.getId());
         productSkuSolr.setCode(productSku.getCode());
         productSkuSolr.setName(productSku.getName());
         productSkuSolr.setDescription(productSku.getDescription());
 
-        CatalogCategoryVirtual defaultVirtualCatalogCategory = productService.getDefaultVirtualCatalogCategory(productSku, catalogCategories, true);
-
         if(defaultVirtualCatalogCategory != null){
             productSkuSolr.setDefaultCategoryCode(defaultVirtualCatalogCategory.getCode());
         }
@@ -84,9 +97,7 @@ public class ProductSkuSolrService extends AbstractSolrService {
                 productSkuSolr.setPrice(salePrice.toString());
             }
         }
-        
-        productSkuSolrServer.addBean(productSkuSolr);
-        productSkuSolrServer.commit();
+        return productSkuSolr;
     }
 
     public void removeProductSku(final ProductSkuSolr productSkuSolr) throws SolrServerException, IOException {
@@ -96,13 +107,21 @@ public class ProductSkuSolrService extends AbstractSolrService {
         if (logger.isDebugEnabled()) {
             logger.debug("Remove Index ProductSku " + productSkuSolr.getId() + " : " + productSkuSolr.getCode() + " : " + productSkuSolr.getName());
         }
-        productSkuSolrServer.deleteById(productSkuSolr.getId().toString());
-        productSkuSolrServer.commit();
+        solrIndexingPipeline.delete(CORE_NAME, productSkuSolrServer, productSkuSolr.getId());
     }
     
-    public ProductSkuResponseBean searchProductSku(String searchBy, String searchText, String facetField) throws SolrServerException, IOException {
+    /**
+     * @deprecated bounded by the max rows, the response is then flagged as truncated : page the
+     *             search with a SolrPagination, or stream all the documents.
+     */
+    @Deprecated
+    public ProductSkuResponseBean searchProductSku(final String searchBy, final String searchText, final String facetField) throws SolrServerException, IOException {
+        return searchProductSku(searchBy, searchText, facetField, null);
+    }
+
+    public ProductSkuResponseBean searchProductSku(final String searchBy, final String searchText, final String facetField, final SolrPagination pagination) throws SolrServerException, IOException {
         SolrQuery solrQuery = new SolrQuery();
-        solrQuery.setParam("rows", ROWS_DEFAULT_VALUE);
+        applyPagination(solrQuery, pagination);
         
         if (StringUtils.isEmpty(searchBy)) {
             throw new IllegalArgumentException("SearchBy field can not be Empty or Blank!");
@@ -123,14 +142,13 @@ public class ProductSkuSolrService extends AbstractSolrService {
 
         logger.debug("QueryRequest solrQuery: " + solrQuery);
 
-        SolrRequest request = new QueryRequest(solrQuery, METHOD.POST);
-
-        QueryResponse response = new QueryResponse(productSkuSolrServer.request(request), productSkuSolrServer);
+        QueryResponse response = query(productSkuSolrServer, solrQuery);
         
         logger.debug("QueryResponse Obj: " + response.toString());
         
         List<ProductSkuSolr> solrList = response.getBeans(ProductSkuSolr.class);
         ProductSkuResponseBean productResponseBean = new ProductSkuResponseBean();
+        fillPagination(productResponseBean, response, solrQuery, pagination);
         productResponseBean.setProductSkuSolrList(solrList);
         
         if (StringUtils.isNotEmpty(facetField)) {
@@ -140,9 +158,14 @@ public class ProductSkuSolrService extends AbstractSolrService {
         return productResponseBean;
     }
 
+    /**
+     * @deprecated bounded by the max rows, the response is then flagged as truncated : page the
+     *             search with a SolrPagination, or stream all the documents.
+     */
+    @Deprecated
     public ProductSkuResponseBean searchProductSku() throws SolrServerException, IOException {
         SolrQuery solrQuery = new SolrQuery();
-        solrQuery.setParam("rows", ROWS_DEFAULT_VALUE);
+        applyPagination(solrQuery, null);
         
         solrQuery.setQuery("*");
         solrQuery.setFacet(true);
@@ -153,9 +176,7 @@ public class ProductSkuSolrService extends AbstractSolrService {
 
         logger.debug("QueryRequest solrQuery: " + solrQuery);
         
-        SolrRequest request = new QueryRequest(solrQuery, METHOD.POST);
-        
-        QueryResponse response = new QueryResponse(productSkuSolrServer.request(request), productSkuSolrServer);
+        QueryResponse response = query(productSkuSolrServer, solrQuery);
 
         logger.debug("QueryResponse Obj: " + response.toString());
         
@@ -163,10 +184,22 @@ public class ProductSkuSolrService extends AbstractSolrService {
         List<FacetField> solrFacetFieldList = response.getFacetFields();
         
         ProductSkuResponseBean productSkuResponseBean = new ProductSkuResponseBean();
+        fillPagination(productSkuResponseBean, response, solrQuery, null);
         productSkuResponseBean.setProductSkuSolrList(solrList);
         productSkuResponseBean.setProductSkuSolrFacetFieldList(solrFacetFieldList);
         
         return productSkuResponseBean;
     }
 
+    /**
+     * Streams all the matching product skus to the handler, without loading the whole result.
+     * 
+     * @return the number of handled documents.
+     */
+    public long streamProductSku(final String searchBy, final String searchText, final SolrDocumentHandler<ProductSkuSolr> handler) throws SolrServerException, IOException {
+        SolrQuery solrQuery = buildSearchQuery(searchBy, searchText);
+        logger.debug("Stream solrQuery: " + solrQuery);
+        return stream(productSkuSolrServer, solrQuery, ProductSkuSolr.class, handler);
+    }
+
 }
@@ -0,0 +1,20 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.solr.service;
+
+/**
+ * Callback of the streaming searches : each document is handled as soon as it
+ * is read, the results are never held in a list.
+ */
+public interface SolrDocumentHandler<T> {
+
+    void handle(T solrBean) throws Exception;
+
+}
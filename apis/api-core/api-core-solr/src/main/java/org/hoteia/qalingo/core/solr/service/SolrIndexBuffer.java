@@ -0,0 +1,310 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.solr.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pending updates of one Solr core. The updates are keyed by document id : a
+ * document updated several times before the flush is sent once, with its last
+ * state.
+ *
+ * The buffer is bounded : over its max size, the oldest pending update is
+ * dropped. A failed flush is retried after a delay doubled at each failure,
+ * and a document which failed its max attempts is dropped. The dropped
+ * documents are logged with their id, to be indexed again.
+ */
+public class SolrIndexBuffer {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    // PENDING DELETE OF A DOCUMENT
+    private static final Object DELETE = new Object();
+
+    private final String coreName;
+    private final SolrServer solrServer;
+    private final int maxPendingDocuments;
+    private final int maxAttempts;
+    private final long retryDelay;
+    private final long maxRetryDelay;
+
+    private Map<String, Object> pendingDocuments = new LinkedHashMap<String, Object>();
+    private long oldestPendingTime = 0;
+
+    // FAILED FLUSHES BY DOCUMENT ID, FOR THE DOCUMENTS PUT BACK IN THE BUFFER ONLY
+    private Map<String, Integer> failedAttempts = new HashMap<String, Integer>();
+    private int consecutiveFailures;
+    private long retryTime;
+
+    // ONE FLUSH AT A TIME BY CORE
+    private final Object flushLock = new Object();
+
+    private final AtomicLong addCount = new AtomicLong();
+    private final AtomicLong deleteCount = new AtomicLong();
+    private final AtomicLong mergedCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushErrorCount = new AtomicLong();
+    private final AtomicLong flushedDocumentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong flushTotalTime = new AtomicLong();
+    private volatile long lastFlushTime;
+    private volatile long lastFlushSize;
+    private volatile long firstFlushDate;
+    private volatile long lastFlushDate;
+
+    /**
+     * @param retryDelay the delay before the first retry of a failed flush, doubled at each failure up to the max retry delay.
+     */
+    public SolrIndexBuffer(String coreName, SolrServer solrServer, int maxPendingDocuments, int maxAttempts, long retryDelay, long maxRetryDelay) {
+        this.coreName = coreName;
+        this.solrServer = solrServer;
+        this.maxPendingDocuments = maxPendingDocuments;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.maxRetryDelay = maxRetryDelay;
+    }
+
+    /**
+     * @return the number of pending documents.
+     */
+    public synchronized int add(final String id, final Object solrBean) {
+        addCount.incrementAndGet();
+        return put(id, solrBean);
+    }
+
+    /**
+     * @return the number of pending documents.
+     */
+    public synchronized int delete(final String id) {
+        deleteCount.incrementAndGet();
+        return put(id, DELETE);
+    }
+
+    private int put(final String id, final Object value) {
+        if (pendingDocuments.isEmpty()) {
+            oldestPendingTime = System.currentTimeMillis();
+        }
+        if (pendingDocuments.remove(id) != null) {
+            mergedCount.incrementAndGet();
+        }
+        // A NEW UPDATE OF THE DOCUMENT HAS ITS OWN ATTEMPTS
+        failedAttempts.remove(id);
+        pendingDocuments.put(id, value);
+        dropOverflow();
+        return pendingDocuments.size();
+    }
+
+    private void dropOverflow() {
+        for (Iterator<Entry<String, Object>> iterator = pendingDocuments.entrySet().iterator(); pendingDocuments.size() > maxPendingDocuments && iterator.hasNext();) {
+            Entry<String, Object> entry = iterator.next();
+            iterator.remove();
+            failedAttempts.remove(entry.getKey());
+            drop(entry.getKey(), entry.getValue(), "the buffer is full");
+        }
+    }
+
+    private void drop(final String id, final Object value, final String reason) {
+        droppedCount.incrementAndGet();
+        logger.warn("Solr " + (value == DELETE ? "delete" : "update") + " dropped, " + reason + ", core: " + coreName + ", id: " + id);
+    }
+
+    public synchronized int getQueueDepth() {
+        return pendingDocuments.size();
+    }
+
+    /**
+     * @return true if the oldest pending document is waiting for more than this delay, and no retry is waiting.
+     */
+    public synchronized boolean isExpired(final long now, final long maxDelay) {
+        return !pendingDocuments.isEmpty() && now - oldestPendingTime >= maxDelay && now >= retryTime;
+    }
+
+    /**
+     * @return true if a failed flush waits for its retry delay.
+     */
+    public synchronized boolean isRetryPending(final long now) {
+        return now < retryTime;
+    }
+
+    /**
+     * Sends the pending documents to Solr, in one add and one delete request,
+     * made visible by the commitWithin of the core : no explicit commit. On
+     * error, the documents which have not been updated again are put back in
+     * the buffer, but the ones which failed their max attempts.
+     */
+    public void flush(final int commitWithin) throws Exception {
+        synchronized (flushLock) {
+            final Map<String, Object> documents;
+            synchronized (this) {
+                if (pendingDocuments.isEmpty()) {
+                    return;
+                }
+                documents = pendingDocuments;
+                pendingDocuments = new LinkedHashMap<String, Object>();
+            }
+
+            final List<Object> beans = new ArrayList<Object>();
+            final List<String> deletedIds = new ArrayList<String>();
+            for (Entry<String, Object> entry : documents.entrySet()) {
+                if (entry.getValue() == DELETE) {
+                    deletedIds.add(entry.getKey());
+                } else {
+                    beans.add(entry.getValue());
+                }
+            }
+
+            long start = System.currentTimeMillis();
+            try {
+                if (!beans.isEmpty()) {
+                    solrServer.addBeans(beans, commitWithin);
+                }
+                if (!deletedIds.isEmpty()) {
+                    solrServer.deleteById(deletedIds, commitWithin);
+                }
+            } catch (Exception e) {
+                flushErrorCount.incrementAndGet();
+                requeue(documents);
+                throw e;
+            }
+
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                consecutiveFailures = 0;
+                retryTime = 0;
+                failedAttempts.keySet().removeAll(documents.keySet());
+            }
+            flushCount.incrementAndGet();
+            flushedDocumentCount.addAndGet(documents.size());
+            flushTotalTime.addAndGet(now - start);
+            lastFlushTime = now - start;
+            lastFlushSize = documents.size();
+            lastFlushDate = now;
+            if (firstFlushDate == 0) {
+                firstFlushDate = start;
+            }
+        }
+    }
+
+    private synchronized void requeue(final Map<String, Object> documents) {
+        // THE UPDATES RECEIVED DURING THE FLUSH ARE MORE RECENT
+        Map<String, Object> merged = new LinkedHashMap<String, Object>();
+        for (Entry<String, Object> entry : documents.entrySet()) {
+            String id = entry.getKey();
+            if (pendingDocuments.containsKey(id)) {
+                continue;
+            }
+            Integer attempts = failedAttempts.get(id);
+            attempts = attempts != null ? attempts + 1 : 1;
+            if (attempts >= maxAttempts) {
+                failedAttempts.remove(id);
+                drop(id, entry.getValue(), "not sent after " + attempts + " attempts");
+                continue;
+            }
+            failedAttempts.put(id, attempts);
+            merged.put(id, entry.getValue());
+        }
+        merged.putAll(pendingDocuments);
+        pendingDocuments = merged;
+        dropOverflow();
+
+        long now = System.currentTimeMillis();
+        oldestPendingTime = now;
+        consecutiveFailures++;
+        retryTime = now + getRetryDelay();
+    }
+
+    private long getRetryDelay() {
+        if (consecutiveFailures > 30) {
+            return maxRetryDelay;
+        }
+        return Math.min(retryDelay << (consecutiveFailures - 1), maxRetryDelay);
+    }
+
+    public String getCoreName() {
+        return coreName;
+    }
+
+    public long getAddCount() {
+        return addCount.get();
+    }
+
+    public long getDeleteCount() {
+        return deleteCount.get();
+    }
+
+    /**
+     * @return the updates merged with a more recent update of the same document.
+     */
+    public long getMergedCount() {
+        return mergedCount.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    public long getFlushErrorCount() {
+        return flushErrorCount.get();
+    }
+
+    public long getFlushedDocumentCount() {
+        return flushedDocumentCount.get();
+    }
+
+    /**
+     * @return the updates dropped : over the max size of the buffer, or after their max attempts.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getLastFlushTime() {
+        return lastFlushTime;
+    }
+
+    public long getLastFlushSize() {
+        return lastFlushSize;
+    }
+
+    public long getAverageFlushTime() {
+        long count = flushCount.get();
+        return count > 0 ? flushTotalTime.get() / count : 0;
+    }
+
+    /**
+     * @return the flushed documents by second, since the first flush.
+     */
+    public double getDocumentsPerSecond() {
+        if (firstFlushDate == 0 || lastFlushDate <= firstFlushDate) {
+            return lastFlushTime > 0 ? lastFlushSize * 1000d / lastFlushTime : 0;
+        }
+        return flushedDocumentCount.get() * 1000d / (lastFlushDate - firstFlushDate);
+    }
+
+    @Override
+    public String toString() {
+        return "SolrIndexBuffer [coreName=" + coreName + ", queueDepth=" + getQueueDepth() + ", addCount=" + getAddCount() + ", deleteCount="
+                + getDeleteCount() + ", mergedCount=" + getMergedCount() + ", flushCount=" + getFlushCount() + ", flushErrorCount=" + getFlushErrorCount()
+                + ", droppedCount=" + getDroppedCount() + ", lastFlushTime=" + getLastFlushTime() + ", averageFlushTime=" + getAverageFlushTime() + ", documentsPerSecond="
+                + getDocumentsPerSecond() + "]";
+    }
+
+}
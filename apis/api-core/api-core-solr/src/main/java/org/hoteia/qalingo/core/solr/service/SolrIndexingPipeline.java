@@ -0,0 +1,226 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.solr.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Buffers the Solr updates by core and sends them by batches : when a core
+ * buffer reaches the batch size, or when its oldest update waits for more than
+ * the flush delay. The updates are made visible by commitWithin, the indexing
+ * never sends an explicit commit.
+ *
+ * While Solr is down, the buffers keep at most their max pending documents
+ * and retry with a growing delay : the documents over the size or the
+ * attempts are dropped, logged and counted.
+ */
+@Component(value = "solrIndexingPipeline")
+@ManagedResource
+public class SolrIndexingPipeline {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Value("${solr.indexing.batch.size:500}")
+    private int batchSize = 500;
+
+    @Value("${solr.indexing.flush.delay:2000}")
+    private long flushDelay = 2000;
+
+    @Value("${solr.indexing.commit.within:10000}")
+    private int commitWithin = 10000;
+
+    @Value("${solr.indexing.max.pending:100000}")
+    private int maxPendingDocuments = 100000;
+
+    @Value("${solr.indexing.max.attempts:5}")
+    private int maxAttempts = 5;
+
+    @Value("${solr.indexing.retry.max.delay:60000}")
+    private long maxRetryDelay = 60000;
+
+    private final ConcurrentMap<String, SolrIndexBuffer> buffers = new ConcurrentHashMap<String, SolrIndexBuffer>();
+
+    private ScheduledExecutorService flushExecutor;
+
+    @PostConstruct
+    public void start() {
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "solr-indexing-flush");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long checkDelay = Math.max(flushDelay / 4, 100);
+        flushExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                flushExpired();
+            }
+        }, checkDelay, checkDelay, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+        }
+        flushAll();
+    }
+
+    public void add(final String coreName, final SolrServer solrServer, final Object id, final Object solrBean) {
+        SolrIndexBuffer buffer = getBuffer(coreName, solrServer);
+        int queueDepth = buffer.add(id.toString(), solrBean);
+        if (queueDepth >= batchSize && !buffer.isRetryPending(System.currentTimeMillis())) {
+            flush(buffer);
+        }
+    }
+
+    public void delete(final String coreName, final SolrServer solrServer, final Object id) {
+        SolrIndexBuffer buffer = getBuffer(coreName, solrServer);
+        int queueDepth = buffer.delete(id.toString());
+        if (queueDepth >= batchSize && !buffer.isRetryPending(System.currentTimeMillis())) {
+            flush(buffer);
+        }
+    }
+
+    /**
+     * Sends the pending updates of this core now.
+     */
+    public void flush(final String coreName) {
+        SolrIndexBuffer buffer = buffers.get(coreName);
+        if (buffer != null) {
+            flush(buffer);
+        }
+    }
+
+    @ManagedOperation
+    public void flushAll() {
+        for (SolrIndexBuffer buffer : buffers.values()) {
+            flush(buffer);
+        }
+    }
+
+    protected void flushExpired() {
+        long now = System.currentTimeMillis();
+        for (SolrIndexBuffer buffer : buffers.values()) {
+            if (buffer.isExpired(now, flushDelay)) {
+                flush(buffer);
+            }
+        }
+    }
+
+    protected void flush(final SolrIndexBuffer buffer) {
+        try {
+            buffer.flush(commitWithin);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Solr indexing flushed: " + buffer);
+            }
+        } catch (Exception e) {
+            logger.error("Solr indexing flush failed, the documents under their max attempts are retried: " + buffer, e);
+        }
+    }
+
+    protected SolrIndexBuffer getBuffer(final String coreName, final SolrServer solrServer) {
+        SolrIndexBuffer buffer = buffers.get(coreName);
+        if (buffer == null) {
+            buffer = new SolrIndexBuffer(coreName, solrServer, maxPendingDocuments, maxAttempts, flushDelay, maxRetryDelay);
+            SolrIndexBuffer existingBuffer = buffers.putIfAbsent(coreName, buffer);
+            if (existingBuffer != null) {
+                buffer = existingBuffer;
+            }
+        }
+        return buffer;
+    }
+
+    public Collection<SolrIndexBuffer> getBuffers() {
+        return buffers.values();
+    }
+
+    @ManagedAttribute
+    public int getQueueDepth() {
+        int queueDepth = 0;
+        for (SolrIndexBuffer buffer : buffers.values()) {
+            queueDepth += buffer.getQueueDepth();
+        }
+        return queueDepth;
+    }
+
+    /**
+     * @return the updates dropped by all the cores : they must be indexed again.
+     */
+    @ManagedAttribute
+    public long getDroppedCount() {
+        long droppedCount = 0;
+        for (SolrIndexBuffer buffer : buffers.values()) {
+            droppedCount += buffer.getDroppedCount();
+        }
+        return droppedCount;
+    }
+
+    @ManagedAttribute
+    public List<String> getStatistics() {
+        List<String> statistics = new ArrayList<String>();
+        for (SolrIndexBuffer buffer : buffers.values()) {
+            statistics.add(buffer.toString());
+        }
+        return statistics;
+    }
+
+    @ManagedAttribute
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @ManagedAttribute
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    @ManagedAttribute
+    public long getFlushDelay() {
+        return flushDelay;
+    }
+
+    @ManagedAttribute
+    public void setFlushDelay(long flushDelay) {
+        this.flushDelay = flushDelay;
+    }
+
+    @ManagedAttribute
+    public int getCommitWithin() {
+        return commitWithin;
+    }
+
+    @ManagedAttribute
+    public void setCommitWithin(int commitWithin) {
+        this.commitWithin = commitWithin;
+    }
+
+}
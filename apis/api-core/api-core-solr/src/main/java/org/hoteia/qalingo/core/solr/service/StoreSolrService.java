@@ -14,20 +14,19 @@ import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.solr.client.solrj.SolrQuery;
-import org.apache.solr.client.solrj.SolrRequest;
-import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.hoteia.qalingo.core.domain.Store;
 import org.hoteia.qalingo.core.solr.bean.StoreSolr;
+import org.hoteia.qalingo.core.solr.bean.SolrPagination;
 import org.hoteia.qalingo.core.solr.response.StoreResponseBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service("storeSolrService")
@@ -36,8 +35,13 @@ public class StoreSolrService extends AbstractSolrService {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    public static final String CORE_NAME = "store";
+
     @Autowired
     protected SolrServer storeSolrServer;
+
+    @Autowired
+    protected SolrIndexingPipeline solrIndexingPipeline;
     
     public void addOrUpdateStore(final Store store) throws SolrServerException, IOException {
         if (store.getId() == null) {
@@ -46,6 +50,12 @@ public class StoreSolrService extends AbstractSolrService {
         if (logger.isDebugEnabled()) {
             logger.debug("Indexing store " + store.getId() + " : " + store.getName() + " : " + store.getCity());
         }
+        StoreSolr storeSolr = buildStoreSolr(store);
+        solrIndexingPipeline.add(CORE_NAME, storeSolrServer, storeSolr.getId(), storeSolr);
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public StoreSolr buildStoreSolr(final Store store) {
         StoreSolr storeSolr = new StoreSolr();
         storeSolr.setId(store.getId());
         storeSolr.setCode(store.getCode());
@@ -54,8 +64,7 @@ public class StoreSolrService extends AbstractSolrService {
         storeSolr.setCountryCode(store.getCountryCode());
         storeSolr.setPostalCode(store.getPostalCode());
         storeSolr.setType(store.getType());
-        storeSolrServer.addBean(storeSolr);
-        storeSolrServer.commit();
+        return storeSolr;
     }
     
     public void removeStore(final StoreSolr storeSolr) throws SolrServerException, IOException {
@@ -65,18 +74,32 @@ public class StoreSolrService extends AbstractSolrService {
         if (logger.isDebugEnabled()) {
             logger.debug("Remove Index Store " + storeSolr.getId() + " : " + storeSolr.getName() + " : " + storeSolr.getCity());
         }
-        storeSolrServer.deleteById(storeSolr.getId().toString());
-        storeSolrServer.commit();
+        solrIndexingPipeline.delete(CORE_NAME, storeSolrServer, storeSolr.getId());
     }
     
+    /**
+     * @deprecated bounded by the max rows, the response is then flagged as truncated : page the
+     *             search with a SolrPagination, or stream all the documents.
+     */
+    @Deprecated
     public StoreResponseBean searchStore(String searchBy, String searchText, List<String> facetFields) throws SolrServerException, IOException {
     	return searchStore(searchBy, searchText, facetFields, null, null);
     }
 
+    /**
+     * @deprecated bounded by the max rows, the response is then flagged as truncated : page the
+     *             search with a SolrPagination, or stream all the documents.
+     */
+    @Deprecated
     public StoreResponseBean searchStore(String searchBy, String searchText, List<String> facetFields,
                                          List<String> cities, List<String> countries) throws SolrServerException, IOException {
+        return searchStore(searchBy, searchText, facetFields, cities, countries, null);
+    }
+
+    public StoreResponseBean searchStore(final String searchBy, final String searchText, final List<String> facetFields,
+                                         final List<String> cities, final List<String> countries, final SolrPagination pagination) throws SolrServerException, IOException {
         SolrQuery solrQuery = new SolrQuery();
-        solrQuery.setParam("rows", ROWS_DEFAULT_VALUE);
+        applyPagination(solrQuery, pagination);
         
         if (StringUtils.isEmpty(searchBy)) {
             throw new IllegalArgumentException("SearchBy field can not be Empty or Blank!");
@@ -124,14 +147,13 @@ public class StoreSolrService extends AbstractSolrService {
         
         logger.debug("QueryRequest solrQuery: " + solrQuery);
 
-        SolrRequest request = new QueryRequest(solrQuery, METHOD.POST);
-
-        QueryResponse response = new QueryResponse(storeSolrServer.request(request), storeSolrServer);
+        QueryResponse response = query(storeSolrServer, solrQuery);
 
         logger.debug("QueryResponse Obj: " + response.toString());
         
         List<StoreSolr> solrList = response.getBeans(StoreSolr.class);
         StoreResponseBean storeResponseBean = new StoreResponseBean();
+        fillPagination(storeResponseBean, response, solrQuery, pagination);
         storeResponseBean.setStoreSolrList(solrList);
 
         if (facetFields != null && facetFields.size() > 0) {
@@ -141,9 +163,14 @@ public class StoreSolrService extends AbstractSolrService {
         return storeResponseBean;
     }
 	
+    /**
+     * @deprecated bounded by the max rows, the response is then flagged as truncated : page the
+     *             search with a SolrPagination, or stream all the documents.
+     */
+    @Deprecated
     public StoreResponseBean searchStore() throws SolrServerException, IOException {
         SolrQuery solrQuery = new SolrQuery();
-        solrQuery.setParam("rows", ROWS_DEFAULT_VALUE);
+        applyPagination(solrQuery, null);
         
         solrQuery.setQuery("*");
         solrQuery.setFacet(true);
@@ -153,18 +180,28 @@ public class StoreSolrService extends AbstractSolrService {
         
         logger.debug("QueryRequest solrQuery: " + solrQuery);
 
-        SolrRequest request = new QueryRequest(solrQuery, METHOD.POST);
-        
-        QueryResponse response = new QueryResponse(storeSolrServer.request(request), storeSolrServer);
+        QueryResponse response = query(storeSolrServer, solrQuery);
         
         logger.debug("QueryResponse Obj: " + response.toString());
 
         List<StoreSolr> solrList = response.getBeans(StoreSolr.class);
         List<FacetField> solrFacetFieldList = response.getFacetFields();
         StoreResponseBean storeResponseBean = new StoreResponseBean();
+        fillPagination(storeResponseBean, response, solrQuery, null);
         storeResponseBean.setStoreSolrList(solrList);
         storeResponseBean.setStoreSolrFacetFieldList(solrFacetFieldList);
         return storeResponseBean;
     }
-    
+
+    /**
+     * Streams all the matching stores to the handler, without loading the whole result.
+     * 
+     * @return the number of handled documents.
+     */
+    public long streamStore(final String searchBy, final String searchText, final SolrDocumentHandler<StoreSolr> handler) throws SolrServerException, IOException {
+        SolrQuery solrQuery = buildSearchQuery(searchBy, searchText);
+        logger.debug("Stream solrQuery: " + solrQuery);
+        return stream(storeSolrServer, solrQuery, StoreSolr.class, handler);
+    }
+
 }
\ No newline at end of file
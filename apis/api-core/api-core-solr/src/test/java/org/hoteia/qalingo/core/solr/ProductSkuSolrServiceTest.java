@@ -21,8 +21,12 @@ import org.hoteia.qalingo.core.domain.MarketArea;
 import org.hoteia.qalingo.core.domain.ProductSku;
 import org.hoteia.qalingo.core.domain.ProductSkuPrice;
 import org.hoteia.qalingo.core.domain.Retailer;
+import org.hoteia.qalingo.core.solr.bean.ProductSkuSolr;
+import org.hoteia.qalingo.core.solr.bean.SolrPagination;
 import org.hoteia.qalingo.core.solr.response.ProductSkuResponseBean;
 import org.hoteia.qalingo.core.solr.service.ProductSkuSolrService;
+import org.hoteia.qalingo.core.solr.service.SolrDocumentHandler;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -167,6 +171,60 @@ public class ProductSkuSolrServiceTest {
         printData();
     }
 
+	/**
+	 * Test case to check: paged search returns the window and the total hits
+	 */
+    @Test
+    public void testPagedSearch() throws SolrServerException, IOException {
+        logger.debug("--------------->Paged Search ");
+        responseBean = productSkuSolrService.searchProductSku("id", "", "", SolrPagination.page(0, 1));
+        Assert.assertTrue(responseBean.getProductSkuSolrList().size() <= 1);
+        Assert.assertTrue(responseBean.getTotalHits() >= responseBean.getProductSkuSolrList().size());
+        printData();
+    }
+
+	/**
+	 * Test case to check: streaming search handles each document once
+	 */
+    @Test
+    public void testStreamSearch() throws SolrServerException, IOException {
+        logger.debug("--------------->Stream Search ");
+        final List<Long> ids = new ArrayList<Long>();
+        long count = productSkuSolrService.streamProductSku("id", "", new SolrDocumentHandler<ProductSkuSolr>() {
+            public void handle(ProductSkuSolr productSkuSolr) throws Exception {
+                Assert.assertFalse(ids.contains(productSkuSolr.getId()));
+                ids.add(productSkuSolr.getId());
+            }
+        });
+        Assert.assertEquals(ids.size(), count);
+    }
+
+	/**
+	 * Test case to check: unpaged search is bounded by the max rows and flagged as truncated, paged search is not
+	 */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testUnpagedSearchIsBoundedByMaxRows() throws SolrServerException, IOException {
+        logger.debug("--------------->Unpaged Search ");
+        int maxRows = productSkuSolrService.getMaxRows();
+        productSkuSolrService.setMaxRows(1);
+        try {
+            responseBean = productSkuSolrService.searchProductSku("id", "", "");
+            Assert.assertEquals(1, responseBean.getRows());
+            Assert.assertTrue(responseBean.getProductSkuSolrList().size() <= 1);
+            Assert.assertEquals(responseBean.getTotalHits() > responseBean.getProductSkuSolrList().size(), responseBean.isTruncated());
+
+            responseBean = productSkuSolrService.searchProductSku("id", "", "", SolrPagination.page(0, 1));
+            Assert.assertFalse(responseBean.isTruncated());
+
+            responseBean = productSkuSolrService.searchProductSku("id", "", "", new SolrPagination(0, 10));
+            Assert.assertEquals(1, responseBean.getRows());
+            Assert.assertEquals(responseBean.getTotalHits() > responseBean.getProductSkuSolrList().size(), responseBean.isTruncated());
+        } finally {
+            productSkuSolrService.setMaxRows(maxRows);
+        }
+    }
+
     public void printData() {
         if (responseBean != null) {
             logger.debug("---Facets---");
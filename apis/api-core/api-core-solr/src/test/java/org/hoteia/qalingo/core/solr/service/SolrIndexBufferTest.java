@@ -0,0 +1,96 @@
+/**
+ * Most of the code in the Qalingo project is copyrighted Hoteia and licensed
+ * under the Apache License Version 2.0 (release version 0.8.0)
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *                   Copyright (c) Hoteia, 2012-2014
+ * http://www.hoteia.com - http://twitter.com/hoteia - contact@hoteia.com
+ *
+ */
+package org.hoteia.qalingo.core.solr.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The pending updates of a core while Solr is down : bounded, retried after
+ * a delay, dropped after their max attempts.
+ */
+public class SolrIndexBufferTest {
+
+    private SolrServer solrServer;
+
+    @Before
+    public void setUp() {
+        solrServer = mock(SolrServer.class);
+    }
+
+    @Test
+    public void testOldestUpdatesAreDroppedOverMaxSize() {
+        SolrIndexBuffer buffer = new SolrIndexBuffer("test", solrServer, 2, 5, 1000, 60000);
+        buffer.add("1", "A");
+        buffer.add("2", "B");
+        assertEquals(2, buffer.add("1", "A2"));
+        assertEquals(2, buffer.add("3", "C"));
+        assertEquals(1, buffer.getDroppedCount());
+        assertEquals(2, buffer.getQueueDepth());
+    }
+
+    @Test
+    public void testFailedDocumentsAreDroppedAfterMaxAttempts() throws Exception {
+        when(solrServer.addBeans(anyCollection(), anyInt())).thenThrow(new SolrServerException("Solr is down"));
+        SolrIndexBuffer buffer = new SolrIndexBuffer("test", solrServer, 100, 3, 1000, 60000);
+        buffer.add("1", "A");
+
+        for (int attempt = 1; attempt <= 3; attempt++) {
+            try {
+                buffer.flush(10000);
+                fail();
+            } catch (SolrServerException e) {
+                // EXPECTED
+            }
+            if (attempt < 3) {
+                assertEquals(1, buffer.getQueueDepth());
+                assertTrue(buffer.isRetryPending(System.currentTimeMillis()));
+                assertFalse(buffer.isExpired(System.currentTimeMillis(), 0));
+            }
+        }
+        assertEquals(0, buffer.getQueueDepth());
+        assertEquals(1, buffer.getDroppedCount());
+        assertEquals(3, buffer.getFlushErrorCount());
+    }
+
+    @Test
+    public void testNewUpdateHasItsOwnAttempts() throws Exception {
+        when(solrServer.addBeans(anyCollection(), anyInt())).thenThrow(new SolrServerException("Solr is down"));
+        SolrIndexBuffer buffer = new SolrIndexBuffer("test", solrServer, 100, 2, 1000, 60000);
+        buffer.add("1", "A");
+        try {
+            buffer.flush(10000);
+            fail();
+        } catch (SolrServerException e) {
+            // EXPECTED
+        }
+        buffer.add("1", "A2");
+        try {
+            buffer.flush(10000);
+            fail();
+        } catch (SolrServerException e) {
+            // EXPECTED
+        }
+        assertEquals(1, buffer.getQueueDepth());
+        assertEquals(0, buffer.getDroppedCount());
+    }
+
+}
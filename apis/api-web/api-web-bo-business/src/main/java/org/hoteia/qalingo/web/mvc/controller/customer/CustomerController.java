@@ -21,6 +21,8 @@ import org.apache.commons.lang.StringUtils;
 import org.hoteia.qalingo.core.Constants;
 import org.hoteia.qalingo.core.ModelConstants;
 import org.hoteia.qalingo.core.RequestConstants;
+import org.hoteia.qalingo.core.dao.PageRequest;
+import org.hoteia.qalingo.core.dao.PagedResult;
 import org.hoteia.qalingo.core.domain.Customer;
 import org.hoteia.qalingo.core.domain.enumtype.BoUrls;
 import org.hoteia.qalingo.core.i18n.enumtype.ScopeWebMessage;
@@ -30,6 +32,7 @@ import org.hoteia.qalingo.core.web.mvc.form.CustomerForm;
 import org.hoteia.qalingo.core.web.mvc.viewbean.CustomerViewBean;
 import org.hoteia.qalingo.core.web.servlet.ModelAndViewThemeDevice;
 import org.hoteia.qalingo.core.web.servlet.view.RedirectView;
+import org.hoteia.qalingo.core.web.util.PagedResultListHolder;
 import org.hoteia.qalingo.web.mvc.controller.AbstractBusinessBackofficeController;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.support.PagedListHolder;
@@ -172,49 +175,34 @@ public class CustomerController extends AbstractBusinessBackofficeController {
     protected void displayList(final HttpServletRequest request, final Model model, final RequestData requestData) throws Exception {
         String url = request.getRequestURI();
         String page = request.getParameter(Constants.PAGINATION_PAGE_PARAMETER);
-        String sessionKey = "PagedListHolder_Customers";
-        
-        PagedListHolder<CustomerViewBean> customerViewBeanPagedListHolder = new PagedListHolder<CustomerViewBean>();
-        
-        if(StringUtils.isEmpty(page)){
-            customerViewBeanPagedListHolder = initList(request, sessionKey);
-            
-        } else {
-            customerViewBeanPagedListHolder = (PagedListHolder) request.getSession().getAttribute(sessionKey); 
-            if (customerViewBeanPagedListHolder == null) { 
-                customerViewBeanPagedListHolder = initList(request, sessionKey);
-            }
-            int pageTarget = new Integer(page).intValue() - 1;
-            int pageCurrent = customerViewBeanPagedListHolder.getPage();
-            if (pageCurrent < pageTarget) { 
-                for (int i = pageCurrent; i < pageTarget; i++) {
-                    customerViewBeanPagedListHolder.nextPage(); 
-                }
-            } else if (pageCurrent > pageTarget) { 
-                for (int i = pageTarget; i < pageCurrent; i++) {
-                    customerViewBeanPagedListHolder.previousPage(); 
-                }
-            }
+        int pageTarget = 0;
+        if (StringUtils.isNotEmpty(page)) {
+            pageTarget = Math.max(new Integer(page).intValue() - 1, 0);
+        }
+
+        // ONLY THE PAGE IS LOADED, WITH THE COUNT OF THE LIST
+        PageRequest pageRequest = PageRequest.page(pageTarget, Constants.PAGE_SIZE);
+        pageRequest.setSortProperty("lastname");
+        pageRequest.setCount(true);
+        PagedResult<Customer> pagedResult = customerService.findCustomers(pageRequest);
+        if (pagedResult.getItems().isEmpty() && pageTarget > 0 && pagedResult.getTotalCount() > 0) {
+            // PAGE AFTER THE END OF THE LIST : LAST PAGE
+            pageTarget = (int) ((pagedResult.getTotalCount() - 1) / Constants.PAGE_SIZE);
+            pageRequest = PageRequest.page(pageTarget, Constants.PAGE_SIZE);
+            pageRequest.setSortProperty("lastname");
+            pageRequest.setCount(true);
+            pagedResult = customerService.findCustomers(pageRequest);
         }
+
+        final List<CustomerViewBean> customerViewBeans = new ArrayList<CustomerViewBean>();
+        for (Iterator<Customer> iterator = pagedResult.getItems().iterator(); iterator.hasNext();) {
+            Customer customer = (Customer) iterator.next();
+            customerViewBeans.add(backofficeViewBeanFactory.buildViewBeanCustomer(requestData, customer));
+        }
+        PagedListHolder<CustomerViewBean> customerViewBeanPagedListHolder = new PagedResultListHolder<CustomerViewBean>(customerViewBeans, pageTarget, Constants.PAGE_SIZE, pagedResult.getTotalCount());
+
         model.addAttribute(Constants.PAGINATION_PAGE_URL, url);
         model.addAttribute(Constants.PAGINATION_PAGE_PAGED_LIST_HOLDER, customerViewBeanPagedListHolder);
     }
     
-	private PagedListHolder<CustomerViewBean> initList(final HttpServletRequest request, String sessionKey) throws Exception{
-		PagedListHolder<CustomerViewBean> customerViewBeanPagedListHolder = new PagedListHolder<CustomerViewBean>();
-		
-		final List<CustomerViewBean> customerViewBeans = new ArrayList<CustomerViewBean>();
-
-		final List<Customer> customers = customerService.findCustomers();
-		for (Iterator<Customer> iterator = customers.iterator(); iterator.hasNext();) {
-			Customer customer = (Customer) iterator.next();
-			customerViewBeans.add(backofficeViewBeanFactory.buildViewBeanCustomer(requestUtil.getRequestData(request), customer));
-		}
-		customerViewBeanPagedListHolder = new PagedListHolder<CustomerViewBean>(customerViewBeans);
-		customerViewBeanPagedListHolder.setPageSize(Constants.PAGE_SIZE);
-        request.getSession().setAttribute(sessionKey, customerViewBeanPagedListHolder); 
-        
-        return customerViewBeanPagedListHolder;
-	}
-    
 }
\ No newline at end of file
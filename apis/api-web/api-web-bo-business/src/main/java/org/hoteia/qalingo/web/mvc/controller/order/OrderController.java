@@ -19,6 +19,8 @@ import org.apache.commons.lang.StringUtils;
 import org.hoteia.qalingo.core.Constants;
 import org.hoteia.qalingo.core.ModelConstants;
 import org.hoteia.qalingo.core.RequestConstants;
+import org.hoteia.qalingo.core.dao.PageRequest;
+import org.hoteia.qalingo.core.dao.PagedResult;
 import org.hoteia.qalingo.core.domain.OrderCustomer;
 import org.hoteia.qalingo.core.domain.enumtype.BoUrls;
 import org.hoteia.qalingo.core.pojo.RequestData;
@@ -26,6 +28,7 @@ import org.hoteia.qalingo.core.service.OrderCustomerService;
 import org.hoteia.qalingo.core.web.mvc.viewbean.OrderViewBean;
 import org.hoteia.qalingo.core.web.servlet.ModelAndViewThemeDevice;
 import org.hoteia.qalingo.core.web.servlet.view.RedirectView;
+import org.hoteia.qalingo.core.web.util.PagedResultListHolder;
 import org.hoteia.qalingo.web.mvc.controller.AbstractBusinessBackofficeController;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.support.PagedListHolder;
@@ -82,48 +85,34 @@ public class OrderController extends AbstractBusinessBackofficeController {
     protected void displayList(final HttpServletRequest request, final Model model, final RequestData requestData) throws Exception {
         String url = request.getRequestURI();
         String page = request.getParameter(Constants.PAGINATION_PAGE_PARAMETER);
-        String sessionKey = "PagedListHolder_Orders";
-        
-        PagedListHolder<OrderViewBean> orderViewBeanPagedListHolder = new PagedListHolder<OrderViewBean>();
-        
-        if(StringUtils.isEmpty(page)){
-            orderViewBeanPagedListHolder = initList(request, sessionKey);
-            
-        } else {
-            orderViewBeanPagedListHolder = (PagedListHolder) request.getSession().getAttribute(sessionKey); 
-            if (orderViewBeanPagedListHolder == null) { 
-                orderViewBeanPagedListHolder = initList(request, sessionKey);
-            }
-            int pageTarget = new Integer(page).intValue() - 1;
-            int pageCurrent = orderViewBeanPagedListHolder.getPage();
-            if (pageCurrent < pageTarget) { 
-                for (int i = pageCurrent; i < pageTarget; i++) {
-                    orderViewBeanPagedListHolder.nextPage(); 
-                }
-            } else if (pageCurrent > pageTarget) { 
-                for (int i = pageTarget; i < pageCurrent; i++) {
-                    orderViewBeanPagedListHolder.previousPage(); 
-                }
-            } 
+        int pageTarget = 0;
+        if (StringUtils.isNotEmpty(page)) {
+            pageTarget = Math.max(new Integer(page).intValue() - 1, 0);
+        }
+
+        // ONLY THE PAGE IS LOADED, WITH THE COUNT OF THE LIST
+        PageRequest pageRequest = PageRequest.page(pageTarget, Constants.PAGE_SIZE);
+        pageRequest.setSortProperty("dateCreate");
+        pageRequest.setCount(true);
+        PagedResult<OrderCustomer> pagedResult = orderCustomerService.findOrders(pageRequest);
+        if (pagedResult.getItems().isEmpty() && pageTarget > 0 && pagedResult.getTotalCount() > 0) {
+            // PAGE AFTER THE END OF THE LIST : LAST PAGE
+            pageTarget = (int) ((pagedResult.getTotalCount() - 1) / Constants.PAGE_SIZE);
+            pageRequest = PageRequest.page(pageTarget, Constants.PAGE_SIZE);
+            pageRequest.setSortProperty("dateCreate");
+            pageRequest.setCount(true);
+            pagedResult = orderCustomerService.findOrders(pageRequest);
+        }
+
+        final List<OrderViewBean> orderViewBeans = new ArrayList<OrderViewBean>();
+        for (Iterator<OrderCustomer> iterator = pagedResult.getItems().iterator(); iterator.hasNext();) {
+            OrderCustomer orderCustomer = (OrderCustomer) iterator.next();
+            orderViewBeans.add(backofficeViewBeanFactory.buildViewBeanOrder(requestData, orderCustomer));
         }
+        PagedListHolder<OrderViewBean> orderViewBeanPagedListHolder = new PagedResultListHolder<OrderViewBean>(orderViewBeans, pageTarget, Constants.PAGE_SIZE, pagedResult.getTotalCount());
+
         model.addAttribute(Constants.PAGINATION_PAGE_URL, url);
         model.addAttribute(Constants.PAGINATION_PAGE_PAGED_LIST_HOLDER, orderViewBeanPagedListHolder);
     }
-        
-	private PagedListHolder<OrderViewBean> initList(final HttpServletRequest request, String sessionKey) throws Exception{
-		PagedListHolder<OrderViewBean> orderViewBeanPagedListHolder = new PagedListHolder<OrderViewBean>();
-		
-		final List<OrderViewBean> orderViewBeans = new ArrayList<OrderViewBean>();
-
-		final List<OrderCustomer> orderCustomers = orderCustomerService.findOrders();
-		for (Iterator<OrderCustomer> iterator = orderCustomers.iterator(); iterator.hasNext();) {
-			OrderCustomer orderCustomer = (OrderCustomer) iterator.next();
-			orderViewBeans.add(backofficeViewBeanFactory.buildViewBeanOrder(requestUtil.getRequestData(request), orderCustomer));
-		}
-		orderViewBeanPagedListHolder = new PagedListHolder<OrderViewBean>(orderViewBeans);
-		orderViewBeanPagedListHolder.setPageSize(Constants.PAGE_SIZE);
-        request.getSession().setAttribute(sessionKey, orderViewBeanPagedListHolder); 
-        return orderViewBeanPagedListHolder;
-	}
     
 }
\ No newline at end of file
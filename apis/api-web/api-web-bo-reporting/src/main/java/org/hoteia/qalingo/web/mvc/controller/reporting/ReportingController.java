@@ -9,12 +9,23 @@
  */
 package org.hoteia.qalingo.web.mvc.controller.reporting;
 
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.lang.StringUtils;
 import org.hoteia.qalingo.core.domain.enumtype.BoUrls;
+import org.hoteia.qalingo.core.pojo.RequestData;
+import org.hoteia.qalingo.core.reporting.SalesDimension;
+import org.hoteia.qalingo.core.reporting.SalesQuery;
+import org.hoteia.qalingo.core.reporting.SalesReportingEngine;
 import org.hoteia.qalingo.core.web.servlet.ModelAndViewThemeDevice;
 import org.hoteia.qalingo.web.mvc.controller.AbstractReportingBackofficeController;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -26,11 +37,67 @@ import org.springframework.web.servlet.ModelAndView;
 @Controller("reportingController")
 public class ReportingController extends AbstractReportingBackofficeController {
 
+    protected static final String SALES_DATE_PATTERN = "yyyy-MM-dd";
+    
+    protected static final int SALES_DEFAULT_DAYS = 30;
+    
+    protected static final int SALES_TOP_SIZE = 10;
+    
+    @Autowired
+    protected SalesReportingEngine salesReportingEngine;
+    
 	@RequestMapping(value = BoUrls.REPORTING_URL, method = RequestMethod.GET)
 	public ModelAndView reporting(final HttpServletRequest request, final HttpServletResponse response) throws Exception {
 		ModelAndViewThemeDevice modelAndView = new ModelAndViewThemeDevice(getCurrentVelocityPath(request), BoUrls.REPORTING.getVelocityPage());
+		final RequestData requestData = requestUtil.getRequestData(request);
+		
+		// SALES OF THE CURRENT MARKET AREA, DRILL-DOWN BY THE REQUEST PARAMETERS
+		SalesQuery salesQuery = new SalesQuery();
+		salesQuery.setMarketAreaId(requestData.getMarketArea().getId());
+		Calendar calendar = Calendar.getInstance();
+		Date toDate = parseSalesDate(request.getParameter("to"), calendar.getTime());
+		calendar.setTime(toDate);
+		calendar.add(Calendar.DAY_OF_MONTH, 1 - SALES_DEFAULT_DAYS);
+		salesQuery.setFromDate(parseSalesDate(request.getParameter("from"), calendar.getTime()));
+		salesQuery.setToDate(toDate);
+		// THE AMOUNTS OF SEVERAL CURRENCIES CAN NOT BE SUMMED : THE CURRENCY OF THE MARKET AREA BY DEFAULT
+		String currencyCode = request.getParameter("currency");
+		if (StringUtils.isEmpty(currencyCode) && requestData.getMarketAreaCurrency() != null) {
+		    currencyCode = requestData.getMarketAreaCurrency().getCode();
+		}
+		salesQuery.setCurrencyCode(StringUtils.defaultIfEmpty(currencyCode, null));
+		salesQuery.setSkuCode(StringUtils.defaultIfEmpty(request.getParameter("sku"), null));
+		if (StringUtils.isNumeric(request.getParameter("retailerId")) && StringUtils.isNotEmpty(request.getParameter("retailerId"))) {
+		    salesQuery.setRetailerId(Long.valueOf(request.getParameter("retailerId")));
+		}
+		modelAndView.addObject("salesQuery", salesQuery);
+		// THE CUBE IS BUILT IN THE BACKGROUND : NO FIGURES UNTIL IT IS READY
+		modelAndView.addObject("salesReportingReady", salesReportingEngine.isBuilt());
+		
+		salesQuery.setGroupBy(SalesDimension.DAY);
+		modelAndView.addObject("salesByDay", salesReportingEngine.query(salesQuery));
+		
+		salesQuery.setGroupBy(SalesDimension.SKU);
+		for (SalesDimension salesDimension : SalesDimension.values()) {
+		    if (salesDimension.name().equalsIgnoreCase(request.getParameter("groupBy"))) {
+		        salesQuery.setGroupBy(salesDimension);
+		    }
+		}
+		salesQuery.setMaxResults(SALES_TOP_SIZE);
+		modelAndView.addObject("salesTop", salesReportingEngine.query(salesQuery));
 		
         return modelAndView;
 	}
+	
+	protected Date parseSalesDate(final String value, final Date defaultDate) {
+	    if (StringUtils.isNotEmpty(value)) {
+	        try {
+	            return new SimpleDateFormat(SALES_DATE_PATTERN).parse(value);
+	        } catch (ParseException e) {
+	            logger.warn("Sales date can't be parsed: " + value);
+	        }
+	    }
+	    return defaultDate;
+	}
     
 }
\ No newline at end of file
@@ -14,9 +14,13 @@ import java.util.List;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.lang.math.NumberUtils;
+import org.hoteia.qalingo.core.clickstream.ClickstreamPipeline;
+import org.hoteia.qalingo.core.clickstream.ClickstreamRollup;
 import org.hoteia.qalingo.core.domain.ServerStatus;
 import org.hoteia.qalingo.core.domain.enumtype.BoUrls;
 import org.hoteia.qalingo.core.pojo.RequestData;
+import org.hoteia.qalingo.core.rule.util.RuleEngineStatistics;
 import org.hoteia.qalingo.core.service.ServerService;
 import org.hoteia.qalingo.core.web.servlet.ModelAndViewThemeDevice;
 import org.hoteia.qalingo.web.mvc.controller.AbstractTechnicalBackofficeController;
@@ -31,8 +35,19 @@ import org.springframework.web.servlet.ModelAndView;
 @Controller("monitoringController")
 public class MonitoringController extends AbstractTechnicalBackofficeController {
 
+    protected static final int CLICKSTREAM_DEFAULT_HOURS = 24;
+
+    // A ROLLUP READS ALL THE SEGMENTS OF ITS HOURS
+    protected static final int CLICKSTREAM_MAX_HOURS = 24 * 31;
+
     @Autowired
     protected ServerService serverService;
+
+    @Autowired
+    protected ClickstreamPipeline clickstreamPipeline;
+
+    @Autowired
+    protected RuleEngineStatistics ruleEngineStatistics;
 	
 	@RequestMapping(BoUrls.MONITORING_URL)
 	public ModelAndView searchMonitoring(final HttpServletRequest request, final HttpServletResponse response) throws Exception {
@@ -45,6 +60,22 @@ public class MonitoringController extends AbstractTechnicalBackofficeController
 		List<ServerStatus> severStatusList = serverService.findServerStatus();
 		modelAndView.addObject("severStatusList", severStatusList);
 		
+		// CLICKSTREAM ROLLUP OF THE LAST HOURS, FROM THE SEGMENTS OF ALL THE NODES
+		int clickstreamMaxHours = CLICKSTREAM_MAX_HOURS;
+		if (clickstreamPipeline.getRetentionHours() > 0) {
+		    clickstreamMaxHours = Math.min(clickstreamMaxHours, clickstreamPipeline.getRetentionHours());
+		}
+		int clickstreamHours = NumberUtils.toInt(request.getParameter("clickstreamHours"), CLICKSTREAM_DEFAULT_HOURS);
+		clickstreamHours = Math.max(1, Math.min(clickstreamHours, clickstreamMaxHours));
+		ClickstreamRollup clickstreamRollup = clickstreamPipeline.getRollup(clickstreamHours);
+		modelAndView.addObject("clickstreamHours", clickstreamHours);
+		modelAndView.addObject("clickstreamRollup", clickstreamRollup);
+		modelAndView.addObject("clickstreamTopPaths", clickstreamRollup.getTopPaths(50));
+		modelAndView.addObject("clickstreamTopReferrers", clickstreamRollup.getTopReferrers(50));
+		
+		// RULE ENGINE COUNTERS OF THIS NODE
+		modelAndView.addObject("ruleEngineStatistics", ruleEngineStatistics);
+		
         return modelAndView;
 	}
 	
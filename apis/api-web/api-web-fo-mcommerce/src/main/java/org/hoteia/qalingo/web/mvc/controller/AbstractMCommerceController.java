@@ -31,7 +31,9 @@ import org.hoteia.qalingo.core.pojo.RequestData;
 import org.hoteia.qalingo.core.service.ProductService;
 import org.hoteia.qalingo.core.service.WebManagementService;
 import org.hoteia.qalingo.core.solr.bean.ProductMarketingSolr;
+import org.hoteia.qalingo.core.solr.bean.SolrPagination;
 import org.hoteia.qalingo.core.solr.response.ProductMarketingResponseBean;
+import org.hoteia.qalingo.core.solr.response.SolrPagedListHolder;
 import org.hoteia.qalingo.core.solr.service.ProductMarketingSolrService;
 import org.hoteia.qalingo.core.web.mvc.controller.AbstractFrontofficeQalingoController;
 import org.hoteia.qalingo.core.web.mvc.viewbean.ProductMarketingViewBean;
@@ -41,7 +43,6 @@ import org.hoteia.qalingo.web.mvc.form.SearchForm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.support.MutableSortDefinition;
 import org.springframework.beans.support.PagedListHolder;
 import org.springframework.ui.Model;
 import org.hoteia.qalingo.core.security.helper.SecurityUtil;
@@ -117,13 +118,24 @@ public abstract class AbstractMCommerceController extends AbstractFrontofficeQal
         }
     }
     
-    protected PagedListHolder<ProductMarketingViewBean> initList(final RequestData requestData, final String sessionKeyPagedListHolder, final ProductMarketingResponseBean productMarketingResponseBean,
-                                                                 int pageSize, String sortBy, String order) throws Exception {
+    /**
+     * Solr window of a search page : only the ids of the page are loaded, the
+     * sort is done by Solr when the field is sortable.
+     */
+    protected SolrPagination buildSearchPagination(final int page, int pageSize, final String sortBy, final String order, final List<String> sortFields) {
         // SANITY CHECK
-        if(pageSize == 0){
+        if(pageSize <= 0){
             pageSize = 16;
         }
-        
+        SolrPagination pagination = SolrPagination.page(page, pageSize);
+        if(StringUtils.isNotEmpty(sortBy)
+                && sortFields.contains(sortBy)){
+            pagination.setSort(sortBy, StringUtils.isNotEmpty(order) ? order : Constants.PAGE_ORDER_ASC);
+        }
+        return pagination;
+    }
+
+    protected PagedListHolder<ProductMarketingViewBean> initList(final RequestData requestData, final ProductMarketingResponseBean productMarketingResponseBean, final int pageSize) throws Exception {
         final List<ProductMarketingViewBean> productMarketingViewBeans = new ArrayList<ProductMarketingViewBean>();
         List<ProductMarketingSolr> searchtItems = productMarketingResponseBean.getProductMarketingSolrList();
         for (Iterator<ProductMarketingSolr> iterator = searchtItems.iterator(); iterator.hasNext();) {
@@ -138,14 +150,6 @@ public abstract class AbstractMCommerceController extends AbstractFrontofficeQal
             }
         }
         
-        PagedListHolder<ProductMarketingViewBean> pagedListHolder = new PagedListHolder<ProductMarketingViewBean>(productMarketingViewBeans);
-        pagedListHolder.setPageSize(pageSize);
-        if(StringUtils.isNotEmpty(sortBy)
-                && StringUtils.isNotEmpty(order)){
-            pagedListHolder.setSort(new MutableSortDefinition(sortBy, true, Constants.PAGE_ORDER_ASC.equalsIgnoreCase(order)));
-        }
-        pagedListHolder.resort();
-//        request.getSession().setAttribute(sessionKeyPagedListHolder, productsViewBeanPagedListHolder);
-        return pagedListHolder;
+        return new SolrPagedListHolder<ProductMarketingViewBean>(productMarketingViewBeans, productMarketingResponseBean, pageSize);
     }
 }
\ No newline at end of file
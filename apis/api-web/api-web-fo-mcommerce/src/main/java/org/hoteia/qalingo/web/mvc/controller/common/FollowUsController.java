@@ -124,7 +124,8 @@ public class FollowUsController extends AbstractMCommerceController {
 			String marketAreaCode = request.getParameter(RequestConstants.REQUEST_PARAMETER_MARKET_AREA_CODE);
 			String email = request.getParameter(RequestConstants.REQUEST_PARAMETER_NEWSLETTER_EMAIL);
 			
-			RequestData requestData = requestUtil.getRequestData(request);
+			// COPY : THE REQUEST DATA IS SHARED BY THE REQUEST
+			RequestData requestData = new RequestData(requestUtil.getRequestData(request));
 			requestData.setMarketArea(marketService.getMarketAreaByCode(marketAreaCode));
 			
 			webManagementService.saveNewsletterUnsubscriptionAndSendEmail(requestData, email);
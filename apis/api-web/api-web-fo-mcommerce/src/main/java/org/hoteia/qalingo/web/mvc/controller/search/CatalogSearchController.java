@@ -36,6 +36,7 @@ import org.hoteia.qalingo.core.i18n.enumtype.ScopeWebMessage;
 import org.hoteia.qalingo.core.pojo.RequestData;
 import org.hoteia.qalingo.core.service.CatalogCategoryService;
 import org.hoteia.qalingo.core.service.ProductService;
+import org.hoteia.qalingo.core.solr.bean.SolrPagination;
 import org.hoteia.qalingo.core.solr.response.ProductMarketingResponseBean;
 import org.hoteia.qalingo.core.solr.service.AbstractSolrService;
 import org.hoteia.qalingo.core.solr.service.ProductMarketingSolrService;
@@ -109,8 +110,6 @@ public class CatalogSearchController extends AbstractMCommerceController {
         
 		String url = requestUtil.getCurrentRequestUrl(request);
 		
-		String sessionKeyPagedListHolder = "Search_ProductMarketing_PagedListHolder_" + request.getSession().getId();
-        String sessionKeyFacet = "Search_ProductMarketing_Facet_" + request.getSession().getId();
         int page = searchForm.getPage() - 1;
         String mode = request.getParameter(Constants.PAGE_VIEW_MODE);
         String sortBy = searchForm.getSortBy();
@@ -118,46 +117,26 @@ public class CatalogSearchController extends AbstractMCommerceController {
         int pageSize = searchForm.getPageSize();
         
 		try {
-            PagedListHolder<ProductMarketingViewBean> pagedListHolder;
-		    if(searchForm.getPage() == 0){
-	            ProductMarketingResponseBean productMarketingResponseBean = null;
-	            if(searchForm.getPrice() != null){
-	                productMarketingResponseBean = productMarketingSolrService.searchProductMarketing(ProductMarketingResponseBean.PRODUCT_MARKETING_DEFAULT_SEARCH_FIELD, 
-	                        searchForm.getText(), ProductMarketingResponseBean.PRODUCT_MARKETING_DEFAULT_FACET_FIELD, searchForm.getPrice().getStartValue(), searchForm.getPrice().getEndValue(), 
-	                        searchForm.getCatalogCategoryList());
-	                productMarketingResponseBean = productMarketingSolrService.searchProductMarketing(ProductMarketingResponseBean.PRODUCT_MARKETING_DEFAULT_SEARCH_FIELD, 
-	                        searchForm.getText(), ProductMarketingResponseBean.PRODUCT_MARKETING_DEFAULT_FACET_FIELD, searchForm.getPrice().getStartValue(), searchForm.getPrice().getEndValue());
-	                
-	            } else {
-	                productMarketingResponseBean = productMarketingSolrService.searchProductMarketing(ProductMarketingResponseBean.PRODUCT_MARKETING_DEFAULT_SEARCH_FIELD, 
-	                                                        searchForm.getText(), ProductMarketingResponseBean.PRODUCT_MARKETING_DEFAULT_FACET_FIELD);
-	            }
-	            
-	            pagedListHolder = initList(requestData, sessionKeyPagedListHolder, productMarketingResponseBean, pageSize, sortBy, order);
-	            
-	            // FACETS
-                List<SearchFacetViewBean> facets = frontofficeViewBeanFactory.buildListViewBeanCatalogSearchFacet(requestData, productMarketingResponseBean);
-                modelAndView.addObject(AbstractSolrService.SEARCH_FACET_FIELD_LIST, facets);
-                request.getSession().setAttribute(sessionKeyFacet, facets);
-
-		    } else {
-		        pagedListHolder = (PagedListHolder<ProductMarketingViewBean>) request.getSession().getAttribute(sessionKeyPagedListHolder);
-		        
-		        // FACETS
-                List<SearchFacetViewBean> facets = (List<SearchFacetViewBean>) request.getSession().getAttribute(sessionKeyFacet);
-                modelAndView.addObject(AbstractSolrService.SEARCH_FACET_FIELD_LIST, facets);
-		    }
-			
-	        int pageCurrent = pagedListHolder.getPage();
-	        if (pageCurrent < page) { 
-	        	for (int i = pageCurrent; i < page; i++) {
-	        		pagedListHolder.nextPage(); 
-				}
-	        } else if (pageCurrent > page) { 
-	        	for (int i = page; i < pageCurrent; i++) {
-		        	pagedListHolder.previousPage(); 
-				}
-	        }
+		    // ONLY THE CURRENT PAGE IS LOADED : SOLR GIVES THE TOTAL HITS FOR THE PAGER
+		    SolrPagination pagination = buildSearchPagination(page, pageSize, sortBy, order, ProductMarketingResponseBean.PRODUCT_MARKETING_SORT_FIELDS);
+		    pagination.addField(ProductMarketingResponseBean.PRODUCT_MARKETING_SEARCH_FIELD_CODE);
+		    
+            ProductMarketingResponseBean productMarketingResponseBean = null;
+            if(searchForm.getPrice() != null){
+                productMarketingResponseBean = productMarketingSolrService.searchProductMarketing(ProductMarketingResponseBean.PRODUCT_MARKETING_DEFAULT_SEARCH_FIELD, 
+                        searchForm.getText(), ProductMarketingResponseBean.PRODUCT_MARKETING_DEFAULT_FACET_FIELD, searchForm.getPrice().getStartValue(), searchForm.getPrice().getEndValue(), 
+                        searchForm.getCatalogCategoryList(), pagination);
+                
+            } else {
+                productMarketingResponseBean = productMarketingSolrService.searchProductMarketing(ProductMarketingResponseBean.PRODUCT_MARKETING_DEFAULT_SEARCH_FIELD, 
+                                                        searchForm.getText(), ProductMarketingResponseBean.PRODUCT_MARKETING_DEFAULT_FACET_FIELD, null, null, null, pagination);
+            }
+            
+            PagedListHolder<ProductMarketingViewBean> pagedListHolder = initList(requestData, productMarketingResponseBean, pagination.getRows());
+            
+            // FACETS
+            List<SearchFacetViewBean> facets = frontofficeViewBeanFactory.buildListViewBeanCatalogSearchFacet(requestData, productMarketingResponseBean);
+            modelAndView.addObject(AbstractSolrService.SEARCH_FACET_FIELD_LIST, facets);
 	        
 			modelAndView.addObject(Constants.PAGINATION_PAGE_URL, url);
 			modelAndView.addObject(Constants.PAGINATION_PAGE_PAGED_LIST_HOLDER, pagedListHolder);
@@ -34,6 +34,8 @@ import org.hoteia.qalingo.core.pojo.RequestData;
 import org.hoteia.qalingo.core.service.ProductService;
 import org.hoteia.qalingo.core.service.RetailerService;
 import org.hoteia.qalingo.core.solr.bean.StoreSolr;
+import org.hoteia.qalingo.core.solr.bean.SolrPagination;
+import org.hoteia.qalingo.core.solr.response.SolrPagedListHolder;
 import org.hoteia.qalingo.core.solr.response.StoreResponseBean;
 import org.hoteia.qalingo.core.solr.service.AbstractSolrService;
 import org.hoteia.qalingo.core.solr.service.StoreSolrService;
@@ -49,7 +51,6 @@ import org.hoteia.qalingo.web.mvc.form.SearchForm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.support.MutableSortDefinition;
 import org.springframework.beans.support.PagedListHolder;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -100,8 +101,6 @@ public class StoreSearchController extends AbstractMCommerceController {
 
 		String url = requestUtil.getCurrentRequestUrl(request);
 		
-		String sessionKeyPagedListHolder = "Search_Store_PagedListHolder_" + request.getSession().getId();
-        String sessionKeyFacet = "Search_Store_Facet_" + request.getSession().getId();
         int page = searchForm.getPage() - 1;
         String mode = request.getParameter(Constants.PAGE_VIEW_MODE);
         String cities = request.getParameter("cities");
@@ -123,44 +122,24 @@ public class StoreSearchController extends AbstractMCommerceController {
 		}
         
         int pageSize = searchForm.getPageSize();
-        if(pageSize == 0){
-            pageSize = 16;
-        }
         String sortBy = searchForm.getSortBy();
         String order = searchForm.getOrder();
 		
 		try {
-            PagedListHolder<StoreViewBean> pagedListHolder;
-			if(searchForm.getPage() == 0){
-	            StoreResponseBean storeResponseBean = null;
-	            List<String> facetFields = Arrays.asList(StoreResponseBean.STORE_DEFAULT_FACET_FIELD,StoreResponseBean.STORE_SECOND_FACET_FIELD);
-	            storeResponseBean = storeSolrService.searchStore(StoreResponseBean.STORE_DEFAULT_SEARCH_FIELD, searchForm.getText(), facetFields, cityList,countryList);
-	            StoreResponseBean storeResponBeanNonFilter = storeSolrService.searchStore(StoreResponseBean.STORE_DEFAULT_SEARCH_FIELD, searchForm.getText(), facetFields);
-	            pagedListHolder = initList(requestData, sessionKeyPagedListHolder, storeResponseBean, pageSize, sortBy, order);
-	            
-	            // FACETS
-                List<SearchFacetViewBean> facets = frontofficeViewBeanFactory.buildListViewBeanStoreSearchFacet(requestData, storeResponBeanNonFilter);
-	            modelAndView.addObject(AbstractSolrService.SEARCH_FACET_FIELD_LIST, facets);
-	            request.getSession().setAttribute(sessionKeyFacet, facets);
-			    
-			} else {
-			    pagedListHolder = (PagedListHolder<StoreViewBean>) request.getSession().getAttribute(sessionKeyPagedListHolder);
-			    
-			    // FACETS
-                List<SearchFacetViewBean> facets = (List<SearchFacetViewBean>) request.getSession().getAttribute(sessionKeyFacet);
-                modelAndView.addObject(AbstractSolrService.SEARCH_FACET_FIELD_LIST, facets);
-			}
-	        
-	        int pageCurrent = pagedListHolder.getPage();
-	        if (pageCurrent < page) { 
-	        	for (int i = pageCurrent; i < page; i++) {
-	        	    pagedListHolder.nextPage(); 
-				}
-	        } else if (pageCurrent > page) { 
-	        	for (int i = page; i < pageCurrent; i++) {
-	        	    pagedListHolder.previousPage(); 
-				}
-	        }
+		    // ONLY THE CURRENT PAGE IS LOADED : SOLR GIVES THE TOTAL HITS FOR THE PAGER
+		    SolrPagination pagination = buildSearchPagination(page, pageSize, sortBy, order, StoreResponseBean.STORE_SORT_FIELDS);
+		    pagination.addField("code");
+		    
+            List<String> facetFields = Arrays.asList(StoreResponseBean.STORE_DEFAULT_FACET_FIELD,StoreResponseBean.STORE_SECOND_FACET_FIELD);
+            StoreResponseBean storeResponseBean = storeSolrService.searchStore(StoreResponseBean.STORE_DEFAULT_SEARCH_FIELD, searchForm.getText(), facetFields, cityList, countryList, pagination);
+            
+            // FACETS ONLY : NO DOCUMENT
+            StoreResponseBean storeResponBeanNonFilter = storeSolrService.searchStore(StoreResponseBean.STORE_DEFAULT_SEARCH_FIELD, searchForm.getText(), facetFields, null, null, new SolrPagination(0, 0));
+            PagedListHolder<StoreViewBean> pagedListHolder = initList(requestData, storeResponseBean, pagination.getRows());
+            
+            // FACETS
+            List<SearchFacetViewBean> facets = frontofficeViewBeanFactory.buildListViewBeanStoreSearchFacet(requestData, storeResponBeanNonFilter);
+            modelAndView.addObject(AbstractSolrService.SEARCH_FACET_FIELD_LIST, facets);
 	        
 			modelAndView.addObject(Constants.PAGINATION_PAGE_URL, url);
 			modelAndView.addObject(Constants.PAGINATION_PAGE_PAGED_LIST_HOLDER, pagedListHolder);
@@ -243,10 +222,7 @@ public class StoreSearchController extends AbstractMCommerceController {
         return formFactory.buildSearchForm(requestData);
     }
 	
-	private PagedListHolder<StoreViewBean> initList(final RequestData requestData, final String sessionKeyPagedListHolder, final StoreResponseBean storeResponseBean,
-			                                        int pageSize, String sortBy, String order) throws Exception {
-	    final HttpServletRequest request = requestData.getRequest();
-        
+	private PagedListHolder<StoreViewBean> initList(final RequestData requestData, final StoreResponseBean storeResponseBean, final int pageSize) throws Exception {
         final List<StoreViewBean> storeViewBeans = new ArrayList<StoreViewBean>();
         List<StoreSolr> searchtItems = storeResponseBean.getStoreSolrList();
         for (Iterator<StoreSolr> iterator = searchtItems.iterator(); iterator.hasNext();) {
@@ -261,15 +237,7 @@ public class StoreSearchController extends AbstractMCommerceController {
             }
         }
         
-        PagedListHolder<StoreViewBean> pagedListHolder = new PagedListHolder<StoreViewBean>(storeViewBeans);
-        pagedListHolder.setPageSize(pageSize);
-        if(StringUtils.isNotEmpty(sortBy)
-                && StringUtils.isNotEmpty(order)){
-            pagedListHolder.setSort(new MutableSortDefinition(sortBy, true, Constants.PAGE_ORDER_ASC.equalsIgnoreCase(order)));
-            pagedListHolder.resort();
-        }
-        request.getSession().setAttribute(sessionKeyPagedListHolder, pagedListHolder);
-        return pagedListHolder;
+        return new SolrPagedListHolder<StoreViewBean>(storeViewBeans, storeResponseBean, pageSize);
 	}
 	
     // TODO : Temporary